@@ -0,0 +1,52 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.http.exception.HttpRequestTimeoutException;
+import com.amazonaws.services.s3.model.ListBucketsRequest;
+
+import java.net.URI;
+
+/**
+ * Builds the stand-in SDK objects handed to the handlers by the benchmarks.
+ *
+ * These are real SDK context objects wrapping a DefaultRequest rather than Mockito mocks,
+ * because mocks record every invocation and their allocations would swamp the
+ * allocation profile of the handlers being measured.
+ */
+final class AttemptContexts {
+
+    static final String SERVICE_NAME = "Amazon S3";
+    static final URI ENDPOINT = URI.create("https://s3.amazonaws.com");
+
+    private AttemptContexts(){
+    }
+
+    static Request<?> request(AmazonWebServiceRequest originalRequest){
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, SERVICE_NAME);
+        request.setEndpoint(ENDPOINT);
+        return request;
+    }
+
+    static Request<?> listBucketsRequest(){
+        return request(new ListBucketsRequest());
+    }
+
+    static HandlerBeforeAttemptContext beforeAttempt(Request<?> request){
+        return HandlerBeforeAttemptContext.builder().withRequest(request).build();
+    }
+
+    static HandlerAfterAttemptContext successfulAttempt(Request<?> request){
+        return HandlerAfterAttemptContext.builder().withRequest(request).build();
+    }
+
+    static HandlerAfterAttemptContext failedAttempt(Request<?> request){
+        return HandlerAfterAttemptContext.builder()
+                .withRequest(request)
+                .withException(new HttpRequestTimeoutException("Request did not complete before the request timeout configuration."))
+                .build();
+    }
+}
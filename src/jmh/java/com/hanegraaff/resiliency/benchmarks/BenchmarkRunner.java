@@ -0,0 +1,50 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Runs every benchmark in this package at 1, 8 and 64 threads with the GC profiler
+ * enabled, so that both ns/op and allocations/op (gc.alloc.rate.norm) are reported.
+ * All the results are written to a single JSON file so they can be compared from
+ * release to release.
+ *
+ * Usage: BenchmarkRunner [output file] [benchmark regex]
+ */
+public class BenchmarkRunner {
+
+    static final int[] THREAD_COUNTS = {1, 8, 64};
+
+    public static void main(String[] args) throws RunnerException, FileNotFoundException {
+        String outputFile = args.length > 0 ? args[0] : "jmh-results.json";
+        String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark.*";
+
+        List<RunResult> results = new ArrayList<>();
+
+        for (int threads : THREAD_COUNTS) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class);
+
+            Collection<RunResult> runResults = new Runner(options.build()).run();
+            results.addAll(runResults);
+        }
+
+        try (PrintStream out = new PrintStream(outputFile)) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.hanegraaff.resiliency.handlers.NetworkDelayRequestHandler;
+import com.hanegraaff.resiliency.handlers.ProgrammableExceptionRequestHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost the fault injection handlers add to every attempt when they
+ * decide not to inject anything. Injected faults and delays are not measured, as
+ * their cost is the fault itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaultInjectionHandlerBenchmark {
+
+    private NetworkDelayRequestHandler networkDelayHandler;
+    private ProgrammableExceptionRequestHandler exceptionHandler;
+    private HandlerBeforeAttemptContext beforeAttempt;
+
+    @Setup
+    public void setUp(){
+        networkDelayHandler = new NetworkDelayRequestHandler(0, 1000, 2000);
+        exceptionHandler = new ProgrammableExceptionRequestHandler(new AmazonClientException("test"), 0);
+        beforeAttempt = AttemptContexts.beforeAttempt(AttemptContexts.listBucketsRequest());
+    }
+
+    @Benchmark
+    public void networkDelayNotInjected(){
+        networkDelayHandler.beforeAttempt(beforeAttempt);
+    }
+
+    @Benchmark
+    public void exceptionNotInjected(){
+        exceptionHandler.beforeAttempt(beforeAttempt);
+    }
+}
@@ -0,0 +1,35 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recording into a LatencyHistogram shared by all benchmark threads. Values
+ * are spread between 1ms and 1s, like the latencies of S3 calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private static final long MIN_VALUE = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_VALUE = TimeUnit.SECONDS.toNanos(1);
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Benchmark
+    public void record(){
+        histogram.record(ThreadLocalRandom.current().nextLong(MIN_VALUE, MAX_VALUE));
+    }
+
+    @Benchmark
+    public long snapshotP99(){
+        return histogram.snapshot().getP99();
+    }
+}
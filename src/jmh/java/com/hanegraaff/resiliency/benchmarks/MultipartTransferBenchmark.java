@@ -0,0 +1,95 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.hanegraaff.resiliency.handlers.ServiceHealthRequestHandler;
+import com.hanegraaff.resiliency.handlers.TransferMetricsRequestHandler;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.metrics.StripedSlidingWindowCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the per-attempt overhead of the handler chain of a client shared by a
+ * TransferManager, where every benchmark thread plays the part of a thread uploading
+ * parts. With one transfer, all the threads upload parts of the same object and update
+ * the same TransferMetrics. With many, each thread uploads its own object. With
+ * distinct, every part belongs to a new object, so the map of transfers stays full and
+ * every request adds a transfer and pays its share of the eviction. The request is then
+ * built in the benchmark, and its allocations show up in the GC profile.
+ *
+ * Run with BenchmarkRunner, the time per attempt should stay flat from 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartTransferBenchmark {
+
+    @Param({"one", "many", "distinct"})
+    public String transfers;
+
+    private TransferMetricsRequestHandler transferHandler;
+    private ServiceHealthRequestHandler healthHandler;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup
+    public void setUp(){
+        transferHandler = new TransferMetricsRequestHandler();
+        healthHandler = new ServiceHealthRequestHandler(0.5, 5, new ServiceHealthTracker(), StripedSlidingWindowCounter::new);
+    }
+
+    @State(Scope.Thread)
+    public static class PartUpload {
+        Request<?> request;
+        HandlerBeforeAttemptContext beforeAttempt;
+        HandlerAfterAttemptContext afterAttempt;
+        boolean distinct;
+        int thread;
+        long objects;
+
+        @Setup
+        public void setUp(MultipartTransferBenchmark benchmark){
+            thread = benchmark.threads.incrementAndGet();
+            distinct = benchmark.transfers.equals("distinct");
+            useObject(benchmark.transfers.equals("one") ? "object" : "object-" + thread);
+
+            if (distinct) {
+                // fill the map of transfers before measuring
+                for (int i = 0; i < TransferMetricsRequestHandler.DEFAULT_MAX_TRANSFERS; i++) {
+                    nextObject();
+                    benchmark.transferHandler.beforeRequest(request);
+                }
+            }
+        }
+
+        void nextObject(){
+            useObject("object-" + thread + "-" + objects++);
+        }
+
+        private void useObject(String key){
+            request = AttemptContexts.request(new UploadPartRequest()
+                    .withBucketName("bucket").withKey(key).withPartNumber(thread));
+            beforeAttempt = AttemptContexts.beforeAttempt(request);
+            afterAttempt = AttemptContexts.successfulAttempt(request);
+        }
+    }
+
+    @Benchmark
+    public void uploadPart(PartUpload part){
+        if (part.distinct) part.nextObject();
+
+        transferHandler.beforeRequest(part.request);
+        healthHandler.beforeRequest(part.request);
+        transferHandler.beforeAttempt(part.beforeAttempt);
+        healthHandler.beforeAttempt(part.beforeAttempt);
+        transferHandler.afterAttempt(part.afterAttempt);
+        healthHandler.afterAttempt(part.afterAttempt);
+    }
+}
@@ -0,0 +1,57 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.hanegraaff.resiliency.handlers.ServiceHealthRequestHandler;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.StripedSlidingWindowCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-attempt overhead of ServiceHealthRequestHandler.afterAttempt.
+ * A single handler is shared by all benchmark threads, the same way a handler is
+ * shared by all the threads using one SDK client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceHealthRequestHandlerBenchmark {
+
+    @Param({"atomic", "striped"})
+    public String counter;
+
+    private ServiceHealthRequestHandler handler;
+    private HandlerAfterAttemptContext successfulAttempt;
+    private HandlerAfterAttemptContext failedAttempt;
+
+    @Setup
+    public void setUp(){
+        ServiceHealthTracker tracker = new ServiceHealthTracker();
+
+        if (counter.equals("striped")) {
+            handler = new ServiceHealthRequestHandler(0.5, 5, tracker, StripedSlidingWindowCounter::new);
+        } else {
+            handler = new ServiceHealthRequestHandler(0.5, 5, tracker, SlidingWindowCounter::new);
+        }
+
+        Request<?> request = AttemptContexts.listBucketsRequest();
+        successfulAttempt = AttemptContexts.successfulAttempt(request);
+        failedAttempt = AttemptContexts.failedAttempt(request);
+    }
+
+    @Benchmark
+    public void successfulAttempt(){
+        handler.afterAttempt(successfulAttempt);
+    }
+
+    @Benchmark
+    public void failedAttempt(){
+        handler.afterAttempt(failedAttempt);
+    }
+}
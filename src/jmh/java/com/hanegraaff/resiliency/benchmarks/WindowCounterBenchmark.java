@@ -0,0 +1,45 @@
+package com.hanegraaff.resiliency.benchmarks;
+
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.StripedSlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the window counters on their own, shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowCounterBenchmark {
+
+    @Param({"atomic", "striped"})
+    public String counter;
+
+    private WindowCounter windowCounter;
+
+    @Setup
+    public void setUp(){
+        windowCounter = counter.equals("striped") ? new StripedSlidingWindowCounter(5) : new SlidingWindowCounter(5);
+    }
+
+    @Benchmark
+    public int increment(){
+        return windowCounter.increment();
+    }
+
+    @Benchmark
+    public void add(){
+        windowCounter.add();
+    }
+
+    @Benchmark
+    public int getCountPerInterval(){
+        return windowCounter.getCountPerInterval();
+    }
+}
@@ -0,0 +1,303 @@
+package com.hanegraaff.resiliency.builders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how an AdaptiveTimeoutRequestHandler derives the request timeout and the
+ * retry backoff of each operation from its observed attempt latency:
+ *
+ * 1. request timeout = timeoutMultiplier x the timeoutPercentile latency, clamped
+ *    between minTimeout and maxTimeout.
+ * 2. backoff base = backoffMultiplier x the median latency, clamped between minBackoff
+ *    and maxBackoff.
+ *
+ * Until minSamples attempts of an operation have been observed within the window, its
+ * timeout is maxTimeout and its backoff base is minBackoff. Values are recomputed at
+ * most once per refreshInterval, and only replaced when they move by more than
+ * changeThreshold, so that they do not wander with every sample.
+ *
+ * For example:
+ *
+ * AdaptiveTimeoutPolicy.builder().withTimeoutPercentile(99).withTimeoutMultiplier(3).
+ *         withTimeoutRange(200, 10000, TimeUnit.MILLISECONDS).build();
+ */
+public final class AdaptiveTimeoutPolicy {
+
+    private final double timeoutPercentile;
+    private final double timeoutMultiplier;
+    private final long minTimeoutMs;
+    private final long maxTimeoutMs;
+    private final double backoffMultiplier;
+    private final long minBackoffMs;
+    private final long maxBackoffMs;
+    private final int minSamples;
+    private final long windowNanos;
+    private final long refreshIntervalNanos;
+    private final double changeThreshold;
+    private final int historySize;
+
+    private AdaptiveTimeoutPolicy(Builder builder) {
+        this.timeoutPercentile = builder.timeoutPercentile;
+        this.timeoutMultiplier = builder.timeoutMultiplier;
+        this.minTimeoutMs = builder.minTimeoutMs;
+        this.maxTimeoutMs = builder.maxTimeoutMs;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.minBackoffMs = builder.minBackoffMs;
+        this.maxBackoffMs = builder.maxBackoffMs;
+        this.minSamples = builder.minSamples;
+        this.windowNanos = builder.windowNanos;
+        this.refreshIntervalNanos = builder.refreshIntervalNanos;
+        this.changeThreshold = builder.changeThreshold;
+        this.historySize = builder.historySize;
+    }
+
+    /**
+     * @return a policy with the default values of the builder
+     */
+    public static AdaptiveTimeoutPolicy defaults() {
+        return builder().build();
+    }
+
+    /**
+     * @return a new builder. By default the timeout is 3 x p99, between 100ms and 60s, and
+     * the backoff base is the median latency, between 10ms and 5s. At least 20 samples
+     * over the last minute are needed, values are refreshed every second when they move
+     * by more than 10%, and the last 256 changes are kept.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param percentileNanos the timeoutPercentile latency of the operation
+     * @return the request timeout derived from it, in milliseconds
+     */
+    public long timeoutFor(long percentileNanos) {
+        long timeout = (long) Math.ceil(timeoutMultiplier * percentileNanos / 1e6);
+        return Math.min(maxTimeoutMs, Math.max(minTimeoutMs, timeout));
+    }
+
+    /**
+     * @param medianNanos the median latency of the operation
+     * @return the backoff base derived from it, in milliseconds
+     */
+    public long backoffFor(long medianNanos) {
+        long backoff = (long) Math.ceil(backoffMultiplier * medianNanos / 1e6);
+        return Math.min(maxBackoffMs, Math.max(minBackoffMs, backoff));
+    }
+
+    /**
+     * @return true if a value moved far enough from the current one to replace it
+     */
+    public boolean isSignificantChange(long current, long proposed) {
+        return Math.abs(proposed - current) > current * changeThreshold;
+    }
+
+    public double getTimeoutPercentile() {
+        return timeoutPercentile;
+    }
+
+    public double getTimeoutMultiplier() {
+        return timeoutMultiplier;
+    }
+
+    public long getMinTimeoutMs() {
+        return minTimeoutMs;
+    }
+
+    public long getMaxTimeoutMs() {
+        return maxTimeoutMs;
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public long getMinBackoffMs() {
+        return minBackoffMs;
+    }
+
+    public long getMaxBackoffMs() {
+        return maxBackoffMs;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * @return the length of the window latencies are observed over, in nanoseconds
+     */
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    public long getRefreshIntervalNanos() {
+        return refreshIntervalNanos;
+    }
+
+    public double getChangeThreshold() {
+        return changeThreshold;
+    }
+
+    /**
+     * @return the number of changes kept in the history of a handler
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Builds AdaptiveTimeoutPolicy objects
+     */
+    public static class Builder {
+        private double timeoutPercentile = 99;
+        private double timeoutMultiplier = 3;
+        private long minTimeoutMs = 100;
+        private long maxTimeoutMs = 60 * 1000;
+        private double backoffMultiplier = 1;
+        private long minBackoffMs = 10;
+        private long maxBackoffMs = 5 * 1000;
+        private int minSamples = 20;
+        private long windowNanos = TimeUnit.MINUTES.toNanos(1);
+        private long refreshIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private double changeThreshold = 0.1;
+        private int historySize = 256;
+
+        private Builder() {
+        }
+
+        /**
+         * @param percentile the latency percentile the timeout derives from, for example 99
+         * @return this builder
+         */
+        public Builder withTimeoutPercentile(double percentile) {
+            this.timeoutPercentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param multiplier the timeout is this many times the percentile latency
+         * @return this builder
+         */
+        public Builder withTimeoutMultiplier(double multiplier) {
+            this.timeoutMultiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param min the shortest timeout
+         * @param max the longest timeout, also used until enough samples are observed
+         * @param unit the time unit of min and max
+         * @return this builder
+         */
+        public Builder withTimeoutRange(long min, long max, TimeUnit unit) {
+            this.minTimeoutMs = unit.toMillis(min);
+            this.maxTimeoutMs = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * @param multiplier the backoff base is this many times the median latency
+         * @return this builder
+         */
+        public Builder withBackoffMultiplier(double multiplier) {
+            this.backoffMultiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param min the shortest backoff base, also used until enough samples are observed
+         * @param max the longest backoff between two attempts
+         * @param unit the time unit of min and max
+         * @return this builder
+         */
+        public Builder withBackoffRange(long min, long max, TimeUnit unit) {
+            this.minBackoffMs = unit.toMillis(min);
+            this.maxBackoffMs = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * @param minSamples the number of attempts to observe before adapting the values of an operation
+         * @return this builder
+         */
+        public Builder withMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param window how far back latencies are observed. It is split in 6 slices.
+         * @param unit the time unit of window
+         * @return this builder
+         */
+        public Builder withWindow(long window, TimeUnit unit) {
+            this.windowNanos = unit.toNanos(window);
+            return this;
+        }
+
+        /**
+         * @param refreshInterval how often the values of an operation are recomputed
+         * @param unit the time unit of refreshInterval
+         * @return this builder
+         */
+        public Builder withRefreshInterval(long refreshInterval, TimeUnit unit) {
+            this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+            return this;
+        }
+
+        /**
+         * @param changeThreshold the relative change (between 0-1) below which values are left as they are
+         * @return this builder
+         */
+        public Builder withChangeThreshold(double changeThreshold) {
+            this.changeThreshold = changeThreshold;
+            return this;
+        }
+
+        /**
+         * @param historySize the number of changes kept in the history of a handler
+         * @return this builder
+         */
+        public Builder withHistorySize(int historySize) {
+            this.historySize = historySize;
+            return this;
+        }
+
+        /**
+         * @return the configured policy
+         */
+        public AdaptiveTimeoutPolicy build() {
+            if (timeoutPercentile <= 0 || timeoutPercentile >= 100) {
+                throw new IllegalArgumentException("'timeoutPercentile' parameter is out of range. Must be between 0 and 100");
+            }
+
+            if (timeoutMultiplier <= 0 || backoffMultiplier <= 0) {
+                throw new IllegalArgumentException("'timeoutMultiplier' and 'backoffMultiplier' must be positive");
+            }
+
+            if (minTimeoutMs <= 0 || maxTimeoutMs < minTimeoutMs || maxTimeoutMs > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("the timeout range must be positive, and 'min' cannot exceed 'max'");
+            }
+
+            if (minBackoffMs <= 0 || maxBackoffMs < minBackoffMs || maxBackoffMs > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("the backoff range must be positive, and 'min' cannot exceed 'max'");
+            }
+
+            if (minSamples <= 0 || historySize < 0) {
+                throw new IllegalArgumentException("'minSamples' must be positive and 'historySize' cannot be negative");
+            }
+
+            if (windowNanos <= 0 || refreshIntervalNanos < 0) {
+                throw new IllegalArgumentException("'window' must be positive and 'refreshInterval' cannot be negative");
+            }
+
+            if (changeThreshold < 0 || changeThreshold >= 1) {
+                throw new IllegalArgumentException("'changeThreshold' parameter is out of range. Must be between 0 and 1");
+            }
+
+            return new AdaptiveTimeoutPolicy(this);
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.amazonaws.ClientConfiguration;
 import com.amazonaws.retry.PredefinedBackoffStrategies;
 import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.retry.RetryPolicy;
+import com.hanegraaff.resiliency.handlers.AdaptiveTimeoutRequestHandler;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import com.hanegraaff.resiliency.retry.RetryBudgetCondition;
 
 public class ConfigurationBuilder {
 
@@ -18,7 +21,23 @@ public class ConfigurationBuilder {
      * @return the configured object
      */
     static public ClientConfiguration slowAndSteady(){
-        RetryPolicy retryPolicy = new RetryPolicy(new PredefinedRetryPolicies.SDKDefaultRetryCondition(),
+        return slowAndSteady(new PredefinedRetryPolicies.SDKDefaultRetryCondition());
+    }
+
+    /**
+     * Same as slowAndSteady(), except that retries are withdrawn from the supplied budget.
+     * The budget is refilled by a RetryBudgetRequestHandler, which must be added to the
+     * client as well.
+     *
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return the configured object
+     */
+    static public ClientConfiguration slowAndSteady(RetryBudget retryBudget){
+        return slowAndSteady(new RetryBudgetCondition(retryBudget));
+    }
+
+    static private ClientConfiguration slowAndSteady(RetryPolicy.RetryCondition retryCondition){
+        RetryPolicy retryPolicy = new RetryPolicy(retryCondition,
                 new PredefinedBackoffStrategies.FullJitterBackoffStrategy(1000, 50000),
                 10,
                 false);
@@ -43,7 +62,23 @@ public class ConfigurationBuilder {
      * @return the configured object
      */
     static public ClientConfiguration retryAndFailFast(){
-        RetryPolicy retryPolicy = new RetryPolicy(new PredefinedRetryPolicies.SDKDefaultRetryCondition(),
+        return retryAndFailFast(new PredefinedRetryPolicies.SDKDefaultRetryCondition());
+    }
+
+    /**
+     * Same as retryAndFailFast(), except that retries are withdrawn from the supplied budget.
+     * The budget is refilled by a RetryBudgetRequestHandler, which must be added to the
+     * client as well.
+     *
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return the configured object
+     */
+    static public ClientConfiguration retryAndFailFast(RetryBudget retryBudget){
+        return retryAndFailFast(new RetryBudgetCondition(retryBudget));
+    }
+
+    static private ClientConfiguration retryAndFailFast(RetryPolicy.RetryCondition retryCondition){
+        RetryPolicy retryPolicy = new RetryPolicy(retryCondition,
                 new PredefinedBackoffStrategies.FullJitterBackoffStrategy(1000, 3),
                 5,
                 false);
@@ -68,7 +103,23 @@ public class ConfigurationBuilder {
      * @return the configured object
      */
     static public ClientConfiguration responsiveUI(){
-        RetryPolicy retryPolicy = new RetryPolicy(new PredefinedRetryPolicies.SDKDefaultRetryCondition(),
+        return responsiveUI(new PredefinedRetryPolicies.SDKDefaultRetryCondition());
+    }
+
+    /**
+     * Same as responsiveUI(), except that retries are withdrawn from the supplied budget.
+     * The budget is refilled by a RetryBudgetRequestHandler, which must be added to the
+     * client as well.
+     *
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return the configured object
+     */
+    static public ClientConfiguration responsiveUI(RetryBudget retryBudget){
+        return responsiveUI(new RetryBudgetCondition(retryBudget));
+    }
+
+    static private ClientConfiguration responsiveUI(RetryPolicy.RetryCondition retryCondition){
+        RetryPolicy retryPolicy = new RetryPolicy(retryCondition,
                 new PredefinedBackoffStrategies.FullJitterBackoffStrategy(250, 750),
                 2,
                 false);
@@ -81,4 +132,123 @@ public class ConfigurationBuilder {
 
         return config;
     }
+
+    /**
+     * Creates a configuration suitable for batch jobs moving large objects with many
+     * threads, sized with the ThroughputConfigurationBuilder for 128 concurrent requests
+     * on 64MB objects
+     *
+     * This configuration will:
+     * 1. 160 connections, recycled after 60 seconds, with TCP keep-alive
+     * 2. 1MB socket buffers and "Expect: 100-continue" on uploads
+     * 3. 5 retries with 100ms-20s of full jitter between retries
+     * 69 second request timeout
+     *
+     * @return the configured object
+     */
+    static public ClientConfiguration highThroughputBulk(){
+        return highThroughputBulkBuilder().build();
+    }
+
+    /**
+     * Same as highThroughputBulk(), except that retries are withdrawn from the supplied budget.
+     * The budget is refilled by a RetryBudgetRequestHandler, which must be added to the
+     * client as well.
+     *
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return the configured object
+     */
+    static public ClientConfiguration highThroughputBulk(RetryBudget retryBudget){
+        return highThroughputBulkBuilder().withRetryBudget(retryBudget).build();
+    }
+
+    static private ThroughputConfigurationBuilder highThroughputBulkBuilder(){
+        return ThroughputConfigurationBuilder.builder().
+                withTargetConcurrency(128).
+                withTypicalObjectSize(64 * 1024 * 1024);
+    }
+
+    /**
+     * Creates a configuration suitable for jobs reading or writing many small objects
+     * with many threads, sized with the ThroughputConfigurationBuilder for 256 concurrent
+     * requests on 16KB objects
+     *
+     * This configuration will:
+     * 1. 320 connections, recycled after 60 seconds, with TCP keep-alive
+     * 2. no "Expect: 100-continue" round trip on uploads
+     * 3. 5 retries with 100ms-20s of full jitter between retries
+     * 5 second request timeout
+     *
+     * @return the configured object
+     */
+    static public ClientConfiguration manySmallObjects(){
+        return manySmallObjectsBuilder().build();
+    }
+
+    /**
+     * Same as manySmallObjects(), except that retries are withdrawn from the supplied budget.
+     * The budget is refilled by a RetryBudgetRequestHandler, which must be added to the
+     * client as well.
+     *
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return the configured object
+     */
+    static public ClientConfiguration manySmallObjects(RetryBudget retryBudget){
+        return manySmallObjectsBuilder().withRetryBudget(retryBudget).build();
+    }
+
+    static private ThroughputConfigurationBuilder manySmallObjectsBuilder(){
+        return ThroughputConfigurationBuilder.builder().
+                withTargetConcurrency(256).
+                withTypicalObjectSize(16 * 1024);
+    }
+
+    /**
+     * Creates a configuration whose request timeout and retry backoff adapt to the
+     * latency of each operation, as observed by the supplied handler, which must be
+     * added to the client as well. Each request will be tried up to 4 times
+     *
+     * This configuration will:
+     * 1. 3 retries with full jitter backoff from the handler's backoff base per operation
+     * 2. a request timeout derived from the latency of each operation, set by the handler.
+     *    The longest timeout of the policy applies to requests the handler did not see.
+     *
+     * @param handler the handler observing latency and applying the timeouts
+     * @return the configured object
+     */
+    static public ClientConfiguration adaptive(AdaptiveTimeoutRequestHandler handler){
+        return adaptive(handler, new PredefinedRetryPolicies.SDKDefaultRetryCondition());
+    }
+
+    /**
+     * Same as adaptive(), except that retries are withdrawn from the supplied budget.
+     * The budget is refilled by a RetryBudgetRequestHandler, which must be added to the
+     * client as well.
+     *
+     * @param handler the handler observing latency and applying the timeouts
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return the configured object
+     */
+    static public ClientConfiguration adaptive(AdaptiveTimeoutRequestHandler handler, RetryBudget retryBudget){
+        return adaptive(handler, new RetryBudgetCondition(retryBudget));
+    }
+
+    static private ClientConfiguration adaptive(AdaptiveTimeoutRequestHandler handler, RetryPolicy.RetryCondition retryCondition){
+        if (handler == null) {
+            throw new IllegalArgumentException("'handler' parameter cannot be null");
+        }
+
+        RetryPolicy retryPolicy = new RetryPolicy(retryCondition,
+                handler.getBackoffStrategy(),
+                3,
+                false);
+
+        ClientConfiguration config = new ClientConfiguration();
+        config.setConnectionTimeout(0);
+        config.setRequestTimeout((int) handler.getPolicy().getMaxTimeoutMs());
+        config.setClientExecutionTimeout(0);
+        config.setRetryPolicy(retryPolicy);
+
+        return config;
+    }
 }
@@ -0,0 +1,123 @@
+package com.hanegraaff.resiliency.builders;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedBackoffStrategies;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import com.hanegraaff.resiliency.retry.RetryBudgetCondition;
+
+/**
+ * Builds configurations for high throughput clients, sizing the connection pool and the
+ * TCP settings from a few hints about the workload rather than only the timeouts and
+ * retries. For example:
+ *
+ * ClientConfiguration config = ThroughputConfigurationBuilder.builder().
+ *         withTargetConcurrency(200).withTypicalObjectSize(8 * 1024 * 1024).build();
+ *
+ * The configuration will:
+ * 1. allow 25% more connections than the target concurrency, and at least the SDK
+ *    default of 50, so that retries and hedged requests do not wait for a connection
+ * 2. recycle connections after 60 seconds, so that new connections follow DNS changes
+ *    and spread over the service's front ends, and reap connections idle for 30 seconds
+ * 3. enable TCP keep-alive
+ * 4. ask for socket buffers of 1MB for objects of 1MB or more, and leave the OS default
+ *    for smaller ones
+ * 5. send "Expect: 100-continue" only for objects of 1MB or more, as the extra round
+ *    trip is only worth it when a rejected upload would waste a large body
+ * 6. allow 5 seconds per request plus 1 second per MB of the typical object, and
+ *    retry up to 5 times with 100ms to 20s of full jitter backoff
+ */
+public class ThroughputConfigurationBuilder {
+
+    static final int MIN_CONNECTIONS = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
+    static final int LARGE_OBJECT_BYTES = 1024 * 1024;
+    static final int LARGE_SOCKET_BUFFER_BYTES = 1024 * 1024;
+    static final long CONNECTION_TTL_MS = 60 * 1000;
+    static final long CONNECTION_MAX_IDLE_MS = 30 * 1000;
+    static final int BASE_REQUEST_TIMEOUT_MS = 5 * 1000;
+    static final int MAX_REQUEST_TIMEOUT_MS = 15 * 60 * 1000;
+
+    private int targetConcurrency = MIN_CONNECTIONS;
+    private long typicalObjectSize = 64 * 1024;
+    private RetryPolicy.RetryCondition retryCondition = new PredefinedRetryPolicies.SDKDefaultRetryCondition();
+
+    private ThroughputConfigurationBuilder() {
+    }
+
+    /**
+     * @return a new builder, for 50 concurrent requests on 64KB objects
+     */
+    public static ThroughputConfigurationBuilder builder() {
+        return new ThroughputConfigurationBuilder();
+    }
+
+    /**
+     * @param targetConcurrency the number of requests the client is expected to run at the same time
+     * @return this builder
+     */
+    public ThroughputConfigurationBuilder withTargetConcurrency(int targetConcurrency) {
+        this.targetConcurrency = targetConcurrency;
+        return this;
+    }
+
+    /**
+     * @param typicalObjectSize the typical size in bytes of the objects read or written by the client
+     * @return this builder
+     */
+    public ThroughputConfigurationBuilder withTypicalObjectSize(long typicalObjectSize) {
+        this.typicalObjectSize = typicalObjectSize;
+        return this;
+    }
+
+    /**
+     * Withdraws retries from the supplied budget. The budget is refilled by a
+     * RetryBudgetRequestHandler, which must be added to the client as well.
+     *
+     * @param retryBudget the budget shared by the clients using this configuration
+     * @return this builder
+     */
+    public ThroughputConfigurationBuilder withRetryBudget(RetryBudget retryBudget) {
+        this.retryCondition = new RetryBudgetCondition(retryBudget);
+        return this;
+    }
+
+    /**
+     * @return the configured object
+     */
+    public ClientConfiguration build() {
+        if (targetConcurrency <= 0) {
+            throw new IllegalArgumentException("'targetConcurrency' must be a positive integer");
+        }
+
+        if (typicalObjectSize < 0) {
+            throw new IllegalArgumentException("'typicalObjectSize' cannot be negative");
+        }
+
+        boolean largeObjects = typicalObjectSize >= LARGE_OBJECT_BYTES;
+
+        RetryPolicy retryPolicy = new RetryPolicy(retryCondition,
+                new PredefinedBackoffStrategies.FullJitterBackoffStrategy(100, 20 * 1000),
+                5,
+                false);
+
+        ClientConfiguration config = new ClientConfiguration();
+        config.setMaxConnections(Math.max(MIN_CONNECTIONS, (int) Math.min(Integer.MAX_VALUE, targetConcurrency * 5L / 4)));
+        config.setConnectionTTL(CONNECTION_TTL_MS);
+        config.setConnectionMaxIdleMillis(CONNECTION_MAX_IDLE_MS);
+        config.setUseReaper(true);
+        config.setUseTcpKeepAlive(true);
+        config.setUseExpectContinue(largeObjects);
+        if (largeObjects) {
+            config.setSocketBufferSizeHints(LARGE_SOCKET_BUFFER_BYTES, LARGE_SOCKET_BUFFER_BYTES);
+        }
+
+        config.setConnectionTimeout(ClientConfiguration.DEFAULT_CONNECTION_TIMEOUT);
+        config.setRequestTimeout((int) Math.min(MAX_REQUEST_TIMEOUT_MS,
+                BASE_REQUEST_TIMEOUT_MS + typicalObjectSize / LARGE_OBJECT_BYTES * 1000));
+        config.setClientExecutionTimeout(0);
+        config.setRetryPolicy(retryPolicy);
+
+        return config;
+    }
+}
@@ -0,0 +1,86 @@
+package com.hanegraaff.resiliency.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects samples grouped by metric family during a scrape, and writes them in the
+ * OpenMetrics text format. OpenMetrics requires all the samples of a family to be
+ * written together, while they are collected source by source.
+ */
+final class MetricFamilies {
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Adds a sample to a family, declaring the family the first time it is seen
+     *
+     * @param family the name of the family, for example resiliency_attempts
+     * @param type the OpenMetrics type of the family, for example counter
+     * @param help the description of the family
+     * @param suffix the suffix of the sample name, for example _total, or an empty string
+     * @param value the value of the sample
+     * @param labels label names and values, alternating
+     */
+    void add(String family, String type, String help, String suffix, double value, String... labels) {
+        Family target = families.computeIfAbsent(family, name -> new Family(name, type, help));
+
+        StringBuilder samples = target.samples;
+        samples.append(family).append(suffix);
+        if (labels.length > 0) {
+            samples.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) samples.append(',');
+                samples.append(labels[i]).append("=\"");
+                escape(labels[i + 1], samples);
+                samples.append('"');
+            }
+            samples.append('}');
+        }
+        samples.append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * Writes every family, followed by the # EOF marker
+     */
+    void writeTo(Writer writer) throws IOException {
+        for (Family family : families.values()) {
+            writer.write("# TYPE " + family.name + " " + family.type + "\n");
+            writer.write("# HELP " + family.name + " " + family.help + "\n");
+            writer.write(family.samples.toString());
+        }
+        writer.write("# EOF\n");
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (Double.isInfinite(value)) return value > 0 ? "+Inf" : "-Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    private static void escape(String value, StringBuilder out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') out.append("\\\\");
+            else if (c == '"') out.append("\\\"");
+            else if (c == '\n') out.append("\\n");
+            else out.append(c);
+        }
+    }
+
+    private static final class Family {
+        final String name;
+        final String type;
+        final String help;
+        final StringBuilder samples = new StringBuilder();
+
+        Family(String name, String type, String help) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.hanegraaff.resiliency.export;
+
+import com.hanegraaff.resiliency.handlers.AttemptMetricsRequestHandler;
+import com.hanegraaff.resiliency.health.HealthKey;
+import com.hanegraaff.resiliency.health.ServiceHealthRegistry;
+import com.hanegraaff.resiliency.health.ServiceHealthState;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the state of the library in the OpenMetrics text format, as scraped by
+ * Prometheus. Sources are registered once, and read on every scrape:
+ *
+ * 1. AttemptMetricsRequestHandler: requests, attempts and errors by exception class
+ *    per operation, and attempt latency percentiles
+ * 2. ServiceHealthTracker and ServiceHealthRegistry: health state and transition counts
+ * 3. WindowCounter, LatencyHistogram and RetryBudget: their current values
+ *
+ * Scrapes only read the counters, histograms and immutable snapshots kept by the
+ * sources, without taking locks or writing to them, so they never slow down the SDK
+ * threads. The values of different sources are not read at exactly the same instant.
+ *
+ * For example:
+ *
+ * OpenMetricsExporter exporter = new OpenMetricsExporter().
+ *         register(attemptMetricsHandler).
+ *         register("s3", s3HealthTracker);
+ * String text = exporter.scrape();
+ */
+public class OpenMetricsExporter {
+
+    static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final List<Consumer<MetricFamilies>> sources = new CopyOnWriteArrayList<>();
+
+    /**
+     * Publishes the requests, attempts, errors and attempt latency of every operation
+     * seen by the handler
+     *
+     * @param handler the handler counting the attempts of a client
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(AttemptMetricsRequestHandler handler) {
+        requireNonNull(handler, "handler");
+        sources.add(families -> handler.forEachOperation(metrics -> {
+            String service = metrics.getServiceName();
+            String operation = metrics.getOperation().getSimpleName();
+
+            families.add("resiliency_requests", "counter", "SDK requests, each made of one or more attempts.",
+                    "_total", metrics.getRequestCount(), "service", service, "operation", operation);
+            families.add("resiliency_attempts", "counter", "SDK attempts, including retries.",
+                    "_total", metrics.getAttemptCount(), "service", service, "operation", operation);
+            for (Map.Entry<Class<?>, Long> error : metrics.getErrorCounts().entrySet()) {
+                families.add("resiliency_attempt_errors", "counter", "Failed SDK attempts by exception class.",
+                        "_total", error.getValue(), "service", service, "operation", operation,
+                        "exception", error.getKey().getSimpleName());
+            }
+            addSummary(families, "resiliency_attempt_latency_seconds", "Latency of the attempts that reached the service.",
+                    metrics.getLatency().snapshot(), "service", service, "operation", operation);
+        }));
+        return this;
+    }
+
+    /**
+     * Publishes the health state and transition count of a tracker
+     *
+     * @param name the value of the tracker label
+     * @param tracker the tracker to publish
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(String name, ServiceHealthTracker tracker) {
+        requireNonNull(name, "name");
+        requireNonNull(tracker, "tracker");
+        sources.add(families -> addHealth(families, tracker.getSnapshot(), "tracker", name));
+        return this;
+    }
+
+    /**
+     * Publishes the health state, transition count and error rate of every key of a registry
+     *
+     * @param registry the registry to publish
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(ServiceHealthRegistry registry) {
+        requireNonNull(registry, "registry");
+        sources.add(families -> registry.forEach((key, window) -> {
+            String[] labels = labels(key);
+            addHealth(families, window.getServiceHealthTracker().getSnapshot(), labels);
+            families.add("resiliency_health_error_ratio", "gauge", "Error rate evaluated by a health window.",
+                    "", window.getEvaluatedErrorRate(), labels);
+        }));
+        return this;
+    }
+
+    /**
+     * Publishes the current value of a window counter
+     *
+     * @param name the value of the counter label
+     * @param counter the counter to publish
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(String name, WindowCounter counter) {
+        requireNonNull(name, "name");
+        requireNonNull(counter, "counter");
+        sources.add(families -> families.add("resiliency_window_count", "gauge", "Events counted over the window of a counter.",
+                "", counter.getCountPerInterval(), "counter", name));
+        return this;
+    }
+
+    /**
+     * Publishes the percentiles of a latency histogram
+     *
+     * @param name the value of the histogram label
+     * @param histogram the histogram to publish
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(String name, LatencyHistogram histogram) {
+        requireNonNull(histogram, "histogram");
+        return register(name, histogram::snapshot);
+    }
+
+    /**
+     * Publishes the percentiles of latency snapshots, for example those of a RollingLatencyHistogram
+     *
+     * @param name the value of the histogram label
+     * @param snapshots supplies a snapshot on every scrape
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(String name, Supplier<LatencyHistogram.Snapshot> snapshots) {
+        requireNonNull(name, "name");
+        requireNonNull(snapshots, "snapshots");
+        sources.add(families -> addSummary(families, "resiliency_latency_seconds", "Latency recorded by a histogram.",
+                snapshots.get(), "histogram", name));
+        return this;
+    }
+
+    /**
+     * Publishes the available tokens and the retries allowed and denied by a retry budget
+     *
+     * @param name the value of the budget label
+     * @param budget the budget to publish
+     * @return this exporter
+     */
+    public OpenMetricsExporter register(String name, RetryBudget budget) {
+        requireNonNull(name, "name");
+        requireNonNull(budget, "budget");
+        sources.add(families -> {
+            families.add("resiliency_retry_budget_tokens", "gauge", "Retries currently available in a retry budget.",
+                    "", budget.getAvailableTokens(), "budget", name);
+            families.add("resiliency_retry_budget_retries", "counter", "Retries allowed and denied by a retry budget.",
+                    "_total", budget.getRetriesAllowed(), "budget", name, "outcome", "allowed");
+            families.add("resiliency_retry_budget_retries", "counter", "Retries allowed and denied by a retry budget.",
+                    "_total", budget.getRetriesDenied(), "budget", name, "outcome", "denied");
+        });
+        return this;
+    }
+
+    /**
+     * @return the current values of every source in the OpenMetrics text format
+     */
+    public String scrape() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes the current values of every source in the OpenMetrics text format
+     *
+     * @param writer receives the text
+     * @throws IOException if the writer fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        MetricFamilies families = new MetricFamilies();
+        for (Consumer<MetricFamilies> source : sources) {
+            source.accept(families);
+        }
+        families.writeTo(writer);
+    }
+
+    private static void addHealth(MetricFamilies families, ServiceHealthTracker.Snapshot snapshot, String... labels) {
+        for (ServiceHealthState state : ServiceHealthState.values()) {
+            String[] stateLabels = new String[labels.length + 2];
+            System.arraycopy(labels, 0, stateLabels, 0, labels.length);
+            stateLabels[labels.length] = "resiliency_health_state";
+            stateLabels[labels.length + 1] = state.name();
+
+            families.add("resiliency_health_state", "stateset", "Health state of a service.",
+                    "", snapshot.getState() == state ? 1 : 0, stateLabels);
+        }
+        families.add("resiliency_health_transitions", "counter", "Health state transitions of a service.",
+                "_total", snapshot.getTransitionCount(), labels);
+    }
+
+    private static void addSummary(MetricFamilies families, String family, String help,
+                                   LatencyHistogram.Snapshot snapshot, String... labels) {
+        for (double quantile : QUANTILES) {
+            String[] quantileLabels = new String[labels.length + 2];
+            System.arraycopy(labels, 0, quantileLabels, 0, labels.length);
+            quantileLabels[labels.length] = "quantile";
+            quantileLabels[labels.length + 1] = MetricFamilies.format(quantile);
+
+            families.add(family, "summary", help, "", snapshot.getValueAtPercentile(quantile * 100) / 1e9, quantileLabels);
+        }
+        // the histogram keeps no exact sum, it is estimated from the mean
+        families.add(family, "summary", help, "_sum", snapshot.getMean() * snapshot.getTotalCount() / 1e9, labels);
+        families.add(family, "summary", help, "_count", snapshot.getTotalCount(), labels);
+    }
+
+    private static String[] labels(HealthKey key) {
+        return new String[]{"service", key.getServiceName(), "endpoint", key.getEndpointHost(),
+                "operation", key.getOperationName()};
+    }
+
+    private static void requireNonNull(Object value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException("'" + name + "' parameter cannot be null");
+        }
+    }
+}
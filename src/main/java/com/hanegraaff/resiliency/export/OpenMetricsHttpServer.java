@@ -0,0 +1,103 @@
+package com.hanegraaff.resiliency.export;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A tiny HTTP endpoint, built on the JDK HttpServer, that serves the scrapes of an
+ * OpenMetricsExporter on /metrics. Scrapes are handled one at a time on a single
+ * daemon thread, so they never compete with each other or with the SDK threads for
+ * more than one core.
+ *
+ * For example, to let Prometheus scrape http://host:9400/metrics:
+ *
+ * OpenMetricsHttpServer server = new OpenMetricsHttpServer(exporter, new InetSocketAddress(9400));
+ */
+public class OpenMetricsHttpServer implements Closeable {
+
+    public static final String PATH = "/metrics";
+
+    private final OpenMetricsExporter exporter;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts serving the exporter on the supplied address
+     *
+     * @param exporter the exporter to serve
+     * @param address the address to listen on. Port 0 picks a free port.
+     * @throws IOException if the server cannot be started
+     */
+    public OpenMetricsHttpServer(OpenMetricsExporter exporter, InetSocketAddress address) throws IOException {
+        if (exporter == null || address == null) {
+            throw new IllegalArgumentException("'exporter' and 'address' parameters cannot be null");
+        }
+
+        this.exporter = exporter;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "openmetrics-http-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext(PATH, this::serve);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops the server
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!PATH.equals(exchange.getRequestURI().getPath()) || !("GET".equals(method) || "HEAD".equals(method))) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8)) {
+                exporter.writeTo(writer);
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", OpenMetricsExporter.CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, body.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                body.writeTo(out);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
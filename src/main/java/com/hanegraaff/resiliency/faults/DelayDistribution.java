@@ -0,0 +1,216 @@
+package com.hanegraaff.resiliency.faults;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The distribution of the delays injected by a NetworkDelayRequestHandler.
+ *
+ * Real network and service latencies are rarely uniform: they usually have a long
+ * right tail. Log-normal and Pareto distributions reproduce that tail, and an
+ * empirical distribution replays latencies measured on a real system.
+ *
+ * Distributions are stateless. The caller supplies the random generator, which is a
+ * ThreadLocalRandom unless a seeded Random is needed to make a run reproducible.
+ */
+public abstract class DelayDistribution {
+
+    private final String description;
+
+    private DelayDistribution(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Draws a delay from the distribution
+     *
+     * @param random the random generator to draw from
+     * @return the delay in nanoseconds, never negative
+     */
+    public abstract long sampleNanos(Random random);
+
+    /**
+     * @param max the largest delay to return
+     * @param unit the time unit of max
+     * @return a distribution returning the same delays as this one, except that they never exceed max
+     */
+    public DelayDistribution capped(long max, TimeUnit unit) {
+        long maxNanos = positiveNanos(max, unit, "max");
+        DelayDistribution source = this;
+
+        return new DelayDistribution(description + " capped at " + format(maxNanos)) {
+            @Override
+            public long sampleNanos(Random random) {
+                return Math.min(maxNanos, source.sampleNanos(random));
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * @param delay the delay
+     * @param unit the time unit of delay
+     * @return a distribution that always returns the same delay
+     */
+    public static DelayDistribution fixed(long delay, TimeUnit unit) {
+        long delayNanos = positiveNanos(delay, unit, "delay");
+
+        return new DelayDistribution("fixed " + format(delayNanos)) {
+            @Override
+            public long sampleNanos(Random random) {
+                return delayNanos;
+            }
+        };
+    }
+
+    /**
+     * @param min the shortest delay
+     * @param max the longest delay
+     * @param unit the time unit of min and max
+     * @return a distribution returning delays evenly spread between min and max
+     */
+    public static DelayDistribution uniform(long min, long max, TimeUnit unit) {
+        long minNanos = positiveNanos(min, unit, "min");
+        long maxNanos = unit.toNanos(max);
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("'max' cannot be less than 'min'");
+        }
+
+        return new DelayDistribution("uniform " + format(minNanos) + "-" + format(maxNanos)) {
+            @Override
+            public long sampleNanos(Random random) {
+                return minNanos + (long) (random.nextDouble() * (maxNanos - minNanos));
+            }
+        };
+    }
+
+    /**
+     * @param mean the mean delay
+     * @param standardDeviation the standard deviation of the delay
+     * @param unit the time unit of mean and standardDeviation
+     * @return a normal distribution. Negative draws are returned as 0.
+     */
+    public static DelayDistribution normal(long mean, long standardDeviation, TimeUnit unit) {
+        long meanNanos = positiveNanos(mean, unit, "mean");
+        long deviationNanos = unit.toNanos(standardDeviation);
+        if (deviationNanos < 0) {
+            throw new IllegalArgumentException("'standardDeviation' cannot be negative");
+        }
+
+        return new DelayDistribution("normal mean=" + format(meanNanos) + " sd=" + format(deviationNanos)) {
+            @Override
+            public long sampleNanos(Random random) {
+                return Math.max(0, meanNanos + (long) (random.nextGaussian() * deviationNanos));
+            }
+        };
+    }
+
+    /**
+     * A log-normal distribution, whose logarithm is normally distributed. The median is
+     * the typical delay and sigma controls the length of the tail: with a sigma of 1,
+     * the 99th percentile is about 10 times the median.
+     *
+     * @param median the median delay
+     * @param sigma the standard deviation of the logarithm of the delay
+     * @param unit the time unit of median
+     * @return the distribution
+     */
+    public static DelayDistribution logNormal(long median, double sigma, TimeUnit unit) {
+        long medianNanos = positiveNanos(median, unit, "median");
+        if (sigma <= 0) {
+            throw new IllegalArgumentException("'sigma' must be a positive number");
+        }
+
+        double mu = Math.log(medianNanos);
+        return new DelayDistribution("log-normal median=" + format(medianNanos) + " sigma=" + sigma) {
+            @Override
+            public long sampleNanos(Random random) {
+                return (long) Math.exp(mu + sigma * random.nextGaussian());
+            }
+        };
+    }
+
+    /**
+     * A Pareto distribution, with delays of at least scale and a heavy tail. The smaller
+     * the shape, the heavier the tail: with a shape of 1.16 the slowest 20% of the delays
+     * account for 80% of the total. Shapes of 1 and below have no finite mean, so the
+     * distribution should then be capped.
+     *
+     * @param scale the shortest delay
+     * @param shape the tail index of the distribution
+     * @param unit the time unit of scale
+     * @return the distribution
+     */
+    public static DelayDistribution pareto(long scale, double shape, TimeUnit unit) {
+        long scaleNanos = positiveNanos(scale, unit, "scale");
+        if (shape <= 0) {
+            throw new IllegalArgumentException("'shape' must be a positive number");
+        }
+
+        double inverseShape = 1 / shape;
+        return new DelayDistribution("pareto scale=" + format(scaleNanos) + " shape=" + shape) {
+            @Override
+            public long sampleNanos(Random random) {
+                // 1 - nextDouble() is in (0, 1], so the power is always finite
+                double draw = scaleNanos / Math.pow(1 - random.nextDouble(), inverseShape);
+                return draw >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) draw;
+            }
+        };
+    }
+
+    /**
+     * Replays measured delays. Each draw picks a random point of the distribution of the
+     * samples, interpolating between neighbouring samples, so the shape of the measured
+     * distribution is reproduced without repeating the exact same values.
+     *
+     * @param samples the measured delays, in any order
+     * @param unit the time unit of the samples
+     * @return the distribution
+     */
+    public static DelayDistribution empirical(long[] samples, TimeUnit unit) {
+        if (samples == null || samples.length == 0 || unit == null) {
+            throw new IllegalArgumentException("'samples' and 'unit' parameters cannot be null or empty");
+        }
+
+        long[] sorted = new long[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            if (samples[i] < 0) {
+                throw new IllegalArgumentException("'samples' cannot contain negative delays");
+            }
+            sorted[i] = unit.toNanos(samples[i]);
+        }
+        Arrays.sort(sorted);
+
+        return new DelayDistribution("empirical of " + sorted.length + " samples, median=" + format(sorted[sorted.length / 2])) {
+            @Override
+            public long sampleNanos(Random random) {
+                double position = random.nextDouble() * (sorted.length - 1);
+                int index = (int) position;
+                if (index == sorted.length - 1) return sorted[index];
+
+                double fraction = position - index;
+                return sorted[index] + (long) (fraction * (sorted[index + 1] - sorted[index]));
+            }
+        };
+    }
+
+    private static long positiveNanos(long value, TimeUnit unit, String name) {
+        if (unit == null) {
+            throw new IllegalArgumentException("'unit' parameter cannot be null");
+        }
+
+        if (value < 0) {
+            throw new IllegalArgumentException("'" + name + "' cannot be negative");
+        }
+        return unit.toNanos(value);
+    }
+
+    private static String format(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+    }
+}
@@ -0,0 +1,231 @@
+package com.hanegraaff.resiliency.faults;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ExecutorService that delays a fraction of the tasks it is given without blocking
+ * any thread while they wait. Delayed tasks are handed to the wrapped executor by a
+ * scheduler once their delay is over, so the worker threads keep running other tasks
+ * in the meantime.
+ *
+ * The NetworkDelayRequestHandler sleeps on the thread that sends the attempt, which is
+ * what a slow network does to a blocking client. Wrapping the executor of a
+ * TransferManager, or of an async client, with this class instead delays whole part
+ * uploads or calls, the way a slow or congested dependency delays work queued behind
+ * it, while the pool stays free to start other parts:
+ *
+ * TransferManagerBuilder.standard().withExecutorFactory(() ->
+ *     new DelayInjectingExecutorService(Executors.newFixedThreadPool(10), 0.1, distribution))
+ *
+ * A delayed task rejected by the wrapped executor is cancelled if it was submitted, so
+ * its caller is not left waiting, and shutdownNow() returns the tasks still waiting out
+ * their delay, even when the scheduler is shared.
+ */
+public class DelayInjectingExecutorService extends AbstractExecutorService {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final Log log = LogFactory.getLog(DelayInjectingExecutorService.class);
+
+    private final ExecutorService delegate;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final double delayRate;
+    private final DelayDistribution delayDistribution;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Set<HandOff> scheduled = ConcurrentHashMap.newKeySet();
+    private final LongAdder injectedDelays = new LongAdder();
+    private volatile boolean shutdown;
+
+    /**
+     * Wraps an executor, with a scheduler of its own
+     *
+     * @param delegate the executor that runs the tasks
+     * @param delayRate The percentage (between 0 an 1) of tasks that are delayed
+     * @param delayDistribution the distribution of the delays
+     */
+    public DelayInjectingExecutorService(ExecutorService delegate, double delayRate, DelayDistribution delayDistribution) {
+        this(delegate, delayRate, delayDistribution, newScheduler(), true);
+    }
+
+    /**
+     * Wraps an executor, with a scheduler that can be shared by several executors
+     *
+     * @param delegate the executor that runs the tasks
+     * @param delayRate The percentage (between 0 an 1) of tasks that are delayed
+     * @param delayDistribution the distribution of the delays
+     * @param scheduler the scheduler that waits out the delays. It is not shut down by this executor.
+     */
+    public DelayInjectingExecutorService(ExecutorService delegate, double delayRate, DelayDistribution delayDistribution,
+                                         ScheduledExecutorService scheduler) {
+        this(delegate, delayRate, delayDistribution, scheduler, false);
+    }
+
+    private DelayInjectingExecutorService(ExecutorService delegate, double delayRate, DelayDistribution delayDistribution,
+                                          ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        if (delegate == null || delayDistribution == null || scheduler == null) {
+            throw new IllegalArgumentException("'delegate', 'delayDistribution' and 'scheduler' parameters cannot be null");
+        }
+
+        if (delayRate < 0 || delayRate > 1) {
+            throw new IllegalArgumentException("'delayRate' parameter is out of range. Must be between 0 and 1");
+        }
+
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.delayRate = delayRate;
+        this.delayDistribution = delayDistribution;
+    }
+
+    /**
+     * Runs the task on the wrapped executor, after a delay for a fraction of the tasks
+     *
+     * @param command the task to run
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("'command' parameter cannot be null");
+        }
+
+        if (shutdown) {
+            throw new RejectedExecutionException("the executor has been shut down");
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() >= delayRate) {
+            delegate.execute(command);
+            return;
+        }
+
+        injectedDelays.increment();
+        pending.incrementAndGet();
+        HandOff handOff = new HandOff(command);
+        scheduled.add(handOff);
+        try {
+            handOff.future = scheduler.schedule(handOff, delayDistribution.sampleNanos(random), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            scheduled.remove(handOff);
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void handOff(Runnable command) {
+        boolean rejected = false;
+        try {
+            delegate.execute(command);
+        } catch (RejectedExecutionException e) {
+            rejected = true;
+            log.warn("A delayed task was rejected by the wrapped executor", e);
+        } finally {
+            // tasks accepted before shutdown() still run, the delegate stops once they are handed off
+            if (pending.decrementAndGet() == 0 && shutdown) delegate.shutdown();
+        }
+
+        // nobody waits on the scheduler, so a submitted task is cancelled rather than left incomplete
+        if (rejected && command instanceof Future) {
+            ((Future<?>) command).cancel(false);
+        }
+    }
+
+    private final class HandOff implements Runnable {
+        private final Runnable command;
+        private volatile ScheduledFuture<?> future;
+
+        HandOff(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            scheduled.remove(this);
+            handOff(command);
+        }
+    }
+
+    /**
+     * @return the number of tasks delayed since this executor was created
+     */
+    public long getInjectedDelays() {
+        return injectedDelays.sum();
+    }
+
+    /**
+     * @return the number of delayed tasks not yet handed to the wrapped executor
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (ownsScheduler) scheduler.shutdown();
+        if (pending.get() == 0) delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> dropped = new ArrayList<>();
+
+        // delayed tasks are returned whether the scheduler is owned or shared
+        for (HandOff handOff : scheduled) {
+            ScheduledFuture<?> future = handOff.future;
+            if (future != null && future.cancel(false) && scheduled.remove(handOff)) {
+                dropped.add(handOff.command);
+                pending.decrementAndGet();
+            }
+        }
+
+        if (ownsScheduler) scheduler.shutdownNow();
+        dropped.addAll(delegate.shutdownNow());
+        return dropped;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        int instance = instances.incrementAndGet();
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "delay-injecting-executor-" + instance);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
@@ -0,0 +1,308 @@
+package com.hanegraaff.resiliency.faults;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One phase of a FaultScenario: a window of time, relative to the start of the scenario,
+ * during which some of the matching attempts fail or are delayed.
+ *
+ * The error rate can ramp linearly from errorRate at the start of the phase to
+ * errorRateEnd at its end, for example to model a service that degrades over a couple
+ * of minutes. Phases can be limited to some operations, such as GetObjectRequest, and
+ * to some endpoint hosts. A phase without filters applies to every attempt.
+ */
+public final class FaultPhase {
+
+    private final String name;
+    private final long startNanos;
+    private final long durationNanos;
+    private final double errorRate;
+    private final double errorRateEnd;
+    private final ServiceError serviceError;
+    private final double delayRate;
+    private final DelayDistribution delayDistribution;
+    private final Set<String> operations;
+    private final Set<String> endpoints;
+
+    private FaultPhase(Builder builder, double errorRateEnd) {
+        this.name = builder.name;
+        this.startNanos = builder.startNanos;
+        this.durationNanos = builder.durationNanos;
+        this.errorRate = builder.errorRate;
+        this.errorRateEnd = errorRateEnd;
+        this.serviceError = new ServiceError(builder.errorStatusCode, builder.errorCode, builder.errorMessage);
+        this.delayRate = builder.delayRate;
+        this.delayDistribution = builder.delayDistribution;
+        this.operations = Collections.unmodifiableSet(new LinkedHashSet<>(builder.operations));
+        this.endpoints = Collections.unmodifiableSet(new LinkedHashSet<>(builder.endpoints));
+    }
+
+    /**
+     * @param name the name of the phase, used in logs
+     * @return a new builder
+     */
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * @param elapsedNanos the time elapsed since the start of the scenario
+     * @return true if the phase is running at that time
+     */
+    public boolean isActiveAt(long elapsedNanos) {
+        return elapsedNanos >= startNanos && elapsedNanos - startNanos < durationNanos;
+    }
+
+    /**
+     * @param operation the simple class name of the SDK request, for example GetObjectRequest
+     * @param endpointHost the host the attempt is sent to
+     * @return true if the phase applies to attempts of that operation sent to that host
+     */
+    public boolean matches(String operation, String endpointHost) {
+        if (!operations.isEmpty() && !operations.contains(operation)) return false;
+        if (endpoints.isEmpty()) return true;
+
+        for (String endpoint : endpoints) {
+            if (endpointHost.equals(endpoint) || endpointHost.endsWith("." + endpoint)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param elapsedNanos the time elapsed since the start of the scenario
+     * @return the error rate at that time, interpolated between errorRate and errorRateEnd
+     */
+    public double errorRateAt(long elapsedNanos) {
+        if (errorRate == errorRateEnd) return errorRate;
+
+        double progress = Math.min(1, Math.max(0, (double) (elapsedNanos - startNanos) / durationNanos));
+        return errorRate + (errorRateEnd - errorRate) * progress;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return when the phase starts, in nanoseconds since the start of the scenario
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return how long the phase lasts in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return when the phase ends, in nanoseconds since the start of the scenario
+     */
+    public long getEndNanos() {
+        return startNanos + durationNanos;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public double getErrorRateEnd() {
+        return errorRateEnd;
+    }
+
+    /**
+     * @return the error injected into failing attempts
+     */
+    public ServiceError getServiceError() {
+        return serviceError;
+    }
+
+    /**
+     * @return the HTTP status code of the injected errors
+     */
+    public int getErrorStatusCode() {
+        return serviceError.getStatusCode();
+    }
+
+    /**
+     * @return the AWS error code of the injected errors, for example SlowDown
+     */
+    public String getErrorCode() {
+        return serviceError.getErrorCode();
+    }
+
+    public String getErrorMessage() {
+        return serviceError.getMessage();
+    }
+
+    public double getDelayRate() {
+        return delayRate;
+    }
+
+    /**
+     * @return the distribution of the injected delays, or null if the phase injects none
+     */
+    public DelayDistribution getDelayDistribution() {
+        return delayDistribution;
+    }
+
+    /**
+     * @return the operations the phase applies to, or an empty set for all of them
+     */
+    public Set<String> getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the endpoint hosts, or their parent domains, the phase applies to, or an empty set for all of them
+     */
+    public Set<String> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%ds-%ds]", name,
+                TimeUnit.NANOSECONDS.toSeconds(startNanos), TimeUnit.NANOSECONDS.toSeconds(getEndNanos()));
+    }
+
+    /**
+     * Builds FaultPhase objects
+     */
+    public static class Builder {
+        private final String name;
+        private long startNanos;
+        private long durationNanos;
+        private double errorRate;
+        private Double errorRateEnd;
+        private int errorStatusCode = 500;
+        private String errorCode = "InternalError";
+        private String errorMessage = "Injected error";
+        private double delayRate;
+        private DelayDistribution delayDistribution;
+        private final Set<String> operations = new LinkedHashSet<>();
+        private final Set<String> endpoints = new LinkedHashSet<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param start when the phase starts, relative to the start of the scenario
+         * @param duration how long the phase lasts
+         * @param unit the time unit of start and duration
+         * @return this builder
+         */
+        public Builder withWindow(long start, long duration, TimeUnit unit) {
+            this.startNanos = unit.toNanos(start);
+            this.durationNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param errorRate the fraction (between 0-1) of matching attempts that fail
+         * @return this builder
+         */
+        public Builder withErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Ramps the error rate linearly over the duration of the phase
+         *
+         * @param from the error rate at the start of the phase
+         * @param to the error rate at the end of the phase
+         * @return this builder
+         */
+        public Builder withErrorRateRamp(double from, double to) {
+            this.errorRate = from;
+            this.errorRateEnd = to;
+            return this;
+        }
+
+        /**
+         * @param statusCode the HTTP status code of the injected errors, 500 by default
+         * @param errorCode the AWS error code of the injected errors, InternalError by default
+         * @param message the message of the injected errors
+         * @return this builder
+         */
+        public Builder withError(int statusCode, String errorCode, String message) {
+            this.errorStatusCode = statusCode;
+            this.errorCode = errorCode;
+            this.errorMessage = message;
+            return this;
+        }
+
+        /**
+         * @param serviceError the error injected into failing attempts, 500 InternalError by default
+         * @return this builder
+         */
+        public Builder withError(ServiceError serviceError) {
+            return withError(serviceError.getStatusCode(), serviceError.getErrorCode(), serviceError.getMessage());
+        }
+
+        /**
+         * @param delayRate the fraction (between 0-1) of matching attempts that are delayed
+         * @param delayDistribution the distribution of the delays
+         * @return this builder
+         */
+        public Builder withDelay(double delayRate, DelayDistribution delayDistribution) {
+            this.delayRate = delayRate;
+            this.delayDistribution = delayDistribution;
+            return this;
+        }
+
+        /**
+         * @param operation the simple class name of an SDK request the phase applies to, for example GetObjectRequest
+         * @return this builder
+         */
+        public Builder withOperation(String operation) {
+            this.operations.add(operation);
+            return this;
+        }
+
+        /**
+         * @param endpoint an endpoint host, or a parent domain of it, the phase applies to
+         * @return this builder
+         */
+        public Builder withEndpoint(String endpoint) {
+            this.endpoints.add(endpoint);
+            return this;
+        }
+
+        /**
+         * @return the configured phase
+         */
+        public FaultPhase build() {
+            double rateEnd = errorRateEnd == null ? errorRate : errorRateEnd;
+
+            if (name == null) {
+                throw new IllegalArgumentException("'name' parameter cannot be null");
+            }
+
+            if (startNanos < 0 || durationNanos <= 0) {
+                throw new IllegalArgumentException("phase '" + name + "': 'start' cannot be negative and 'duration' must be positive");
+            }
+
+            if (errorRate < 0 || errorRate > 1 || rateEnd < 0 || rateEnd > 1 || delayRate < 0 || delayRate > 1) {
+                throw new IllegalArgumentException("phase '" + name + "': error and delay rates are out of range. Must be between 0 and 1");
+            }
+
+            if (delayRate > 0 && delayDistribution == null) {
+                throw new IllegalArgumentException("phase '" + name + "': 'delayDistribution' cannot be null when 'delayRate' is set");
+            }
+
+            if (errorStatusCode < 400 || errorStatusCode > 599 || errorCode == null || errorMessage == null) {
+                throw new IllegalArgumentException("phase '" + name + "': the error must have a 4xx or 5xx status code, an error code and a message");
+            }
+
+            return new FaultPhase(this, rateEnd);
+        }
+    }
+}
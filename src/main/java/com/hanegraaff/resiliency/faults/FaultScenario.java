@@ -0,0 +1,258 @@
+package com.hanegraaff.resiliency.faults;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A timeline of FaultPhases, replayed by a FaultScenarioRequestHandler, for example:
+ *
+ * 1. ramp the error rate of every operation from 0 to 50% over 2 minutes
+ * 2. throttle PutObject with 503 SlowDown for 30 seconds
+ * 3. delay 20% of the attempts with a log-normal distribution for 1 minute
+ *
+ * All the randomness of a scenario comes from its seed. Whether an attempt fails or is
+ * delayed, and for how long, is a pure function of the seed, of the sequence number of
+ * the attempt and of the phase, so two runs with the same seed and the same sequence
+ * of attempts inject exactly the same faults.
+ *
+ * Scenarios can be built in code, or loaded from JSON so that a library of real
+ * outages can be kept alongside the tests:
+ *
+ * {
+ *   "name": "s3-brownout",
+ *   "seed": 42,
+ *   "phases": [
+ *     {"name": "ramp", "start": "0s", "duration": "2m", "errorRate": 0, "errorRateEnd": 0.5},
+ *     {"name": "throttle", "start": "2m", "duration": "30s", "errorRate": 1,
+ *      "error": {"statusCode": 503, "errorCode": "SlowDown"}, "operations": ["PutObjectRequest"]},
+ *     {"name": "slow", "start": "150s", "duration": "1m", "delayRate": 0.2,
+ *      "delay": {"distribution": "logNormal", "median": "800ms", "sigma": 1, "cap": "10s"},
+ *      "endpoints": ["s3.us-east-1.amazonaws.com"]}
+ *   ]
+ * }
+ *
+ * Durations are either a number of milliseconds or a string such as "800ms", "30s",
+ * "2m" or "1h".
+ */
+public final class FaultScenario {
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*(ms|s|m|h)");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String name;
+    private final long seed;
+    private final List<FaultPhase> phases;
+
+    /**
+     * @param name the name of the scenario, used in logs
+     * @param seed the seed all the randomness of the scenario derives from
+     * @param phases the phases of the scenario. They may overlap.
+     */
+    public FaultScenario(String name, long seed, List<FaultPhase> phases) {
+        if (name == null || phases == null || phases.isEmpty() || phases.contains(null)) {
+            throw new IllegalArgumentException("'name' and 'phases' parameters cannot be null or empty");
+        }
+
+        this.name = name;
+        this.seed = seed;
+        this.phases = Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    /**
+     * Loads a scenario from a JSON file
+     *
+     * @param path the file to load
+     * @return the scenario
+     * @throws IOException if the file cannot be read
+     */
+    public static FaultScenario load(Path path) throws IOException {
+        return fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a scenario from its JSON description
+     *
+     * @param json the description of the scenario
+     * @return the scenario
+     */
+    public static FaultScenario fromJson(String json) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid scenario description: " + e.getOriginalMessage(), e);
+        }
+
+        if (root == null || !root.path("phases").isArray()) {
+            throw new IllegalArgumentException("Invalid scenario description: 'phases' must be an array");
+        }
+
+        List<FaultPhase> phases = new ArrayList<>();
+        int index = 0;
+        for (JsonNode node : root.get("phases")) {
+            phases.add(parsePhase(node, "phase-" + index++));
+        }
+
+        return new FaultScenario(root.path("name").asText("unnamed"), root.path("seed").asLong(0), phases);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public List<FaultPhase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * @return the time, in nanoseconds since the start of the scenario, at which the last phase ends
+     */
+    public long getDurationNanos() {
+        long end = 0;
+        for (FaultPhase phase : phases) end = Math.max(end, phase.getEndNanos());
+        return end;
+    }
+
+    /**
+     * @param attempt the sequence number of the attempt
+     * @param phaseIndex the index of the phase in the scenario
+     * @param stream distinguishes independent decisions made for the same attempt and phase
+     * @return a number uniformly distributed between 0 (inclusive) and 1 (exclusive)
+     */
+    public double uniform(long attempt, int phaseIndex, int stream) {
+        return (mix(attempt, phaseIndex, stream) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @param attempt the sequence number of the attempt
+     * @param phaseIndex the index of the phase in the scenario
+     * @param stream distinguishes independent decisions made for the same attempt and phase
+     * @return a generator seeded for that attempt, to draw from a DelayDistribution
+     */
+    public Random random(long attempt, int phaseIndex, int stream) {
+        return new Random(mix(attempt, phaseIndex, stream));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (seed %d) %s", name, seed, phases);
+    }
+
+    /**
+     * SplitMix64 over the seed, the attempt, the phase and the stream
+     */
+    private long mix(long attempt, int phaseIndex, int stream) {
+        long z = seed + attempt * 0x9E3779B97F4A7C15L + ((long) phaseIndex << 32 | stream) * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static FaultPhase parsePhase(JsonNode node, String defaultName) {
+        FaultPhase.Builder builder = FaultPhase.builder(node.path("name").asText(defaultName)).
+                withWindow(parseDuration(node.get("start"), 0), parseDuration(node.get("duration"), -1), TimeUnit.MILLISECONDS);
+
+        double errorRate = node.path("errorRate").asDouble(0);
+        builder.withErrorRateRamp(errorRate, node.path("errorRateEnd").asDouble(errorRate));
+
+        JsonNode error = node.get("error");
+        if (error != null) {
+            builder.withError(error.path("statusCode").asInt(500), error.path("errorCode").asText("InternalError"),
+                    error.path("message").asText("Injected error"));
+        }
+
+        JsonNode delay = node.get("delay");
+        if (delay != null) {
+            builder.withDelay(node.path("delayRate").asDouble(1), parseDistribution(delay));
+        }
+
+        for (JsonNode operation : node.path("operations")) builder.withOperation(operation.asText());
+        for (JsonNode endpoint : node.path("endpoints")) builder.withEndpoint(endpoint.asText());
+
+        return builder.build();
+    }
+
+    private static DelayDistribution parseDistribution(JsonNode node) {
+        String type = node.path("distribution").asText("");
+        DelayDistribution distribution;
+
+        switch (type) {
+            case "fixed":
+                distribution = DelayDistribution.fixed(parseDuration(node.get("delay"), -1), TimeUnit.MILLISECONDS);
+                break;
+            case "uniform":
+                distribution = DelayDistribution.uniform(parseDuration(node.get("min"), -1),
+                        parseDuration(node.get("max"), -1), TimeUnit.MILLISECONDS);
+                break;
+            case "normal":
+                distribution = DelayDistribution.normal(parseDuration(node.get("mean"), -1),
+                        parseDuration(node.get("standardDeviation"), -1), TimeUnit.MILLISECONDS);
+                break;
+            case "logNormal":
+                distribution = DelayDistribution.logNormal(parseDuration(node.get("median"), -1),
+                        node.path("sigma").asDouble(0), TimeUnit.MILLISECONDS);
+                break;
+            case "pareto":
+                distribution = DelayDistribution.pareto(parseDuration(node.get("scale"), -1),
+                        node.path("shape").asDouble(0), TimeUnit.MILLISECONDS);
+                break;
+            case "empirical":
+                JsonNode samples = node.path("samples");
+                long[] millis = new long[samples.size()];
+                for (int i = 0; i < millis.length; i++) millis[i] = parseDuration(samples.get(i), -1);
+                distribution = DelayDistribution.empirical(millis, TimeUnit.MILLISECONDS);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown delay distribution '" + type + "'");
+        }
+
+        JsonNode cap = node.get("cap");
+        return cap == null ? distribution : distribution.capped(parseDuration(cap, -1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the duration in milliseconds, or defaultMs if the node is missing
+     */
+    private static long parseDuration(JsonNode node, long defaultMs) {
+        if (node == null) {
+            if (defaultMs < 0) throw new IllegalArgumentException("Invalid scenario description: a required duration is missing");
+            return defaultMs;
+        }
+
+        if (node.isNumber()) return node.asLong();
+
+        Matcher matcher = DURATION.matcher(node.asText().trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid duration '" + node.asText() + "'. Expected a number of milliseconds or a value such as 800ms, 30s, 2m or 1h");
+        }
+
+        long value = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "ms":
+                return value;
+            case "s":
+                return TimeUnit.SECONDS.toMillis(value);
+            case "m":
+                return TimeUnit.MINUTES.toMillis(value);
+            default:
+                return TimeUnit.HOURS.toMillis(value);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hanegraaff.resiliency.faults;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small HTTP server bound to the loopback interface that answers every request with
+ * the AWS error described in its headers.
+ *
+ * Attempts redirected to this server receive a real HTTP error response, so the SDK
+ * unmarshalls it, applies its retry condition and backoff, and reports it exactly as
+ * it would an error returned by the service. Errors are returned as XML, as S3 does,
+ * or as JSON when the request was sent with a JSON content type.
+ */
+public class LoopbackFaultServer implements Closeable {
+
+    public static final String STATUS_HEADER = "x-resiliency-fault-status";
+    public static final String CODE_HEADER = "x-resiliency-fault-code";
+    public static final String MESSAGE_HEADER = "x-resiliency-fault-message";
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final URI endpoint;
+    private final LongAdder responseCount = new LongAdder();
+
+    /**
+     * Starts a server on an ephemeral loopback port
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public LoopbackFaultServer() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        int instance = instances.incrementAndGet();
+
+        this.server = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "loopback-fault-server-" + instance);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext("/", this::respond);
+        server.setExecutor(executor);
+        server.start();
+
+        this.endpoint = URI.create("http://" + loopback.getHostAddress() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * @return the endpoint of the server, for example http://127.0.0.1:52713
+     */
+    public URI getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the number of error responses sent since the server started
+     */
+    public long getResponseCount() {
+        return responseCount.sum();
+    }
+
+    /**
+     * Stops the server
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            // the request body must be consumed before the connection can be reused
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) >= 0) {
+                // discard
+            }
+        }
+
+        Headers requestHeaders = exchange.getRequestHeaders();
+        int status = parseStatus(requestHeaders.getFirst(STATUS_HEADER));
+        String code = valueOr(requestHeaders.getFirst(CODE_HEADER), "InternalError");
+        String message = valueOr(requestHeaders.getFirst(MESSAGE_HEADER), "Injected error");
+        String requestId = UUID.randomUUID().toString();
+
+        boolean json = valueOr(requestHeaders.getFirst("Content-Type"), "").contains("json");
+        byte[] payload = (json ? jsonError(code, message) : xmlError(code, message, requestId)).getBytes(StandardCharsets.UTF_8);
+
+        Headers responseHeaders = exchange.getResponseHeaders();
+        responseHeaders.set("Content-Type", json ? "application/x-amz-json-1.1" : "application/xml");
+        responseHeaders.set("x-amz-request-id", requestId);
+        responseHeaders.set("x-amzn-RequestId", requestId);
+        responseHeaders.set("x-amzn-ErrorType", code);
+
+        responseCount.increment();
+
+        // HEAD responses have no body, so the SDK only sees the status code. A 400
+        // RequestTimeout, for example, is not retried for a HEAD request
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, payload.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(payload);
+        }
+    }
+
+    private static int parseStatus(String status) {
+        try {
+            return status == null ? 500 : Integer.parseInt(status);
+        } catch (NumberFormatException e) {
+            return 500;
+        }
+    }
+
+    private static String valueOr(String value, String defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
+    private static String xmlError(String code, String message, String requestId) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Error><Code>" + escapeXml(code) + "</Code><Message>"
+                + escapeXml(message) + "</Message><RequestId>" + requestId + "</RequestId></Error>";
+    }
+
+    private static String jsonError(String code, String message) {
+        return "{\"__type\":\"" + escapeJson(code) + "\",\"message\":\"" + escapeJson(message) + "\"}";
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,76 @@
+package com.hanegraaff.resiliency.faults;
+
+/**
+ * An error response returned by an AWS service, described by its HTTP status code,
+ * its AWS error code and its message. The common S3 errors are predefined.
+ */
+public final class ServiceError {
+
+    /**
+     * S3's throttling response, retried by the SDK with throttled backoff
+     */
+    public static final ServiceError SLOW_DOWN = new ServiceError(503, "SlowDown", "Please reduce your request rate.");
+
+    /**
+     * A generic server side failure, retried by the SDK
+     */
+    public static final ServiceError INTERNAL_ERROR = new ServiceError(500, "InternalError",
+            "We encountered an internal error. Please try again.");
+
+    /**
+     * A service that is temporarily unavailable, retried by the SDK
+     */
+    public static final ServiceError SERVICE_UNAVAILABLE = new ServiceError(503, "ServiceUnavailable",
+            "Service is unable to handle request.");
+
+    /**
+     * S3 timing out while reading the request, retried by the SDK despite being a 400
+     */
+    public static final ServiceError REQUEST_TIMEOUT = new ServiceError(400, "RequestTimeout",
+            "Your socket connection to the server was not read from or written to within the timeout period.");
+
+    /**
+     * The throttling response of most non-S3 services, retried by the SDK with throttled backoff
+     */
+    public static final ServiceError THROTTLING = new ServiceError(400, "Throttling", "Rate exceeded");
+
+    private final int statusCode;
+    private final String errorCode;
+    private final String message;
+
+    /**
+     * @param statusCode the HTTP status code of the response, between 400 and 599
+     * @param errorCode the AWS error code, for example SlowDown
+     * @param message the error message
+     */
+    public ServiceError(int statusCode, String errorCode, String message) {
+        if (statusCode < 400 || statusCode > 599) {
+            throw new IllegalArgumentException("'statusCode' parameter is out of range. Must be between 400 and 599");
+        }
+
+        if (errorCode == null || message == null) {
+            throw new IllegalArgumentException("'errorCode' and 'message' parameters cannot be null");
+        }
+
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.message = message;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return statusCode + " " + errorCode;
+    }
+}
@@ -0,0 +1,122 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import com.hanegraaff.resiliency.throttling.AimdRateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An implementation of the RequestHandler2 class that paces attempts using an
+ * AimdRateLimiter. Throttling responses, such as S3's 503 SlowDown, cut the allowed
+ * send rate, and successful attempts slowly raise it again, so that throughput
+ * converges to what the service will accept.
+ *
+ * Before each attempt, including retries, the calling thread waits for its turn. If
+ * the wait would be longer than maxWaitMs the attempt fails with a
+ * RateLimitExceededException instead. A maxWaitMs of 0 never blocks callers.
+ */
+public class AdaptiveRateLimitRequestHandler extends RequestHandler2 {
+
+    private final AimdRateLimiter rateLimiter;
+    private final long maxWaitNanos;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Constructs a new handler that blocks callers for up to 10 seconds
+     *
+     * @param rateLimiter the limiter that paces attempts
+     */
+    public AdaptiveRateLimitRequestHandler(AimdRateLimiter rateLimiter) {
+        this(rateLimiter, 10 * 1000);
+    }
+
+    /**
+     * Constructs a new handler based on user supplied parameters.
+     *
+     * @param rateLimiter the limiter that paces attempts
+     * @param maxWaitMs the longest an attempt waits for its turn before it fails, or 0 to fail right away
+     */
+    public AdaptiveRateLimitRequestHandler(AimdRateLimiter rateLimiter, long maxWaitMs) {
+        if (rateLimiter == null) {
+            throw new IllegalArgumentException("'rateLimiter' parameter cannot be null");
+        }
+
+        if (maxWaitMs < 0) {
+            throw new IllegalArgumentException("'maxWaitMs' cannot be negative");
+        }
+
+        this.rateLimiter = rateLimiter;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    }
+
+    /**
+     * Overrides the beforeAttempt method to wait until the attempt fits the current
+     * send rate, or to reject it.
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        long waitNanos = rateLimiter.reserve(maxWaitNanos);
+
+        if (waitNanos < 0) {
+            rejectedCount.increment();
+            throw new RateLimitExceededException(String.format(
+                    "Send rate of %.1f attempts per second exceeded, the attempt was not sent", rateLimiter.getRate()));
+        }
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException(e);
+            }
+        }
+    }
+
+    /**
+     * Overrides the afterAttempt method to adjust the send rate to the outcome of the attempt.
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Exception ex = context.getException();
+
+        if (ex == null) {
+            rateLimiter.onSuccess();
+        } else if (isThrottling(ex)) {
+            rateLimiter.onThrottle();
+        }
+    }
+
+    /**
+     * @return the limiter that paces attempts
+     */
+    public AimdRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the number of attempts rejected since this handler was created
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private static boolean isThrottling(Exception ex) {
+        if (!(ex instanceof AmazonServiceException)) return false;
+
+        // S3 also reports overload as a plain 503 Service Unavailable
+        AmazonServiceException ase = (AmazonServiceException) ex;
+        return RetryUtils.isThrottlingException(ase) || ase.getStatusCode() == 503;
+    }
+}
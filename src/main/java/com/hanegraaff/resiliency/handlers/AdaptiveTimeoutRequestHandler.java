@@ -0,0 +1,299 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryPolicy;
+import com.hanegraaff.resiliency.builders.AdaptiveTimeoutPolicy;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+import com.hanegraaff.resiliency.metrics.RollingLatencyHistogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that adapts the request timeout and
+ * the retry backoff of each operation to its observed latency, as described by an
+ * AdaptiveTimeoutPolicy. A HEAD request that usually answers in 20ms then times out
+ * after a few hundred milliseconds, while a large GET keeps a timeout of several
+ * seconds.
+ *
+ * The handler times every attempt, including attempts that timed out, so that a
+ * service that becomes slower loosens its own timeout. The timeout is applied with
+ * AmazonWebServiceRequest.setSdkRequestTimeout() on a copy of each request, unless the
+ * caller already set one. The backoff is applied through getBackoffStrategy(), which
+ * must be part of the retry policy of the client; ConfigurationBuilder.adaptive()
+ * creates such a configuration.
+ *
+ * Every change of an operation's values is logged and kept in a bounded history.
+ */
+public class AdaptiveTimeoutRequestHandler extends RequestHandler2 {
+
+    private final Log log = LogFactory.getLog(AdaptiveTimeoutRequestHandler.class);
+
+    private final AdaptiveTimeoutPolicy policy;
+    private final LongSupplier nanoClock;
+    private final AttemptTimer attemptTimer;
+    private final ConcurrentHashMap<Class<?>, OperationTuning> operations = new ConcurrentHashMap<>();
+    private final ArrayDeque<TuningChange> history = new ArrayDeque<>();
+
+    private final RetryPolicy.BackoffStrategy backoffStrategy = this::delayBeforeNextRetry;
+
+    /**
+     * Constructs a new handler with the supplied policy
+     *
+     * @param policy describes how timeouts and backoff derive from latency
+     */
+    public AdaptiveTimeoutRequestHandler(AdaptiveTimeoutPolicy policy) {
+        this(policy, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that reads time from the supplied clock. This constructor
+     * exists mainly to facilitate testing.
+     *
+     * @param policy describes how timeouts and backoff derive from latency
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public AdaptiveTimeoutRequestHandler(AdaptiveTimeoutPolicy policy, LongSupplier nanoClock) {
+        if (policy == null || nanoClock == null) {
+            throw new IllegalArgumentException("'policy' and 'nanoClock' parameters cannot be null");
+        }
+
+        this.policy = policy;
+        this.nanoClock = nanoClock;
+        this.attemptTimer = new AttemptTimer("AdaptiveTimeout", nanoClock);
+    }
+
+    /**
+     * Overrides the beforeExecution method to apply the current timeout of the operation.
+     * Requests with a timeout set by the caller are left untouched.
+     *
+     * @param request the original request
+     * @return a copy of the request with its timeout set
+     */
+    @Override
+    public AmazonWebServiceRequest beforeExecution(AmazonWebServiceRequest request) {
+        if (request.getSdkRequestTimeout() != null) return request;
+
+        AmazonWebServiceRequest copy = request.clone();
+        copy.setSdkRequestTimeout((int) tuningFor(request.getClass()).timeoutMs);
+        return copy;
+    }
+
+    /**
+     * Overrides the beforeRequest method to prepare the request for timing
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        attemptTimer.prepare(request);
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        attemptTimer.start(context.getRequest());
+    }
+
+    /**
+     * Overrides the afterAttempt method to record the duration of the attempt
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        long duration = attemptTimer.stop(context.getRequest());
+
+        // attempts rejected by a handler never reached the service
+        if (duration < 0 || context.getException() instanceof RequestRejectedException) return;
+
+        tuningFor(context.getRequest().getOriginalRequest().getClass()).latency.record(duration);
+    }
+
+    /**
+     * @return a backoff strategy using the current backoff base of each operation, with
+     * full jitter: retry n waits between 0 and base x 2^n, up to the maximum backoff
+     */
+    public RetryPolicy.BackoffStrategy getBackoffStrategy() {
+        return backoffStrategy;
+    }
+
+    /**
+     * @param operation the class of the original SDK request, for example GetObjectRequest
+     * @return the request timeout currently applied to the operation, in milliseconds
+     */
+    public long getRequestTimeoutMs(Class<?> operation) {
+        return tuningFor(operation).timeoutMs;
+    }
+
+    /**
+     * @param operation the class of the original SDK request, for example GetObjectRequest
+     * @return the backoff base currently applied to the operation, in milliseconds
+     */
+    public long getBackoffBaseMs(Class<?> operation) {
+        return tuningFor(operation).backoffMs;
+    }
+
+    /**
+     * @return the most recent changes, oldest first
+     */
+    public List<TuningChange> getHistory() {
+        synchronized (history) {
+            return new ArrayList<>(history);
+        }
+    }
+
+    public AdaptiveTimeoutPolicy getPolicy() {
+        return policy;
+    }
+
+    private long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                                      int retriesAttempted) {
+        long base = tuningFor(originalRequest.getClass()).backoffMs;
+        long ceiling = Math.min(policy.getMaxBackoffMs(), base << Math.min(retriesAttempted, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private OperationTuning tuningFor(Class<?> operation) {
+        OperationTuning tuning = operations.get(operation);
+        if (tuning == null) {
+            tuning = operations.computeIfAbsent(operation, k -> new OperationTuning());
+        }
+
+        long now = nanoClock.getAsLong();
+        if (now - tuning.lastRefresh >= policy.getRefreshIntervalNanos()) {
+            refresh(operation, tuning, now);
+        }
+        return tuning;
+    }
+
+    private void refresh(Class<?> operation, OperationTuning tuning, long now) {
+        synchronized (tuning) {
+            if (now - tuning.lastRefresh < policy.getRefreshIntervalNanos()) return;
+            tuning.lastRefresh = now;
+
+            LatencyHistogram.Snapshot snapshot = tuning.latency.snapshot();
+            if (snapshot.getTotalCount() < policy.getMinSamples()) return;
+
+            long percentile = snapshot.getValueAtPercentile(policy.getTimeoutPercentile());
+            long timeout = policy.timeoutFor(percentile);
+            long backoff = policy.backoffFor(snapshot.getP50());
+
+            boolean timeoutChanged = policy.isSignificantChange(tuning.timeoutMs, timeout);
+            boolean backoffChanged = policy.isSignificantChange(tuning.backoffMs, backoff);
+            if (!timeoutChanged && !backoffChanged) return;
+
+            TuningChange change = new TuningChange(operation, System.currentTimeMillis(), tuning.timeoutMs,
+                    timeoutChanged ? timeout : tuning.timeoutMs, tuning.backoffMs, backoffChanged ? backoff : tuning.backoffMs,
+                    percentile, snapshot.getTotalCount());
+            tuning.timeoutMs = change.getTimeoutMs();
+            tuning.backoffMs = change.getBackoffBaseMs();
+
+            log.info("Adapting " + change);
+            if (policy.getHistorySize() > 0) {
+                synchronized (history) {
+                    if (history.size() == policy.getHistorySize()) history.removeFirst();
+                    history.addLast(change);
+                }
+            }
+        }
+    }
+
+    private class OperationTuning {
+        final RollingLatencyHistogram latency = new RollingLatencyHistogram(6, policy.getWindowNanos() / 6,
+                TimeUnit.NANOSECONDS, nanoClock);
+        volatile long timeoutMs = policy.getMaxTimeoutMs();
+        volatile long backoffMs = policy.getMinBackoffMs();
+        volatile long lastRefresh = nanoClock.getAsLong();
+    }
+
+    /**
+     * A change of the timeout or backoff base of an operation, and the latency it was derived from
+     */
+    public static final class TuningChange {
+        private final Class<?> operation;
+        private final long timestampMillis;
+        private final long previousTimeoutMs;
+        private final long timeoutMs;
+        private final long previousBackoffBaseMs;
+        private final long backoffBaseMs;
+        private final long percentileNanos;
+        private final long sampleCount;
+
+        TuningChange(Class<?> operation, long timestampMillis, long previousTimeoutMs, long timeoutMs,
+                     long previousBackoffBaseMs, long backoffBaseMs, long percentileNanos, long sampleCount) {
+            this.operation = operation;
+            this.timestampMillis = timestampMillis;
+            this.previousTimeoutMs = previousTimeoutMs;
+            this.timeoutMs = timeoutMs;
+            this.previousBackoffBaseMs = previousBackoffBaseMs;
+            this.backoffBaseMs = backoffBaseMs;
+            this.percentileNanos = percentileNanos;
+            this.sampleCount = sampleCount;
+        }
+
+        public Class<?> getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return when the change was made, in milliseconds since the epoch
+         */
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public long getPreviousTimeoutMs() {
+            return previousTimeoutMs;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public long getPreviousBackoffBaseMs() {
+            return previousBackoffBaseMs;
+        }
+
+        public long getBackoffBaseMs() {
+            return backoffBaseMs;
+        }
+
+        /**
+         * @return the timeoutPercentile latency observed when the change was made
+         */
+        public long getPercentileNanos() {
+            return percentileNanos;
+        }
+
+        /**
+         * @return the number of attempts in the window when the change was made
+         */
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: timeout %dms -> %dms, backoff base %dms -> %dms (percentile latency %dms over %d attempts)",
+                    operation.getSimpleName(), previousTimeoutMs, timeoutMs, previousBackoffBaseMs, backoffBaseMs,
+                    TimeUnit.NANOSECONDS.toMillis(percentileNanos), sampleCount);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that counts requests, attempts and
+ * failed attempts by exception class for every operation, and records the latency of
+ * the attempts that reached the service. Unlike the windows used to evaluate health,
+ * these counts only ever grow, as metrics systems such as Prometheus expect.
+ *
+ * Recording only increments LongAdders and a LatencyHistogram, and reading the values
+ * never blocks the SDK threads, so an OpenMetricsExporter can scrape them at any time.
+ */
+public class AttemptMetricsRequestHandler extends RequestHandler2 {
+
+    private final AttemptTimer attemptTimer;
+    private final ConcurrentHashMap<Class<?>, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new handler that measures time with System.nanoTime()
+     */
+    public AttemptMetricsRequestHandler() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that reads time from the supplied clock. This constructor
+     * exists mainly to facilitate testing.
+     *
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public AttemptMetricsRequestHandler(LongSupplier nanoClock) {
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.attemptTimer = new AttemptTimer("AttemptMetrics", nanoClock);
+    }
+
+    /**
+     * Overrides the beforeRequest method to count the request
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        attemptTimer.prepare(request);
+        operationFor(request).requests.increment();
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        attemptTimer.start(context.getRequest());
+    }
+
+    /**
+     * Overrides the afterAttempt method to count the attempt and its outcome
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Request<?> request = context.getRequest();
+        long duration = attemptTimer.stop(request);
+        Exception ex = context.getException();
+
+        OperationMetrics metrics = operationFor(request);
+        metrics.attempts.increment();
+        if (ex != null) metrics.recordError(ex.getClass());
+
+        // attempts rejected by a handler never reached the service
+        if (duration >= 0 && !(ex instanceof RequestRejectedException)) {
+            metrics.latency.record(duration);
+        }
+    }
+
+    /**
+     * Visits the metrics of every operation seen so far
+     *
+     * @param consumer receives the metrics of each operation
+     */
+    public void forEachOperation(Consumer<OperationMetrics> consumer) {
+        operations.values().forEach(consumer);
+    }
+
+    /**
+     * @param operation the class of the original SDK request, for example GetObjectRequest
+     * @return the metrics of the operation, or null if it was never seen
+     */
+    public OperationMetrics getOperationMetrics(Class<?> operation) {
+        return operations.get(operation);
+    }
+
+    private OperationMetrics operationFor(Request<?> request) {
+        Class<?> operation = request.getOriginalRequest().getClass();
+
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(operation, k -> new OperationMetrics(request.getServiceName(), operation));
+        }
+        return metrics;
+    }
+
+    /**
+     * The counters and latency of one operation
+     */
+    public static final class OperationMetrics {
+        private final String serviceName;
+        private final Class<?> operation;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder attempts = new LongAdder();
+        private final ConcurrentHashMap<Class<?>, LongAdder> errors = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        OperationMetrics(String serviceName, Class<?> operation) {
+            this.serviceName = serviceName;
+            this.operation = operation;
+        }
+
+        private void recordError(Class<?> exception) {
+            LongAdder count = errors.get(exception);
+            if (count == null) {
+                count = errors.computeIfAbsent(exception, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        /**
+         * @return the class of the original SDK request, for example GetObjectRequest
+         */
+        public Class<?> getOperation() {
+            return operation;
+        }
+
+        public long getRequestCount() {
+            return requests.sum();
+        }
+
+        /**
+         * @return the number of attempts, including retries and attempts rejected by a handler
+         */
+        public long getAttemptCount() {
+            return attempts.sum();
+        }
+
+        /**
+         * @return the number of failed attempts by exception class
+         */
+        public Map<Class<?>, Long> getErrorCounts() {
+            Map<Class<?>, Long> counts = new HashMap<>();
+            errors.forEach((exception, count) -> counts.put(exception, count.sum()));
+            return counts;
+        }
+
+        /**
+         * @return the latency of the attempts that reached the service
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerContextKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures the duration of SDK attempts for a handler, keeping the start time in the
+ * handler context of the request. A single mutable holder is added to each request in
+ * beforeRequest, so timing attempts does not allocate.
+ *
+ * Handler context keys are compared by name, so every timer uses its own name to keep
+ * handlers registered on the same client from sharing start times.
+ */
+class AttemptTimer {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final HandlerContextKey<long[]> attemptStart;
+    private final LongSupplier nanoClock;
+
+    AttemptTimer(String owner, LongSupplier nanoClock) {
+        this.attemptStart = new HandlerContextKey<>(owner + "AttemptStart#" + instances.incrementAndGet());
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Prepares the request for timing. Called from beforeRequest.
+     */
+    void prepare(Request<?> request) {
+        request.addHandlerContext(attemptStart, new long[]{Long.MIN_VALUE});
+    }
+
+    /**
+     * Starts timing an attempt. Called from beforeAttempt.
+     */
+    void start(Request<?> request) {
+        long[] start = request.getHandlerContext(attemptStart);
+        if (start != null) start[0] = nanoClock.getAsLong();
+    }
+
+    /**
+     * Stops timing an attempt. Called from afterAttempt.
+     *
+     * @return the duration of the attempt in nanoseconds, or -1 if it was not timed
+     */
+    long stop(Request<?> request) {
+        long[] start = request == null ? null : request.getHandlerContext(attemptStart);
+        if (start == null || start[0] == Long.MIN_VALUE) return -1;
+
+        long duration = nanoClock.getAsLong() - start[0];
+        start[0] = Long.MIN_VALUE;
+        return duration;
+    }
+}
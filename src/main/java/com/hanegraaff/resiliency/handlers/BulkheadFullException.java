@@ -0,0 +1,15 @@
+package com.hanegraaff.resiliency.handlers;
+
+/**
+ * Thrown by the BulkheadRequestHandler when the maximum number of concurrent attempts
+ * for a service, endpoint or operation has been reached and the attempt could not wait
+ * for its turn. The request never reaches the AWS service and is not retried by the SDK.
+ */
+public class BulkheadFullException extends RequestRejectedException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
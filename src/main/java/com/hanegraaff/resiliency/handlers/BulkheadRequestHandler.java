@@ -0,0 +1,250 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.health.HealthKey;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * An implementation of the RequestHandler2 class that caps the number of attempts in
+ * flight for each service, endpoint or operation, depending on its BulkheadScope. When
+ * a dependency slows down, only maxConcurrent threads (and connections) can be stuck
+ * waiting on it, and the rest of the application keeps working.
+ *
+ * Each compartment is a fair Semaphore. An attempt that finds the compartment full
+ * either fails right away with a BulkheadFullException, or waits in a bounded queue
+ * for up to maxWaitMs. Waiting attempts are admitted in arrival order.
+ *
+ * Permits are held from beforeAttempt to afterAttempt, so the backoff between retries
+ * does not count against the limit.
+ */
+public class BulkheadRequestHandler extends RequestHandler2 {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final BulkheadScope scope;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final HandlerContextKey<Compartment> permit;
+    private final ConcurrentHashMap<Object, Compartment> compartments = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new handler that rejects attempts as soon as a compartment is full
+     *
+     * @param scope determines which attempts share the same limit
+     * @param maxConcurrent the maximum number of attempts in flight per compartment
+     */
+    public BulkheadRequestHandler(BulkheadScope scope, int maxConcurrent) {
+        this(scope, maxConcurrent, 0, 0);
+    }
+
+    /**
+     * Constructs a new handler based on user supplied parameters.
+     *
+     * @param scope determines which attempts share the same limit
+     * @param maxConcurrent the maximum number of attempts in flight per compartment
+     * @param maxQueued the maximum number of attempts waiting for a permit per compartment, or 0 to reject right away
+     * @param maxWaitMs the longest an attempt waits for a permit before it fails
+     */
+    public BulkheadRequestHandler(BulkheadScope scope, int maxConcurrent, int maxQueued, long maxWaitMs) {
+        if (scope == null) {
+            throw new IllegalArgumentException("'scope' parameter cannot be null");
+        }
+
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("'maxConcurrent' must be a positive integer");
+        }
+
+        if (maxQueued < 0 || maxWaitMs < 0) {
+            throw new IllegalArgumentException("'maxQueued' and 'maxWaitMs' cannot be negative");
+        }
+
+        this.scope = scope;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+
+        // handler context keys are compared by name
+        this.permit = new HandlerContextKey<>("BulkheadPermit#" + instances.incrementAndGet());
+    }
+
+    /**
+     * Overrides the beforeAttempt method to acquire a permit from the compartment of
+     * the request, waiting for it if allowed.
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        Request<?> request = context.getRequest();
+        Compartment compartment = compartmentFor(request);
+
+        if (!compartment.acquire()) {
+            compartment.rejectedCount.increment();
+            throw new BulkheadFullException(String.format(
+                    "Maximum of %d concurrent attempts reached for %s, the attempt was not sent", maxConcurrent, compartment.key));
+        }
+
+        request.addHandlerContext(permit, compartment);
+    }
+
+    /**
+     * Overrides the afterAttempt method to release the permit of the attempt, if it
+     * acquired one.
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Request<?> request = context.getRequest();
+        Compartment compartment = request.getHandlerContext(permit);
+        if (compartment == null) return;
+
+        request.addHandlerContext(permit, null);
+        compartment.semaphore.release();
+    }
+
+    /**
+     * @return the number of attempts in flight across all compartments
+     */
+    public int getInFlight() {
+        int total = 0;
+        for (Compartment compartment : compartments.values()) total += compartment.getInFlight();
+        return total;
+    }
+
+    /**
+     * @return the number of attempts waiting for a permit across all compartments
+     */
+    public int getQueued() {
+        int total = 0;
+        for (Compartment compartment : compartments.values()) total += compartment.getQueued();
+        return total;
+    }
+
+    /**
+     * @return the number of attempts rejected since this handler was created
+     */
+    public long getRejectedCount() {
+        long total = 0;
+        for (Compartment compartment : compartments.values()) total += compartment.getRejectedCount();
+        return total;
+    }
+
+    /**
+     * Visits every compartment created so far, for example to publish its gauges
+     *
+     * @param consumer receives each compartment
+     */
+    public void forEachCompartment(Consumer<Compartment> consumer) {
+        compartments.values().forEach(consumer);
+    }
+
+    private Compartment compartmentFor(Request<?> request) {
+        // the lookup key is a string or a class that the request already holds
+        Object lookup;
+        switch (scope) {
+            case SERVICE:
+                lookup = request.getServiceName();
+                break;
+            case ENDPOINT:
+                lookup = request.getEndpoint().getHost();
+                break;
+            default:
+                lookup = request.getOriginalRequest().getClass();
+        }
+
+        Compartment compartment = compartments.get(lookup);
+        if (compartment == null) {
+            compartment = compartments.computeIfAbsent(lookup, k -> new Compartment(keyOf(request)));
+        }
+        return compartment;
+    }
+
+    private HealthKey keyOf(Request<?> request) {
+        switch (scope) {
+            case SERVICE:
+                return new HealthKey(request.getServiceName(), "*", "*");
+            case ENDPOINT:
+                return new HealthKey(request.getServiceName(), request.getEndpoint().getHost(), "*");
+            default:
+                return new HealthKey(request.getServiceName(), "*", request.getOriginalRequest().getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * The permits and gauges of one service, endpoint or operation
+     */
+    public final class Compartment {
+        private final HealthKey key;
+        private final Semaphore semaphore = new Semaphore(maxConcurrent, true);
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LongAdder rejectedCount = new LongAdder();
+
+        private Compartment(HealthKey key) {
+            this.key = key;
+        }
+
+        private boolean acquire() {
+            // a timed tryAcquire honors the fairness of the semaphore, unlike tryAcquire()
+            try {
+                if (semaphore.tryAcquire(0, TimeUnit.NANOSECONDS)) return true;
+                if (maxQueued == 0 || maxWaitNanos == 0) return false;
+
+                if (queued.incrementAndGet() > maxQueued) {
+                    queued.decrementAndGet();
+                    return false;
+                }
+
+                try {
+                    return semaphore.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+                } finally {
+                    queued.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException(e);
+            }
+        }
+
+        /**
+         * @return the service, endpoint and operation of this compartment. Parts not covered by the scope are "*".
+         */
+        public HealthKey getKey() {
+            return key;
+        }
+
+        /**
+         * @return the number of attempts currently in flight
+         */
+        public int getInFlight() {
+            return maxConcurrent - semaphore.availablePermits();
+        }
+
+        /**
+         * @return the number of attempts currently waiting for a permit
+         */
+        public int getQueued() {
+            return queued.get();
+        }
+
+        /**
+         * @return the number of attempts rejected since the compartment was created
+         */
+        public long getRejectedCount() {
+            return rejectedCount.sum();
+        }
+    }
+}
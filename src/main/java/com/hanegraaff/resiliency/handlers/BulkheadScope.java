@@ -0,0 +1,21 @@
+package com.hanegraaff.resiliency.handlers;
+
+/**
+ * Determines which attempts share the same concurrency limit in a BulkheadRequestHandler
+ */
+public enum BulkheadScope {
+    /**
+     * One limit per AWS service, for example Amazon S3
+     */
+    SERVICE,
+
+    /**
+     * One limit per endpoint host, for example s3.us-west-2.amazonaws.com
+     */
+    ENDPOINT,
+
+    /**
+     * One limit per operation, for example GetObjectRequest
+     */
+    OPERATION
+}
@@ -0,0 +1,255 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.health.CircuitState;
+import com.hanegraaff.resiliency.health.ServiceHealthState;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.jfr.CircuitRejectionEvent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that acts on the health reported by a
+ * ServiceHealthTracker, usually the one updated by a ServiceHealthRequestHandler
+ * registered on the same client.
+ *
+ * 1. CLOSED: requests flow normally. The circuit opens when the tracker reports the
+ *    service as unhealthy.
+ * 2. OPEN: every request and attempt, including retries of requests already in flight,
+ *    fails immediately with a CircuitOpenException. After openDurationMs the circuit
+ *    moves to HALF_OPEN.
+ * 3. HALF_OPEN: up to halfOpenTrials requests are let through to probe the service.
+ *    A single failed trial opens the circuit again, while halfOpenTrials successful
+ *    trials close it.
+ *
+ * Once the circuit closes, the tracker may still report the service as unhealthy while
+ * old errors age out of its window. During that time the circuit only opens again if
+ * the tracker goes through a new transition to UNHEALTHY, or a request fails.
+ */
+public class CircuitBreakerRequestHandler extends RequestHandler2 {
+
+    private static final HandlerContextKey<Boolean> TRIAL_REQUEST = new HandlerContextKey<>("CircuitBreakerTrialRequest");
+
+    private final Log log = LogFactory.getLog(CircuitBreakerRequestHandler.class);
+
+    private final ServiceHealthTracker serviceHealthTracker;
+    private final long openDurationNanos;
+    private final int halfOpenTrials;
+    private final LongSupplier nanoClock;
+
+    private volatile CircuitState state = CircuitState.CLOSED;
+    private volatile long stateChangeNanos;
+    private volatile long trackerTransitionsAtClose = -1;
+
+    private final AtomicInteger trialPermits = new AtomicInteger();
+    private final AtomicInteger trialSuccesses = new AtomicInteger();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Constructs a new handler that keeps the circuit open for 30 seconds and
+     * probes the service with a single trial request
+     *
+     * @param serviceHealthTracker the tracker that decides when the circuit opens
+     */
+    public CircuitBreakerRequestHandler(ServiceHealthTracker serviceHealthTracker){
+        this(serviceHealthTracker, 30 * 1000, 1);
+    }
+
+    /**
+     * Constructs a new handler based on user supplied parameters.
+     *
+     * @param serviceHealthTracker the tracker that decides when the circuit opens
+     * @param openDurationMs how long the circuit stays open before trial requests are allowed
+     * @param halfOpenTrials how many trial requests must succeed before the circuit closes
+     */
+    public CircuitBreakerRequestHandler(ServiceHealthTracker serviceHealthTracker, long openDurationMs, int halfOpenTrials){
+        this(serviceHealthTracker, openDurationMs, halfOpenTrials, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that reads time from the supplied clock. This constructor
+     * exists mainly to facilitate testing.
+     *
+     * @param serviceHealthTracker the tracker that decides when the circuit opens
+     * @param openDurationMs how long the circuit stays open before trial requests are allowed
+     * @param halfOpenTrials how many trial requests must succeed before the circuit closes
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public CircuitBreakerRequestHandler(ServiceHealthTracker serviceHealthTracker, long openDurationMs, int halfOpenTrials,
+                                        LongSupplier nanoClock){
+        if (serviceHealthTracker == null) {
+            throw new IllegalArgumentException("'serviceHealthTracker' parameter cannot be null");
+        }
+
+        if (openDurationMs <= 0 || halfOpenTrials <= 0) {
+            throw new IllegalArgumentException("'openDurationMs' and 'halfOpenTrials' must be positive integers");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.serviceHealthTracker = serviceHealthTracker;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMs);
+        this.halfOpenTrials = halfOpenTrials;
+        this.nanoClock = nanoClock;
+        this.stateChangeNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Overrides the beforeRequest method to reject new requests while the circuit is open,
+     * and to admit trial requests while it is half open.
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        CircuitState current = state;
+
+        if (current == CircuitState.CLOSED) {
+            if (trackerReportsNewOutage()) {
+                open(CircuitState.CLOSED);
+                reject(request);
+            }
+            return;
+        }
+
+        if (current == CircuitState.OPEN || trialsExpired()) {
+            if (nanoClock.getAsLong() - stateChangeNanos < openDurationNanos) {
+                reject(request);
+            }
+            halfOpen();
+        }
+
+        if (state == CircuitState.HALF_OPEN && trialPermits.getAndDecrement() > 0) {
+            request.addHandlerContext(TRIAL_REQUEST, Boolean.TRUE);
+            return;
+        }
+
+        reject(request);
+    }
+
+    /**
+     * Overrides the beforeAttempt method so that retries of requests that were already
+     * in flight when the circuit opened fail immediately, instead of waiting out their
+     * retry budget.
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        CircuitState current = state;
+        if (current == CircuitState.CLOSED) return;
+
+        Request<?> request = context.getRequest();
+        if (current == CircuitState.HALF_OPEN && isTrial(request)) return;
+
+        reject(request);
+    }
+
+    /**
+     * Overrides the afterAttempt method to track the outcome of trial requests and to
+     * open the circuit when a request fails while the service is unhealthy.
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Exception ex = context.getException();
+
+        // rejections made by this or other handlers say nothing about the service
+        if (ex instanceof RequestRejectedException) return;
+
+        CircuitState current = state;
+
+        if (current == CircuitState.HALF_OPEN && isTrial(context.getRequest())) {
+            if (ex != null) {
+                open(CircuitState.HALF_OPEN);
+            } else if (trialSuccesses.incrementAndGet() >= halfOpenTrials) {
+                close();
+            }
+            return;
+        }
+
+        if (current == CircuitState.CLOSED && ex != null
+                && serviceHealthTracker.getHealthState() == ServiceHealthState.UNHEALTHY) {
+            open(CircuitState.CLOSED);
+        }
+    }
+
+    /**
+     * @return the current state of the circuit
+     */
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of requests and attempts rejected since this handler was created
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    private boolean trackerReportsNewOutage() {
+        ServiceHealthTracker.Snapshot tracker = serviceHealthTracker.getSnapshot();
+        return tracker.getState() == ServiceHealthState.UNHEALTHY
+                && tracker.getTransitionCount() != trackerTransitionsAtClose;
+    }
+
+    private boolean trialsExpired() {
+        // trial requests that never report back must not keep the circuit half open forever
+        return state == CircuitState.HALF_OPEN && trialPermits.get() <= 0
+                && nanoClock.getAsLong() - stateChangeNanos >= openDurationNanos;
+    }
+
+    private boolean isTrial(Request<?> request) {
+        return request != null && Boolean.TRUE.equals(request.getHandlerContext(TRIAL_REQUEST));
+    }
+
+    private void reject(Request<?> request) {
+        rejectedCount.increment();
+        CircuitRejectionEvent.emit(request, state);
+        throw new CircuitOpenException(String.format("Circuit is open, %s request was not sent",
+                request == null ? "the" : request.getServiceName()));
+    }
+
+    private synchronized void open(CircuitState expected) {
+        if (state != expected) return;
+
+        stateChangeNanos = nanoClock.getAsLong();
+        state = CircuitState.OPEN;
+        log.warn(String.format("Circuit opened, requests will fail fast for the next %d ms",
+                TimeUnit.NANOSECONDS.toMillis(openDurationNanos)));
+    }
+
+    private synchronized void halfOpen() {
+        boolean expired = trialsExpired();
+        if (state != CircuitState.OPEN && !expired) return;
+        if (nanoClock.getAsLong() - stateChangeNanos < openDurationNanos) return;
+
+        trialSuccesses.set(0);
+        trialPermits.set(halfOpenTrials);
+        stateChangeNanos = nanoClock.getAsLong();
+        state = CircuitState.HALF_OPEN;
+        log.info(String.format("Circuit half open, allowing %d trial requests", halfOpenTrials));
+    }
+
+    private synchronized void close() {
+        if (state != CircuitState.HALF_OPEN) return;
+
+        trackerTransitionsAtClose = serviceHealthTracker.getSnapshot().getTransitionCount();
+        stateChangeNanos = nanoClock.getAsLong();
+        state = CircuitState.CLOSED;
+        log.info("Circuit closed, trial requests succeeded");
+    }
+}
@@ -0,0 +1,16 @@
+package com.hanegraaff.resiliency.handlers;
+
+/**
+ * Thrown by the CircuitBreakerRequestHandler when a request or attempt is rejected
+ * because the circuit is open. The request never reaches the AWS service, and the
+ * exception is not retryable so the SDK gives up right away instead of holding the
+ * calling thread for the full retry budget.
+ */
+public class CircuitOpenException extends RequestRejectedException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
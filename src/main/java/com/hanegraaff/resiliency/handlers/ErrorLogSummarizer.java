@@ -0,0 +1,193 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import org.apache.commons.logging.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limits and deduplicates the WARN messages produced for failed SDK attempts.
+ *
+ * The first failure of each operation/endpoint pair is logged in full as soon as it is
+ * seen. Further failures of the same pair are only counted, and once per summary
+ * interval a single line is logged for each pair that kept failing, for example:
+ *
+ * 153 ListBucketsRequest failures from s3.amazonaws.com in last 10s, top cause HttpRequestTimeoutException
+ *
+ * Recording a failure that is already being summarized does not allocate once the
+ * operation, endpoint and cause have been seen. Pairs that see no failure for a whole
+ * summary interval are dropped when the next summary is written.
+ */
+class ErrorLogSummarizer {
+
+    static final long DEFAULT_SUMMARY_INTERVAL_SECONDS = 10;
+
+    private final Log log;
+    private final long summaryIntervalNanos;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<String, ErrorTally>> tallies = new ConcurrentHashMap<>();
+    private final AtomicLong nextSummary;
+    private volatile boolean pending;
+
+    /**
+     * @param log the log that messages are written to
+     * @param summaryInterval how often repeated failures are summarized
+     * @param unit the time unit of summaryInterval
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    ErrorLogSummarizer(Log log, long summaryInterval, TimeUnit unit, LongSupplier nanoClock){
+        this.log = log;
+        this.summaryIntervalNanos = unit.toNanos(summaryInterval);
+        this.nanoClock = nanoClock;
+        this.nextSummary = new AtomicLong(nanoClock.getAsLong() + summaryIntervalNanos);
+    }
+
+    /**
+     * Records a failed attempt, logging it right away if it is the first failure of
+     * its kind in the current interval.
+     *
+     * @param request the SDK request that failed
+     * @param exception the cause of the failure
+     */
+    void recordFailure(Request<?> request, Exception exception){
+        if (!log.isWarnEnabled()) return;
+
+        Class<?> operation = request.getOriginalRequest().getClass();
+        String host = request.getEndpoint().getHost();
+
+        ErrorTally tally = tallyFor(operation, host, request.getServiceName());
+        tally.record(exception.getClass());
+
+        if (tally.firstLogged.compareAndSet(false, true)) {
+            log.warn(String.format("Error attempting %s %s operation using URL: %s. Caused by: %s",
+                    tally.serviceName, operation.getSimpleName(), host, exception.getClass().getSimpleName()));
+        }
+
+        // avoid writing to the shared flag when it is already set
+        if (!pending) pending = true;
+
+        summarizeIfDue();
+    }
+
+    /**
+     * Logs the summary of the current interval if it has ended and there is something
+     * to report. This is cheap enough to call on every attempt.
+     */
+    void summarizeIfDue(){
+        if (!pending) return;
+
+        long now = nanoClock.getAsLong();
+        long due = nextSummary.get();
+        if (now - due < 0) return;
+
+        // only one thread gets to write the summary for this interval
+        if (!nextSummary.compareAndSet(due, now + summaryIntervalNanos)) return;
+
+        pending = false;
+        // the interval is longer than configured when no attempts were made for a while
+        long intervalSeconds = TimeUnit.NANOSECONDS.toSeconds(now - due + summaryIntervalNanos);
+
+        for (Map.Entry<Class<?>, ConcurrentHashMap<String, ErrorTally>> operation : tallies.entrySet()) {
+            ConcurrentHashMap<String, ErrorTally> byEndpoint = operation.getValue();
+            for (Map.Entry<String, ErrorTally> endpoint : byEndpoint.entrySet()) {
+                ErrorTally tally = endpoint.getValue();
+                tally.firstLogged.set(false);
+
+                long failures = tally.failures.sumThenReset();
+                Class<?> topCause = tally.drainTopCause();
+
+                // with virtual hosted buckets every bucket has its own endpoint, so pairs
+                // without failures for a whole interval are dropped to keep the map bounded. A
+                // failure racing with the removal is still logged in full, only its count is lost
+                if (failures == 0) {
+                    byEndpoint.remove(endpoint.getKey(), tally);
+                    continue;
+                }
+
+                // a single failure has already been logged in full
+                if (failures > 1) {
+                    log.warn(String.format("%d %s failures from %s in last %ds, top cause %s",
+                            failures, operation.getKey().getSimpleName(), endpoint.getKey(), intervalSeconds,
+                            topCause == null ? "unknown" : topCause.getSimpleName()));
+                }
+            }
+
+            // removed under the lock tallyFor() adds to it with, so no new tally is lost
+            tallies.computeIfPresent(operation.getKey(), (key, endpoints) -> endpoints.isEmpty() ? null : endpoints);
+        }
+    }
+
+    /**
+     * @return the number of operation/endpoint pairs tracked, for tests
+     */
+    int getTallyCount(){
+        int count = 0;
+        for (ConcurrentHashMap<String, ErrorTally> byEndpoint : tallies.values()) {
+            count += byEndpoint.size();
+        }
+        return count;
+    }
+
+    private ErrorTally tallyFor(Class<?> operation, String host, String serviceName){
+        String endpoint = host == null ? "unknown" : host;
+
+        ConcurrentHashMap<String, ErrorTally> byEndpoint = tallies.get(operation);
+        ErrorTally tally = byEndpoint == null ? null : byEndpoint.get(endpoint);
+        if (tally != null) return tally;
+
+        // added while the map of the operation is locked, so that a summary cannot drop
+        // the map this tally is added to
+        ErrorTally[] added = new ErrorTally[1];
+        tallies.compute(operation, (key, endpoints) -> {
+            if (endpoints == null) endpoints = new ConcurrentHashMap<>();
+            added[0] = endpoints.computeIfAbsent(endpoint, k -> new ErrorTally(serviceName));
+            return endpoints;
+        });
+        return added[0];
+    }
+
+    /**
+     * The failures seen for one operation/endpoint pair during the current interval
+     */
+    private static class ErrorTally {
+        final String serviceName;
+        final LongAdder failures = new LongAdder();
+        final AtomicBoolean firstLogged = new AtomicBoolean();
+        final ConcurrentHashMap<Class<?>, LongAdder> causes = new ConcurrentHashMap<>();
+
+        ErrorTally(String serviceName){
+            this.serviceName = serviceName;
+        }
+
+        void record(Class<?> cause){
+            failures.increment();
+
+            LongAdder count = causes.get(cause);
+            if (count == null) {
+                count = causes.computeIfAbsent(cause, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        Class<?> drainTopCause(){
+            Class<?> topCause = null;
+            long topCount = 0;
+
+            for (Map.Entry<Class<?>, LongAdder> cause : causes.entrySet()) {
+                long count = cause.getValue().sumThenReset();
+                if (count > topCount) {
+                    topCount = count;
+                    topCause = cause.getKey();
+                }
+            }
+            return topCause;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.faults.FaultPhase;
+import com.hanegraaff.resiliency.faults.FaultScenario;
+import com.hanegraaff.resiliency.faults.LoopbackFaultServer;
+import com.hanegraaff.resiliency.jfr.InjectedDelayEvent;
+import com.hanegraaff.resiliency.jfr.InjectedFaultEvent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that replays a FaultScenario. The
+ * scenario starts with the first attempt, or when start() is called, and every attempt
+ * is checked against the phases running at that time.
+ *
+ * Each attempt gets a sequence number, and all the decisions made for it derive from
+ * the seed of the scenario and that number, so a run can be replayed exactly by
+ * sending the same sequence of attempts with the same seed. Delays of overlapping
+ * phases add up, and the first failing phase provides the error.
+ *
+ * By default, as with the ProgrammableExceptionRequestHandler, injected errors are
+ * thrown before the request is sent and bypass the internal SDK retry mechanisms. When
+ * a LoopbackFaultServer is supplied, failing attempts are redirected to it instead, so
+ * that the SDK retries them and backs off as it would for real service errors. Handlers
+ * registered after this one then see the loopback server as the endpoint of redirected
+ * attempts in beforeAttempt, and handlers registered before it see it in afterAttempt,
+ * as described in ServiceErrorInjectionRequestHandler.
+ */
+public class FaultScenarioRequestHandler extends RequestHandler2 {
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static final int DELAY_DECISION = 0;
+    private static final int DELAY_DRAW = 1;
+    private static final int ERROR_DECISION = 2;
+
+    private final Log log = LogFactory.getLog(FaultScenarioRequestHandler.class);
+
+    private final FaultScenario scenario;
+    private final FaultPhase[] phases;
+    private final long durationNanos;
+    private final LongSupplier nanoClock;
+    private final LoopbackRedirect redirect;
+
+    private final AtomicLong startNanos = new AtomicLong(NOT_STARTED);
+    private final AtomicLong attempts = new AtomicLong();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedDelays = new LongAdder();
+
+    /**
+     * Constructs a new handler that replays the supplied scenario
+     *
+     * @param scenario the scenario to replay
+     */
+    public FaultScenarioRequestHandler(FaultScenario scenario) {
+        this(scenario, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that replays the supplied scenario, reading time from
+     * the supplied clock
+     *
+     * @param scenario the scenario to replay
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public FaultScenarioRequestHandler(FaultScenario scenario, LongSupplier nanoClock) {
+        this(scenario, null, nanoClock);
+    }
+
+    /**
+     * Constructs a new handler that replays the supplied scenario, and redirects failing
+     * attempts to the supplied server so that the SDK retries them
+     *
+     * @param scenario the scenario to replay
+     * @param server the server answering failing attempts
+     */
+    public FaultScenarioRequestHandler(FaultScenario scenario, LoopbackFaultServer server) {
+        this(scenario, server, System::nanoTime);
+        if (server == null) {
+            throw new IllegalArgumentException("'server' parameter cannot be null");
+        }
+    }
+
+    /**
+     * Constructs a new handler that replays the supplied scenario, reading time from
+     * the supplied clock
+     *
+     * @param scenario the scenario to replay
+     * @param server the server answering failing attempts, or null to throw the errors before the request is sent
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public FaultScenarioRequestHandler(FaultScenario scenario, LoopbackFaultServer server, LongSupplier nanoClock) {
+        if (scenario == null || nanoClock == null) {
+            throw new IllegalArgumentException("'scenario' and 'nanoClock' parameters cannot be null");
+        }
+
+        List<FaultPhase> phaseList = scenario.getPhases();
+        this.scenario = scenario;
+        this.phases = phaseList.toArray(new FaultPhase[0]);
+        this.durationNanos = scenario.getDurationNanos();
+        this.nanoClock = nanoClock;
+        this.redirect = server == null ? null : new LoopbackRedirect("FaultScenario", server);
+    }
+
+    /**
+     * Starts, or restarts, the scenario now, and resets the sequence of attempts
+     */
+    public void start() {
+        attempts.set(0);
+        startNanos.set(nanoClock.getAsLong());
+        log.info("Starting fault scenario " + scenario);
+    }
+
+    /**
+     * Overrides the beforeAttempt method to delay or fail the attempt, according to the
+     * phases of the scenario running at this time.
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        long elapsed = getElapsedNanos();
+        if (elapsed >= durationNanos) return;
+
+        Request<?> request = context.getRequest();
+        String operation = request.getOriginalRequest().getClass().getSimpleName();
+        String host = request.getEndpoint() == null ? "" : request.getEndpoint().getHost();
+        long attempt = attempts.getAndIncrement();
+
+        long delayNanos = 0;
+        FaultPhase failing = null;
+
+        for (int i = 0; i < phases.length; i++) {
+            FaultPhase phase = phases[i];
+            if (!phase.isActiveAt(elapsed) || !phase.matches(operation, host)) continue;
+
+            if (phase.getDelayRate() > 0 && scenario.uniform(attempt, i, DELAY_DECISION) < phase.getDelayRate()) {
+                delayNanos += phase.getDelayDistribution().sampleNanos(scenario.random(attempt, i, DELAY_DRAW));
+            }
+
+            if (failing == null && scenario.uniform(attempt, i, ERROR_DECISION) < phase.errorRateAt(elapsed)) {
+                failing = phase;
+            }
+        }
+
+        if (delayNanos > 0) {
+            injectedDelays.increment();
+            InjectedDelayEvent event = InjectedDelayEvent.begin(FaultScenarioRequestHandler.class, request, delayNanos);
+            try {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException(e);
+            } finally {
+                if (event != null) event.commit();
+            }
+        }
+
+        if (failing != null) {
+            injectedErrors.increment();
+            InjectedFaultEvent.emit(FaultScenarioRequestHandler.class, request, failing.getErrorStatusCode(), failing.getErrorCode());
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Injecting %d %s into attempt %d (%s)", failing.getErrorStatusCode(),
+                        failing.getErrorCode(), attempt, failing.getName()));
+            }
+            if (redirect != null) {
+                redirect.redirect(request, failing.getServiceError());
+            } else {
+                throw newError(failing, request);
+            }
+        }
+    }
+
+    /**
+     * Overrides the afterAttempt method to restore the endpoint of a redirected attempt.
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        if (redirect != null) redirect.restore(context.getRequest());
+    }
+
+    /**
+     * @return the time elapsed since the start of the scenario in nanoseconds
+     */
+    public long getElapsedNanos() {
+        long start = startNanos.get();
+        if (start == NOT_STARTED) {
+            // the first attempt starts the scenario
+            long now = nanoClock.getAsLong();
+            if (startNanos.compareAndSet(NOT_STARTED, now)) {
+                log.info("Starting fault scenario " + scenario);
+                return 0;
+            }
+            start = startNanos.get();
+        }
+        return nanoClock.getAsLong() - start;
+    }
+
+    /**
+     * @return the scenario replayed by this handler
+     */
+    public FaultScenario getScenario() {
+        return scenario;
+    }
+
+    /**
+     * @return the number of attempts checked against the scenario since it started
+     */
+    public long getAttemptCount() {
+        return attempts.get();
+    }
+
+    /**
+     * @return the number of errors injected since this handler was created
+     */
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return the number of attempts delayed since this handler was created
+     */
+    public long getInjectedDelays() {
+        return injectedDelays.sum();
+    }
+
+    private static AmazonServiceException newError(FaultPhase phase, Request<?> request) {
+        AmazonServiceException error = new AmazonServiceException(phase.getErrorMessage());
+        error.setStatusCode(phase.getErrorStatusCode());
+        error.setErrorCode(phase.getErrorCode());
+        error.setErrorType(phase.getErrorStatusCode() >= 500
+                ? AmazonServiceException.ErrorType.Service : AmazonServiceException.ErrorType.Client);
+        error.setServiceName(request.getServiceName());
+        return error;
+    }
+}
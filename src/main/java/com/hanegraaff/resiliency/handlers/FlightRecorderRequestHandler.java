@@ -0,0 +1,73 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.jfr.AttemptEvent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An implementation of the RequestHandler2 class that records every SDK attempt as a
+ * Java Flight Recorder event (com.hanegraaff.resiliency.Attempt), so that stalls of the
+ * SDK can be correlated with garbage collection, thread parking and socket reads in JDK
+ * Mission Control.
+ *
+ * When the event is not being recorded, the handler does nothing beyond checking that
+ * it is disabled. Requests that started before the recording did are not recorded.
+ */
+public class FlightRecorderRequestHandler extends RequestHandler2 {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final HandlerContextKey<AttemptState> attemptState =
+            new HandlerContextKey<>("FlightRecorderAttempt#" + instances.incrementAndGet());
+
+    /**
+     * Overrides the beforeRequest method to prepare the request for recording, when the
+     * event is being recorded
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        if (AttemptEvent.isRecording()) request.addHandlerContext(attemptState, new AttemptState());
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start the event of the attempt
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        Request<?> request = context.getRequest();
+        AttemptState state = request.getHandlerContext(attemptState);
+        if (state == null) return;
+
+        state.attempts++;
+        state.event = AttemptEvent.begin(request, state.attempts);
+    }
+
+    /**
+     * Overrides the afterAttempt method to commit the event of the attempt
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Request<?> request = context.getRequest();
+        AttemptState state = request == null ? null : request.getHandlerContext(attemptState);
+        if (state == null || state.event == null) return;
+
+        state.event.complete(request, context.getResponse(), context.getException());
+        state.event = null;
+    }
+
+    private static final class AttemptState {
+        int attempts;
+        AttemptEvent event;
+    }
+}
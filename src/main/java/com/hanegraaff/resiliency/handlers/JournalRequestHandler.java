@@ -0,0 +1,121 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.journal.AttemptJournal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that writes every attempt to an
+ * AttemptJournal: when it ended, how long it took, the operation, the endpoint, the
+ * status code, the exception and the number of the attempt within its request.
+ *
+ * Recording an attempt does not lock or allocate, so the handler can be left enabled in
+ * production and the journal read after an incident. The handler does not close the
+ * journal.
+ */
+public class JournalRequestHandler extends RequestHandler2 {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private static final int START = 0;
+    private static final int ATTEMPT = 1;
+
+    private final AttemptJournal journal;
+    private final LongSupplier nanoClock;
+    private final HandlerContextKey<long[]> attemptState;
+
+    /**
+     * Constructs a new handler that measures time with System.nanoTime()
+     *
+     * @param journal the journal attempts are written to
+     */
+    public JournalRequestHandler(AttemptJournal journal) {
+        this(journal, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that reads time from the supplied clock. This constructor
+     * exists mainly to facilitate testing, as the JournalReader expects System.nanoTime()
+     * to convert the end of the attempts to wall clock time.
+     *
+     * @param journal the journal attempts are written to
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public JournalRequestHandler(AttemptJournal journal, LongSupplier nanoClock) {
+        if (journal == null || nanoClock == null) {
+            throw new IllegalArgumentException("'journal' and 'nanoClock' parameters cannot be null");
+        }
+
+        this.journal = journal;
+        this.nanoClock = nanoClock;
+        // context keys are compared by name, see AttemptTimer
+        this.attemptState = new HandlerContextKey<>("JournalAttempt#" + instances.incrementAndGet());
+    }
+
+    /**
+     * Overrides the beforeRequest method to prepare the request for journaling
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        request.addHandlerContext(attemptState, new long[]{Long.MIN_VALUE, 0});
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        long[] state = context.getRequest().getHandlerContext(attemptState);
+        if (state == null) return;
+
+        state[START] = nanoClock.getAsLong();
+        state[ATTEMPT]++;
+    }
+
+    /**
+     * Overrides the afterAttempt method to write the attempt to the journal
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Request<?> request = context.getRequest();
+        if (request == null) return;
+
+        long[] state = request.getHandlerContext(attemptState);
+        long end = nanoClock.getAsLong();
+        long latency = state == null || state[START] == Long.MIN_VALUE ? -1 : end - state[START];
+        int attempt = state == null ? 0 : (int) state[ATTEMPT];
+        if (state != null) state[START] = Long.MIN_VALUE;
+
+        Exception ex = context.getException();
+        journal.record(request.getServiceName(), request.getOriginalRequest().getClass(),
+                request.getEndpoint() == null ? null : request.getEndpoint().getHost(),
+                statusCodeOf(context.getResponse(), ex), ex == null ? null : ex.getClass(), end, latency, attempt);
+    }
+
+    /**
+     * @return the journal attempts are written to
+     */
+    public AttemptJournal getJournal() {
+        return journal;
+    }
+
+    private static int statusCodeOf(Response<?> response, Exception ex) {
+        if (ex instanceof AmazonServiceException) return ((AmazonServiceException) ex).getStatusCode();
+        if (response != null && response.getHttpResponse() != null) return response.getHttpResponse().getStatusCode();
+        return 0;
+    }
+}
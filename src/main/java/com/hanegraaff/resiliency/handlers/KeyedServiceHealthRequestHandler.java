@@ -0,0 +1,96 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.health.ServiceHealthRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An implementation of the RequestHandler2 class that tracks the health of every
+ * service, endpoint and operation combination separately using a ServiceHealthRegistry.
+ * The registry can then be queried per combination, or rolled up per service.
+ *
+ * This handler can be used alongside a ServiceHealthRequestHandler, which keeps
+ * tracking the health of the client as a whole.
+ *
+ * When the policy of the registry has latency rules, the handler also times every attempt.
+ */
+public class KeyedServiceHealthRequestHandler extends RequestHandler2 {
+
+    private final Log log = LogFactory.getLog(KeyedServiceHealthRequestHandler.class);
+
+    private final ServiceHealthRegistry registry;
+    private final AttemptTimer attemptTimer;
+
+    /**
+     * Configures a new KeyedServiceHealthRequestHandler that records into the supplied registry
+     *
+     * @param registry the registry that tracks the health of each combination
+     */
+    public KeyedServiceHealthRequestHandler(ServiceHealthRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("'registry' parameter cannot be null");
+        }
+
+        this.registry = registry;
+        this.attemptTimer = registry.getPolicy().getLatencyRules().isEmpty() ? null
+                : new AttemptTimer("KeyedServiceHealth", System::nanoTime);
+    }
+
+    /**
+     * Overrides the beforeRequest method to prepare the request for timing, when the
+     * policy of the registry has latency rules
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        if (attemptTimer != null) attemptTimer.prepare(request);
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt, when the policy
+     * of the registry has latency rules
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        if (attemptTimer != null) attemptTimer.start(context.getRequest());
+    }
+
+    /**
+     * Overrides the afterAttempt method to record the outcome of the attempt
+     * against its service, endpoint and operation.
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Exception ex = context.getException();
+        long latencyNanos = attemptTimer == null ? -1 : attemptTimer.stop(context.getRequest());
+
+        // attempts rejected by another handler never reached the service
+        if (ex instanceof RequestRejectedException) return;
+
+        Request<?> request = context.getRequest();
+        String serviceName = request.getServiceName();
+        String host = request.getEndpoint().getHost();
+        Class<?> operation = request.getOriginalRequest().getClass();
+
+        if (registry.record(serviceName, host, operation, ex != null, latencyNanos) && log.isWarnEnabled()) {
+            log.warn(String.format("Excessive errors detected from %s %s operation using URL: %s. Operation is considered unhealthy",
+                    serviceName, operation.getSimpleName(), host));
+        }
+    }
+
+    /**
+     * @return the registry this handler records into
+     */
+    public ServiceHealthRegistry getRegistry() {
+        return registry;
+    }
+}
@@ -0,0 +1,206 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that records latencies in a
+ * LatencyHistogram per operation:
+ *
+ * 1. The duration of every attempt, from beforeAttempt to afterAttempt, including
+ *    attempts that failed.
+ * 2. The end-to-end time of every request, from beforeRequest until the SDK hands the
+ *    response or the error back, including retries and the backoff between them.
+ *
+ * Operations are identified by the class of the original SDK request, for example
+ * GetObjectRequest. Recording a latency for an operation that has been seen before
+ * allocates nothing beyond a small timing object per request.
+ *
+ * The histograms can be queried at any time, or drained periodically with
+ * LatencyHistogram.snapshotAndReset() to report per interval percentiles.
+ */
+public class LatencyTrackingRequestHandler extends RequestHandler2 {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final LongSupplier nanoClock;
+    private final HandlerContextKey<Timing> timingKey;
+    private final ConcurrentHashMap<Class<?>, OperationLatency> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new handler that measures time with System.nanoTime()
+     */
+    public LatencyTrackingRequestHandler() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that reads time from the supplied clock. This constructor
+     * exists mainly to facilitate testing.
+     *
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public LatencyTrackingRequestHandler(LongSupplier nanoClock) {
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.nanoClock = nanoClock;
+        // context keys are compared by name, see AttemptTimer
+        this.timingKey = new HandlerContextKey<>("LatencyTrackingTiming#" + instances.incrementAndGet());
+    }
+
+    /**
+     * Overrides the beforeRequest method to start timing the request
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        request.addHandlerContext(timingKey, new Timing(nanoClock.getAsLong()));
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        Timing timing = context.getRequest().getHandlerContext(timingKey);
+        if (timing != null) timing.attemptStart = nanoClock.getAsLong();
+    }
+
+    /**
+     * Overrides the afterAttempt method to record the duration of the attempt
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Request<?> request = context.getRequest();
+        Timing timing = request.getHandlerContext(timingKey);
+
+        // attempts rejected by a handler that runs first were never timed
+        if (timing == null || timing.attemptStart == Timing.NOT_STARTED) return;
+
+        long duration = nanoClock.getAsLong() - timing.attemptStart;
+        timing.attemptStart = Timing.NOT_STARTED;
+
+        // attempts rejected by a handler that runs later never reached the service
+        if (context.getException() instanceof RequestRejectedException) return;
+
+        operationFor(request).attempts.record(duration);
+    }
+
+    /**
+     * Overrides the afterResponse method to record the end-to-end time of the request
+     *
+     * @param request the SDK request that succeeded
+     * @param response the response of the request
+     */
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        recordRequest(request);
+    }
+
+    /**
+     * Overrides the afterError method to record the end-to-end time of the request
+     *
+     * @param request the SDK request that failed
+     * @param response the response of the request, if any
+     * @param e the error returned to the caller
+     */
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        recordRequest(request);
+    }
+
+    /**
+     * @param operation the class of the original SDK request, for example GetObjectRequest
+     * @return the attempt latencies of the operation, or null if it was never seen
+     */
+    public LatencyHistogram getAttemptLatency(Class<?> operation) {
+        OperationLatency latency = operations.get(operation);
+        return latency == null ? null : latency.attempts;
+    }
+
+    /**
+     * @param operation the class of the original SDK request, for example GetObjectRequest
+     * @return the end-to-end request latencies of the operation, or null if it was never seen
+     */
+    public LatencyHistogram getRequestLatency(Class<?> operation) {
+        OperationLatency latency = operations.get(operation);
+        return latency == null ? null : latency.requests;
+    }
+
+    /**
+     * Visits the attempt latencies of every operation seen so far
+     *
+     * @param consumer receives the operation class and its attempt latencies
+     */
+    public void forEachAttemptLatency(BiConsumer<Class<?>, LatencyHistogram> consumer) {
+        for (Map.Entry<Class<?>, OperationLatency> entry : operations.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().attempts);
+        }
+    }
+
+    /**
+     * Visits the end-to-end request latencies of every operation seen so far
+     *
+     * @param consumer receives the operation class and its request latencies
+     */
+    public void forEachRequestLatency(BiConsumer<Class<?>, LatencyHistogram> consumer) {
+        for (Map.Entry<Class<?>, OperationLatency> entry : operations.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().requests);
+        }
+    }
+
+    private void recordRequest(Request<?> request) {
+        Timing timing = request.getHandlerContext(timingKey);
+        if (timing == null) return;
+
+        operationFor(request).requests.record(nanoClock.getAsLong() - timing.requestStart);
+    }
+
+    private OperationLatency operationFor(Request<?> request) {
+        Class<?> operation = request.getOriginalRequest().getClass();
+
+        OperationLatency latency = operations.get(operation);
+        if (latency == null) {
+            latency = operations.computeIfAbsent(operation, k -> new OperationLatency());
+        }
+        return latency;
+    }
+
+    /**
+     * The start times of a request and of its current attempt. Attempts of the same
+     * request never run concurrently, so plain fields are enough.
+     */
+    private static class Timing {
+        static final long NOT_STARTED = Long.MIN_VALUE;
+
+        final long requestStart;
+        long attemptStart = NOT_STARTED;
+
+        Timing(long requestStart) {
+            this.requestStart = requestStart;
+        }
+    }
+
+    private static class OperationLatency {
+        final LatencyHistogram attempts = new LatencyHistogram();
+        final LatencyHistogram requests = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,68 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.hanegraaff.resiliency.faults.LoopbackFaultServer;
+import com.hanegraaff.resiliency.faults.ServiceError;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redirects single attempts to a LoopbackFaultServer, which answers them with a real
+ * AWS error response. The original endpoint is kept in the handler context of the
+ * request and restored after the attempt, so that retries go to the real service
+ * unless they are redirected again. Between the two, every handler sees the loopback
+ * server as the endpoint of the request.
+ *
+ * Handler context keys are compared by name, so every redirect uses its own name.
+ */
+class LoopbackRedirect {
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final LoopbackFaultServer server;
+    private final HandlerContextKey<URI> originalEndpoint;
+
+    LoopbackRedirect(String owner, LoopbackFaultServer server) {
+        this.server = server;
+        this.originalEndpoint = new HandlerContextKey<>(owner + "OriginalEndpoint#" + instances.incrementAndGet());
+    }
+
+    /**
+     * Sends the attempt to the loopback server, which answers with the supplied error.
+     * Called from beforeAttempt.
+     */
+    void redirect(Request<?> request, ServiceError error) {
+        request.addHandlerContext(originalEndpoint, request.getEndpoint());
+        request.setEndpoint(server.getEndpoint());
+
+        request.addHeader(LoopbackFaultServer.STATUS_HEADER, Integer.toString(error.getStatusCode()));
+        request.addHeader(LoopbackFaultServer.CODE_HEADER, error.getErrorCode());
+        request.addHeader(LoopbackFaultServer.MESSAGE_HEADER, error.getMessage());
+    }
+
+    /**
+     * Restores the endpoint of a redirected attempt. Called from afterAttempt.
+     *
+     * @return true if the attempt had been redirected
+     */
+    boolean restore(Request<?> request) {
+        URI endpoint = request.getHandlerContext(originalEndpoint);
+        if (endpoint == null) return false;
+
+        request.addHandlerContext(originalEndpoint, null);
+        request.setEndpoint(endpoint);
+
+        Map<String, String> headers = request.getHeaders();
+        headers.remove(LoopbackFaultServer.STATUS_HEADER);
+        headers.remove(LoopbackFaultServer.CODE_HEADER);
+        headers.remove(LoopbackFaultServer.MESSAGE_HEADER);
+        return true;
+    }
+
+    LoopbackFaultServer getServer() {
+        return server;
+    }
+}
@@ -1,24 +1,30 @@
 package com.hanegraaff.resiliency.handlers;
 
+import com.amazonaws.AbortedException;
 import com.amazonaws.handlers.HandlerBeforeAttemptContext;
 import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.jfr.InjectedDelayEvent;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An implementation of the RequestHandler2 class simulates a network delay
- * by forcing the thread to sleep for random amount of time within a boundary
+ * by forcing the thread to sleep for an amount of time drawn from a DelayDistribution.
  *
+ * The handler holds no locks while sleeping, so callers running on virtual threads
+ * are unmounted rather than pinned to their carrier thread during the delay. If the
+ * calling thread is interrupted, the attempt is aborted and the interrupt status is
+ * preserved.
  */
 public class NetworkDelayRequestHandler extends RequestHandler2 {
 
     private final Log log = LogFactory.getLog(NetworkDelayRequestHandler.class);
     private final double delayRate;
-
-    private final int baseDelayMs;
-    private final int offsetDelayMs;
+    private final DelayDistribution delayDistribution;
 
     /**
      * Constructs a new handler with
@@ -26,9 +32,7 @@ public class NetworkDelayRequestHandler extends RequestHandler2 {
      * 2. A delay between 1-3 seconds
      */
     public NetworkDelayRequestHandler(){
-        this.delayRate = 0.05;
-        this.baseDelayMs = 1000;
-        this.offsetDelayMs = 2000;
+        this(0.05, 1000, 2000);
     }
 
     /**
@@ -40,37 +44,70 @@ public class NetworkDelayRequestHandler extends RequestHandler2 {
      * @param offsetDelayMs The delay offset, also in milliseconds
      */
     public NetworkDelayRequestHandler(double delayRate, int baseDelayMs, int offsetDelayMs){
+        this(delayRate, uniformDelay(baseDelayMs, offsetDelayMs));
+    }
+
+    /**
+     * Constructs a new handler that draws delays from the supplied distribution
+     *
+     * @param delayRate The percentage (between 0 an 1) of times a delay is injected.
+     * @param delayDistribution The distribution of the injected delays
+     */
+    public NetworkDelayRequestHandler(double delayRate, DelayDistribution delayDistribution){
         if (delayRate < 0 || delayRate > 1) {
             throw new IllegalArgumentException("'delayRate' parameter is out of range. Must be between 0 and 1");
         }
 
-        if (baseDelayMs <= 0 || offsetDelayMs < 0) {
-            throw new IllegalArgumentException("'baseDelayMs' and 'offsetDelayMs' must be positive integers");
+        if (delayDistribution == null) {
+            throw new IllegalArgumentException("'delayDistribution' parameter cannot be null");
         }
 
         this.delayRate = delayRate;
-        this.baseDelayMs = baseDelayMs;
-        this.offsetDelayMs = offsetDelayMs;
+        this.delayDistribution = delayDistribution;
     }
 
     /**
-     * Overrides the afterAttempt method to periodically raise a custom
-     * AmazonClientException. Note that this will bypass all internal SDK
-     * retry mechanisms.
+     * Overrides the beforeAttempt method to delay a fraction of the attempts.
      *
-     * @param context the SDK supplied HandlerAfterAttemptContext object
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
      */
+    @Override
     public void beforeAttempt(HandlerBeforeAttemptContext context){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
 
-        if (Math.random() < delayRate){
-            int delayMs = ThreadLocalRandom.current().nextInt(baseDelayMs, (baseDelayMs +  offsetDelayMs) + 1);
+        if (random.nextDouble() < delayRate){
+            long delayNanos = delayDistribution.sampleNanos(random);
+            InjectedDelayEvent event = InjectedDelayEvent.begin(NetworkDelayRequestHandler.class,
+                    context == null ? null : context.getRequest(), delayNanos);
 
-            log.info(String.format("Injecting custom delay of %d milliseconds", delayMs));
             try {
-                Thread.sleep(delayMs);
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
             } catch (InterruptedException e) {
-                log.warn("Delay failed because of an exception: " + e.getCause());
+                Thread.currentThread().interrupt();
+                throw new AbortedException(e);
+            } finally {
+                if (event != null) event.commit();
+            }
+
+            // logged afterwards, some appenders clear the interrupt status of the thread
+            if (log.isInfoEnabled()) {
+                log.info(String.format("Injected custom delay of %d milliseconds", TimeUnit.NANOSECONDS.toMillis(delayNanos)));
             }
         }
     }
+
+    /**
+     * @return the distribution of the injected delays
+     */
+    public DelayDistribution getDelayDistribution() {
+        return delayDistribution;
+    }
+
+    private static DelayDistribution uniformDelay(int baseDelayMs, int offsetDelayMs) {
+        if (baseDelayMs <= 0 || offsetDelayMs < 0) {
+            throw new IllegalArgumentException("'baseDelayMs' and 'offsetDelayMs' must be positive integers");
+        }
+
+        return DelayDistribution.uniform(baseDelayMs, (long) baseDelayMs + offsetDelayMs, TimeUnit.MILLISECONDS);
+    }
 }
@@ -3,12 +3,18 @@ package com.hanegraaff.resiliency.handlers;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.handlers.HandlerBeforeAttemptContext;
 import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.jfr.InjectedFaultEvent;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * An implementation of the RequestHandler2 class that throws a user supplied AmazonClientException
  * at random times, defined by the caller
+ *
+ * The exception is thrown before the request is sent, so the SDK does not retry it. Use
+ * the ServiceErrorInjectionRequestHandler to inject service errors that the SDK retries.
  */
 public class ProgrammableExceptionRequestHandler extends RequestHandler2 {
 
@@ -52,8 +58,10 @@ public class ProgrammableExceptionRequestHandler extends RequestHandler2 {
      * @param context the SDK supplied HandlerAfterAttemptContext object
      */
     public void beforeAttempt(HandlerBeforeAttemptContext context){
-        if (Math.random() < errorRate){
+        if (ThreadLocalRandom.current().nextDouble() < errorRate){
             log.info("Injecting custom error: " + this.customException);
+            InjectedFaultEvent.emit(ProgrammableExceptionRequestHandler.class,
+                    context == null ? null : context.getRequest(), customException);
             throw customException;
         }
     }
@@ -0,0 +1,15 @@
+package com.hanegraaff.resiliency.handlers;
+
+/**
+ * Thrown by the AdaptiveRateLimitRequestHandler when an attempt would have to wait
+ * longer than allowed for the current send rate. The request never reaches the AWS
+ * service and is not retried by the SDK.
+ */
+public class RateLimitExceededException extends RequestRejectedException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitExceededException(String message) {
+        super(message);
+    }
+}
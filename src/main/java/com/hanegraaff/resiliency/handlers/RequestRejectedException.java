@@ -0,0 +1,23 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+
+/**
+ * Thrown by the handlers in this package when they reject a request or attempt before
+ * it is sent. The request never reaches the AWS service, so handlers that track the
+ * health of the service ignore these exceptions. They are not retryable, so the SDK
+ * gives up right away instead of holding the calling thread for the full retry budget.
+ */
+public class RequestRejectedException extends AmazonClientException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestRejectedException(String message) {
+        super(message);
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return false;
+    }
+}
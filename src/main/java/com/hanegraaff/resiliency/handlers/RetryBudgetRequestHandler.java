@@ -0,0 +1,47 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+
+/**
+ * An implementation of the RequestHandler2 class that refills a RetryBudget every time
+ * a request succeeds. It should be registered on every client whose retry policy uses
+ * a RetryBudgetCondition backed by the same budget.
+ */
+public class RetryBudgetRequestHandler extends RequestHandler2 {
+
+    private final RetryBudget retryBudget;
+
+    /**
+     * Configures a new RetryBudgetRequestHandler that refills the supplied budget
+     *
+     * @param retryBudget the budget refilled by successful requests
+     */
+    public RetryBudgetRequestHandler(RetryBudget retryBudget) {
+        if (retryBudget == null) {
+            throw new IllegalArgumentException("'retryBudget' parameter cannot be null");
+        }
+
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * Overrides the afterResponse method to deposit the tokens earned by a successful request
+     *
+     * @param request the SDK request that succeeded
+     * @param response the response of the request
+     */
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        retryBudget.deposit();
+    }
+
+    /**
+     * @return the budget refilled by this handler
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+}
@@ -0,0 +1,146 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.faults.LoopbackFaultServer;
+import com.hanegraaff.resiliency.faults.ServiceError;
+import com.hanegraaff.resiliency.jfr.InjectedFaultEvent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An implementation of the RequestHandler2 class that injects AWS service errors, such
+ * as 503 SlowDown or 500 InternalError, that the SDK handles exactly like real ones.
+ *
+ * Unlike the ProgrammableExceptionRequestHandler, which throws before the request is
+ * sent, this handler redirects a fraction of the attempts to a LoopbackFaultServer that
+ * answers with the error. The SDK then applies the retry condition and backoff of its
+ * ClientConfiguration, so the effect of retries on throughput can be load tested.
+ * Every attempt, including retries, is redirected independently.
+ *
+ * The SDK calls beforeAttempt and afterAttempt on the handlers in the order they were
+ * registered, so the endpoint of a redirected attempt depends on where this handler is:
+ * handlers registered before it see the real endpoint in beforeAttempt and the loopback
+ * server in afterAttempt, and handlers registered after it see the loopback server in
+ * beforeAttempt and the real endpoint in afterAttempt, afterResponse and afterError.
+ * Register it before handlers that key on the endpoint after the attempt, such as the
+ * KeyedServiceHealthRequestHandler or the JournalRequestHandler, and after those that
+ * key on it before the attempt, such as a BulkheadRequestHandler scoped to ENDPOINT.
+ *
+ * It owns its loopback server unless one is supplied, and close() stops it.
+ */
+public class ServiceErrorInjectionRequestHandler extends RequestHandler2 implements Closeable {
+
+    private final Log log = LogFactory.getLog(ServiceErrorInjectionRequestHandler.class);
+
+    private final ServiceError serviceError;
+    private final double errorRate;
+    private final LoopbackRedirect redirect;
+    private final boolean ownsServer;
+
+    private final LongAdder injectedErrors = new LongAdder();
+
+    /**
+     * Constructs a new handler that starts its own loopback server
+     *
+     * @param serviceError the error to inject, for example ServiceError.SLOW_DOWN
+     * @param errorRate The percentage (between 0 an 1) of attempts that fail
+     */
+    public ServiceErrorInjectionRequestHandler(ServiceError serviceError, double errorRate) {
+        this(serviceError, errorRate, startServer(), true);
+    }
+
+    /**
+     * Constructs a new handler that redirects attempts to the supplied server, which
+     * can be shared by several handlers
+     *
+     * @param serviceError the error to inject, for example ServiceError.SLOW_DOWN
+     * @param errorRate The percentage (between 0 an 1) of attempts that fail
+     * @param server the server answering redirected attempts
+     */
+    public ServiceErrorInjectionRequestHandler(ServiceError serviceError, double errorRate, LoopbackFaultServer server) {
+        this(serviceError, errorRate, server, false);
+    }
+
+    private ServiceErrorInjectionRequestHandler(ServiceError serviceError, double errorRate,
+                                                LoopbackFaultServer server, boolean ownsServer) {
+        if (serviceError == null || server == null) {
+            throw new IllegalArgumentException("'serviceError' and 'server' parameters cannot be null");
+        }
+
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("'errorRate' parameter is out of range. Must be between 0 and 1");
+        }
+
+        this.serviceError = serviceError;
+        this.errorRate = errorRate;
+        this.redirect = new LoopbackRedirect("ServiceErrorInjection", server);
+        this.ownsServer = ownsServer;
+    }
+
+    /**
+     * Overrides the beforeAttempt method to redirect a fraction of the attempts to the
+     * loopback server.
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.increment();
+            InjectedFaultEvent.emit(ServiceErrorInjectionRequestHandler.class, context.getRequest(),
+                    serviceError.getStatusCode(), serviceError.getErrorCode());
+            if (log.isDebugEnabled()) {
+                log.debug("Injecting service error: " + serviceError);
+            }
+            redirect.redirect(context.getRequest(), serviceError);
+        }
+    }
+
+    /**
+     * Overrides the afterAttempt method to restore the endpoint of a redirected attempt.
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        redirect.restore(context.getRequest());
+    }
+
+    /**
+     * @return the number of attempts redirected since this handler was created
+     */
+    public long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return the server answering redirected attempts
+     */
+    public LoopbackFaultServer getServer() {
+        return redirect.getServer();
+    }
+
+    /**
+     * Stops the loopback server, if it was started by this handler
+     */
+    @Override
+    public void close() {
+        if (ownsServer) redirect.getServer().close();
+    }
+
+    private static LoopbackFaultServer startServer() {
+        try {
+            return new LoopbackFaultServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the loopback fault server", e);
+        }
+    }
+}
@@ -1,33 +1,56 @@
 package com.hanegraaff.resiliency.handlers;
 
+import com.amazonaws.Request;
 import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
 import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.health.HealthPolicy;
+import com.hanegraaff.resiliency.health.LatencyRule;
 import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.health.ServiceHealthWindow;
 import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
 /**
  * An implementation of the RequestHandler2 class that tracks the health of AWS by
  * monitoring internal SDK errors. If the errors exceed a certain threshold over any
- * 5-minute window, the service will be considered unhealthy.
+ * 5-minute window, the service will be considered unhealthy. The length of the window
+ * can be configured.
  *
- * Additionally, all failed SDK attempts will bt logged like this via Apache Common Logging:
+ * Additionally, failed SDK attempts will be logged like this via Apache Common Logging:
  *
  * Error attempting Amazon S3 ListBucketsRequest operation using URL: s3.us-west-2.amazonaws.com. Caused by: HttpRequestTimeoutException
+ *
+ * To keep outages from flooding the logs, only the first failure of each operation and
+ * endpoint is logged in full. Repeated failures are summarized every 10 seconds:
+ *
+ * 153 ListBucketsRequest failures from s3.us-west-2.amazonaws.com in last 10s, top cause HttpRequestTimeoutException
+ *
+ * Successful attempts do not allocate or format any message.
+ *
+ * When the HealthPolicy has latency rules, the handler also times every attempt, so
+ * that a service answering successfully but too slowly is considered unhealthy too.
  */
 public class ServiceHealthRequestHandler extends RequestHandler2 {
 
     private final Log log = LogFactory.getLog(ServiceHealthRequestHandler.class);
 
-    private final SlidingWindowCounter eventCount;
-    private final SlidingWindowCounter errorCount;
+    private final ServiceHealthWindow healthWindow;
+    private final ErrorLogSummarizer errorLog;
+    private final AttemptTimer attemptTimer;
 
-    private final double errorRateThreshold;
-    private final int minRequests;
-    private final ServiceHealthTracker serviceHealthTracker;
+    /**
+     * The length of the window over which attempts are counted, unless configured otherwise
+     */
+    public static final int DEFAULT_METRIC_INTERVAL_MINUTES = 5;
 
-    final int metricInterval = 5;
+    final int metricInterval;
 
     /**
      * Configures a new ServiceHealthRequestHandler object with the supplied parameters.
@@ -37,11 +60,101 @@ public class ServiceHealthRequestHandler extends RequestHandler2 {
      * @param serviceHealthTracker the ServiceHealthTracker that encapsulates the health of the service used by the SDK client
      */
     public ServiceHealthRequestHandler(double errorRateThreshold, int minRequests, ServiceHealthTracker serviceHealthTracker) {
-        this.eventCount = new SlidingWindowCounter(metricInterval);
-        this.errorCount = new SlidingWindowCounter(metricInterval);
-        this.errorRateThreshold = errorRateThreshold;
-        this.minRequests = minRequests;
-        this.serviceHealthTracker = serviceHealthTracker;
+        this(errorRateThreshold, minRequests, serviceHealthTracker, SlidingWindowCounter::new);
+    }
+
+    /**
+     * Configures a new ServiceHealthRequestHandler object that uses a user supplied counter
+     * implementation. For example, clients shared by many threads may prefer the
+     * contention-free StripedSlidingWindowCounter:
+     *
+     * new ServiceHealthRequestHandler(0.5, 5, tracker, StripedSlidingWindowCounter::new)
+     *
+     * @param errorRateThreshold The percentage (between 0-1) or failed requests before ServiceHealthTracker reports service as unhealthy.
+     * @param minRequests The minimum number of requests/retries to consider before evaluating the service health
+     * @param serviceHealthTracker the ServiceHealthTracker that encapsulates the health of the service used by the SDK client
+     * @param counterFactory creates a WindowCounter given an interval expressed in minutes
+     */
+    public ServiceHealthRequestHandler(double errorRateThreshold, int minRequests, ServiceHealthTracker serviceHealthTracker,
+                                       IntFunction<WindowCounter> counterFactory) {
+        this(HealthPolicy.of(errorRateThreshold, minRequests), serviceHealthTracker, counterFactory);
+    }
+
+    /**
+     * Configures a new ServiceHealthRequestHandler that applies the supplied policy, for
+     * example to keep the service from flapping between HEALTHY and UNHEALTHY while the
+     * error rate hovers around a single threshold.
+     *
+     * @param policy decides when the service becomes unhealthy and when it recovers
+     * @param serviceHealthTracker the ServiceHealthTracker that encapsulates the health of the service used by the SDK client
+     */
+    public ServiceHealthRequestHandler(HealthPolicy policy, ServiceHealthTracker serviceHealthTracker) {
+        this(policy, serviceHealthTracker, SlidingWindowCounter::new);
+    }
+
+    /**
+     * Configures a new ServiceHealthRequestHandler that applies the supplied policy and
+     * uses a user supplied counter implementation.
+     *
+     * @param policy decides when the service becomes unhealthy and when it recovers
+     * @param serviceHealthTracker the ServiceHealthTracker that encapsulates the health of the service used by the SDK client
+     * @param counterFactory creates a WindowCounter given an interval expressed in minutes
+     */
+    public ServiceHealthRequestHandler(HealthPolicy policy, ServiceHealthTracker serviceHealthTracker,
+                                       IntFunction<WindowCounter> counterFactory) {
+        this(policy, serviceHealthTracker, DEFAULT_METRIC_INTERVAL_MINUTES, counterFactory, System::nanoTime);
+    }
+
+    /**
+     * Configures a new ServiceHealthRequestHandler that counts attempts over the supplied
+     * interval and reads time from the supplied clock, for example the virtual clock of
+     * a ReplayEngine. The counters created by the factory should read the same clock.
+     *
+     * @param policy decides when the service becomes unhealthy and when it recovers
+     * @param serviceHealthTracker the ServiceHealthTracker that encapsulates the health of the service used by the SDK client
+     * @param metricIntervalMin the length of the window over which attempts are counted, in minutes
+     * @param counterFactory creates a WindowCounter given an interval expressed in minutes
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public ServiceHealthRequestHandler(HealthPolicy policy, ServiceHealthTracker serviceHealthTracker, int metricIntervalMin,
+                                       IntFunction<WindowCounter> counterFactory, LongSupplier nanoClock) {
+        if (counterFactory == null || nanoClock == null) {
+            throw new IllegalArgumentException("'counterFactory' and 'nanoClock' parameters cannot be null");
+        }
+
+        if (metricIntervalMin <= 0) {
+            throw new IllegalArgumentException("'metricIntervalMin' must be a positive integer");
+        }
+
+        this.metricInterval = metricIntervalMin;
+        this.healthWindow = new ServiceHealthWindow(policy, serviceHealthTracker,
+                () -> counterFactory.apply(metricIntervalMin), nanoClock);
+        this.attemptTimer = policy.getLatencyRules().isEmpty() ? null
+                : new AttemptTimer("ServiceHealth", nanoClock);
+        this.errorLog = new ErrorLogSummarizer(log, ErrorLogSummarizer.DEFAULT_SUMMARY_INTERVAL_SECONDS,
+                TimeUnit.SECONDS, nanoClock);
+    }
+
+    /**
+     * Overrides the beforeRequest method to prepare the request for timing, when the
+     * policy has latency rules
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        if (attemptTimer != null) attemptTimer.prepare(request);
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt, when the policy
+     * has latency rules
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        if (attemptTimer != null) attemptTimer.start(context.getRequest());
     }
 
     /**
@@ -53,33 +166,34 @@ public class ServiceHealthRequestHandler extends RequestHandler2 {
      */
     public void afterAttempt(HandlerAfterAttemptContext context) {
         Exception ex = context.getException();
-        int evtCnt = eventCount.increment();
-        int errCnt = errorCount.getCountPerInterval();
+        long latencyNanos = attemptTimer == null ? -1 : attemptTimer.stop(context.getRequest());
 
-        String serviceName = context.getRequest().getServiceName();
-        String requestURL = context.getRequest().getEndpoint().getHost();
+        // attempts rejected by another handler never reached the service
+        if (ex instanceof RequestRejectedException) return;
 
         if (ex != null) {
-            errCnt = errorCount.increment();
-
-            String exceptionName = ex.getClass().getSimpleName();
-            String operationName = context.getRequest().getOriginalRequest().getClass().getSimpleName();
-
-            String errorMessage = String.format("Error attempting %s %s operation using URL: %s. Caused by: %s",
-                    serviceName, operationName, requestURL, exceptionName);
+            errorLog.recordFailure(context.getRequest(), ex);
+        } else {
+            errorLog.summarizeIfDue();
+        }
 
-            log.warn(errorMessage);
+        if (healthWindow.record(ex != null, latencyNanos) && log.isWarnEnabled()) {
+            logTransition(context.getRequest().getServiceName());
         }
+    }
 
-        double errorRate = (double) errCnt / (double) evtCnt;
+    private void logTransition(String serviceName) {
+        LatencyRule violated = healthWindow.getViolatedLatencyRule();
 
-        if ((evtCnt > minRequests) && (errorRate > errorRateThreshold)) {
+        if (violated != null && healthWindow.getEvaluatedErrorRate() <= healthWindow.getErrorRateThreshold()) {
             log.warn(String.format(
-                    "Excessive errors detected from %s: current error rate: %.2f, error rate threshold: %.2f. Service is considered unhealthy",
-                    serviceName, errorRate, errorRateThreshold));
-            serviceHealthTracker.setUnhealthy();
-        } else {
-            serviceHealthTracker.setHealthy();
+                    "Slow responses detected from %s: %s, current p99 attempt latency: %dms. Service is considered unhealthy",
+                    serviceName, violated, TimeUnit.NANOSECONDS.toMillis(healthWindow.getLatencySnapshot().getP99())));
+            return;
         }
+
+        log.warn(String.format(
+                "Excessive errors detected from %s: current error rate: %.2f, error rate threshold: %.2f. Service is considered unhealthy",
+                serviceName, healthWindow.getEvaluatedErrorRate(), healthWindow.getErrorRateThreshold()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,393 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of the RequestHandler2 class that aggregates attempts per transfer
+ * rather than per operation. A TransferManager upload or download fans out into many
+ * parallel part requests, and this handler rolls their attempts, retries, failures,
+ * latency and concurrency up to the object being transferred.
+ *
+ * By default, S3 multipart and ranged requests are grouped by bucket and key, which
+ * covers multipart uploads and copies, and parallel downloads. Requests that do not
+ * belong to a transfer are ignored. Every counter is updated without locks, so many part attempts
+ * of the same transfer can complete at once.
+ *
+ * Transfers are kept until removeTransfer() is called, usually once the transfer is
+ * done. When more than maxTransfers are tracked, one thread evicts the tenth of the
+ * transfers idle for the longest time, so the cost of the eviction is spread over the
+ * transfers that are added until the next one. Each transfer keeps its own
+ * LatencyHistogram, about 9KB, so maxTransfers also bounds the memory used.
+ */
+public class TransferMetricsRequestHandler extends RequestHandler2 {
+
+    public static final int DEFAULT_MAX_TRANSFERS = 1_000;
+
+    // the fraction of maxTransfers evicted at once
+    private static final int EVICTION_DIVISOR = 10;
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final Function<AmazonWebServiceRequest, String> transferKey;
+    private final int maxTransfers;
+    private final LongSupplier nanoClock;
+    private final HandlerContextKey<RequestState> requestState;
+    private final ConcurrentHashMap<String, TransferMetrics> transfers = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /**
+     * Constructs a new handler that groups S3 requests by bucket and key
+     */
+    public TransferMetricsRequestHandler() {
+        this(TransferMetricsRequestHandler::s3TransferKey, DEFAULT_MAX_TRANSFERS, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new handler that groups requests with the supplied function
+     *
+     * @param transferKey returns the key of the transfer a request belongs to, or null if it belongs to none
+     * @param maxTransfers the maximum number of transfers tracked at once
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public TransferMetricsRequestHandler(Function<AmazonWebServiceRequest, String> transferKey, int maxTransfers,
+                                         LongSupplier nanoClock) {
+        if (transferKey == null || nanoClock == null) {
+            throw new IllegalArgumentException("'transferKey' and 'nanoClock' parameters cannot be null");
+        }
+
+        if (maxTransfers <= 0) {
+            throw new IllegalArgumentException("'maxTransfers' must be a positive integer");
+        }
+
+        this.transferKey = transferKey;
+        this.maxTransfers = maxTransfers;
+        this.nanoClock = nanoClock;
+        // context keys are compared by name, see AttemptTimer
+        this.requestState = new HandlerContextKey<>("TransferMetrics#" + instances.incrementAndGet());
+    }
+
+    /**
+     * Groups the multipart and ranged requests of S3 by bucket and key. Whole object
+     * GET, PUT, HEAD and copy requests are single requests rather than transfers, and are
+     * not tracked, so that a client reading or writing many distinct objects does not
+     * fill the map of transfers.
+     *
+     * @param request the original SDK request
+     * @return "bucket/key", or null if the request is not part of a transfer
+     */
+    public static String s3TransferKey(AmazonWebServiceRequest request) {
+        if (request instanceof UploadPartRequest) {
+            return keyOf(((UploadPartRequest) request).getBucketName(), ((UploadPartRequest) request).getKey());
+        } else if (request instanceof GetObjectRequest) {
+            GetObjectRequest get = (GetObjectRequest) request;
+            // parallel downloads fetch one range, or one part number, per request
+            if (get.getRange() == null && get.getPartNumber() == null) return null;
+            return keyOf(get.getBucketName(), get.getKey());
+        } else if (request instanceof InitiateMultipartUploadRequest) {
+            InitiateMultipartUploadRequest initiate = (InitiateMultipartUploadRequest) request;
+            return keyOf(initiate.getBucketName(), initiate.getKey());
+        } else if (request instanceof CompleteMultipartUploadRequest) {
+            CompleteMultipartUploadRequest complete = (CompleteMultipartUploadRequest) request;
+            return keyOf(complete.getBucketName(), complete.getKey());
+        } else if (request instanceof AbortMultipartUploadRequest) {
+            return keyOf(((AbortMultipartUploadRequest) request).getBucketName(), ((AbortMultipartUploadRequest) request).getKey());
+        } else if (request instanceof CopyPartRequest) {
+            CopyPartRequest copy = (CopyPartRequest) request;
+            return keyOf(copy.getDestinationBucketName(), copy.getDestinationKey());
+        }
+        return null;
+    }
+
+    private static String keyOf(String bucketName, String key) {
+        return bucketName == null || key == null ? null : bucketName + "/" + key;
+    }
+
+    /**
+     * Overrides the beforeRequest method to count the request against its transfer
+     *
+     * @param request the SDK request about to be executed
+     */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        String key = transferKey.apply(request.getOriginalRequest());
+        if (key == null) return;
+
+        TransferMetrics transfer = transferFor(key);
+        transfer.requests.increment();
+        request.addHandlerContext(requestState, new RequestState(transfer));
+    }
+
+    /**
+     * Overrides the beforeAttempt method to start timing the attempt
+     *
+     * @param context the SDK supplied HandlerBeforeAttemptContext object
+     */
+    @Override
+    public void beforeAttempt(HandlerBeforeAttemptContext context) {
+        RequestState state = context.getRequest().getHandlerContext(requestState);
+        if (state == null) return;
+
+        state.startNanos = nanoClock.getAsLong();
+        if (state.attempts++ > 0) state.transfer.retries.increment();
+        state.transfer.attemptStarted(state.startNanos);
+    }
+
+    /**
+     * Overrides the afterAttempt method to record the outcome of the attempt
+     *
+     * @param context the SDK supplied HandlerAfterAttemptContext object
+     */
+    @Override
+    public void afterAttempt(HandlerAfterAttemptContext context) {
+        Request<?> request = context.getRequest();
+        RequestState state = request == null ? null : request.getHandlerContext(requestState);
+        if (state == null || state.startNanos == Long.MIN_VALUE) return;
+
+        long now = nanoClock.getAsLong();
+        long duration = now - state.startNanos;
+        state.startNanos = Long.MIN_VALUE;
+
+        state.transfer.attemptEnded(now, duration, context.getException());
+    }
+
+    /**
+     * @param key the key of the transfer, for example "bucket/key"
+     * @return the metrics of the transfer, or null if it is not tracked
+     */
+    public TransferMetrics getTransfer(String key) {
+        return transfers.get(key);
+    }
+
+    /**
+     * Stops tracking a transfer, usually once it is done
+     *
+     * @param key the key of the transfer, for example "bucket/key"
+     * @return the final metrics of the transfer, or null if it was not tracked
+     */
+    public TransferMetrics removeTransfer(String key) {
+        return transfers.remove(key);
+    }
+
+    /**
+     * Visits the metrics of every tracked transfer
+     *
+     * @param consumer receives the metrics of each transfer
+     */
+    public void forEachTransfer(Consumer<TransferMetrics> consumer) {
+        transfers.values().forEach(consumer);
+    }
+
+    /**
+     * @return the number of transfers tracked
+     */
+    public int getTransferCount() {
+        return transfers.size();
+    }
+
+    private TransferMetrics transferFor(String key) {
+        TransferMetrics transfer = transfers.get(key);
+        if (transfer != null) return transfer;
+
+        transfer = transfers.computeIfAbsent(key, k -> new TransferMetrics(k, nanoClock.getAsLong()));
+        if (transfers.size() > maxTransfers && evicting.compareAndSet(false, true)) {
+            try {
+                evictIdlest(transfer);
+            } finally {
+                evicting.set(false);
+            }
+        }
+        return transfer;
+    }
+
+    private void evictIdlest(TransferMetrics keep) {
+        // idle times are read once, as they change while the transfers are sorted
+        long now = nanoClock.getAsLong();
+        List<IdleTransfer> idle = new ArrayList<>(transfers.size());
+        for (TransferMetrics transfer : transfers.values()) {
+            if (transfer == keep || transfer.getInFlight() > 0) continue;
+            idle.add(new IdleTransfer(transfer, now - transfer.lastActivityNanos.get()));
+        }
+
+        // evict down to a tenth below the limit, so the next eviction is that many new transfers away
+        int excess = transfers.size() - maxTransfers + Math.max(1, maxTransfers / EVICTION_DIVISOR);
+        if (idle.size() > excess) {
+            idle.sort(Comparator.comparingLong((IdleTransfer transfer) -> transfer.idleNanos).reversed());
+        }
+
+        for (int i = 0; i < idle.size() && i < excess; i++) {
+            TransferMetrics transfer = idle.get(i).transfer;
+            transfers.remove(transfer.key, transfer);
+        }
+    }
+
+    private static final class IdleTransfer {
+        final TransferMetrics transfer;
+        final long idleNanos;
+
+        IdleTransfer(TransferMetrics transfer, long idleNanos) {
+            this.transfer = transfer;
+            this.idleNanos = idleNanos;
+        }
+    }
+
+    private static final class RequestState {
+        final TransferMetrics transfer;
+        long startNanos = Long.MIN_VALUE;
+        int attempts;
+
+        RequestState(TransferMetrics transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+    /**
+     * The attempts of one transfer
+     */
+    public static final class TransferMetrics {
+        private final String key;
+        private final long createdNanos;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder attempts = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final ConcurrentHashMap<Class<?>, LongAdder> errors = new ConcurrentHashMap<>();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final AtomicLong lastActivityNanos;
+
+        TransferMetrics(String key, long createdNanos) {
+            this.key = key;
+            this.createdNanos = createdNanos;
+            this.lastActivityNanos = new AtomicLong(createdNanos);
+        }
+
+        private void attemptStarted(long now) {
+            int current = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(current, Math::max);
+            lastActivityNanos.set(now);
+        }
+
+        private void attemptEnded(long now, long duration, Exception ex) {
+            inFlight.decrementAndGet();
+            attempts.increment();
+            lastActivityNanos.set(now);
+
+            if (ex != null) {
+                failures.increment();
+                LongAdder count = errors.get(ex.getClass());
+                if (count == null) {
+                    count = errors.computeIfAbsent(ex.getClass(), k -> new LongAdder());
+                }
+                count.increment();
+            }
+
+            // attempts rejected by a handler never reached the service
+            if (!(ex instanceof RequestRejectedException)) latency.record(duration);
+        }
+
+        /**
+         * @return the key of the transfer, for example "bucket/key"
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the number of requests, for example one per part plus the requests that start and complete the upload
+         */
+        public long getRequestCount() {
+            return requests.sum();
+        }
+
+        /**
+         * @return the number of completed attempts, including retries
+         */
+        public long getAttemptCount() {
+            return attempts.sum();
+        }
+
+        /**
+         * @return the number of attempts that were retries of an earlier attempt
+         */
+        public long getRetryCount() {
+            return retries.sum();
+        }
+
+        /**
+         * @return the number of failed attempts
+         */
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        /**
+         * @return the number of failed attempts by exception class
+         */
+        public Map<Class<?>, Long> getErrorCounts() {
+            Map<Class<?>, Long> counts = new HashMap<>();
+            errors.forEach((exception, count) -> counts.put(exception, count.sum()));
+            return counts;
+        }
+
+        /**
+         * @return the latency of the attempts that reached the service
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the number of attempts in flight
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @return the largest number of attempts that were in flight at once
+         */
+        public int getPeakInFlight() {
+            return peakInFlight.get();
+        }
+
+        /**
+         * @return the time from the first request of the transfer to its latest attempt, in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return lastActivityNanos.get() - createdNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d requests, %d attempts, %d retries, %d failed, peak concurrency %d",
+                    key, getRequestCount(), getAttemptCount(), getRetryCount(), getFailureCount(), getPeakInFlight());
+        }
+    }
+}
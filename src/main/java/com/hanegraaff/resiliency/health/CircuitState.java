@@ -0,0 +1,7 @@
+package com.hanegraaff.resiliency.health;
+
+public enum CircuitState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+}
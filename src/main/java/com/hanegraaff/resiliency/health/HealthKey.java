@@ -0,0 +1,59 @@
+package com.hanegraaff.resiliency.health;
+
+import java.util.Objects;
+
+/**
+ * Identifies the health tracked for one operation of an AWS service on one endpoint,
+ * for example: Amazon S3 / s3.us-west-2.amazonaws.com / PutObjectRequest
+ */
+public final class HealthKey {
+
+    /**
+     * The key used for the combinations that could not be tracked on their own
+     * because the registry reached its maximum number of entries.
+     */
+    public static final HealthKey OVERFLOW = new HealthKey("*", "*", "*");
+
+    private final String serviceName;
+    private final String endpointHost;
+    private final String operationName;
+
+    public HealthKey(String serviceName, String endpointHost, String operationName) {
+        this.serviceName = serviceName;
+        this.endpointHost = endpointHost;
+        this.operationName = operationName;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getEndpointHost() {
+        return endpointHost;
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HealthKey)) return false;
+
+        HealthKey other = (HealthKey) o;
+        return Objects.equals(serviceName, other.serviceName)
+                && Objects.equals(endpointHost, other.endpointHost)
+                && Objects.equals(operationName, other.operationName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serviceName, endpointHost, operationName);
+    }
+
+    @Override
+    public String toString() {
+        return serviceName + "/" + endpointHost + "/" + operationName;
+    }
+}
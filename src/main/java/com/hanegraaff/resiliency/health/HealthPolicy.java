@@ -0,0 +1,259 @@
+package com.hanegraaff.resiliency.health;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes when a ServiceHealthWindow moves a service between HEALTHY and UNHEALTHY.
+ *
+ * A single threshold makes the state flip on every attempt while the error rate hovers
+ * around it. A policy can instead use:
+ *
+ * 1. Separate trip and recover thresholds. The service becomes unhealthy when the error
+ *    rate exceeds tripThreshold, and only recovers once it drops to recoverThreshold.
+ * 2. A minimum dwell time in each state. No transition happens until the service has
+ *    been in its current state for at least that long.
+ * 3. EWMA smoothing of the error rate, so that short bursts of errors are dampened.
+ *
+ * A policy can also include LatencyRules, so that a service answering every call
+ * successfully but slowly is considered unhealthy as well.
+ *
+ * For example:
+ *
+ * HealthPolicy.builder().withTripThreshold(0.5).withRecoverThreshold(0.2).
+ *         withMinRequests(20).withMinDwell(30, TimeUnit.SECONDS).
+ *         withEwmaHalfLife(10, TimeUnit.SECONDS).build();
+ *
+ * HealthPolicy.of(threshold, minRequests) describes the original behavior, with a single
+ * threshold, no dwell time and no smoothing.
+ */
+public final class HealthPolicy {
+
+    private final double tripThreshold;
+    private final double recoverThreshold;
+    private final int minRequests;
+    private final long minHealthyDwellNanos;
+    private final long minUnhealthyDwellNanos;
+    private final long ewmaHalfLifeNanos;
+    private final List<LatencyRule> latencyRules;
+
+    private HealthPolicy(Builder builder, double recoverThreshold) {
+        this.tripThreshold = builder.tripThreshold;
+        this.recoverThreshold = recoverThreshold;
+        this.minRequests = builder.minRequests;
+        this.minHealthyDwellNanos = builder.minHealthyDwellNanos;
+        this.minUnhealthyDwellNanos = builder.minUnhealthyDwellNanos;
+        this.ewmaHalfLifeNanos = builder.ewmaHalfLifeNanos;
+        this.latencyRules = Collections.unmodifiableList(new ArrayList<>(builder.latencyRules));
+    }
+
+    /**
+     * Creates a policy with a single threshold, no dwell time and no smoothing
+     *
+     * @param errorRateThreshold The percentage (between 0-1) or failed requests before the service is considered unhealthy.
+     * @param minRequests The minimum number of requests/retries to consider before evaluating the service health
+     * @return the policy
+     */
+    public static HealthPolicy of(double errorRateThreshold, int minRequests) {
+        return builder().withTripThreshold(errorRateThreshold).withMinRequests(minRequests).build();
+    }
+
+    /**
+     * @return a new builder. Unless set, the recover threshold defaults to the trip threshold.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the error rate above which a healthy service becomes unhealthy
+     */
+    public double getTripThreshold() {
+        return tripThreshold;
+    }
+
+    /**
+     * @return the error rate at or below which an unhealthy service recovers
+     */
+    public double getRecoverThreshold() {
+        return recoverThreshold;
+    }
+
+    /**
+     * @return the minimum number of attempts in the window before the service can become unhealthy
+     */
+    public int getMinRequests() {
+        return minRequests;
+    }
+
+    /**
+     * @return how long, in nanoseconds, the service stays healthy before it can become unhealthy
+     */
+    public long getMinHealthyDwellNanos() {
+        return minHealthyDwellNanos;
+    }
+
+    /**
+     * @return how long, in nanoseconds, the service stays unhealthy before it can recover
+     */
+    public long getMinUnhealthyDwellNanos() {
+        return minUnhealthyDwellNanos;
+    }
+
+    /**
+     * @return the half life of the error rate smoothing in nanoseconds, or 0 if it is disabled
+     */
+    public long getEwmaHalfLifeNanos() {
+        return ewmaHalfLifeNanos;
+    }
+
+    /**
+     * @return the latency rules of this policy, which may be empty
+     */
+    public List<LatencyRule> getLatencyRules() {
+        return latencyRules;
+    }
+
+    /**
+     * @param state the current state of the service
+     * @return the minimum time, in nanoseconds, spent in that state before leaving it
+     */
+    long getMinDwellNanos(ServiceHealthState state) {
+        return state == ServiceHealthState.UNHEALTHY ? minUnhealthyDwellNanos : minHealthyDwellNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HealthPolicy(trip=%.2f, recover=%.2f, minRequests=%d, healthyDwell=%dms, unhealthyDwell=%dms, ewmaHalfLife=%dms, latencyRules=%s)",
+                tripThreshold, recoverThreshold, minRequests,
+                TimeUnit.NANOSECONDS.toMillis(minHealthyDwellNanos), TimeUnit.NANOSECONDS.toMillis(minUnhealthyDwellNanos),
+                TimeUnit.NANOSECONDS.toMillis(ewmaHalfLifeNanos), latencyRules);
+    }
+
+    /**
+     * Builds HealthPolicy objects
+     */
+    public static class Builder {
+        private double tripThreshold;
+        private Double recoverThreshold;
+        private int minRequests;
+        private long minHealthyDwellNanos;
+        private long minUnhealthyDwellNanos;
+        private long ewmaHalfLifeNanos;
+        private final List<LatencyRule> latencyRules = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param tripThreshold the error rate (between 0-1) above which the service becomes unhealthy
+         * @return this builder
+         */
+        public Builder withTripThreshold(double tripThreshold) {
+            this.tripThreshold = tripThreshold;
+            return this;
+        }
+
+        /**
+         * @param recoverThreshold the error rate (between 0-1) at or below which the service recovers
+         * @return this builder
+         */
+        public Builder withRecoverThreshold(double recoverThreshold) {
+            this.recoverThreshold = recoverThreshold;
+            return this;
+        }
+
+        /**
+         * @param minRequests the minimum number of requests/retries to consider before evaluating the service health
+         * @return this builder
+         */
+        public Builder withMinRequests(int minRequests) {
+            this.minRequests = minRequests;
+            return this;
+        }
+
+        /**
+         * Sets the same minimum dwell time for both states
+         *
+         * @param duration the minimum time spent in a state before leaving it
+         * @param unit the time unit of duration
+         * @return this builder
+         */
+        public Builder withMinDwell(long duration, TimeUnit unit) {
+            return withMinHealthyDwell(duration, unit).withMinUnhealthyDwell(duration, unit);
+        }
+
+        /**
+         * @param duration the minimum time the service stays healthy before it can become unhealthy.
+         *                 This also applies right after the tracker is created.
+         * @param unit the time unit of duration
+         * @return this builder
+         */
+        public Builder withMinHealthyDwell(long duration, TimeUnit unit) {
+            this.minHealthyDwellNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @param duration the minimum time the service stays unhealthy before it can recover
+         * @param unit the time unit of duration
+         * @return this builder
+         */
+        public Builder withMinUnhealthyDwell(long duration, TimeUnit unit) {
+            this.minUnhealthyDwellNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Enables EWMA smoothing of the error rate. After one half life, the smoothed rate
+         * has covered half the distance to the error rate of the window.
+         *
+         * @param halfLife the half life of the smoothing, or 0 to disable it
+         * @param unit the time unit of halfLife
+         * @return this builder
+         */
+        public Builder withEwmaHalfLife(long halfLife, TimeUnit unit) {
+            this.ewmaHalfLifeNanos = unit.toNanos(halfLife);
+            return this;
+        }
+
+        /**
+         * Adds a latency rule. The service becomes unhealthy when the error rate or any
+         * of the latency rules is violated, and only recovers when none of them are.
+         *
+         * @param latencyRule the rule to add
+         * @return this builder
+         */
+        public Builder withLatencyRule(LatencyRule latencyRule) {
+            if (latencyRule == null) {
+                throw new IllegalArgumentException("'latencyRule' parameter cannot be null");
+            }
+
+            this.latencyRules.add(latencyRule);
+            return this;
+        }
+
+        /**
+         * @return the configured policy
+         */
+        public HealthPolicy build() {
+            double recover = recoverThreshold == null ? tripThreshold : recoverThreshold;
+
+            if (tripThreshold < 0 || tripThreshold > 1 || recover < 0 || recover > 1) {
+                throw new IllegalArgumentException("'tripThreshold' and 'recoverThreshold' parameters are out of range. Must be between 0 and 1");
+            }
+
+            if (recover > tripThreshold) {
+                throw new IllegalArgumentException("'recoverThreshold' cannot be greater than 'tripThreshold'");
+            }
+
+            if (minHealthyDwellNanos < 0 || minUnhealthyDwellNanos < 0 || ewmaHalfLifeNanos < 0) {
+                throw new IllegalArgumentException("dwell times and 'ewmaHalfLife' cannot be negative");
+            }
+
+            return new HealthPolicy(this, recover);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.hanegraaff.resiliency.health;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A latency rule of a HealthPolicy. The rule is violated when more than
+ * maxFractionAbove of the attempts made during the window took longer than threshold.
+ *
+ * A percentile rule, such as "p99 above 2 seconds", is the same as "more than 1% of
+ * the attempts slower than 2 seconds", so both kinds of rules are expressed this way.
+ * This lets the window evaluate rules by counting slow attempts, which costs the same
+ * on every attempt no matter how many attempts the window holds.
+ */
+public final class LatencyRule {
+
+    private final long thresholdNanos;
+    private final double maxFractionAbove;
+
+    private LatencyRule(long thresholdNanos, double maxFractionAbove) {
+        this.thresholdNanos = thresholdNanos;
+        this.maxFractionAbove = maxFractionAbove;
+    }
+
+    /**
+     * Creates a rule that is violated when the given percentile of attempt latency
+     * is above the threshold. For example percentileAbove(99, 2, TimeUnit.SECONDS)
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @param threshold the latency the percentile must not exceed
+     * @param unit the time unit of threshold
+     * @return the rule
+     */
+    public static LatencyRule percentileAbove(double percentile, long threshold, TimeUnit unit) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("'percentile' parameter is out of range. Must be between 0 and 100");
+        }
+
+        return fractionAbove((100 - percentile) / 100, threshold, unit);
+    }
+
+    /**
+     * Creates a rule that is violated when more than the given fraction of attempts
+     * are slower than the threshold. For example fractionAbove(0.1, 500, TimeUnit.MILLISECONDS)
+     *
+     * @param maxFractionAbove the fraction of attempts (between 0-1) allowed to be slower than threshold
+     * @param threshold the latency an attempt is slow above
+     * @param unit the time unit of threshold
+     * @return the rule
+     */
+    public static LatencyRule fractionAbove(double maxFractionAbove, long threshold, TimeUnit unit) {
+        if (maxFractionAbove < 0 || maxFractionAbove >= 1) {
+            throw new IllegalArgumentException("'maxFractionAbove' parameter is out of range. Must be between 0 and 1");
+        }
+
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("'threshold' must be a positive integer");
+        }
+
+        return new LatencyRule(unit.toNanos(threshold), maxFractionAbove);
+    }
+
+    /**
+     * @return the latency, in nanoseconds, above which an attempt is slow
+     */
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * @return the fraction of attempts allowed to be slow
+     */
+    public double getMaxFractionAbove() {
+        return maxFractionAbove;
+    }
+
+    /**
+     * @param attemptCount the number of attempts
+     * @param slowCount the number of attempts slower than the threshold
+     * @return true if these counts violate the rule
+     */
+    boolean isViolated(int attemptCount, int slowCount) {
+        return attemptCount > 0 && (double) slowCount / attemptCount > maxFractionAbove;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("more than %.1f%% of attempts slower than %dms", maxFractionAbove * 100,
+                TimeUnit.NANOSECONDS.toMillis(thresholdNanos));
+    }
+}
@@ -0,0 +1,22 @@
+package com.hanegraaff.resiliency.health;
+
+/**
+ * Receives the transitions of a ServiceHealthTracker. Listeners are registered with an
+ * Executor and are always invoked on it, never on the SDK thread that caused the
+ * transition.
+ *
+ * Because notifications are dispatched asynchronously, they may be delivered out of
+ * order. The transition count of the snapshots can be used to discard stale ones.
+ */
+@FunctionalInterface
+public interface ServiceHealthListener {
+
+    /**
+     * Invoked after the tracker moved from one state to another
+     *
+     * @param tracker the tracker that changed state
+     * @param previous the state before the transition
+     * @param current the state after the transition
+     */
+    void onTransition(ServiceHealthTracker tracker, ServiceHealthTracker.Snapshot previous, ServiceHealthTracker.Snapshot current);
+}
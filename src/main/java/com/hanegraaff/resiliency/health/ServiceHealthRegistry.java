@@ -0,0 +1,419 @@
+package com.hanegraaff.resiliency.health;
+
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks the health of every service, endpoint host and operation combination seen by
+ * a client separately, so that a throttled PutObject on one endpoint does not mark
+ * healthy GetObject traffic elsewhere as unhealthy. Each combination gets its own
+ * ServiceHealthWindow and ServiceHealthTracker, using the same HealthPolicy.
+ *
+ * Entries are stored in nested concurrent maps (service, then endpoint host, then
+ * operation class), so recording an attempt for a combination that has been seen
+ * before does not allocate. The number of entries is bounded: once maxEntries is
+ * reached, new combinations are tracked together under HealthKey.OVERFLOW, without
+ * adding maps for their service or endpoint. Entries that see no attempts for
+ * idleEvictionMs are evicted, along with the maps they leave empty.
+ */
+public class ServiceHealthRegistry {
+
+    private static final String UNKNOWN = "unknown";
+
+    /**
+     * How often the last access time of an entry is refreshed, to avoid writing
+     * to shared memory on every attempt
+     */
+    private static final long ACCESS_RESOLUTION_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final HealthPolicy policy;
+    private final int maxEntries;
+    private final long idleEvictionNanos;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, Entry>>> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong nextEviction;
+    private volatile Entry overflow;
+
+    final int metricInterval = 5;
+
+    /**
+     * Creates a registry that tracks up to 1000 combinations and evicts the ones that
+     * have been idle for 30 minutes
+     *
+     * @param errorRateThreshold The percentage (between 0-1) or failed requests before a combination is considered unhealthy.
+     * @param minRequests The minimum number of requests/retries to consider before evaluating the health of a combination
+     */
+    public ServiceHealthRegistry(double errorRateThreshold, int minRequests) {
+        this(errorRateThreshold, minRequests, 1000, TimeUnit.MINUTES.toMillis(30));
+    }
+
+    /**
+     * Creates a registry with the supplied parameters
+     *
+     * @param errorRateThreshold The percentage (between 0-1) or failed requests before a combination is considered unhealthy.
+     * @param minRequests The minimum number of requests/retries to consider before evaluating the health of a combination
+     * @param maxEntries the maximum number of combinations tracked separately
+     * @param idleEvictionMs how long a combination can go without attempts before it is evicted
+     */
+    public ServiceHealthRegistry(double errorRateThreshold, int minRequests, int maxEntries, long idleEvictionMs) {
+        this(errorRateThreshold, minRequests, maxEntries, idleEvictionMs, System::nanoTime);
+    }
+
+    /**
+     * Creates a registry that reads time from the supplied clock. This constructor
+     * exists mainly to facilitate testing.
+     *
+     * @param errorRateThreshold The percentage (between 0-1) or failed requests before a combination is considered unhealthy.
+     * @param minRequests The minimum number of requests/retries to consider before evaluating the health of a combination
+     * @param maxEntries the maximum number of combinations tracked separately
+     * @param idleEvictionMs how long a combination can go without attempts before it is evicted
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public ServiceHealthRegistry(double errorRateThreshold, int minRequests, int maxEntries, long idleEvictionMs,
+                                 LongSupplier nanoClock) {
+        this(HealthPolicy.of(errorRateThreshold, minRequests), maxEntries, idleEvictionMs, nanoClock);
+    }
+
+    /**
+     * Creates a registry that applies the supplied policy to every combination
+     *
+     * @param policy decides when a combination becomes unhealthy and when it recovers
+     * @param maxEntries the maximum number of combinations tracked separately
+     * @param idleEvictionMs how long a combination can go without attempts before it is evicted
+     */
+    public ServiceHealthRegistry(HealthPolicy policy, int maxEntries, long idleEvictionMs) {
+        this(policy, maxEntries, idleEvictionMs, System::nanoTime);
+    }
+
+    /**
+     * Creates a registry that applies the supplied policy and reads time from the
+     * supplied clock. This constructor exists mainly to facilitate testing.
+     *
+     * @param policy decides when a combination becomes unhealthy and when it recovers
+     * @param maxEntries the maximum number of combinations tracked separately
+     * @param idleEvictionMs how long a combination can go without attempts before it is evicted
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public ServiceHealthRegistry(HealthPolicy policy, int maxEntries, long idleEvictionMs, LongSupplier nanoClock) {
+        if (policy == null) {
+            throw new IllegalArgumentException("'policy' parameter cannot be null");
+        }
+
+        if (maxEntries <= 0 || idleEvictionMs <= 0) {
+            throw new IllegalArgumentException("'maxEntries' and 'idleEvictionMs' must be positive integers");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.policy = policy;
+        this.maxEntries = maxEntries;
+        this.idleEvictionNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictionMs);
+        this.nanoClock = nanoClock;
+        this.nextEviction = new AtomicLong(nanoClock.getAsLong() + idleEvictionNanos / 2);
+    }
+
+    /**
+     * Records the outcome of an attempt for a service, endpoint and operation
+     *
+     * @param serviceName the name of the AWS service, for example "Amazon S3"
+     * @param endpointHost the host the attempt was sent to
+     * @param operation the class of the original SDK request, for example PutObjectRequest
+     * @param failed true if the attempt failed
+     * @return true if this attempt made the combination unhealthy
+     */
+    public boolean record(String serviceName, String endpointHost, Class<?> operation, boolean failed) {
+        return record(serviceName, endpointHost, operation, failed, -1);
+    }
+
+    /**
+     * Records the outcome and the latency of an attempt for a service, endpoint and operation
+     *
+     * @param serviceName the name of the AWS service, for example "Amazon S3"
+     * @param endpointHost the host the attempt was sent to
+     * @param operation the class of the original SDK request, for example PutObjectRequest
+     * @param failed true if the attempt failed
+     * @param latencyNanos how long the attempt took, or a negative value if it was not measured
+     * @return true if this attempt made the combination unhealthy
+     */
+    public boolean record(String serviceName, String endpointHost, Class<?> operation, boolean failed, long latencyNanos) {
+        long now = nanoClock.getAsLong();
+        Entry entry = entryFor(serviceName, endpointHost, operation, now);
+
+        if (now - entry.lastAccessNanos > ACCESS_RESOLUTION_NANOS) {
+            entry.lastAccessNanos = now;
+        }
+
+        boolean transition = entry.window.record(failed, latencyNanos);
+        evictIfDue(now);
+        return transition;
+    }
+
+    /**
+     * Returns the health of a single combination. Combinations that were never seen,
+     * or have been evicted, are reported as HEALTHY.
+     *
+     * @param serviceName the name of the AWS service
+     * @param endpointHost the endpoint host
+     * @param operation the class of the original SDK request
+     * @return the health of the combination
+     */
+    public ServiceHealthState getHealthState(String serviceName, String endpointHost, Class<?> operation) {
+        Entry entry = find(serviceName, endpointHost, operation);
+        return entry == null ? ServiceHealthState.HEALTHY : entry.window.getServiceHealthTracker().getHealthState();
+    }
+
+    /**
+     * Returns the health of a single combination
+     *
+     * @param key the combination to look up
+     * @return the window tracking the combination, or null if it is not tracked
+     */
+    public ServiceHealthWindow getWindow(HealthKey key) {
+        for (Entry entry : allEntries()) {
+            if (entry.key.equals(key)) return entry.window;
+        }
+        return null;
+    }
+
+    /**
+     * @return the health of every tracked combination
+     */
+    public Map<HealthKey, ServiceHealthState> getHealthStates() {
+        Map<HealthKey, ServiceHealthState> states = new LinkedHashMap<>();
+        forEach((key, window) -> states.put(key, window.getServiceHealthTracker().getHealthState()));
+        return states;
+    }
+
+    /**
+     * @return the combinations currently considered unhealthy
+     */
+    public List<HealthKey> getUnhealthyKeys() {
+        List<HealthKey> unhealthy = new ArrayList<>();
+        forEach((key, window) -> {
+            if (window.getServiceHealthTracker().getHealthState() == ServiceHealthState.UNHEALTHY) {
+                unhealthy.add(key);
+            }
+        });
+        return unhealthy;
+    }
+
+    /**
+     * Rolls up the health of every combination of a service by applying the thresholds
+     * to the sum of their attempts and errors.
+     *
+     * @param serviceName the name of the AWS service
+     * @return the rolled up health of the service
+     */
+    public ServiceHealthState getRollupState(String serviceName) {
+        return rollup(serviceName);
+    }
+
+    /**
+     * Rolls up the health of every tracked combination by applying the thresholds
+     * to the sum of their attempts and errors.
+     *
+     * @return the rolled up health of everything seen by the registry
+     */
+    public ServiceHealthState getRollupState() {
+        return rollup(null);
+    }
+
+    /**
+     * Visits every tracked combination, including the overflow entry if it is in use
+     *
+     * @param consumer receives the key and window of each combination
+     */
+    public void forEach(BiConsumer<HealthKey, ServiceHealthWindow> consumer) {
+        for (Entry entry : allEntries()) {
+            consumer.accept(entry.key, entry.window);
+        }
+    }
+
+    /**
+     * @return the policy applied to every combination
+     */
+    public HealthPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of combinations tracked separately
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Evicts the combinations that have not seen any attempt for idleEvictionMs. This
+     * happens automatically as attempts are recorded, but can also be called explicitly.
+     */
+    public void evictIdle() {
+        long now = nanoClock.getAsLong();
+
+        for (Map.Entry<String, ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, Entry>>> service : entries.entrySet()) {
+            ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, Entry>> byEndpoint = service.getValue();
+
+            for (Map.Entry<String, ConcurrentHashMap<Class<?>, Entry>> endpoint : byEndpoint.entrySet()) {
+                ConcurrentHashMap<Class<?>, Entry> byOperation = endpoint.getValue();
+                for (Map.Entry<Class<?>, Entry> entry : byOperation.entrySet()) {
+                    if (now - entry.getValue().lastAccessNanos > idleEvictionNanos
+                            && byOperation.remove(entry.getKey(), entry.getValue())) {
+                        size.decrementAndGet();
+                    }
+                }
+
+                // empty maps are removed under the same lock entryFor() adds entries with
+                byEndpoint.computeIfPresent(endpoint.getKey(), (host, operations) -> operations.isEmpty() ? null : operations);
+            }
+
+            entries.computeIfPresent(service.getKey(), (name, endpoints) -> endpoints.isEmpty() ? null : endpoints);
+        }
+    }
+
+    /**
+     * @return the number of per service and per endpoint maps, for tests
+     */
+    int getNestedMapCount() {
+        int count = entries.size();
+        for (ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, Entry>> byEndpoint : entries.values()) {
+            count += byEndpoint.size();
+        }
+        return count;
+    }
+
+    private void evictIfDue(long now) {
+        long due = nextEviction.get();
+        if (now - due < 0) return;
+
+        if (nextEviction.compareAndSet(due, now + idleEvictionNanos / 2)) {
+            evictIdle();
+        }
+    }
+
+    private ServiceHealthState rollup(String serviceName) {
+        int evtCnt = 0;
+        int errCnt = 0;
+        ServiceHealthWindow thresholds = null;
+
+        for (Entry entry : allEntries()) {
+            if (serviceName != null && !serviceName.equals(entry.key.getServiceName())) continue;
+
+            evtCnt += entry.window.getEventCount();
+            errCnt += entry.window.getErrorCount();
+            thresholds = entry.window;
+        }
+
+        if (thresholds != null && thresholds.isUnhealthy(evtCnt, errCnt)) {
+            return ServiceHealthState.UNHEALTHY;
+        }
+        return ServiceHealthState.HEALTHY;
+    }
+
+    private List<Entry> allEntries() {
+        List<Entry> all = new ArrayList<>();
+        for (ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, Entry>> byEndpoint : entries.values()) {
+            for (ConcurrentHashMap<Class<?>, Entry> byOperation : byEndpoint.values()) {
+                all.addAll(byOperation.values());
+            }
+        }
+
+        Entry overflowEntry = overflow;
+        if (overflowEntry != null) all.add(overflowEntry);
+        return all;
+    }
+
+    private Entry find(String serviceName, String endpointHost, Class<?> operation) {
+        ConcurrentHashMap<String, ConcurrentHashMap<Class<?>, Entry>> byEndpoint = entries.get(orUnknown(serviceName));
+        if (byEndpoint == null) return null;
+
+        ConcurrentHashMap<Class<?>, Entry> byOperation = byEndpoint.get(orUnknown(endpointHost));
+        return byOperation == null ? null : byOperation.get(operation);
+    }
+
+    private Entry entryFor(String serviceName, String endpointHost, Class<?> operation, long now) {
+        Entry entry = find(serviceName, endpointHost, operation);
+        if (entry != null) return entry;
+
+        // reserve a slot before creating a new entry, or the maps holding it, so the bound is never exceeded
+        if (size.incrementAndGet() > maxEntries) {
+            size.decrementAndGet();
+            return overflowEntry(now);
+        }
+
+        String service = orUnknown(serviceName);
+        String host = orUnknown(endpointHost);
+        Entry created = new Entry(new HealthKey(service, host, operation.getSimpleName()), newWindow(), now);
+        Entry[] added = new Entry[1];
+
+        // the entry is added while the parent maps are locked, so that evictIdle() cannot
+        // remove an empty map this entry is being added to
+        entries.compute(service, (name, byEndpoint) -> {
+            if (byEndpoint == null) byEndpoint = new ConcurrentHashMap<>();
+            byEndpoint.compute(host, (key, byOperation) -> {
+                if (byOperation == null) byOperation = new ConcurrentHashMap<>();
+                Entry existing = byOperation.putIfAbsent(operation, created);
+                added[0] = existing == null ? created : existing;
+                return byOperation;
+            });
+            return byEndpoint;
+        });
+
+        if (added[0] != created) size.decrementAndGet();
+        return added[0];
+    }
+
+    private Entry overflowEntry(long now) {
+        Entry entry = overflow;
+        if (entry == null) {
+            synchronized (this) {
+                entry = overflow;
+                if (entry == null) {
+                    entry = new Entry(HealthKey.OVERFLOW, newWindow(), now);
+                    overflow = entry;
+                }
+            }
+        }
+        return entry;
+    }
+
+    private ServiceHealthWindow newWindow() {
+        return new ServiceHealthWindow(policy, new ServiceHealthTracker(nanoClock), this::newCounter, nanoClock);
+    }
+
+    private WindowCounter newCounter() {
+        long bucketSeconds = SlidingWindowCounter.DEFAULT_BUCKET_SECONDS;
+        int buckets = (int) (TimeUnit.MINUTES.toSeconds(metricInterval) / bucketSeconds);
+        return new SlidingWindowCounter(buckets, bucketSeconds, TimeUnit.SECONDS, nanoClock);
+    }
+
+    private static String orUnknown(String value) {
+        return value == null ? UNKNOWN : value;
+    }
+
+    private static class Entry {
+        final HealthKey key;
+        final ServiceHealthWindow window;
+        volatile long lastAccessNanos;
+
+        Entry(HealthKey key, ServiceHealthWindow window, long now) {
+            this.key = key;
+            this.window = window;
+            this.lastAccessNanos = now;
+        }
+    }
+}
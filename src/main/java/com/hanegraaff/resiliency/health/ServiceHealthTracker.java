@@ -1,43 +1,91 @@
 package com.hanegraaff.resiliency.health;
 
+import com.hanegraaff.resiliency.jfr.HealthTransitionEvent;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import java.time.LocalDateTime;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
 /**
  * A class that represents the health of an AWS Service or a specific AWS Client object.
  * When supplied to an instance of the ServiceHealthRequestHandler, the handler
  * will update the state based on how many SDK errors it detects.
+ *
+ * The state, the time of the last transition and the number of transitions are kept
+ * together in an immutable Snapshot that is swapped atomically, so readers always see
+ * consistent values. Setting the state the tracker is already in is a plain read and
+ * does not write to shared memory.
  */
 public class ServiceHealthTracker {
 
-    private ServiceHealthState healthState;
-    private LocalDateTime lastStateChange;
+    private final Log log = LogFactory.getLog(ServiceHealthTracker.class);
+
+    private final AtomicReference<Snapshot> snapshot;
+    private final CopyOnWriteArrayList<Registration> listeners = new CopyOnWriteArrayList<>();
+    private final LongSupplier nanoClock;
 
     /**
      * Creates a new ServiceHealthTracker and sets it to HEALTHY
      */
     public ServiceHealthTracker(){
-        healthState = ServiceHealthState.HEALTHY;
-        lastStateChange = LocalDateTime.now();
+        this(System::nanoTime);
+    }
+
+    /**
+     * Creates a new ServiceHealthTracker, set to HEALTHY, that timestamps transitions
+     * using the supplied clock. This constructor exists mainly to facilitate testing
+     * and offline replays.
+     *
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public ServiceHealthTracker(LongSupplier nanoClock){
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.nanoClock = nanoClock;
+        this.snapshot = new AtomicReference<>(
+                new Snapshot(ServiceHealthState.HEALTHY, nanoClock.getAsLong(), 0, LocalDateTime.now()));
     }
 
     /**
      * Sets the current state to UNHEALTHY
      */
     public void setUnhealthy(){
-        if (healthState == ServiceHealthState.UNHEALTHY) return;
-
-        healthState = ServiceHealthState.UNHEALTHY;
-        lastStateChange = LocalDateTime.now();
+        transitionTo(ServiceHealthState.UNHEALTHY);
     }
 
     /**
      * Sets the current state to HEALTHY
      */
     public void setHealthy(){
-        if (healthState == ServiceHealthState.HEALTHY) return;
+        transitionTo(ServiceHealthState.HEALTHY);
+    }
+
+    /**
+     * Sets the current state. When several threads attempt the same transition at once,
+     * exactly one of them performs it and notifies the listeners.
+     *
+     * @param state the new state
+     * @return true if this call changed the state
+     */
+    public boolean transitionTo(ServiceHealthState state){
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.state == state) return false;
 
-        healthState = ServiceHealthState.HEALTHY;
-        lastStateChange = LocalDateTime.now();
+            Snapshot next = new Snapshot(state, nanoClock.getAsLong(), current.transitionCount + 1, LocalDateTime.now());
+            if (snapshot.compareAndSet(current, next)) {
+                HealthTransitionEvent.emit(this, current.state, state, next.transitionCount);
+                notifyListeners(current, next);
+                return true;
+            }
+        }
     }
 
     /**
@@ -45,7 +93,7 @@ public class ServiceHealthTracker {
      * @return the current health state
      */
     public ServiceHealthState getHealthState() {
-        return healthState;
+        return snapshot.get().state;
     }
 
     /**
@@ -53,6 +101,116 @@ public class ServiceHealthTracker {
      * @return the time since the current state
      */
     public LocalDateTime getLastStateChange(){
-        return lastStateChange;
+        return snapshot.get().lastStateChange;
+    }
+
+    /**
+     * Gets the state, transition time and transition count as one consistent snapshot
+     * @return the current snapshot
+     */
+    public Snapshot getSnapshot(){
+        return snapshot.get();
+    }
+
+    /**
+     * Registers a listener that is notified of every transition. Notifications are
+     * dispatched on the supplied executor so that SDK threads are never slowed down
+     * by listeners.
+     *
+     * @param listener the listener to notify
+     * @param executor the executor used to invoke the listener
+     */
+    public void addListener(ServiceHealthListener listener, Executor executor){
+        if (listener == null || executor == null) {
+            throw new IllegalArgumentException("'listener' and 'executor' parameters cannot be null");
+        }
+
+        listeners.add(new Registration(listener, executor));
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener to remove
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(ServiceHealthListener listener){
+        return listeners.removeIf(registration -> registration.listener == listener);
+    }
+
+    private void notifyListeners(Snapshot previous, Snapshot current){
+        for (Registration registration : listeners) {
+            try {
+                registration.executor.execute(() -> {
+                    try {
+                        registration.listener.onTransition(this, previous, current);
+                    } catch (RuntimeException e) {
+                        log.warn("Service health listener failed: " + e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Service health listener could not be notified: " + e);
+            }
+        }
+    }
+
+    /**
+     * An immutable view of the tracker at a point in time
+     */
+    public static final class Snapshot {
+        private final ServiceHealthState state;
+        private final long transitionNanos;
+        private final long transitionCount;
+        private final LocalDateTime lastStateChange;
+
+        Snapshot(ServiceHealthState state, long transitionNanos, long transitionCount, LocalDateTime lastStateChange){
+            this.state = state;
+            this.transitionNanos = transitionNanos;
+            this.transitionCount = transitionCount;
+            this.lastStateChange = lastStateChange;
+        }
+
+        /**
+         * @return the health state
+         */
+        public ServiceHealthState getState(){
+            return state;
+        }
+
+        /**
+         * @return the monotonic time (see System.nanoTime()) of the transition into this state
+         */
+        public long getTransitionNanos(){
+            return transitionNanos;
+        }
+
+        /**
+         * @return the number of transitions made by the tracker up to this snapshot
+         */
+        public long getTransitionCount(){
+            return transitionCount;
+        }
+
+        /**
+         * @return the wall clock time of the transition into this state
+         */
+        public LocalDateTime getLastStateChange(){
+            return lastStateChange;
+        }
+
+        @Override
+        public String toString(){
+            return state + " (transition #" + transitionCount + " at " + lastStateChange + ")";
+        }
+    }
+
+    private static final class Registration {
+        final ServiceHealthListener listener;
+        final Executor executor;
+
+        Registration(ServiceHealthListener listener, Executor executor){
+            this.listener = listener;
+            this.executor = executor;
+        }
     }
 }
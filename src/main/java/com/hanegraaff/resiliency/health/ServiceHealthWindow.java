@@ -0,0 +1,294 @@
+package com.hanegraaff.resiliency.health;
+
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+import com.hanegraaff.resiliency.metrics.RollingLatencyHistogram;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Counts attempts and errors over a window of time and updates a ServiceHealthTracker
+ * according to a HealthPolicy. With the default policy, the service is considered
+ * unhealthy when more than minRequests attempts were made during the window and the
+ * error rate exceeds errorRateThreshold.
+ *
+ * Dwell times are measured from the last transition of the tracker, so the tracker
+ * and the window should read the same clock.
+ *
+ * When the policy has latency rules, each rule counts the attempts slower than its
+ * threshold in its own WindowCounter, and the attempt latencies are also kept in a
+ * RollingLatencyHistogram so that the percentiles of the window can be reported.
+ */
+public class ServiceHealthWindow {
+
+    /**
+     * How many times per half life the smoothed error rate is updated
+     */
+    private static final int EWMA_SAMPLES_PER_HALF_LIFE = 8;
+
+    private final WindowCounter eventCount;
+    private final WindowCounter errorCount;
+    private final LatencyRule[] latencyRules;
+    private final WindowCounter[] slowCounts;
+    private final RollingLatencyHistogram latency;
+    private final HealthPolicy policy;
+    private final ServiceHealthTracker serviceHealthTracker;
+    private final LongSupplier nanoClock;
+
+    private final boolean readsClock;
+    private final long ewmaSampleNanos;
+    private final AtomicLong nextEwmaSample;
+    private volatile long lastEwmaSample;
+    private volatile double smoothedErrorRate;
+
+    /**
+     * Creates a new window with the supplied parameters.
+     *
+     * @param errorRateThreshold The percentage (between 0-1) or failed requests before ServiceHealthTracker reports service as unhealthy.
+     * @param minRequests The minimum number of requests/retries to consider before evaluating the service health
+     * @param serviceHealthTracker the ServiceHealthTracker updated by this window
+     * @param eventCount counts every attempt
+     * @param errorCount counts failed attempts
+     */
+    public ServiceHealthWindow(double errorRateThreshold, int minRequests, ServiceHealthTracker serviceHealthTracker,
+                               WindowCounter eventCount, WindowCounter errorCount) {
+        this(HealthPolicy.of(errorRateThreshold, minRequests), serviceHealthTracker, eventCount, errorCount, System::nanoTime);
+    }
+
+    /**
+     * Creates a new window that applies the supplied policy.
+     *
+     * @param policy decides when the service becomes unhealthy and when it recovers
+     * @param serviceHealthTracker the ServiceHealthTracker updated by this window
+     * @param eventCount counts every attempt
+     * @param errorCount counts failed attempts
+     * @param nanoClock a monotonic clock expressed in nanoseconds, used for dwell times and smoothing
+     */
+    public ServiceHealthWindow(HealthPolicy policy, ServiceHealthTracker serviceHealthTracker,
+                               WindowCounter eventCount, WindowCounter errorCount, LongSupplier nanoClock) {
+        this(policy, serviceHealthTracker, eventCount, errorCount, null, nanoClock);
+
+        if (!policy.getLatencyRules().isEmpty()) {
+            throw new IllegalArgumentException("policies with latency rules require a 'counterFactory'");
+        }
+    }
+
+    /**
+     * Creates a new window that applies the supplied policy, including its latency rules.
+     *
+     * @param policy decides when the service becomes unhealthy and when it recovers
+     * @param serviceHealthTracker the ServiceHealthTracker updated by this window
+     * @param counterFactory creates the counters of attempts, errors and slow attempts
+     * @param nanoClock a monotonic clock expressed in nanoseconds, used for dwell times and smoothing
+     */
+    public ServiceHealthWindow(HealthPolicy policy, ServiceHealthTracker serviceHealthTracker,
+                               Supplier<WindowCounter> counterFactory, LongSupplier nanoClock) {
+        this(policy, serviceHealthTracker, newCounter(counterFactory), newCounter(counterFactory), counterFactory, nanoClock);
+    }
+
+    private ServiceHealthWindow(HealthPolicy policy, ServiceHealthTracker serviceHealthTracker, WindowCounter eventCount,
+                                WindowCounter errorCount, Supplier<WindowCounter> counterFactory, LongSupplier nanoClock) {
+        if (policy == null || serviceHealthTracker == null || eventCount == null || errorCount == null) {
+            throw new IllegalArgumentException("'policy', 'serviceHealthTracker', 'eventCount' and 'errorCount' parameters cannot be null");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        List<LatencyRule> rules = policy.getLatencyRules();
+        this.latencyRules = rules.toArray(new LatencyRule[0]);
+        this.slowCounts = new WindowCounter[latencyRules.length];
+        if (counterFactory != null) {
+            for (int i = 0; i < slowCounts.length; i++) {
+                slowCounts[i] = newCounter(counterFactory);
+            }
+        }
+        this.latency = rules.isEmpty() ? null : new RollingLatencyHistogram(5, 1, TimeUnit.MINUTES, nanoClock);
+
+        this.policy = policy;
+        this.serviceHealthTracker = serviceHealthTracker;
+        this.eventCount = eventCount;
+        this.errorCount = errorCount;
+        this.nanoClock = nanoClock;
+
+        // the default policy never needs the time, so do not pay for reading it
+        this.readsClock = policy.getMinHealthyDwellNanos() > 0 || policy.getMinUnhealthyDwellNanos() > 0
+                || policy.getEwmaHalfLifeNanos() > 0;
+        this.ewmaSampleNanos = Math.max(1, policy.getEwmaHalfLifeNanos() / EWMA_SAMPLES_PER_HALF_LIFE);
+
+        long now = nanoClock.getAsLong();
+        this.lastEwmaSample = now;
+        this.nextEwmaSample = new AtomicLong(now + ewmaSampleNanos);
+    }
+
+    /**
+     * Records the outcome of an attempt and re-evaluates the health of the service
+     *
+     * @param failed true if the attempt failed
+     * @return true if this attempt made the service unhealthy
+     */
+    public boolean record(boolean failed) {
+        return record(failed, -1);
+    }
+
+    /**
+     * Records the outcome and the latency of an attempt and re-evaluates the health
+     * of the service
+     *
+     * @param failed true if the attempt failed
+     * @param latencyNanos how long the attempt took, or a negative value if it was not measured
+     * @return true if this attempt made the service unhealthy
+     */
+    public boolean record(boolean failed, long latencyNanos) {
+        int evtCnt = eventCount.increment();
+        int errCnt = failed ? errorCount.increment() : errorCount.getCountPerInterval();
+        boolean tooSlow = latencyRules.length > 0 && recordLatency(evtCnt, latencyNanos);
+
+        long now = readsClock ? nanoClock.getAsLong() : 0;
+        double errorRate = smooth(errorRate(evtCnt, errCnt), now);
+
+        ServiceHealthTracker.Snapshot current = serviceHealthTracker.getSnapshot();
+        if (readsClock && now - current.getTransitionNanos() < policy.getMinDwellNanos(current.getState())) {
+            return false;
+        }
+
+        boolean enoughRequests = evtCnt > policy.getMinRequests();
+
+        if (current.getState() == ServiceHealthState.UNHEALTHY) {
+            if (!enoughRequests || (errorRate <= policy.getRecoverThreshold() && !tooSlow)) {
+                serviceHealthTracker.setHealthy();
+            }
+            return false;
+        }
+
+        if (enoughRequests && (errorRate > policy.getTripThreshold() || tooSlow)) {
+            return serviceHealthTracker.transitionTo(ServiceHealthState.UNHEALTHY);
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of attempts made during the current window
+     */
+    public int getEventCount() {
+        return eventCount.getCountPerInterval();
+    }
+
+    /**
+     * @return the number of failed attempts made during the current window
+     */
+    public int getErrorCount() {
+        return errorCount.getCountPerInterval();
+    }
+
+    /**
+     * @return the error rate of the current window, or 0 if no attempts were made
+     */
+    public double getErrorRate() {
+        return errorRate(getEventCount(), getErrorCount());
+    }
+
+    /**
+     * @return the error rate the policy thresholds are applied to. This is the smoothed
+     * error rate when the policy enables smoothing, and the error rate of the current
+     * window otherwise.
+     */
+    public double getEvaluatedErrorRate() {
+        return policy.getEwmaHalfLifeNanos() > 0 ? smoothedErrorRate : getErrorRate();
+    }
+
+    /**
+     * @return the error rate threshold of this window, which is the trip threshold of its policy
+     */
+    public double getErrorRateThreshold() {
+        return policy.getTripThreshold();
+    }
+
+    /**
+     * @return the attempt latencies recorded during the window, or null if the policy has no latency rules
+     */
+    public LatencyHistogram.Snapshot getLatencySnapshot() {
+        return latency == null ? null : latency.snapshot();
+    }
+
+    /**
+     * @return the first latency rule violated by the current window, or null if there is none
+     */
+    public LatencyRule getViolatedLatencyRule() {
+        int evtCnt = getEventCount();
+        for (int i = 0; i < latencyRules.length; i++) {
+            if (latencyRules[i].isViolated(evtCnt, slowCounts[i].getCountPerInterval())) return latencyRules[i];
+        }
+        return null;
+    }
+
+    /**
+     * @return the policy applied by this window
+     */
+    public HealthPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the tracker updated by this window
+     */
+    public ServiceHealthTracker getServiceHealthTracker() {
+        return serviceHealthTracker;
+    }
+
+    /**
+     * Applies the trip threshold of this window to arbitrary counts, for example counts
+     * rolled up from several windows. Dwell times, smoothing and latency rules are not applied.
+     *
+     * @param evtCnt the number of attempts
+     * @param errCnt the number of failed attempts
+     * @return true if these counts describe an unhealthy service
+     */
+    public boolean isUnhealthy(int evtCnt, int errCnt) {
+        return (evtCnt > policy.getMinRequests()) && (errorRate(evtCnt, errCnt) > policy.getTripThreshold());
+    }
+
+    private boolean recordLatency(int evtCnt, long latencyNanos) {
+        boolean measured = latencyNanos >= 0;
+        if (measured) latency.record(latencyNanos);
+
+        boolean violated = false;
+        for (int i = 0; i < latencyRules.length; i++) {
+            int slowCnt = measured && latencyNanos > latencyRules[i].getThresholdNanos()
+                    ? slowCounts[i].increment() : slowCounts[i].getCountPerInterval();
+            violated |= latencyRules[i].isViolated(evtCnt, slowCnt);
+        }
+        return violated;
+    }
+
+    private static WindowCounter newCounter(Supplier<WindowCounter> counterFactory) {
+        if (counterFactory == null) {
+            throw new IllegalArgumentException("'counterFactory' parameter cannot be null");
+        }
+        return counterFactory.get();
+    }
+
+    private double smooth(double errorRate, long now) {
+        if (policy.getEwmaHalfLifeNanos() == 0) return errorRate;
+
+        // only one thread updates the smoothed rate per sample period
+        long due = nextEwmaSample.get();
+        if (now - due >= 0 && nextEwmaSample.compareAndSet(due, now + ewmaSampleNanos)) {
+            double elapsedHalfLives = (double) (now - lastEwmaSample) / policy.getEwmaHalfLifeNanos();
+            double weight = 1 - Math.pow(0.5, elapsedHalfLives);
+
+            smoothedErrorRate += (errorRate - smoothedErrorRate) * weight;
+            lastEwmaSample = now;
+        }
+        return smoothedErrorRate;
+    }
+
+    private static double errorRate(int evtCnt, int errCnt) {
+        return evtCnt == 0 ? 0 : (double) errCnt / (double) evtCnt;
+    }
+}
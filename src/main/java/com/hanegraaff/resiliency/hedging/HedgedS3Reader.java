@@ -0,0 +1,361 @@
+package com.hanegraaff.resiliency.hedging;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+import com.hanegraaff.resiliency.metrics.RollingLatencyHistogram;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends hedged requests for the idempotent S3 read operations: GetObject, HeadObject
+ * (getObjectMetadata) and ListObjectsV2.
+ *
+ * Each call is sent on the supplied executor. If it has not completed after the hedge
+ * delay, a second copy of the request is sent, the first successful response is
+ * returned and the other call is cancelled. The body of a losing GetObject response is
+ * aborted so that its connection is not left open.
+ *
+ * The hedge delay of each operation is the delayPercentile (95 by default) of the
+ * latencies observed over the last minute, and defaultDelayMs until enough calls have
+ * been observed. Hedges are withdrawn from a RetryBudget which earns a token fraction
+ * for every call, so hedging can never double the load on the service. The budget can
+ * be shared by several readers.
+ *
+ * Hedging only helps with slow attempts. A call that fails before the hedge delay is
+ * reported as is, since the client's own retry policy has already handled it.
+ */
+public class HedgedS3Reader {
+
+    private final Log log = LogFactory.getLog(HedgedS3Reader.class);
+
+    static final int MIN_SAMPLES = 20;
+    static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AmazonS3 client;
+    private final ExecutorService executor;
+    private final RetryBudget hedgeBudget;
+    private final double delayPercentile;
+    private final long defaultDelayNanos;
+    private final long minDelayNanos;
+    private final LongSupplier nanoClock;
+
+    private final OperationStats getObjectStats;
+    private final OperationStats headObjectStats;
+    private final OperationStats listObjectsStats;
+
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder hedgesDenied = new LongAdder();
+
+    /**
+     * Creates a reader that hedges at the 95th percentile latency of each operation,
+     * after 500ms until enough calls have been observed, and never sooner than 10ms
+     *
+     * @param client the client used to send the requests
+     * @param executor runs the primary and hedged calls. It needs at least two threads per concurrent call.
+     * @param hedgeBudget the budget hedges are withdrawn from
+     */
+    public HedgedS3Reader(AmazonS3 client, ExecutorService executor, RetryBudget hedgeBudget) {
+        this(client, executor, hedgeBudget, 95, 500, 10, System::nanoTime);
+    }
+
+    /**
+     * Creates a reader with the supplied parameters
+     *
+     * @param client the client used to send the requests
+     * @param executor runs the primary and hedged calls. It needs at least two threads per concurrent call.
+     * @param hedgeBudget the budget hedges are withdrawn from
+     * @param delayPercentile the observed latency percentile after which a hedge is sent, for example 95
+     * @param defaultDelayMs the hedge delay used until enough calls have been observed
+     * @param minDelayMs the hedge delay is never shorter than this
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public HedgedS3Reader(AmazonS3 client, ExecutorService executor, RetryBudget hedgeBudget,
+                          double delayPercentile, long defaultDelayMs, long minDelayMs, LongSupplier nanoClock) {
+        if (client == null || executor == null || hedgeBudget == null || nanoClock == null) {
+            throw new IllegalArgumentException("'client', 'executor', 'hedgeBudget' and 'nanoClock' parameters cannot be null");
+        }
+
+        if (delayPercentile <= 0 || delayPercentile >= 100) {
+            throw new IllegalArgumentException("'delayPercentile' parameter is out of range. Must be between 0 and 100");
+        }
+
+        if (defaultDelayMs <= 0 || minDelayMs <= 0) {
+            throw new IllegalArgumentException("'defaultDelayMs' and 'minDelayMs' must be positive integers");
+        }
+
+        this.client = client;
+        this.executor = executor;
+        this.hedgeBudget = hedgeBudget;
+        this.delayPercentile = delayPercentile;
+        this.defaultDelayNanos = TimeUnit.MILLISECONDS.toNanos(defaultDelayMs);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        this.nanoClock = nanoClock;
+
+        this.getObjectStats = new OperationStats();
+        this.headObjectStats = new OperationStats();
+        this.listObjectsStats = new OperationStats();
+    }
+
+    /**
+     * Hedged version of AmazonS3.getObject(GetObjectRequest)
+     *
+     * @param request the request to send
+     * @return the object, or null if the request constraints were not met
+     */
+    public S3Object getObject(GetObjectRequest request) {
+        return execute(getObjectStats, () -> client.getObject(request),
+                () -> client.getObject((GetObjectRequest) request.clone()), HedgedS3Reader::abort);
+    }
+
+    /**
+     * Hedged version of AmazonS3.getObject(String, String)
+     *
+     * @param bucketName the bucket containing the object
+     * @param key the key of the object
+     * @return the object
+     */
+    public S3Object getObject(String bucketName, String key) {
+        return getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    /**
+     * Hedged version of AmazonS3.getObjectMetadata(GetObjectMetadataRequest), which sends
+     * a HeadObject request
+     *
+     * @param request the request to send
+     * @return the metadata of the object
+     */
+    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+        return execute(headObjectStats, () -> client.getObjectMetadata(request),
+                () -> client.getObjectMetadata((GetObjectMetadataRequest) request.clone()), null);
+    }
+
+    /**
+     * Hedged version of AmazonS3.listObjectsV2(ListObjectsV2Request)
+     *
+     * @param request the request to send
+     * @return the listing
+     */
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        return execute(listObjectsStats, () -> client.listObjectsV2(request),
+                () -> client.listObjectsV2((ListObjectsV2Request) request.clone()), null);
+    }
+
+    /**
+     * @return the number of hedged requests sent
+     */
+    public long getHedgesSent() {
+        return hedgesSent.sum();
+    }
+
+    /**
+     * @return the number of hedged requests that completed before the primary request
+     */
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    /**
+     * @return the number of hedged requests that were not sent because the budget was empty
+     */
+    public long getHedgesDenied() {
+        return hedgesDenied.sum();
+    }
+
+    /**
+     * @return the current hedge delay of getObjectMetadata calls, for tests
+     */
+    long getHeadObjectDelayNanos() {
+        return headObjectStats.getDelayNanos();
+    }
+
+    /**
+     * @return the budget hedges are withdrawn from
+     */
+    public RetryBudget getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    private <T> T execute(OperationStats stats, Supplier<T> primary, Supplier<T> hedge, Consumer<T> discard) {
+        hedgeBudget.deposit();
+
+        HedgedCall<T> call = new HedgedCall<>(stats, discard);
+        Future<?> primaryFuture = call.submit(primary, false);
+        Future<?> hedgeFuture = null;
+
+        try {
+            T response;
+            try {
+                response = call.result.get(stats.getDelayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                hedgeFuture = sendHedge(call, hedge);
+                response = call.result.get();
+            }
+
+            if (call.winner.get() == HedgedCall.HEDGE) hedgesWon.increment();
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AbortedException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            // no-op for the winner, interrupts the SDK thread of the loser
+            primaryFuture.cancel(true);
+            if (hedgeFuture != null) hedgeFuture.cancel(true);
+        }
+    }
+
+    private <T> Future<?> sendHedge(HedgedCall<T> call, Supplier<T> hedge) {
+        // counted as pending before checking the primary, so that if it fails from now
+        // on, its error waits for the hedge
+        call.pending.incrementAndGet();
+        if (call.result.isDone()) return null;
+
+        if (!hedgeBudget.tryAcquire()) {
+            hedgesDenied.increment();
+            call.abandonHedge();
+            return null;
+        }
+
+        try {
+            Future<?> future = call.submit(hedge, true);
+            hedgesSent.increment();
+            return future;
+        } catch (RejectedExecutionException e) {
+            log.warn("Could not send a hedged request", e);
+            call.abandonHedge();
+            return null;
+        }
+    }
+
+    private static void abort(S3Object object) {
+        if (object == null) return;
+
+        try {
+            object.getObjectContent().abort();
+            object.close();
+        } catch (IOException e) {
+            // the connection is being discarded anyway
+        }
+    }
+
+    /**
+     * The state of one call and of its hedge. The first successful response completes
+     * the result, and a failure only completes it once no other attempt is pending.
+     */
+    private class HedgedCall<T> {
+        static final int NONE = 0, PRIMARY = 1, HEDGE = 2;
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicInteger winner = new AtomicInteger(NONE);
+        final AtomicBoolean primaryRecorded = new AtomicBoolean();
+        final long startNanos = nanoClock.getAsLong();
+        volatile Throwable error;
+        final OperationStats stats;
+        final Consumer<T> discard;
+
+        HedgedCall(OperationStats stats, Consumer<T> discard) {
+            this.stats = stats;
+            this.discard = discard;
+        }
+
+        /**
+         * Gives up on a hedge counted as pending but not sent. If the primary already
+         * failed, its error was left for the hedge and completes the call now.
+         */
+        void abandonHedge() {
+            if (pending.decrementAndGet() == 0) result.completeExceptionally(error);
+        }
+
+        Future<?> submit(Supplier<T> attempt, boolean hedged) {
+            return executor.submit(() -> {
+                long start = nanoClock.getAsLong();
+                T response;
+                try {
+                    response = attempt.get();
+                } catch (RuntimeException | Error e) {
+                    // written before the count drops, for abandonHedge()
+                    error = e;
+                    if (pending.decrementAndGet() == 0) result.completeExceptionally(e);
+                    return;
+                }
+
+                long now = nanoClock.getAsLong();
+                if (hedged) {
+                    stats.latency.record(now - start);
+                } else if (primaryRecorded.compareAndSet(false, true)) {
+                    stats.latency.record(now - start);
+                }
+
+                // the winner is set before completing, so the caller sees it
+                if (winner.compareAndSet(NONE, hedged ? HEDGE : PRIMARY)) {
+                    // the primary is cancelled, and took at least this long. Leaving it out
+                    // would only keep the fast calls and shorten the delay over time
+                    if (hedged && primaryRecorded.compareAndSet(false, true)) {
+                        stats.latency.record(now - startNanos);
+                    }
+                    result.complete(response);
+                } else if (discard != null) {
+                    discard.accept(response);
+                }
+            });
+        }
+    }
+
+    /**
+     * The observed latencies of one operation, and the hedge delay derived from them
+     */
+    private class OperationStats {
+        final RollingLatencyHistogram latency = new RollingLatencyHistogram(6, 10, TimeUnit.SECONDS, nanoClock);
+        final AtomicLong nextRefresh = new AtomicLong(nanoClock.getAsLong());
+        volatile long delayNanos = defaultDelayNanos;
+
+        long getDelayNanos() {
+            long now = nanoClock.getAsLong();
+            long due = nextRefresh.get();
+
+            // merging the window is too expensive to do on every call
+            if (now - due >= 0 && nextRefresh.compareAndSet(due, now + DELAY_REFRESH_NANOS)) {
+                delayNanos = computeDelayNanos();
+            }
+            return delayNanos;
+        }
+
+        private long computeDelayNanos() {
+            LatencyHistogram.Snapshot snapshot = latency.snapshot();
+            if (snapshot.getTotalCount() < MIN_SAMPLES) return defaultDelayNanos;
+
+            return Math.max(minDelayNanos, snapshot.getValueAtPercentile(delayPercentile));
+        }
+    }
+}
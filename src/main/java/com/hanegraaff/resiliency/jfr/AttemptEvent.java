@@ -0,0 +1,94 @@
+package com.hanegraaff.resiliency.jfr;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event spanning one SDK attempt, from beforeAttempt to afterAttempt, recorded by
+ * the FlightRecorderRequestHandler
+ */
+@Name(AttemptEvent.NAME)
+@Label("SDK Attempt")
+@Category({"AWS SDK", "Resiliency"})
+@Description("An attempt of an AWS SDK request, including retries")
+@StackTrace(false)
+public final class AttemptEvent extends Event {
+
+    public static final String NAME = "com.hanegraaff.resiliency.Attempt";
+
+    @Label("Service")
+    String serviceName;
+
+    @Label("Operation")
+    Class<?> operation;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Status Code")
+    int statusCode;
+
+    @Label("Exception")
+    Class<?> exception;
+
+    @Label("Attempt")
+    @Description("The number of the attempt within its request, starting at 1")
+    int attempt;
+
+    /**
+     * @return true if the event is being recorded
+     */
+    public static boolean isRecording() {
+        return new AttemptEvent().isEnabled();
+    }
+
+    /**
+     * Starts timing an attempt
+     *
+     * @param request the SDK request the attempt belongs to
+     * @param attempt the number of the attempt within its request, starting at 1
+     * @return the started event, or null if the event is not being recorded
+     */
+    public static AttemptEvent begin(Request<?> request, int attempt) {
+        AttemptEvent event = new AttemptEvent();
+        if (!event.isEnabled()) return null;
+
+        event.serviceName = request.getServiceName();
+        event.operation = operationOf(request);
+        event.attempt = attempt;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the attempt and commits the event
+     *
+     * @param request the SDK request the attempt belongs to
+     * @param response the response of the attempt, or null
+     * @param ex the exception the attempt failed with, or null
+     */
+    public void complete(Request<?> request, Response<?> response, Exception ex) {
+        end();
+        if (!shouldCommit()) return;
+
+        endpoint = request.getEndpoint() == null ? null : request.getEndpoint().getHost();
+        exception = ex == null ? null : ex.getClass();
+        if (ex instanceof AmazonServiceException) {
+            statusCode = ((AmazonServiceException) ex).getStatusCode();
+        } else if (response != null && response.getHttpResponse() != null) {
+            statusCode = response.getHttpResponse().getStatusCode();
+        }
+        commit();
+    }
+
+    static Class<?> operationOf(Request<?> request) {
+        return request.getOriginalRequest() == null ? null : request.getOriginalRequest().getClass();
+    }
+}
@@ -0,0 +1,49 @@
+package com.hanegraaff.resiliency.jfr;
+
+import com.amazonaws.Request;
+import com.hanegraaff.resiliency.health.CircuitState;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event recorded when a CircuitBreakerRequestHandler rejects a request or an attempt
+ */
+@Name(CircuitRejectionEvent.NAME)
+@Label("Circuit Rejection")
+@Category({"AWS SDK", "Resiliency"})
+@Description("A request or attempt failed fast because the circuit was open")
+public final class CircuitRejectionEvent extends Event {
+
+    public static final String NAME = "com.hanegraaff.resiliency.CircuitRejection";
+
+    @Label("Service")
+    String serviceName;
+
+    @Label("Operation")
+    Class<?> operation;
+
+    @Label("Circuit State")
+    String circuitState;
+
+    /**
+     * Records a rejection, if the event is being recorded
+     *
+     * @param request the rejected request, or null
+     * @param circuitState the state of the circuit at the time
+     */
+    public static void emit(Request<?> request, CircuitState circuitState) {
+        CircuitRejectionEvent event = new CircuitRejectionEvent();
+        if (!event.shouldCommit()) return;
+
+        if (request != null) {
+            event.serviceName = request.getServiceName();
+            event.operation = AttemptEvent.operationOf(request);
+        }
+        event.circuitState = circuitState.name();
+        event.commit();
+    }
+}
+
@@ -0,0 +1,52 @@
+package com.hanegraaff.resiliency.jfr;
+
+import com.hanegraaff.resiliency.health.ServiceHealthState;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event recorded when a ServiceHealthTracker changes state
+ */
+@Name(HealthTransitionEvent.NAME)
+@Label("Service Health Transition")
+@Category({"AWS SDK", "Resiliency"})
+@Description("A ServiceHealthTracker moved between HEALTHY and UNHEALTHY")
+public final class HealthTransitionEvent extends Event {
+
+    public static final String NAME = "com.hanegraaff.resiliency.HealthTransition";
+
+    @Label("Previous State")
+    String previousState;
+
+    @Label("State")
+    String state;
+
+    @Label("Transition Count")
+    long transitionCount;
+
+    @Label("Tracker")
+    @Description("The identity hash code of the tracker, to tell trackers apart")
+    int tracker;
+
+    /**
+     * Records a transition, if the event is being recorded
+     *
+     * @param tracker the tracker that changed state
+     * @param previous the state before the transition
+     * @param current the state after the transition
+     * @param transitionCount the number of transitions of the tracker, including this one
+     */
+    public static void emit(Object tracker, ServiceHealthState previous, ServiceHealthState current, long transitionCount) {
+        HealthTransitionEvent event = new HealthTransitionEvent();
+        if (!event.shouldCommit()) return;
+
+        event.tracker = System.identityHashCode(tracker);
+        event.previousState = previous.name();
+        event.state = current.name();
+        event.transitionCount = transitionCount;
+        event.commit();
+    }
+}
@@ -0,0 +1,58 @@
+package com.hanegraaff.resiliency.jfr;
+
+import com.amazonaws.Request;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A JFR event spanning a delay injected into an SDK attempt
+ */
+@Name(InjectedDelayEvent.NAME)
+@Label("Injected Delay")
+@Category({"AWS SDK", "Resiliency", "Fault Injection"})
+@Description("A delay injected into an SDK attempt")
+public final class InjectedDelayEvent extends Event {
+
+    public static final String NAME = "com.hanegraaff.resiliency.InjectedDelay";
+
+    @Label("Handler")
+    Class<?> handler;
+
+    @Label("Service")
+    String serviceName;
+
+    @Label("Operation")
+    Class<?> operation;
+
+    @Label("Requested Delay")
+    @Timespan(Timespan.NANOSECONDS)
+    long requestedDelay;
+
+    /**
+     * Starts timing an injected delay
+     *
+     * @param handler the class of the handler that injects the delay
+     * @param request the request of the delayed attempt, or null
+     * @param delayNanos the delay requested by the handler
+     * @return the started event, or null if the event is not being recorded. The
+     * caller commits it once the delay is over.
+     */
+    public static InjectedDelayEvent begin(Class<?> handler, Request<?> request, long delayNanos) {
+        InjectedDelayEvent event = new InjectedDelayEvent();
+        if (!event.isEnabled()) return null;
+
+        event.handler = handler;
+        if (request != null) {
+            event.serviceName = request.getServiceName();
+            event.operation = AttemptEvent.operationOf(request);
+        }
+        event.requestedDelay = delayNanos;
+        event.begin();
+        return event;
+    }
+}
+
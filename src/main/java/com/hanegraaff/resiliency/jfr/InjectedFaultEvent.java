@@ -0,0 +1,80 @@
+package com.hanegraaff.resiliency.jfr;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event recorded when a fault injection handler makes an attempt fail
+ */
+@Name(InjectedFaultEvent.NAME)
+@Label("Injected Fault")
+@Category({"AWS SDK", "Resiliency", "Fault Injection"})
+@Description("An error injected into an SDK attempt")
+public final class InjectedFaultEvent extends Event {
+
+    public static final String NAME = "com.hanegraaff.resiliency.InjectedFault";
+
+    @Label("Handler")
+    Class<?> handler;
+
+    @Label("Service")
+    String serviceName;
+
+    @Label("Operation")
+    Class<?> operation;
+
+    @Label("Status Code")
+    @Description("The HTTP status code of the injected error, or 0 for client side errors")
+    int statusCode;
+
+    @Label("Error")
+    @Description("The AWS error code, or the class name of the injected exception")
+    String error;
+
+    /**
+     * Records an injected exception, if the event is being recorded
+     *
+     * @param handler the class of the handler that injected the fault
+     * @param request the request of the failing attempt, or null
+     * @param exception the injected exception
+     */
+    public static void emit(Class<?> handler, Request<?> request, AmazonClientException exception) {
+        if (!new InjectedFaultEvent().isEnabled()) return;
+
+        if (exception instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) exception;
+            emit(handler, request, serviceException.getStatusCode(), serviceException.getErrorCode());
+        } else {
+            emit(handler, request, 0, exception.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Records an injected fault, if the event is being recorded
+     *
+     * @param handler the class of the handler that injected the fault
+     * @param request the request of the failing attempt, or null
+     * @param statusCode the HTTP status code of the injected error, or 0 for client side errors
+     * @param error the AWS error code, or the class name of the injected exception
+     */
+    public static void emit(Class<?> handler, Request<?> request, int statusCode, String error) {
+        InjectedFaultEvent event = new InjectedFaultEvent();
+        if (!event.shouldCommit()) return;
+
+        event.handler = handler;
+        if (request != null) {
+            event.serviceName = request.getServiceName();
+            event.operation = AttemptEvent.operationOf(request);
+        }
+        event.statusCode = statusCode;
+        event.error = error;
+        event.commit();
+    }
+}
+
@@ -0,0 +1,272 @@
+package com.hanegraaff.resiliency.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A flight recorder for SDK attempts: a ring of fixed-size binary records in a memory
+ * mapped file, that keeps the most recent attempts for post-mortems. The file is
+ * written by the operating system as pages get dirty, so it survives a crash of the
+ * JVM, and can be decoded offline by a JournalReader.
+ *
+ * Writers claim a slot with a single atomic increment, write the record in place and
+ * commit it by publishing its sequence number last. Several threads can record at once
+ * without locks, and recording does not allocate once the names it refers to have
+ * been seen. Names (services, operations, endpoints and exception classes) are stored
+ * once in a dictionary at the start of the file, and records refer to them by id.
+ *
+ * When the ring wraps, the oldest records are overwritten. A reader can tell a record
+ * that was being rewritten while it read it, and skips it.
+ */
+public class AttemptJournal implements Closeable {
+
+    static final int MAGIC = 0x524A4E4C;
+    static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 48;
+    static final int DEFAULT_DICTIONARY_BYTES = 64 * 1024;
+
+    // header layout
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RECORD_SIZE_OFFSET = 8;
+    static final int CAPACITY_OFFSET = 12;
+    static final int DICTIONARY_SIZE_OFFSET = 16;
+    static final int DICTIONARY_END_OFFSET = 20;
+    static final int EPOCH_MILLIS_OFFSET = 24;
+    static final int EPOCH_NANOS_OFFSET = 32;
+
+    // record layout
+    static final int SEQUENCE_OFFSET = 0;
+    static final int END_NANOS_OFFSET = 8;
+    static final int LATENCY_OFFSET = 16;
+    static final int SERVICE_OFFSET = 24;
+    static final int OPERATION_OFFSET = 28;
+    static final int ENDPOINT_OFFSET = 32;
+    static final int EXCEPTION_OFFSET = 36;
+    static final int STATUS_OFFSET = 40;
+    static final int ATTEMPT_OFFSET = 44;
+
+    // dictionary entry kinds
+    static final byte SERVICE = 1;
+    static final byte OPERATION = 2;
+    static final byte ENDPOINT = 3;
+    static final byte EXCEPTION = 4;
+
+    /**
+     * The id of missing names, such as the exception of a successful attempt
+     */
+    static final int NONE = 0;
+
+    /**
+     * The id of names that did not fit in the dictionary
+     */
+    static final int UNKNOWN = -1;
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int dictionaryBytes;
+    private final int recordsOffset;
+
+    private final AtomicLong sequence = new AtomicLong();
+    // the ids of the names of each kind, indexed by kind - 1
+    private final List<ConcurrentHashMap<Object, Integer>> ids;
+    private int nextId = 1;
+    private int dictionaryEnd;
+    private volatile boolean dictionaryFull;
+
+    /**
+     * Creates a journal, replacing the file if it exists, with a 64KB dictionary
+     *
+     * @param path the journal file
+     * @param capacity the number of attempts kept. The file takes about 48 bytes per attempt.
+     * @throws IOException if the file cannot be created and mapped
+     */
+    public AttemptJournal(Path path, int capacity) throws IOException {
+        this(path, capacity, DEFAULT_DICTIONARY_BYTES);
+    }
+
+    /**
+     * Creates a journal, replacing the file if it exists
+     *
+     * @param path the journal file
+     * @param capacity the number of attempts kept. The file takes about 48 bytes per attempt.
+     * @param dictionaryBytes the space reserved for names. Once it is full, new names are recorded as unknown.
+     * @throws IOException if the file cannot be created and mapped
+     */
+    public AttemptJournal(Path path, int capacity, int dictionaryBytes) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("'path' parameter cannot be null");
+        }
+
+        if (capacity <= 0 || dictionaryBytes <= 0) {
+            throw new IllegalArgumentException("'capacity' and 'dictionaryBytes' must be positive integers");
+        }
+
+        this.capacity = capacity;
+        this.dictionaryBytes = (dictionaryBytes + 7) & ~7;
+        this.recordsOffset = HEADER_BYTES + this.dictionaryBytes;
+
+        long size = recordsOffset + (long) capacity * RECORD_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("'capacity' parameter is too large, the journal is limited to 2GB");
+        }
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        this.ids = new ArrayList<>(EXCEPTION);
+        for (int kind = SERVICE; kind <= EXCEPTION; kind++) {
+            ids.add(new ConcurrentHashMap<>());
+        }
+
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(RECORD_SIZE_OFFSET, RECORD_BYTES);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(DICTIONARY_SIZE_OFFSET, this.dictionaryBytes);
+        buffer.putInt(DICTIONARY_END_OFFSET, 0);
+        buffer.putLong(EPOCH_MILLIS_OFFSET, System.currentTimeMillis());
+        buffer.putLong(EPOCH_NANOS_OFFSET, System.nanoTime());
+        // written last, so that a reader never sees a half written header as valid
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Records an attempt
+     *
+     * @param serviceName the name of the service, for example Amazon S3
+     * @param operation the class of the original SDK request, for example GetObjectRequest
+     * @param endpointHost the host the attempt was sent to, or null
+     * @param statusCode the HTTP status code of the response, or 0 if there was none
+     * @param exception the class of the exception the attempt failed with, or null if it succeeded
+     * @param endNanos when the attempt ended, as returned by System.nanoTime()
+     * @param latencyNanos the duration of the attempt, or -1 if it was not timed
+     * @param attempt the number of the attempt within its request, starting at 1
+     */
+    public void record(String serviceName, Class<?> operation, String endpointHost, int statusCode,
+                       Class<?> exception, long endNanos, long latencyNanos, int attempt) {
+        long seq = sequence.getAndIncrement();
+        int offset = recordsOffset + (int) (seq % capacity) * RECORD_BYTES;
+
+        // mark the slot as being written, for readers racing with a wrap around. The
+        // fence keeps the field writes below from becoming visible before the marker
+        LONGS.setOpaque(buffer, offset + SEQUENCE_OFFSET, 0L);
+        VarHandle.storeStoreFence();
+
+        buffer.putLong(offset + END_NANOS_OFFSET, endNanos);
+        buffer.putLong(offset + LATENCY_OFFSET, latencyNanos);
+        buffer.putInt(offset + SERVICE_OFFSET, idOf(SERVICE, serviceName));
+        buffer.putInt(offset + OPERATION_OFFSET, idOf(OPERATION, operation));
+        buffer.putInt(offset + ENDPOINT_OFFSET, idOf(ENDPOINT, endpointHost));
+        buffer.putInt(offset + EXCEPTION_OFFSET, idOf(EXCEPTION, exception));
+        buffer.putInt(offset + STATUS_OFFSET, statusCode);
+        buffer.putInt(offset + ATTEMPT_OFFSET, attempt);
+
+        // commit: the fields above are visible before the sequence number
+        LONGS.setRelease(buffer, offset + SEQUENCE_OFFSET, seq + 1);
+    }
+
+    /**
+     * @return the number of attempts recorded since the journal was created, including overwritten ones
+     */
+    public long getRecordCount() {
+        return sequence.get();
+    }
+
+    /**
+     * @return the number of attempts kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Flushes the journal to disk and closes the file
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private int idOf(byte kind, Object name) {
+        if (name == null) return NONE;
+
+        ConcurrentHashMap<Object, Integer> kindIds = ids.get(kind - 1);
+        Integer id = kindIds.get(name);
+        if (id == null) {
+            // names that do not fit are not cached, so that endpoints with a high
+            // cardinality do not grow the map once the dictionary is full
+            if (dictionaryFull) return UNKNOWN;
+            id = kindIds.computeIfAbsent(name, k -> {
+                int added = addName(kind, nameOf(k));
+                return added == UNKNOWN ? null : added;
+            });
+        }
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * @return the number of names with an id, for tests
+     */
+    int getNameCount() {
+        int count = 0;
+        for (ConcurrentHashMap<Object, Integer> kindIds : ids) {
+            count += kindIds.size();
+        }
+        return count;
+    }
+
+    private static String nameOf(Object name) {
+        return name instanceof Class ? ((Class<?>) name).getSimpleName() : name.toString();
+    }
+
+    /**
+     * Appends a name to the dictionary. Entries are written as the kind (1 byte), the
+     * id (4 bytes), the length of the name (2 bytes) and the name in UTF-8, and the end
+     * of the dictionary is published once the entry is complete.
+     */
+    private synchronized int addName(byte kind, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+
+        int entryBytes = 1 + 4 + 2 + length;
+        if (dictionaryEnd + entryBytes > dictionaryBytes) {
+            dictionaryFull = true;
+            return UNKNOWN;
+        }
+
+        int id = nextId++;
+        int position = HEADER_BYTES + dictionaryEnd;
+        buffer.put(position, kind);
+        buffer.putInt(position + 1, id);
+        buffer.putShort(position + 5, (short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(position + 7 + i, bytes[i]);
+        }
+
+        dictionaryEnd += entryBytes;
+        buffer.putInt(DICTIONARY_END_OFFSET, dictionaryEnd);
+        return id;
+    }
+}
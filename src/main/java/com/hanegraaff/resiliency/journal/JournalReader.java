@@ -0,0 +1,209 @@
+package com.hanegraaff.resiliency.journal;
+
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes an AttemptJournal file, for example after an incident, and aggregates its
+ * attempts per operation and endpoint. The file can be read while it is still being
+ * written; records overwritten during the read are skipped.
+ *
+ * It can be run from the command line to print a summary:
+ *
+ * java -cp ... com.hanegraaff.resiliency.journal.JournalReader attempts.journal [--records]
+ */
+public class JournalReader {
+
+    private final long epochMillis;
+    private final long epochNanos;
+    private final List<JournalRecord> records;
+
+    /**
+     * Reads the journal
+     *
+     * @param path the journal file
+     * @throws IOException if the file cannot be read, or is not a journal
+     */
+    public JournalReader(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.capacity() < AttemptJournal.HEADER_BYTES || buffer.getInt(AttemptJournal.MAGIC_OFFSET) != AttemptJournal.MAGIC) {
+            throw new IOException(path + " is not an attempt journal");
+        }
+
+        if (buffer.getInt(AttemptJournal.VERSION_OFFSET) != AttemptJournal.VERSION
+                || buffer.getInt(AttemptJournal.RECORD_SIZE_OFFSET) != AttemptJournal.RECORD_BYTES) {
+            throw new IOException(path + " was written by an unsupported version of the journal");
+        }
+
+        this.epochMillis = buffer.getLong(AttemptJournal.EPOCH_MILLIS_OFFSET);
+        this.epochNanos = buffer.getLong(AttemptJournal.EPOCH_NANOS_OFFSET);
+        this.records = readRecords(buffer, readDictionary(buffer));
+    }
+
+    /**
+     * @return the attempts kept by the journal, oldest first
+     */
+    public List<JournalRecord> getRecords() {
+        return records;
+    }
+
+    /**
+     * @return a text summary of the attempts per operation and endpoint: count, errors,
+     * latency percentiles, status codes and exceptions
+     */
+    public String summarize() {
+        if (records.isEmpty()) return "The journal is empty\n";
+
+        Map<String, Aggregate> aggregates = new TreeMap<>();
+        for (JournalRecord record : records) {
+            String key = record.getServiceName() + " " + record.getOperation() + " " + record.getEndpoint();
+            aggregates.computeIfAbsent(key, k -> new Aggregate()).add(record);
+        }
+
+        JournalRecord first = records.get(0);
+        JournalRecord last = records.get(records.size() - 1);
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%d attempts (#%d to #%d) over %ds, from %tF %<tT to %tF %<tT%n", records.size(),
+                first.getSequence(), last.getSequence(),
+                TimeUnit.NANOSECONDS.toSeconds(last.getEndNanos() - first.getEndNanos()),
+                first.getTimestampMillis(), last.getTimestampMillis()));
+
+        for (Map.Entry<String, Aggregate> entry : aggregates.entrySet()) {
+            Aggregate aggregate = entry.getValue();
+            LatencyHistogram.Snapshot latency = aggregate.latency.snapshot();
+            summary.append(String.format("%s: %d attempts, %d failed (%.1f%%), retries %d, p50 %dms, p99 %dms, max %dms%n",
+                    entry.getKey(), aggregate.attempts, aggregate.failures, 100.0 * aggregate.failures / aggregate.attempts,
+                    aggregate.retries, TimeUnit.NANOSECONDS.toMillis(latency.getP50()),
+                    TimeUnit.NANOSECONDS.toMillis(latency.getP99()), TimeUnit.NANOSECONDS.toMillis(latency.getMax())));
+            summary.append("    status codes: ").append(aggregate.statusCodes).append('\n');
+            if (!aggregate.exceptions.isEmpty()) {
+                summary.append("    exceptions: ").append(aggregate.exceptions).append('\n');
+            }
+        }
+        return summary.toString();
+    }
+
+    private Map<Integer, String> readDictionary(MappedByteBuffer buffer) {
+        Map<Integer, String> names = new HashMap<>();
+        int end = buffer.getInt(AttemptJournal.DICTIONARY_END_OFFSET);
+        int position = AttemptJournal.HEADER_BYTES;
+
+        while (position < AttemptJournal.HEADER_BYTES + end) {
+            int id = buffer.getInt(position + 1);
+            int length = buffer.getShort(position + 5);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(position + 7 + i);
+            }
+            names.put(id, new String(bytes, StandardCharsets.UTF_8));
+            position += 7 + length;
+        }
+        return names;
+    }
+
+    private List<JournalRecord> readRecords(MappedByteBuffer buffer, Map<Integer, String> names) {
+        int capacity = buffer.getInt(AttemptJournal.CAPACITY_OFFSET);
+        int recordsOffset = AttemptJournal.HEADER_BYTES + buffer.getInt(AttemptJournal.DICTIONARY_SIZE_OFFSET);
+
+        List<JournalRecord> decoded = new ArrayList<>();
+        for (int slot = 0; slot < capacity; slot++) {
+            int offset = recordsOffset + slot * AttemptJournal.RECORD_BYTES;
+
+            long marker = (long) AttemptJournal.LONGS.getAcquire(buffer, offset + AttemptJournal.SEQUENCE_OFFSET);
+            if (marker == 0) continue;
+
+            long endNanos = buffer.getLong(offset + AttemptJournal.END_NANOS_OFFSET);
+            long latencyNanos = buffer.getLong(offset + AttemptJournal.LATENCY_OFFSET);
+            int service = buffer.getInt(offset + AttemptJournal.SERVICE_OFFSET);
+            int operation = buffer.getInt(offset + AttemptJournal.OPERATION_OFFSET);
+            int endpoint = buffer.getInt(offset + AttemptJournal.ENDPOINT_OFFSET);
+            int exception = buffer.getInt(offset + AttemptJournal.EXCEPTION_OFFSET);
+            int statusCode = buffer.getInt(offset + AttemptJournal.STATUS_OFFSET);
+            int attempt = buffer.getInt(offset + AttemptJournal.ATTEMPT_OFFSET);
+
+            // the slot was rewritten while it was read. The fence keeps the field reads
+            // above from being reordered after the second read of the marker
+            VarHandle.loadLoadFence();
+            if ((long) AttemptJournal.LONGS.getAcquire(buffer, offset + AttemptJournal.SEQUENCE_OFFSET) != marker) continue;
+
+            JournalRecord record = new JournalRecord(marker - 1,
+                    epochMillis + TimeUnit.NANOSECONDS.toMillis(endNanos - epochNanos), endNanos, latencyNanos,
+                    nameOf(names, service), nameOf(names, operation), nameOf(names, endpoint), nameOf(names, exception),
+                    statusCode, attempt);
+
+            decoded.add(record);
+        }
+
+        decoded.sort(Comparator.comparingLong(JournalRecord::getSequence));
+        return Collections.unmodifiableList(decoded);
+    }
+
+    private static String nameOf(Map<Integer, String> names, int id) {
+        if (id == AttemptJournal.NONE) return null;
+        return names.getOrDefault(id, "unknown");
+    }
+
+    private static class Aggregate {
+        long attempts;
+        long failures;
+        long retries;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<Integer, Integer> statusCodes = new TreeMap<>();
+        final Map<String, Integer> exceptions = new TreeMap<>();
+
+        void add(JournalRecord record) {
+            attempts++;
+            if (record.getAttempt() > 1) retries++;
+            if (record.getLatencyNanos() >= 0) latency.record(record.getLatencyNanos());
+            statusCodes.merge(record.getStatusCode(), 1, Integer::sum);
+            if (record.isFailed()) {
+                failures++;
+                exceptions.merge(record.getException(), 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Prints the summary of a journal, and optionally every record
+     *
+     * @param args the path of the journal, optionally followed by --records
+     * @throws IOException if the journal cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: JournalReader <journal file> [--records]");
+            System.exit(2);
+        }
+
+        JournalReader reader = new JournalReader(Paths.get(args[0]));
+        if (args.length > 1 && "--records".equals(args[1])) {
+            for (JournalRecord record : reader.getRecords()) {
+                System.out.println(record);
+            }
+        }
+        System.out.print(reader.summarize());
+    }
+}
@@ -0,0 +1,109 @@
+package com.hanegraaff.resiliency.journal;
+
+/**
+ * A decoded attempt, as read from an AttemptJournal by a JournalReader
+ */
+public final class JournalRecord {
+
+    private final long sequence;
+    private final long timestampMillis;
+    private final long endNanos;
+    private final long latencyNanos;
+    private final String serviceName;
+    private final String operation;
+    private final String endpoint;
+    private final String exception;
+    private final int statusCode;
+    private final int attempt;
+
+    JournalRecord(long sequence, long timestampMillis, long endNanos, long latencyNanos, String serviceName,
+                  String operation, String endpoint, String exception, int statusCode, int attempt) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.endNanos = endNanos;
+        this.latencyNanos = latencyNanos;
+        this.serviceName = serviceName;
+        this.operation = operation;
+        this.endpoint = endpoint;
+        this.exception = exception;
+        this.statusCode = statusCode;
+        this.attempt = attempt;
+    }
+
+    /**
+     * @return the position of the attempt among all the attempts recorded by the journal, starting at 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return when the attempt ended, in milliseconds since the epoch
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /**
+     * @return when the attempt ended, as returned by System.nanoTime() in the recording JVM
+     */
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    /**
+     * @return the duration of the attempt, or -1 if it was not timed
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * @return the simple class name of the original SDK request, for example GetObjectRequest
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the host the attempt was sent to, or null
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the simple class name of the exception the attempt failed with, or null if it succeeded
+     */
+    public String getException() {
+        return exception;
+    }
+
+    public boolean isFailed() {
+        return exception != null;
+    }
+
+    /**
+     * @return the HTTP status code of the response, or 0 if there was none
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the number of the attempt within its request, starting at 1
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d %s %s %s attempt %d: status %d, %s, %dus", sequence, serviceName, operation, endpoint,
+                attempt, statusCode, exception == null ? "ok" : exception, latencyNanos / 1000);
+    }
+}
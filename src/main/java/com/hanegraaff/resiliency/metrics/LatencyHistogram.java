@@ -0,0 +1,269 @@
+package com.hanegraaff.resiliency.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, fixed-memory histogram of latencies expressed in nanoseconds.
+ *
+ * Buckets are laid out log-linearly, as in HdrHistogram: every power of two is split
+ * into 32 equally sized sub-buckets, so any recorded value is reported within about 3%
+ * of its actual value. Values up to about 18 minutes are tracked, larger ones are
+ * counted as the largest trackable value. The histogram uses 1152 counters (about 9KB)
+ * regardless of how many values are recorded.
+ *
+ * Recording a value computes its bucket with a few shifts and increments a single
+ * counter, and does not allocate. Queries read every counter and are meant to be made
+ * from reporting threads, not from the SDK threads recording values.
+ *
+ * snapshotAndReset() drains each counter atomically, so a value recorded concurrently
+ * is either part of the snapshot or of the next interval, and is never lost.
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values are tracked up to 2^MAX_VALUE_BITS - 1 nanoseconds, about 18 minutes
+     */
+    static final int MAX_VALUE_BITS = 40;
+    static final long MAX_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a latency
+     *
+     * @param valueNanos the latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(long valueNanos) {
+        counts.incrementAndGet(bucketIndex(valueNanos));
+    }
+
+    /**
+     * Records a latency
+     *
+     * @param value the latency
+     * @param unit the time unit of value
+     */
+    public void record(long value, TimeUnit unit) {
+        record(unit.toNanos(value));
+    }
+
+    /**
+     * Takes a snapshot of the values recorded so far, without resetting the histogram
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy);
+    }
+
+    /**
+     * Takes a snapshot of the values recorded since the last reset, and resets the
+     * histogram so that it starts a new interval
+     *
+     * @return the snapshot of the interval that ended
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            // skip the write for buckets that were never used
+            if (counts.get(i) != 0) copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy);
+    }
+
+    /**
+     * Clears every counter without taking a snapshot
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (counts.get(i) != 0) counts.set(i, 0);
+        }
+    }
+
+    /**
+     * @param percentile the percentile to look up, between 0 and 100. For example 99.9
+     * @return the latency, in nanoseconds, at or below which the given percentile of the recorded values fall
+     */
+    public long getValueAtPercentile(double percentile) {
+        return snapshot().getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the number of values recorded since the last reset
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Adds the counters of this histogram to an array of BUCKET_COUNT counters
+     */
+    void addTo(long[] totals) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            totals[i] += counts.get(i);
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) return value < 0 ? 0 : (int) value;
+        if (value > MAX_TRACKABLE_VALUE) value = MAX_TRACKABLE_VALUE;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return subBucket << shift;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        return lowestValueAt(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of the counters of a histogram
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+
+            long total = 0;
+            for (long count : counts) total += count;
+            this.totalCount = total;
+        }
+
+        /**
+         * @param percentile the percentile to look up, between 0 and 100. For example 99.9
+         * @return the latency, in nanoseconds, at or below which the given percentile of the
+         * recorded values fall, or 0 if no values were recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("'percentile' parameter is out of range. Must be between 0 and 100");
+            }
+
+            if (totalCount == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValueAt(i);
+            }
+            return MAX_TRACKABLE_VALUE;
+        }
+
+        /**
+         * @param thresholdNanos a latency in nanoseconds
+         * @return the fraction (between 0-1) of the recorded values that are greater than
+         * the threshold, or 0 if no values were recorded. Values sharing a bucket with the
+         * threshold are not counted.
+         */
+        public double getFractionAbove(long thresholdNanos) {
+            if (totalCount == 0) return 0;
+
+            long above = 0;
+            for (int i = bucketIndex(thresholdNanos) + 1; i < counts.length; i++) {
+                above += counts[i];
+            }
+            return (double) above / totalCount;
+        }
+
+        /**
+         * @return the median latency in nanoseconds
+         */
+        public long getP50() {
+            return getValueAtPercentile(50);
+        }
+
+        /**
+         * @return the 99th percentile latency in nanoseconds
+         */
+        public long getP99() {
+            return getValueAtPercentile(99);
+        }
+
+        /**
+         * @return the 99.9th percentile latency in nanoseconds
+         */
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+
+        /**
+         * @return the largest recorded latency in nanoseconds, or 0 if no values were recorded
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) return highestValueAt(i);
+            }
+            return 0;
+        }
+
+        /**
+         * @return the mean latency in nanoseconds, or 0 if no values were recorded
+         */
+        public double getMean() {
+            if (totalCount == 0) return 0;
+
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) sum += counts[i] * ((lowestValueAt(i) + highestValueAt(i)) / 2.0);
+            }
+            return sum / totalCount;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * Combines this snapshot with another, for example to roll up several operations
+         *
+         * @param other the snapshot to add to this one
+         * @return a new snapshot containing the values of both
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d p50=%dus p99=%dus p999=%dus max=%dus", totalCount,
+                    TimeUnit.NANOSECONDS.toMicros(getP50()), TimeUnit.NANOSECONDS.toMicros(getP99()),
+                    TimeUnit.NANOSECONDS.toMicros(getP999()), TimeUnit.NANOSECONDS.toMicros(getMax()));
+        }
+    }
+}
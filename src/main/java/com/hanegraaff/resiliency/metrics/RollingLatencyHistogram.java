@@ -0,0 +1,113 @@
+package com.hanegraaff.resiliency.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A LatencyHistogram over a sliding window of time, made of a ring of fixed-size
+ * slices in the same way as the SlidingWindowCounter. As time passes the oldest slice
+ * falls out of the window and is cleared for the newest one, so memory stays constant:
+ * sliceCount histograms of about 9KB each.
+ *
+ * Recording a value costs the same as recording into a LatencyHistogram, plus a
+ * volatile read of the slice epoch. The first value of each new slice also clears
+ * the slice, and values recorded by other threads while that happens may be lost, so
+ * the window is meant for reporting percentiles rather than exact counts.
+ */
+public class RollingLatencyHistogram {
+
+    private final Slice[] slices;
+    private final long sliceNanos;
+    private final LongSupplier nanoClock;
+
+    /**
+     * Creates a histogram over a window of 5 one-minute slices
+     */
+    public RollingLatencyHistogram() {
+        this(5, 1, TimeUnit.MINUTES, System::nanoTime);
+    }
+
+    /**
+     * Creates a histogram with the supplied resolution. The length of the window is
+     * sliceCount * sliceDuration.
+     *
+     * @param sliceCount the number of slices in the window
+     * @param sliceDuration the length of each slice
+     * @param unit the time unit of sliceDuration
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public RollingLatencyHistogram(int sliceCount, long sliceDuration, TimeUnit unit, LongSupplier nanoClock) {
+        if (sliceCount <= 0 || sliceDuration <= 0) {
+            throw new IllegalArgumentException("'sliceCount' and 'sliceDuration' must be positive integers");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.sliceNanos = unit.toNanos(sliceDuration);
+        this.nanoClock = nanoClock;
+        this.slices = new Slice[sliceCount];
+
+        // mark every slice as expired so that the initial window is empty
+        long staleEpoch = epochOf(nanoClock.getAsLong()) - sliceCount;
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new Slice(staleEpoch);
+        }
+    }
+
+    /**
+     * Records a latency in the current slice
+     *
+     * @param valueNanos the latency in nanoseconds
+     */
+    public void record(long valueNanos) {
+        long epoch = epochOf(nanoClock.getAsLong());
+        Slice slice = slices[(int) Math.floorMod(epoch, (long) slices.length)];
+
+        long sliceEpoch = slice.epoch.get();
+        if (sliceEpoch != epoch && epoch - sliceEpoch > 0 && slice.epoch.compareAndSet(sliceEpoch, epoch)) {
+            // the slice belongs to an expired period, recycle it
+            slice.histogram.reset();
+        }
+
+        slice.histogram.record(valueNanos);
+    }
+
+    /**
+     * @return the values recorded during the window
+     */
+    public LatencyHistogram.Snapshot snapshot() {
+        long epoch = epochOf(nanoClock.getAsLong());
+        long[] totals = new long[LatencyHistogram.BUCKET_COUNT];
+
+        for (Slice slice : slices) {
+            long age = epoch - slice.epoch.get();
+            if (age >= 0 && age < slices.length) {
+                slice.histogram.addTo(totals);
+            }
+        }
+        return new LatencyHistogram.Snapshot(totals);
+    }
+
+    /**
+     * @return the length of the window in nanoseconds
+     */
+    public long getWindowNanos() {
+        return sliceNanos * slices.length;
+    }
+
+    private long epochOf(long nanos) {
+        return Math.floorDiv(nanos, sliceNanos);
+    }
+
+    private static class Slice {
+        final AtomicLong epoch;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        Slice(long epoch) {
+            this.epoch = new AtomicLong(epoch);
+        }
+    }
+}
@@ -1,66 +1,179 @@
 package com.hanegraaff.resiliency.metrics;
 
-import java.time.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
 
 /**
- * A sliding window counter that resets every so often. The period is expressed
- * in minutes when the object is created
+ * A sliding window counter made of a ring of fixed-size time buckets. As time passes,
+ * the oldest bucket falls out of the window and is reused for the newest one, so the
+ * count decays gradually instead of resetting to zero at the end of every period.
+ *
+ * Time is measured with a monotonic nanosecond clock (System.nanoTime() by default).
+ * Each bucket is a single 64-bit word that packs the bucket epoch (upper 32 bits) and
+ * the bucket count (lower 32 bits), so increments and bucket rotation are a single
+ * lock-free CAS and counts are exact under concurrent use. Reads are O(buckets).
  */
-public class SlidingWindowCounter {
-    private final AtomicInteger count;
-    private LocalDateTime lastEvent;
-    private final int intervalMin;
+public class SlidingWindowCounter implements WindowCounter {
 
     /**
-     * Creates a new Sliding Window Counter
+     * The resolution used when the counter is created with an interval in minutes.
+     */
+    public static final long DEFAULT_BUCKET_SECONDS = 5;
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final AtomicLongArray buckets;
+    private final int bucketCount;
+    private final long bucketNanos;
+    private final LongSupplier nanoClock;
+
+    /**
+     * Creates a new Sliding Window Counter with a 5 second resolution. For example,
+     * a 5-minute interval is tracked with 60 buckets of 5 seconds each.
+     *
      * @param intervalMin the length of the interval expressed in minutes.
      */
     public SlidingWindowCounter(int intervalMin){
-        this.intervalMin = intervalMin;
-        count = new AtomicInteger();
-        lastEvent = now();
+        this(bucketsPerInterval(intervalMin), DEFAULT_BUCKET_SECONDS, TimeUnit.SECONDS);
     }
 
     /**
-     * Increments the counter for the current time period
-     * @return The incremented counter value
+     * Creates a new Sliding Window Counter with a user supplied resolution. The length
+     * of the window is bucketCount * bucketDuration.
+     *
+     * @param bucketCount the number of buckets in the window
+     * @param bucketDuration the length of each bucket
+     * @param unit the time unit of bucketDuration
      */
-    public int increment(){
-        if (pastPeriod(now())){
-            lastEvent = now();
-            count.set(1);
-            return count.get();
+    public SlidingWindowCounter(int bucketCount, long bucketDuration, TimeUnit unit){
+        this(bucketCount, bucketDuration, unit, System::nanoTime);
+    }
+
+    /**
+     * Creates a new Sliding Window Counter that reads time from the supplied clock.
+     * This constructor exists mainly to facilitate testing and offline replays.
+     *
+     * @param bucketCount the number of buckets in the window
+     * @param bucketDuration the length of each bucket
+     * @param unit the time unit of bucketDuration
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public SlidingWindowCounter(int bucketCount, long bucketDuration, TimeUnit unit, LongSupplier nanoClock){
+        if (bucketCount <= 0) {
+            throw new IllegalArgumentException("'bucketCount' must be a positive integer");
+        }
+
+        if (bucketDuration <= 0) {
+            throw new IllegalArgumentException("'bucketDuration' must be a positive integer");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
         }
-        else{
-            return count.addAndGet(1);
+
+        this.bucketCount = bucketCount;
+        this.bucketNanos = unit.toNanos(bucketDuration);
+        this.nanoClock = nanoClock;
+        this.buckets = new AtomicLongArray(bucketCount);
+
+        // mark every bucket as expired so that the initial window is empty
+        long staleEpoch = pack((int) (epochOf(nanoClock.getAsLong()) - bucketCount), 0);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, staleEpoch);
         }
     }
 
+    /**
+     * Increments the counter for the current time period
+     * @return The incremented counter value for the whole window
+     */
+    @Override
+    public int increment(){
+        long epoch = epochOf(nanoClock.getAsLong());
+        add(epoch);
+        return sum(epoch);
+    }
+
+    /**
+     * Increments the counter for the current time period without reading back
+     * the window total. This is the cheapest way to record an event.
+     */
+    @Override
+    public void add(){
+        add(epochOf(nanoClock.getAsLong()));
+    }
+
     /**
      * Returns the value of the counter for the current time period
      * @return The current counter value
      */
+    @Override
     public int getCountPerInterval(){
-        if (pastPeriod(now())){
-            return 0;
+        return sum(epochOf(nanoClock.getAsLong()));
+    }
+
+    /**
+     * @return the length of the window in nanoseconds
+     */
+    public long getWindowNanos(){
+        return bucketNanos * bucketCount;
+    }
+
+    private void add(long epoch){
+        int slot = (int) Math.floorMod(epoch, (long) bucketCount);
+        int currentEpoch = (int) epoch;
+
+        while (true) {
+            long value = buckets.get(slot);
+            int bucketEpoch = (int) (value >>> 32);
+            long next;
+
+            if (bucketEpoch == currentEpoch) {
+                next = value + 1;
+            } else if (currentEpoch - bucketEpoch > 0) {
+                // the bucket belongs to an expired period, recycle it
+                next = pack(currentEpoch, 1);
+            } else {
+                // the bucket was already recycled by a thread with a newer clock
+                // reading; count the event there rather than dropping it
+                next = value + 1;
+            }
+
+            if (buckets.compareAndSet(slot, value, next)) {
+                return;
+            }
         }
-        return count.get();
+    }
+
+    private int sum(long epoch){
+        int currentEpoch = (int) epoch;
+        long total = 0;
+
+        for (int i = 0; i < bucketCount; i++) {
+            long value = buckets.get(i);
+            int age = currentEpoch - (int) (value >>> 32);
 
+            if (age >= 0 && age < bucketCount) {
+                total += value & COUNT_MASK;
+            }
+        }
+
+        return (int) Math.min(total, Integer.MAX_VALUE);
     }
 
-    /** This method exists only to facilitate testing of this class
-     * @return now (or a stubbed version of it)
-     */
-    public LocalDateTime now(){
-        return LocalDateTime.now();
+    private long epochOf(long nanos){
+        return Math.floorDiv(nanos, bucketNanos);
     }
 
-    /**
-     * @param now the current time
-     * @return true if the current time has exceeded the current period
-     */
-    private boolean pastPeriod(LocalDateTime now){
-        return Duration.between(lastEvent, now).toMinutes() > intervalMin;
+    private static long pack(int epoch, long count){
+        return ((long) epoch << 32) | (count & COUNT_MASK);
+    }
+
+    private static int bucketsPerInterval(int intervalMin){
+        if (intervalMin <= 0) {
+            throw new IllegalArgumentException("'intervalMin' must be a positive integer");
+        }
+        return (int) (TimeUnit.MINUTES.toSeconds(intervalMin) / DEFAULT_BUCKET_SECONDS);
     }
 }
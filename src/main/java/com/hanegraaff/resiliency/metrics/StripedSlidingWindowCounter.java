@@ -0,0 +1,220 @@
+package com.hanegraaff.resiliency.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A variant of the SlidingWindowCounter that spreads increments over several stripes,
+ * in the same spirit as java.util.concurrent.atomic.LongAdder. Each thread increments
+ * the stripe its thread id hashes to and moves to another stripe when it detects
+ * contention, so many SDK threads sharing one client no longer fight over the same
+ * cache line.
+ *
+ * Every stripe is a full ring of time buckets using the same packed epoch/count
+ * encoding as SlidingWindowCounter. Stripes are laid out one after the other and
+ * separated by a cache line of padding, so the active buckets of two stripes never
+ * share a cache line.
+ *
+ * Reads combine a cached sum of the closed buckets, refreshed once per bucket
+ * rotation, with a live read of the current bucket on every stripe. Reads therefore
+ * cost O(stripes) instead of O(stripes * buckets). An event recorded by a thread whose
+ * clock reading lagged a bucket rotation is included in the total at the next rotation.
+ */
+public class StripedSlidingWindowCounter implements WindowCounter {
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * Padding between stripes, expressed in longs (one 64 byte cache line)
+     */
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int bucketCount;
+    private final int stripeCount;
+    private final int stripeMask;
+    private final int rowStride;
+    private final long bucketNanos;
+    private final LongSupplier nanoClock;
+
+    /**
+     * Sum of the closed buckets (lower 32 bits) and the epoch it was computed for (upper 32 bits)
+     */
+    private volatile long closedSum;
+
+    /**
+     * Creates a new striped counter with a 5 second resolution and one stripe per
+     * available processor.
+     *
+     * @param intervalMin the length of the interval expressed in minutes.
+     */
+    public StripedSlidingWindowCounter(int intervalMin){
+        this(bucketsPerInterval(intervalMin), SlidingWindowCounter.DEFAULT_BUCKET_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a new striped counter with a user supplied resolution and one stripe
+     * per available processor.
+     *
+     * @param bucketCount the number of buckets in the window
+     * @param bucketDuration the length of each bucket
+     * @param unit the time unit of bucketDuration
+     */
+    public StripedSlidingWindowCounter(int bucketCount, long bucketDuration, TimeUnit unit){
+        this(bucketCount, bucketDuration, unit, Runtime.getRuntime().availableProcessors(), System::nanoTime);
+    }
+
+    /**
+     * Creates a new striped counter with user supplied resolution, stripes and clock.
+     *
+     * @param bucketCount the number of buckets in the window
+     * @param bucketDuration the length of each bucket
+     * @param unit the time unit of bucketDuration
+     * @param stripes the number of stripes. Rounded up to a power of two, up to 64.
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public StripedSlidingWindowCounter(int bucketCount, long bucketDuration, TimeUnit unit,
+                                       int stripes, LongSupplier nanoClock){
+        if (bucketCount <= 0) {
+            throw new IllegalArgumentException("'bucketCount' must be a positive integer");
+        }
+
+        if (bucketDuration <= 0) {
+            throw new IllegalArgumentException("'bucketDuration' must be a positive integer");
+        }
+
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("'stripes' must be a positive integer");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.bucketCount = bucketCount;
+        this.bucketNanos = unit.toNanos(bucketDuration);
+        this.nanoClock = nanoClock;
+        this.stripeCount = Math.min(MAX_STRIPES, stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1);
+        this.stripeMask = stripeCount - 1;
+        this.rowStride = bucketCount + PADDING;
+        this.cells = new AtomicLongArray(PADDING + stripeCount * rowStride);
+
+        // mark every bucket as expired so that the initial window is empty
+        int staleEpoch = (int) (epochOf(nanoClock.getAsLong()) - bucketCount);
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, pack(staleEpoch, 0));
+        }
+        this.closedSum = pack(staleEpoch, 0);
+    }
+
+    @Override
+    public int increment(){
+        long epoch = epochOf(nanoClock.getAsLong());
+        add(epoch);
+        return sum(epoch);
+    }
+
+    @Override
+    public void add(){
+        add(epochOf(nanoClock.getAsLong()));
+    }
+
+    @Override
+    public int getCountPerInterval(){
+        return sum(epochOf(nanoClock.getAsLong()));
+    }
+
+    /**
+     * @return the number of stripes used by this counter
+     */
+    public int getStripeCount(){
+        return stripeCount;
+    }
+
+    private void add(long epoch){
+        int bucket = (int) Math.floorMod(epoch, (long) bucketCount);
+        int currentEpoch = (int) epoch;
+        int stripe = probe();
+
+        while (true) {
+            int index = indexOf(stripe, bucket);
+            long value = cells.get(index);
+            int bucketEpoch = (int) (value >>> 32);
+
+            long next = (currentEpoch - bucketEpoch > 0) ? pack(currentEpoch, 1) : value + 1;
+
+            if (cells.compareAndSet(index, value, next)) {
+                return;
+            }
+
+            // contended, try the next stripe
+            stripe = (stripe + 1) & stripeMask;
+        }
+    }
+
+    private int sum(long epoch){
+        int currentEpoch = (int) epoch;
+        int bucket = (int) Math.floorMod(epoch, (long) bucketCount);
+
+        long closed = closedSum;
+        if ((int) (closed >>> 32) != currentEpoch) {
+            closed = pack(currentEpoch, sumClosedBuckets(currentEpoch));
+            closedSum = closed;
+        }
+
+        long total = closed & COUNT_MASK;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            long value = cells.get(indexOf(stripe, bucket));
+            if ((int) (value >>> 32) == currentEpoch) {
+                total += value & COUNT_MASK;
+            }
+        }
+
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    private long sumClosedBuckets(int currentEpoch){
+        long total = 0;
+
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                long value = cells.get(indexOf(stripe, bucket));
+                int age = currentEpoch - (int) (value >>> 32);
+
+                if (age > 0 && age < bucketCount) {
+                    total += value & COUNT_MASK;
+                }
+            }
+        }
+
+        return Math.min(total, COUNT_MASK);
+    }
+
+    private int indexOf(int stripe, int bucket){
+        return PADDING + stripe * rowStride + bucket;
+    }
+
+    private int probe(){
+        long id = Thread.currentThread().getId();
+        // spread sequential thread ids over the stripes
+        int h = (int) (id * 0x9E3779B97F4A7C15L >>> 32);
+        return h & stripeMask;
+    }
+
+    private long epochOf(long nanos){
+        return Math.floorDiv(nanos, bucketNanos);
+    }
+
+    private static long pack(int epoch, long count){
+        return ((long) epoch << 32) | (count & COUNT_MASK);
+    }
+
+    private static int bucketsPerInterval(int intervalMin){
+        if (intervalMin <= 0) {
+            throw new IllegalArgumentException("'intervalMin' must be a positive integer");
+        }
+        return (int) (TimeUnit.MINUTES.toSeconds(intervalMin) / SlidingWindowCounter.DEFAULT_BUCKET_SECONDS);
+    }
+}
@@ -0,0 +1,26 @@
+package com.hanegraaff.resiliency.metrics;
+
+/**
+ * A counter that only reports the events recorded during a recent window of time.
+ * Implementations must be safe to use from many SDK threads at once.
+ */
+public interface WindowCounter {
+
+    /**
+     * Increments the counter for the current time period
+     * @return The incremented counter value for the whole window
+     */
+    int increment();
+
+    /**
+     * Increments the counter for the current time period without reading back
+     * the window total.
+     */
+    void add();
+
+    /**
+     * Returns the value of the counter for the current time period
+     * @return The current counter value
+     */
+    int getCountPerInterval();
+}
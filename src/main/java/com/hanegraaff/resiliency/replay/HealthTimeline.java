@@ -0,0 +1,130 @@
+package com.hanegraaff.resiliency.replay;
+
+import com.hanegraaff.resiliency.health.ServiceHealthState;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a ServiceHealthTracker tripped during a replay, and how long it stayed unhealthy
+ */
+public final class HealthTimeline {
+
+    private final String name;
+    private final List<Trip> trips = new ArrayList<>();
+
+    private final long epochOffsetMillis;
+    private long openedNanos = Long.MIN_VALUE;
+
+    HealthTimeline(String name, long epochOffsetMillis) {
+        this.name = name;
+        this.epochOffsetMillis = epochOffsetMillis;
+    }
+
+    void onTransition(ServiceHealthTracker.Snapshot current) {
+        if (current.getState() == ServiceHealthState.UNHEALTHY) {
+            if (openedNanos == Long.MIN_VALUE) openedNanos = current.getTransitionNanos();
+        } else if (openedNanos != Long.MIN_VALUE) {
+            trips.add(new Trip(openedNanos, current.getTransitionNanos(), true));
+            openedNanos = Long.MIN_VALUE;
+        }
+    }
+
+    void finish(long endNanos) {
+        if (openedNanos != Long.MIN_VALUE) {
+            trips.add(new Trip(openedNanos, endNanos, false));
+            openedNanos = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * @return the name the tracker was created with
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the times the tracker became unhealthy, in order
+     */
+    public List<Trip> getTrips() {
+        return Collections.unmodifiableList(trips);
+    }
+
+    public int getTripCount() {
+        return trips.size();
+    }
+
+    /**
+     * @return the total time the tracker was unhealthy, in nanoseconds
+     */
+    public long getUnhealthyNanos() {
+        long total = 0;
+        for (Trip trip : trips) {
+            total += trip.getDurationNanos();
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d trips, unhealthy for %ds", name, trips.size(),
+                TimeUnit.NANOSECONDS.toSeconds(getUnhealthyNanos()));
+    }
+
+    /**
+     * A period during which the tracker was unhealthy
+     */
+    public final class Trip {
+        private final long startNanos;
+        private final long endNanos;
+        private final boolean recovered;
+
+        Trip(long startNanos, long endNanos, boolean recovered) {
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.recovered = recovered;
+        }
+
+        /**
+         * @return when the tracker became unhealthy, on the clock of the recorded traffic
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * @return when the tracker recovered, or the end of the replay if it did not
+         */
+        public long getEndNanos() {
+            return endNanos;
+        }
+
+        public long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+
+        /**
+         * @return when the tracker became unhealthy, in milliseconds since the epoch
+         */
+        public long getStartMillis() {
+            return epochOffsetMillis + TimeUnit.NANOSECONDS.toMillis(startNanos);
+        }
+
+        /**
+         * @return false if the tracker was still unhealthy at the end of the replay
+         */
+        public boolean isRecovered() {
+            return recovered;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%tF %<tT for %ds%s", getStartMillis(), TimeUnit.NANOSECONDS.toSeconds(getDurationNanos()),
+                    recovered ? "" : " (not recovered)");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.hanegraaff.resiliency.replay;
+
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.handlers.ServiceHealthRequestHandler;
+import com.hanegraaff.resiliency.health.HealthPolicy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A configuration to evaluate with a ReplayEngine: a named factory of handler chains.
+ * The factory is called once per replay, with a ReplayContext that supplies the virtual
+ * clock and creates the trackers whose transitions are reported.
+ *
+ * new ReplayCandidate("breaker", context -> {
+ *     ServiceHealthTracker tracker = context.newTracker("s3");
+ *     return Arrays.asList(
+ *         new ServiceHealthRequestHandler(policy, tracker, 5, context.counterFactory(), context.getNanoClock()),
+ *         new CircuitBreakerRequestHandler(tracker, 30000, 5, context.getNanoClock()));
+ * });
+ */
+public final class ReplayCandidate {
+
+    private final String name;
+    private final Function<ReplayContext, List<RequestHandler2>> handlerFactory;
+
+    /**
+     * @param name the name of the candidate, used in the results
+     * @param handlerFactory creates the handler chain of the candidate, in the order the SDK would call it
+     */
+    public ReplayCandidate(String name, Function<ReplayContext, List<RequestHandler2>> handlerFactory) {
+        if (name == null || handlerFactory == null) {
+            throw new IllegalArgumentException("'name' and 'handlerFactory' parameters cannot be null");
+        }
+
+        this.name = name;
+        this.handlerFactory = handlerFactory;
+    }
+
+    /**
+     * Creates a candidate made of a single ServiceHealthRequestHandler, with a tracker named "service"
+     *
+     * @param policy decides when the service becomes unhealthy and when it recovers
+     * @param metricIntervalMin the length of the window over which attempts are counted, in minutes
+     * @return a new candidate named after the policy and the interval
+     */
+    public static ReplayCandidate serviceHealth(HealthPolicy policy, int metricIntervalMin) {
+        if (policy == null) {
+            throw new IllegalArgumentException("'policy' parameter cannot be null");
+        }
+
+        return new ReplayCandidate(policy + ", interval " + metricIntervalMin + "min", context -> Collections.singletonList(
+                new ServiceHealthRequestHandler(policy, context.newTracker("service"), metricIntervalMin,
+                        context.counterFactory(), context.getNanoClock())));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    List<RequestHandler2> createHandlers(ReplayContext context) {
+        List<RequestHandler2> handlers = handlerFactory.apply(context);
+        if (handlers == null) {
+            throw new IllegalStateException("the handler factory of candidate '" + name + "' returned null");
+        }
+        return handlers;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
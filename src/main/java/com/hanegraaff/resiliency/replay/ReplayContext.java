@@ -0,0 +1,71 @@
+package com.hanegraaff.resiliency.replay;
+
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Supplies the handlers of a ReplayCandidate with the virtual clock of the replay, and
+ * creates the ServiceHealthTracker objects whose transitions are reported.
+ */
+public final class ReplayContext {
+
+    private final VirtualClock clock;
+    private final long epochOffsetMillis;
+    private final List<HealthTimeline> timelines = new ArrayList<>();
+
+    ReplayContext(VirtualClock clock, long epochOffsetMillis) {
+        this.clock = clock;
+        this.epochOffsetMillis = epochOffsetMillis;
+    }
+
+    /**
+     * @return the virtual clock of the replay. Every handler, tracker and counter of the candidate should read it.
+     */
+    public LongSupplier getNanoClock() {
+        return clock;
+    }
+
+    /**
+     * Creates a tracker that reads the virtual clock, and reports its transitions in the
+     * result of the replay
+     *
+     * @param name the name of the tracker in the result
+     * @return a new tracker
+     */
+    public ServiceHealthTracker newTracker(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("'name' parameter cannot be null");
+        }
+
+        ServiceHealthTracker tracker = new ServiceHealthTracker(clock);
+        HealthTimeline timeline = new HealthTimeline(name, epochOffsetMillis);
+        // the replay runs on a single thread, so transitions are recorded as they happen
+        tracker.addListener((t, previous, current) -> timeline.onTransition(current), Runnable::run);
+        timelines.add(timeline);
+        return tracker;
+    }
+
+    /**
+     * @return a factory of SlidingWindowCounter objects with 5 second buckets that read the virtual clock
+     */
+    public IntFunction<WindowCounter> counterFactory() {
+        return intervalMin -> new SlidingWindowCounter(
+                (int) (TimeUnit.MINUTES.toSeconds(intervalMin) / SlidingWindowCounter.DEFAULT_BUCKET_SECONDS),
+                SlidingWindowCounter.DEFAULT_BUCKET_SECONDS, TimeUnit.SECONDS, clock);
+    }
+
+    List<HealthTimeline> finish() {
+        for (HealthTimeline timeline : timelines) {
+            timeline.finish(clock.getAsLong());
+        }
+        return Collections.unmodifiableList(timelines);
+    }
+}
@@ -0,0 +1,283 @@
+package com.hanegraaff.resiliency.replay;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.hanegraaff.resiliency.handlers.BulkheadFullException;
+import com.hanegraaff.resiliency.handlers.CircuitOpenException;
+import com.hanegraaff.resiliency.handlers.RateLimitExceededException;
+import com.hanegraaff.resiliency.handlers.RequestRejectedException;
+import com.hanegraaff.resiliency.journal.JournalRecord;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays attempts recorded by an AttemptJournal through the handler chains of one or
+ * more ReplayCandidate objects, to find out offline when each health tracker would have
+ * tripped and for how long, for example before changing errorRateThreshold, minRequests
+ * or the metric interval in production.
+ *
+ * Time is virtual: the clock supplied to the candidates jumps from one recorded event to
+ * the next, so a day of traffic replays in seconds. Each attempt starts at its recorded
+ * end minus its latency and ends with its recorded outcome. Every attempt is replayed as
+ * a request of its own, so handlers that count requests, such as retry budgets, count
+ * attempts instead. Attempts that were rejected by a handler when they were recorded
+ * never reached the service and are not replayed.
+ *
+ * The recorded traffic is decoded once and shared, read-only, by all the replays, and
+ * replayAll() evaluates the candidates in parallel on a ForkJoinPool. Handlers that
+ * sleep, such as the fault injection handlers, should not be part of a candidate.
+ */
+public class ReplayEngine {
+
+    private static final Set<String> REJECTIONS = new HashSet<>(Arrays.asList(
+            RequestRejectedException.class.getSimpleName(), CircuitOpenException.class.getSimpleName(),
+            BulkheadFullException.class.getSimpleName(), RateLimitExceededException.class.getSimpleName()));
+
+    private final int attemptCount;
+    private final long[] startNanos;
+    private final long[] endNanos;
+    private final int[] startOrder;
+    private final ReplayedRequest[] operations;
+    private final String[] serviceNames;
+    private final URI[] endpoints;
+    private final AmazonServiceException[] errors;
+    private final long epochOffsetMillis;
+
+    /**
+     * Prepares the supplied attempts for replay
+     *
+     * @param records the recorded attempts, for example JournalReader.getRecords()
+     */
+    public ReplayEngine(List<JournalRecord> records) {
+        if (records == null) {
+            throw new IllegalArgumentException("'records' parameter cannot be null");
+        }
+
+        List<JournalRecord> replayed = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            if (!REJECTIONS.contains(record.getException())) replayed.add(record);
+        }
+        replayed.sort(Comparator.comparingLong(JournalRecord::getEndNanos));
+
+        this.attemptCount = replayed.size();
+        this.startNanos = new long[attemptCount];
+        this.endNanos = new long[attemptCount];
+        this.operations = new ReplayedRequest[attemptCount];
+        this.serviceNames = new String[attemptCount];
+        this.endpoints = new URI[attemptCount];
+        this.errors = new AmazonServiceException[attemptCount];
+
+        // requests, endpoints and errors are shared by the attempts that have the same values
+        Map<String, ReplayedRequest> operationCache = new HashMap<>();
+        Map<String, URI> endpointCache = new HashMap<>();
+        Map<String, AmazonServiceException> errorCache = new HashMap<>();
+
+        for (int i = 0; i < attemptCount; i++) {
+            JournalRecord record = replayed.get(i);
+            endNanos[i] = record.getEndNanos();
+            startNanos[i] = record.getLatencyNanos() > 0 ? record.getEndNanos() - record.getLatencyNanos() : record.getEndNanos();
+            operations[i] = operationCache.computeIfAbsent(String.valueOf(record.getOperation()), ReplayedRequest::new);
+            serviceNames[i] = record.getServiceName();
+            endpoints[i] = record.getEndpoint() == null ? null
+                    : endpointCache.computeIfAbsent(record.getEndpoint(), host -> URI.create("https://" + host));
+            if (record.isFailed()) {
+                errors[i] = errorCache.computeIfAbsent(record.getStatusCode() + " " + record.getException(),
+                        k -> newError(record));
+            }
+        }
+
+        Integer[] order = new Integer[attemptCount];
+        for (int i = 0; i < attemptCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> startNanos[i]));
+        this.startOrder = new int[attemptCount];
+        for (int i = 0; i < attemptCount; i++) {
+            startOrder[i] = order[i];
+        }
+
+        this.epochOffsetMillis = replayed.isEmpty() ? 0
+                : replayed.get(0).getTimestampMillis() - TimeUnit.NANOSECONDS.toMillis(replayed.get(0).getEndNanos());
+    }
+
+    /**
+     * @return the number of attempts replayed through each candidate
+     */
+    public int getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * Replays the recorded attempts through the handler chain of a candidate, on the
+     * calling thread
+     *
+     * @param candidate the configuration to evaluate
+     * @return when the trackers of the candidate tripped, and for how long
+     */
+    public ReplayResult replay(ReplayCandidate candidate) {
+        if (candidate == null) {
+            throw new IllegalArgumentException("'candidate' parameter cannot be null");
+        }
+
+        long began = System.nanoTime();
+        VirtualClock clock = new VirtualClock(attemptCount == 0 ? 0 : startNanos[startOrder[0]]);
+        ReplayContext context = new ReplayContext(clock, epochOffsetMillis);
+        RequestHandler2[] handlers = candidate.createHandlers(context).toArray(new RequestHandler2[0]);
+
+        Map<Integer, Request<?>> inFlight = new HashMap<>();
+        long rejected = 0;
+        int nextStart = 0;
+
+        for (int i = 0; i < attemptCount; i++) {
+            // start every attempt that began before this one ended
+            while (nextStart < attemptCount && startNanos[startOrder[nextStart]] <= endNanos[i]) {
+                int started = startOrder[nextStart++];
+                clock.advanceTo(startNanos[started]);
+
+                Request<?> request = begin(handlers, started);
+                if (request == null) {
+                    rejected++;
+                } else {
+                    inFlight.put(started, request);
+                }
+            }
+
+            clock.advanceTo(endNanos[i]);
+            Request<?> request = inFlight.remove(i);
+            if (request != null) complete(handlers, request, errors[i]);
+        }
+
+        return new ReplayResult(candidate, attemptCount, rejected, System.nanoTime() - began, context.finish());
+    }
+
+    /**
+     * Replays the recorded attempts through every candidate in parallel, on the common ForkJoinPool
+     *
+     * @param candidates the configurations to evaluate
+     * @return the results, in the order of the candidates
+     */
+    public List<ReplayResult> replayAll(List<ReplayCandidate> candidates) {
+        return replayAll(candidates, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replays the recorded attempts through every candidate in parallel
+     *
+     * @param candidates the configurations to evaluate
+     * @param pool the pool the replays run on
+     * @return the results, in the order of the candidates
+     */
+    public List<ReplayResult> replayAll(List<ReplayCandidate> candidates, ForkJoinPool pool) {
+        if (candidates == null || pool == null) {
+            throw new IllegalArgumentException("'candidates' and 'pool' parameters cannot be null");
+        }
+
+        if (candidates.isEmpty()) return new ArrayList<>();
+        return pool.invoke(new ReplayTask(candidates, 0, candidates.size()));
+    }
+
+    private Request<?> begin(RequestHandler2[] handlers, int attempt) {
+        DefaultRequest<?> request = new DefaultRequest<>(operations[attempt], serviceNames[attempt]);
+        if (endpoints[attempt] != null) request.setEndpoint(endpoints[attempt]);
+
+        try {
+            for (RequestHandler2 handler : handlers) {
+                handler.beforeRequest(request);
+            }
+        } catch (AmazonClientException e) {
+            afterError(handlers, request, e);
+            return null;
+        }
+
+        try {
+            HandlerBeforeAttemptContext context = HandlerBeforeAttemptContext.builder().withRequest(request).build();
+            for (RequestHandler2 handler : handlers) {
+                handler.beforeAttempt(context);
+            }
+        } catch (AmazonClientException e) {
+            complete(handlers, request, e);
+            return null;
+        }
+        return request;
+    }
+
+    private static void complete(RequestHandler2[] handlers, Request<?> request, AmazonClientException error) {
+        HandlerAfterAttemptContext context = HandlerAfterAttemptContext.builder().withRequest(request).withException(error).build();
+        for (RequestHandler2 handler : handlers) {
+            handler.afterAttempt(context);
+        }
+
+        if (error == null) {
+            for (RequestHandler2 handler : handlers) {
+                handler.afterResponse(request, null);
+            }
+        } else {
+            afterError(handlers, request, error);
+        }
+    }
+
+    private static void afterError(RequestHandler2[] handlers, Request<?> request, Exception error) {
+        for (RequestHandler2 handler : handlers) {
+            handler.afterError(request, null, error);
+        }
+    }
+
+    private static AmazonServiceException newError(JournalRecord record) {
+        AmazonServiceException error = new AmazonServiceException("Replayed " + record.getException());
+        error.setErrorCode(record.getException());
+        error.setStatusCode(record.getStatusCode());
+        error.setServiceName(record.getServiceName());
+        error.setErrorType(record.getStatusCode() >= 500 || record.getStatusCode() == 0
+                ? AmazonServiceException.ErrorType.Service : AmazonServiceException.ErrorType.Client);
+        return error;
+    }
+
+    /**
+     * Splits the candidates in halves until each task replays a single one
+     */
+    private class ReplayTask extends RecursiveTask<List<ReplayResult>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ReplayCandidate> candidates;
+        private final int from;
+        private final int to;
+
+        ReplayTask(List<ReplayCandidate> candidates, int from, int to) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ReplayResult> compute() {
+            if (to - from == 1) {
+                List<ReplayResult> result = new ArrayList<>();
+                result.add(replay(candidates.get(from)));
+                return result;
+            }
+
+            int middle = (from + to) >>> 1;
+            ReplayTask right = new ReplayTask(candidates, middle, to);
+            right.fork();
+            List<ReplayResult> results = new ReplayTask(candidates, from, middle).compute();
+            results.addAll(right.join());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.hanegraaff.resiliency.replay;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of replaying recorded traffic through a ReplayCandidate
+ */
+public final class ReplayResult {
+
+    private final ReplayCandidate candidate;
+    private final long attemptCount;
+    private final long rejectedCount;
+    private final long replayNanos;
+    private final List<HealthTimeline> timelines;
+
+    ReplayResult(ReplayCandidate candidate, long attemptCount, long rejectedCount, long replayNanos,
+                 List<HealthTimeline> timelines) {
+        this.candidate = candidate;
+        this.attemptCount = attemptCount;
+        this.rejectedCount = rejectedCount;
+        this.replayNanos = replayNanos;
+        this.timelines = timelines;
+    }
+
+    public ReplayCandidate getCandidate() {
+        return candidate;
+    }
+
+    /**
+     * @return the number of recorded attempts replayed
+     */
+    public long getAttemptCount() {
+        return attemptCount;
+    }
+
+    /**
+     * @return the number of replayed attempts rejected by a handler of the candidate, for example by an open circuit
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return how long the replay took in real time, in nanoseconds
+     */
+    public long getReplayNanos() {
+        return replayNanos;
+    }
+
+    /**
+     * @return the timelines of the trackers created by the candidate, in the order they were created
+     */
+    public List<HealthTimeline> getTimelines() {
+        return timelines;
+    }
+
+    /**
+     * @param name the name the tracker was created with
+     * @return the timeline of the tracker, or null if the candidate created no tracker with that name
+     */
+    public HealthTimeline getTimeline(String name) {
+        for (HealthTimeline timeline : timelines) {
+            if (timeline.getName().equals(name)) return timeline;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%s: %d attempts, %d rejected, replayed in %dms%n", candidate.getName(), attemptCount,
+                rejectedCount, TimeUnit.NANOSECONDS.toMillis(replayNanos)));
+        for (HealthTimeline timeline : timelines) {
+            result.append("    ").append(timeline).append('\n');
+            for (HealthTimeline.Trip trip : timeline.getTrips()) {
+                result.append("        ").append(trip).append('\n');
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.hanegraaff.resiliency.replay;
+
+import com.amazonaws.AmazonWebServiceRequest;
+
+/**
+ * Stands for the original SDK request of a replayed attempt. The journal only keeps the
+ * name of the operation, so handlers see this class instead of the real request class.
+ */
+final class ReplayedRequest extends AmazonWebServiceRequest {
+
+    private final String operation;
+
+    ReplayedRequest(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * @return the simple class name of the recorded request, for example GetObjectRequest
+     */
+    String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public String toString() {
+        return operation;
+    }
+}
@@ -0,0 +1,26 @@
+package com.hanegraaff.resiliency.replay;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The clock of a replay, moved forward by the ReplayEngine to the time of each replayed
+ * event. A replay runs on a single thread, so the time does not need to be volatile.
+ */
+class VirtualClock implements LongSupplier {
+
+    private long nanos;
+
+    VirtualClock(long nanos) {
+        this.nanos = nanos;
+    }
+
+    void advanceTo(long nanos) {
+        // the clock is monotonic, like System.nanoTime()
+        if (nanos > this.nanos) this.nanos = nanos;
+    }
+
+    @Override
+    public long getAsLong() {
+        return nanos;
+    }
+}
@@ -0,0 +1,128 @@
+package com.hanegraaff.resiliency.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket that caps retries to a fraction of the traffic that succeeds. Every
+ * successful request deposits retryRatio tokens, and every retry withdraws a whole
+ * token, so with a ratio of 0.1 there is at most one retry for every ten successful
+ * requests once the initial capacity has been spent.
+ *
+ * The bucket is lock-free and is meant to be shared: the same budget can be used by
+ * every client talking to a service, so that a degraded service sees a bounded amount
+ * of retries from the whole JVM instead of a multiple of its regular traffic.
+ *
+ * Tokens are kept as thousandths of a token in a single AtomicLong. Depositing into a
+ * full bucket only reads it.
+ */
+public class RetryBudget {
+
+    private static final long MILLIS_PER_TOKEN = 1000;
+
+    private final double retryRatio;
+    private final int capacity;
+    private final long depositMillis;
+    private final long capacityMillis;
+
+    private final AtomicLong tokenMillis;
+    private final LongAdder retriesAllowed = new LongAdder();
+    private final LongAdder retriesDenied = new LongAdder();
+
+    /**
+     * Creates a full budget that allows retries for 10% of the successful requests
+     * and can accumulate up to 100 retries
+     */
+    public RetryBudget() {
+        this(0.1, 100);
+    }
+
+    /**
+     * Creates a full budget with the supplied parameters
+     *
+     * @param retryRatio how many retries each successful request earns, for example 0.1 for 10%
+     * @param capacity the maximum number of retries the budget can accumulate
+     */
+    public RetryBudget(double retryRatio, int capacity) {
+        if (retryRatio <= 0 || retryRatio > 1) {
+            throw new IllegalArgumentException("'retryRatio' parameter is out of range. Must be greater than 0 and at most 1");
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("'capacity' must be a positive integer");
+        }
+
+        this.retryRatio = retryRatio;
+        this.capacity = capacity;
+        this.depositMillis = Math.max(1, Math.round(retryRatio * MILLIS_PER_TOKEN));
+        this.capacityMillis = capacity * MILLIS_PER_TOKEN;
+        this.tokenMillis = new AtomicLong(capacityMillis);
+    }
+
+    /**
+     * Deposits the tokens earned by a successful request
+     */
+    public void deposit() {
+        while (true) {
+            long current = tokenMillis.get();
+            if (current >= capacityMillis) return;
+
+            if (tokenMillis.compareAndSet(current, Math.min(capacityMillis, current + depositMillis))) return;
+        }
+    }
+
+    /**
+     * Withdraws the token needed for a retry
+     *
+     * @return true if the retry is allowed, false if the budget is exhausted
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long current = tokenMillis.get();
+            if (current < MILLIS_PER_TOKEN) {
+                retriesDenied.increment();
+                return false;
+            }
+
+            if (tokenMillis.compareAndSet(current, current - MILLIS_PER_TOKEN)) {
+                retriesAllowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of retries currently available
+     */
+    public double getAvailableTokens() {
+        return (double) tokenMillis.get() / MILLIS_PER_TOKEN;
+    }
+
+    /**
+     * @return how many retries each successful request earns
+     */
+    public double getRetryRatio() {
+        return retryRatio;
+    }
+
+    /**
+     * @return the maximum number of retries the budget can accumulate
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of retries allowed since the budget was created
+     */
+    public long getRetriesAllowed() {
+        return retriesAllowed.sum();
+    }
+
+    /**
+     * @return the number of retries denied since the budget was created
+     */
+    public long getRetriesDenied() {
+        return retriesDenied.sum();
+    }
+}
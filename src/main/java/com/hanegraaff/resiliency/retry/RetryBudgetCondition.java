@@ -0,0 +1,56 @@
+package com.hanegraaff.resiliency.retry;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+
+/**
+ * A RetryCondition that only allows a retry when the wrapped condition would retry
+ * and a token can be withdrawn from a RetryBudget. Errors that are not retryable
+ * never consume tokens.
+ *
+ * The budget is refilled by a RetryBudgetRequestHandler registered on the clients
+ * that share it.
+ */
+public class RetryBudgetCondition implements RetryPolicy.RetryCondition {
+
+    private final RetryPolicy.RetryCondition retryCondition;
+    private final RetryBudget retryBudget;
+
+    /**
+     * Creates a condition that applies the budget on top of the SDK default retry condition
+     *
+     * @param retryBudget the budget retries are withdrawn from
+     */
+    public RetryBudgetCondition(RetryBudget retryBudget) {
+        this(new PredefinedRetryPolicies.SDKDefaultRetryCondition(), retryBudget);
+    }
+
+    /**
+     * Creates a condition that applies the budget on top of a user supplied condition
+     *
+     * @param retryCondition decides which errors are retryable
+     * @param retryBudget the budget retries are withdrawn from
+     */
+    public RetryBudgetCondition(RetryPolicy.RetryCondition retryCondition, RetryBudget retryBudget) {
+        if (retryCondition == null || retryBudget == null) {
+            throw new IllegalArgumentException("'retryCondition' and 'retryBudget' parameters cannot be null");
+        }
+
+        this.retryCondition = retryCondition;
+        this.retryBudget = retryBudget;
+    }
+
+    @Override
+    public boolean shouldRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception, int retriesAttempted) {
+        return retryCondition.shouldRetry(originalRequest, exception, retriesAttempted) && retryBudget.tryAcquire();
+    }
+
+    /**
+     * @return the budget retries are withdrawn from
+     */
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+}
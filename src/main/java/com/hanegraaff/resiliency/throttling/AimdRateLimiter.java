@@ -0,0 +1,180 @@
+package com.hanegraaff.resiliency.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * A send-rate limiter that adapts to what the service will accept, using additive
+ * increase and multiplicative decrease (AIMD):
+ *
+ * 1. Every throttling response cuts the rate by decreaseFactor, at most once per
+ *    adjustment interval, so that a burst of throttles caused by the same overload
+ *    only cuts the rate once.
+ * 2. While requests succeed, the rate grows by increaseStep once per adjustment
+ *    interval, probing for spare capacity.
+ *
+ * Permits are handed out by keeping the time of the next free slot in an AtomicLong
+ * (the generic cell rate algorithm), so reserving a permit is a single CAS and the
+ * limiter has no locks and no background threads. Permits are evenly spaced, and
+ * unused capacity does not accumulate while the client is idle.
+ *
+ * A limiter can be shared by several clients talking to the same service.
+ */
+public class AimdRateLimiter {
+
+    private final double minRate;
+    private final double maxRate;
+    private final double decreaseFactor;
+    private final double increaseStep;
+    private final long adjustIntervalNanos;
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong rateBits;
+    private final AtomicLong nextFreeSlot;
+    private final AtomicLong nextIncrease;
+    private final AtomicLong nextDecrease;
+
+    private final LongAdder throttleCount = new LongAdder();
+
+    /**
+     * Creates a limiter that halves the rate on throttling and raises it by 5% of
+     * initialRate every second while requests succeed
+     *
+     * @param initialRate the initial number of attempts allowed per second
+     * @param minRate the rate is never cut below this number of attempts per second
+     * @param maxRate the rate never grows above this number of attempts per second
+     */
+    public AimdRateLimiter(double initialRate, double minRate, double maxRate) {
+        this(initialRate, minRate, maxRate, 0.5, initialRate / 20, 1000, System::nanoTime);
+    }
+
+    /**
+     * Creates a limiter with the supplied parameters
+     *
+     * @param initialRate the initial number of attempts allowed per second
+     * @param minRate the rate is never cut below this number of attempts per second
+     * @param maxRate the rate never grows above this number of attempts per second
+     * @param decreaseFactor the rate is multiplied by this factor (between 0-1) on throttling
+     * @param increaseStep how many attempts per second are added to the rate on each increase
+     * @param adjustIntervalMs the minimum time between two increases, or two decreases
+     * @param nanoClock a monotonic clock expressed in nanoseconds
+     */
+    public AimdRateLimiter(double initialRate, double minRate, double maxRate, double decreaseFactor,
+                           double increaseStep, long adjustIntervalMs, LongSupplier nanoClock) {
+        if (minRate <= 0 || minRate > initialRate || initialRate > maxRate) {
+            throw new IllegalArgumentException("rates must be positive and satisfy 'minRate' <= 'initialRate' <= 'maxRate'");
+        }
+
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("'decreaseFactor' parameter is out of range. Must be between 0 and 1");
+        }
+
+        if (increaseStep <= 0 || adjustIntervalMs <= 0) {
+            throw new IllegalArgumentException("'increaseStep' and 'adjustIntervalMs' must be positive numbers");
+        }
+
+        if (nanoClock == null) {
+            throw new IllegalArgumentException("'nanoClock' parameter cannot be null");
+        }
+
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.decreaseFactor = decreaseFactor;
+        this.increaseStep = increaseStep;
+        this.adjustIntervalNanos = TimeUnit.MILLISECONDS.toNanos(adjustIntervalMs);
+        this.nanoClock = nanoClock;
+
+        long now = nanoClock.getAsLong();
+        this.rateBits = new AtomicLong(Double.doubleToLongBits(initialRate));
+        this.nextFreeSlot = new AtomicLong(now);
+        this.nextIncrease = new AtomicLong(now + adjustIntervalNanos);
+        this.nextDecrease = new AtomicLong(now);
+    }
+
+    /**
+     * Reserves a permit for one attempt. The permit is only reserved if the caller is
+     * willing to wait for it.
+     *
+     * @param maxWaitNanos the longest the caller is willing to wait for the permit
+     * @return how long, in nanoseconds, the caller must wait before sending the attempt,
+     * or -1 if the permit is further away than maxWaitNanos
+     */
+    public long reserve(long maxWaitNanos) {
+        long interval = intervalNanos();
+
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long next = nextFreeSlot.get();
+
+            // capacity left unused while idle does not carry over
+            long slot = next - now > 0 ? next : now;
+            long wait = slot - now;
+            if (wait > maxWaitNanos) return -1;
+
+            if (nextFreeSlot.compareAndSet(next, slot + interval)) return wait;
+        }
+    }
+
+    /**
+     * Reports a throttling response, cutting the rate unless it was cut during the
+     * last adjustment interval
+     */
+    public void onThrottle() {
+        throttleCount.increment();
+
+        long now = nanoClock.getAsLong();
+        long due = nextDecrease.get();
+        if (now - due < 0 || !nextDecrease.compareAndSet(due, now + adjustIntervalNanos)) return;
+
+        updateRate(rate -> Math.max(minRate, rate * decreaseFactor));
+
+        // let the service recover before probing again
+        nextIncrease.set(now + adjustIntervalNanos);
+    }
+
+    /**
+     * Reports a successful attempt, raising the rate if it was not changed during the
+     * last adjustment interval
+     */
+    public void onSuccess() {
+        long now = nanoClock.getAsLong();
+        long due = nextIncrease.get();
+        if (now - due < 0) return;
+
+        // avoid writing to shared memory once the maximum rate is reached
+        if (getRate() >= maxRate) return;
+
+        if (nextIncrease.compareAndSet(due, now + adjustIntervalNanos)) {
+            updateRate(rate -> Math.min(maxRate, rate + increaseStep));
+        }
+    }
+
+    /**
+     * @return the number of attempts currently allowed per second
+     */
+    public double getRate() {
+        return Double.longBitsToDouble(rateBits.get());
+    }
+
+    /**
+     * @return the number of throttling responses reported since the limiter was created
+     */
+    public long getThrottleCount() {
+        return throttleCount.sum();
+    }
+
+    private long intervalNanos() {
+        return (long) (TimeUnit.SECONDS.toNanos(1) / getRate());
+    }
+
+    private void updateRate(DoubleUnaryOperator update) {
+        while (true) {
+            long current = rateBits.get();
+            long next = Double.doubleToLongBits(update.applyAsDouble(Double.longBitsToDouble(current)));
+            if (rateBits.compareAndSet(current, next)) return;
+        }
+    }
+}
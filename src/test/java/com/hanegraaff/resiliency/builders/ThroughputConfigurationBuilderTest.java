@@ -0,0 +1,59 @@
+package com.hanegraaff.resiliency.builders;
+
+import com.amazonaws.ClientConfiguration;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import com.hanegraaff.resiliency.retry.RetryBudgetCondition;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThroughputConfigurationBuilderTest {
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> ThroughputConfigurationBuilder.builder().withTargetConcurrency(0).build());
+        assertThrows(IllegalArgumentException.class, () -> ThroughputConfigurationBuilder.builder().withTypicalObjectSize(-1).build());
+    }
+
+    @Test
+    public void testPoolIsSizedFromConcurrency(){
+        assertEquals(50, ThroughputConfigurationBuilder.builder().withTargetConcurrency(8).build().getMaxConnections());
+        assertEquals(500, ThroughputConfigurationBuilder.builder().withTargetConcurrency(400).build().getMaxConnections());
+
+        ClientConfiguration config = ThroughputConfigurationBuilder.builder().build();
+        assertEquals(60 * 1000, config.getConnectionTTL());
+        assertEquals(30 * 1000, config.getConnectionMaxIdleMillis());
+        assertTrue(config.useReaper());
+        assertTrue(config.useTcpKeepAlive());
+    }
+
+    @Test
+    public void testTcpSettingsFollowObjectSize(){
+        ClientConfiguration small = ConfigurationBuilder.manySmallObjects();
+        assertEquals(320, small.getMaxConnections());
+        assertFalse(small.isUseExpectContinue());
+        assertArrayEquals(new int[]{0, 0}, small.getSocketBufferSizeHints());
+        assertEquals(5 * 1000, small.getRequestTimeout());
+
+        ClientConfiguration bulk = ConfigurationBuilder.highThroughputBulk();
+        assertEquals(160, bulk.getMaxConnections());
+        assertTrue(bulk.isUseExpectContinue());
+        assertArrayEquals(new int[]{1024 * 1024, 1024 * 1024}, bulk.getSocketBufferSizeHints());
+        assertEquals(69 * 1000, bulk.getRequestTimeout());
+
+        // the request timeout is capped for very large objects
+        assertEquals(15 * 60 * 1000, ThroughputConfigurationBuilder.builder().
+                withTypicalObjectSize(100L * 1024 * 1024 * 1024).build().getRequestTimeout());
+    }
+
+    @Test
+    public void testRetryBudget(){
+        ClientConfiguration config = ConfigurationBuilder.manySmallObjects(new RetryBudget(0.1, 10));
+        assertTrue(config.getRetryPolicy().getRetryCondition() instanceof RetryBudgetCondition);
+        assertEquals(5, config.getRetryPolicy().getMaxErrorRetry());
+    }
+}
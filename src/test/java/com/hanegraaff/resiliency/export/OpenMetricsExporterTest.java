@@ -0,0 +1,116 @@
+package com.hanegraaff.resiliency.export;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.hanegraaff.resiliency.handlers.AttemptMetricsRequestHandler;
+import com.hanegraaff.resiliency.health.ServiceHealthRegistry;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenMetricsExporterTest {
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new OpenMetricsExporter().register((AttemptMetricsRequestHandler) null));
+        assertThrows(IllegalArgumentException.class, () -> new OpenMetricsExporter().register(null, new ServiceHealthTracker()));
+        assertThrows(IllegalArgumentException.class, () -> new OpenMetricsHttpServer(null, new InetSocketAddress(0)));
+    }
+
+    @Test
+    public void testAttemptMetrics(){
+        AttemptMetricsRequestHandler handler = new AttemptMetricsRequestHandler();
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+        handler.beforeRequest(request);
+        handler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        handler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(new AmazonS3Exception("error")).build());
+        handler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        handler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+
+        String text = new OpenMetricsExporter().register(handler).scrape();
+
+        assertTrue(text.contains("# TYPE resiliency_attempts counter\n"));
+        assertTrue(text.contains("resiliency_requests_total{service=\"Amazon S3\",operation=\"GetObjectRequest\"} 1\n"));
+        assertTrue(text.contains("resiliency_attempts_total{service=\"Amazon S3\",operation=\"GetObjectRequest\"} 2\n"));
+        assertTrue(text.contains("resiliency_attempt_errors_total{service=\"Amazon S3\",operation=\"GetObjectRequest\",exception=\"AmazonS3Exception\"} 1\n"));
+        assertTrue(text.contains("# TYPE resiliency_attempt_latency_seconds summary\n"));
+        assertTrue(text.contains("resiliency_attempt_latency_seconds{service=\"Amazon S3\",operation=\"GetObjectRequest\",quantile=\"0.99\"} "));
+        assertTrue(text.contains("resiliency_attempt_latency_seconds_count{service=\"Amazon S3\",operation=\"GetObjectRequest\"} 2\n"));
+        assertTrue(text.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void testHealthAndOtherSources(){
+        ServiceHealthTracker tracker = new ServiceHealthTracker();
+        tracker.setUnhealthy();
+
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 1);
+        registry.record("Amazon S3", "s3.us-east-1.amazonaws.com", PutObjectRequest.class, true);
+        registry.record("Amazon S3", "s3.us-east-1.amazonaws.com", PutObjectRequest.class, true);
+
+        SlidingWindowCounter counter = new SlidingWindowCounter(1);
+        counter.increment();
+
+        String text = new OpenMetricsExporter()
+                .register("s3", tracker)
+                .register(registry)
+                .register("errors", counter)
+                .register("s3", new RetryBudget(0.1, 10))
+                .scrape();
+
+        assertTrue(text.contains("resiliency_health_state{tracker=\"s3\",resiliency_health_state=\"HEALTHY\"} 0\n"));
+        assertTrue(text.contains("resiliency_health_state{tracker=\"s3\",resiliency_health_state=\"UNHEALTHY\"} 1\n"));
+        assertTrue(text.contains("resiliency_health_transitions_total{tracker=\"s3\"} 1\n"));
+        assertTrue(text.contains("resiliency_health_state{service=\"Amazon S3\",endpoint=\"s3.us-east-1.amazonaws.com\","
+                + "operation=\"PutObjectRequest\",resiliency_health_state=\"UNHEALTHY\"} 1\n"));
+        assertTrue(text.contains("resiliency_window_count{counter=\"errors\"} 1\n"));
+        assertTrue(text.contains("resiliency_retry_budget_retries_total{budget=\"s3\",outcome=\"denied\"} 0\n"));
+
+        // the samples of a family are written together, after a single TYPE line
+        assertEquals(text.indexOf("# TYPE resiliency_health_state "), text.lastIndexOf("# TYPE resiliency_health_state "));
+        assertTrue(text.lastIndexOf("resiliency_health_state{") < text.indexOf("# TYPE resiliency_health_transitions"));
+    }
+
+    @Test
+    public void testLabelValuesAreEscaped(){
+        String text = new OpenMetricsExporter().register("a \"quoted\"\\name\n", new ServiceHealthTracker()).scrape();
+        assertTrue(text.contains("tracker=\"a \\\"quoted\\\"\\\\name\\n\""));
+    }
+
+    @Test
+    public void testHttpEndpoint() throws IOException {
+        OpenMetricsExporter exporter = new OpenMetricsExporter().register("s3", new ServiceHealthTracker());
+
+        try (OpenMetricsHttpServer server = new OpenMetricsHttpServer(exporter,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            String base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(base + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("application/openmetrics-text"));
+            try (InputStream body = connection.getInputStream()) {
+                assertEquals(exporter.scrape(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            HttpURLConnection other = (HttpURLConnection) new URL(base + "/other").openConnection();
+            assertEquals(404, other.getResponseCode());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.hanegraaff.resiliency.faults;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelayDistributionTest {
+
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.fixed(-1, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.uniform(100, 10, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.normal(100, -1, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.logNormal(100, 0, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.pareto(100, 0, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.empirical(new long[0], TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.empirical(new long[]{-1}, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> DelayDistribution.fixed(1, null));
+    }
+
+    @Test
+    public void testFixedAndUniform(){
+        assertEquals(TimeUnit.SECONDS.toNanos(2), DelayDistribution.fixed(2, TimeUnit.SECONDS).sampleNanos(new Random()));
+
+        long[] draws = sample(DelayDistribution.uniform(1000, 3000, TimeUnit.MILLISECONDS));
+        assertTrue(draws[0] >= TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(draws[SAMPLES - 1] <= TimeUnit.MILLISECONDS.toNanos(3000));
+        assertEquals(2000, millisAt(draws, 50), 20);
+    }
+
+    @Test
+    public void testNormal(){
+        long[] draws = sample(DelayDistribution.normal(500, 100, TimeUnit.MILLISECONDS));
+
+        assertEquals(500, millisAt(draws, 50), 5);
+        // 97.7% of draws are below mean + 2 standard deviations
+        assertEquals(700, millisAt(draws, 97.7), 10);
+    }
+
+    @Test
+    public void testLogNormalHasALongTail(){
+        long[] draws = sample(DelayDistribution.logNormal(100, 1, TimeUnit.MILLISECONDS));
+
+        assertEquals(100, millisAt(draws, 50), 3);
+        // p99 = median * e^2.326
+        assertEquals(1024, millisAt(draws, 99), 60);
+    }
+
+    @Test
+    public void testParetoHasAHeavyTail(){
+        long[] draws = sample(DelayDistribution.pareto(10, 2, TimeUnit.MILLISECONDS));
+
+        assertEquals(10, TimeUnit.NANOSECONDS.toMillis(draws[0]));
+        // P(X > x) = (scale / x)^shape, so p99 = scale * 10
+        assertEquals(100, millisAt(draws, 99), 6);
+
+        long[] capped = sample(DelayDistribution.pareto(10, 0.5, TimeUnit.MILLISECONDS).capped(5, TimeUnit.SECONDS));
+        assertEquals(5000, TimeUnit.NANOSECONDS.toMillis(capped[SAMPLES - 1]));
+    }
+
+    @Test
+    public void testEmpiricalReplaysTheSamples(){
+        long[] measured = new long[1000];
+        for (int i = 0; i < measured.length; i++) {
+            // mostly 20ms, with a 1% tail at 2 seconds
+            measured[i] = i % 100 == 0 ? 2000 : 20;
+        }
+
+        long[] draws = sample(DelayDistribution.empirical(measured, TimeUnit.MILLISECONDS));
+        assertEquals(20, millisAt(draws, 50));
+        assertEquals(20, millisAt(draws, 98));
+        assertEquals(2000, TimeUnit.NANOSECONDS.toMillis(draws[SAMPLES - 1]));
+        assertTrue(draws[0] >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testSeededDrawsAreReproducible(){
+        DelayDistribution distribution = DelayDistribution.logNormal(100, 1, TimeUnit.MILLISECONDS);
+        Random first = new Random(42);
+        Random second = new Random(42);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(distribution.sampleNanos(first), distribution.sampleNanos(second));
+        }
+    }
+
+    private long[] sample(DelayDistribution distribution) {
+        Random random = new Random(7);
+        long[] draws = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            draws[i] = distribution.sampleNanos(random);
+            assertTrue(draws[i] >= 0);
+        }
+        Arrays.sort(draws);
+        return draws;
+    }
+
+    private long millisAt(long[] sorted, double percentile) {
+        return TimeUnit.NANOSECONDS.toMillis(sorted[(int) (percentile / 100 * (sorted.length - 1))]);
+    }
+}
@@ -0,0 +1,127 @@
+package com.hanegraaff.resiliency.faults;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelayInjectingExecutorServiceTest {
+
+    private final DelayDistribution delay = DelayDistribution.uniform(200, 200, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void testValidInvalidParameters(){
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        try {
+            assertThrows(IllegalArgumentException.class, () -> new DelayInjectingExecutorService(null, 0.5, delay));
+            assertThrows(IllegalArgumentException.class, () -> new DelayInjectingExecutorService(delegate, 0.5, null));
+            assertThrows(IllegalArgumentException.class, () -> new DelayInjectingExecutorService(delegate, 1.5, delay));
+            assertThrows(IllegalArgumentException.class, () -> new DelayInjectingExecutorService(delegate, 0.5, delay, null));
+        } finally {
+            delegate.shutdown();
+        }
+    }
+
+    @Test
+    public void testDelaysDoNotHoldWorkerThreads() throws Exception {
+        DelayInjectingExecutorService executor = new DelayInjectingExecutorService(Executors.newSingleThreadExecutor(), 1, delay);
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executor.submit(() -> { }));
+        }
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // ten 200ms delays on a single worker thread would take 2 seconds if the worker slept
+        assertTrue(elapsedMs >= 200 && elapsedMs < 1000, "took " + elapsedMs + "ms");
+        assertEquals(10, executor.getInjectedDelays());
+        assertEquals(0, executor.getPendingCount());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTasksAreNotDelayedAtZeroRate() throws Exception {
+        DelayInjectingExecutorService executor = new DelayInjectingExecutorService(Executors.newSingleThreadExecutor(), 0, delay);
+
+        long start = System.nanoTime();
+        executor.submit(() -> { }).get(1, TimeUnit.SECONDS);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+        assertEquals(0, executor.getInjectedDelays());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDelayedTasksRunAfterShutdown() throws Exception {
+        DelayInjectingExecutorService executor = new DelayInjectingExecutorService(Executors.newSingleThreadExecutor(), 1, delay);
+        AtomicInteger runs = new AtomicInteger();
+
+        executor.execute(runs::incrementAndGet);
+        executor.shutdown();
+
+        assertTrue(executor.isShutdown());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(runs::incrementAndGet));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testRejectedTasksAreCancelled() throws Exception {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        DelayInjectingExecutorService executor = new DelayInjectingExecutorService(delegate, 1, delay);
+
+        Future<?> future = executor.submit(() -> { });
+        // the wrapped executor stops before the delay is over
+        delegate.shutdown();
+
+        assertThrows(CancellationException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertEquals(0, executor.getPendingCount());
+    }
+
+    @Test
+    public void testShutdownNowReturnsDelayedTasks() throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            DelayInjectingExecutorService executor = new DelayInjectingExecutorService(Executors.newSingleThreadExecutor(),
+                    1, DelayDistribution.fixed(10, TimeUnit.SECONDS), scheduler);
+            AtomicInteger runs = new AtomicInteger();
+            Runnable task = runs::incrementAndGet;
+
+            executor.execute(task);
+            executor.execute(task);
+            List<Runnable> dropped = executor.shutdownNow();
+
+            assertEquals(List.of(task, task), dropped);
+            assertEquals(0, executor.getPendingCount());
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+            assertEquals(0, runs.get());
+            // the shared scheduler is left running, without the cancelled hand-offs
+            assertFalse(scheduler.isShutdown());
+            assertEquals(0, scheduler.getQueue().size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.hanegraaff.resiliency.faults;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FaultScenarioTest {
+
+    @Test
+    public void testLoadFromFile() throws Exception {
+        Path path = Paths.get(getClass().getResource("/scenarios/s3-brownout.json").toURI());
+        FaultScenario scenario = FaultScenario.load(path);
+
+        assertEquals("s3-brownout", scenario.getName());
+        assertEquals(42, scenario.getSeed());
+        assertEquals(3, scenario.getPhases().size());
+        assertEquals(TimeUnit.SECONDS.toNanos(210), scenario.getDurationNanos());
+
+        FaultPhase ramp = scenario.getPhases().get(0);
+        assertEquals(0.0, ramp.errorRateAt(0));
+        assertEquals(0.25, ramp.errorRateAt(TimeUnit.MINUTES.toNanos(1)), 1e-9);
+        assertEquals(500, ramp.getErrorStatusCode());
+        assertNull(ramp.getDelayDistribution());
+
+        FaultPhase throttle = scenario.getPhases().get(1);
+        assertEquals(503, throttle.getErrorStatusCode());
+        assertEquals("SlowDown", throttle.getErrorCode());
+        assertTrue(throttle.isActiveAt(TimeUnit.SECONDS.toNanos(120)));
+        assertFalse(throttle.isActiveAt(TimeUnit.SECONDS.toNanos(150)));
+        assertTrue(throttle.matches("PutObjectRequest", "s3.us-east-1.amazonaws.com"));
+        assertFalse(throttle.matches("GetObjectRequest", "s3.us-east-1.amazonaws.com"));
+
+        FaultPhase slow = scenario.getPhases().get(2);
+        assertEquals(0.2, slow.getDelayRate());
+        assertTrue(slow.matches("GetObjectRequest", "bucket.s3.us-east-1.amazonaws.com"));
+        assertFalse(slow.matches("GetObjectRequest", "s3.us-west-2.amazonaws.com"));
+        assertTrue(slow.getDelayDistribution().toString().startsWith("log-normal"));
+    }
+
+    @Test
+    public void testInvalidDescriptions(){
+        assertThrows(IllegalArgumentException.class, () -> FaultScenario.fromJson("{"));
+        assertThrows(IllegalArgumentException.class, () -> FaultScenario.fromJson("{\"phases\": []}"));
+        assertThrows(IllegalArgumentException.class, () -> FaultScenario.fromJson("{\"phases\": [{\"errorRate\": 0.5}]}"));
+        assertThrows(IllegalArgumentException.class, () -> FaultScenario.fromJson(
+                "{\"phases\": [{\"duration\": \"10 minutes\", \"errorRate\": 0.5}]}"));
+        assertThrows(IllegalArgumentException.class, () -> FaultScenario.fromJson(
+                "{\"phases\": [{\"duration\": \"10s\", \"errorRate\": 1.5}]}"));
+        assertThrows(IllegalArgumentException.class, () -> FaultScenario.fromJson(
+                "{\"phases\": [{\"duration\": \"10s\", \"delay\": {\"distribution\": \"gamma\"}}]}"));
+        assertThrows(IllegalArgumentException.class, () -> new FaultScenario("empty", 1, Collections.emptyList()));
+    }
+
+    @Test
+    public void testDurations(){
+        FaultScenario scenario = FaultScenario.fromJson("{\"phases\": [" +
+                "{\"start\": 1500, \"duration\": \"1h\", \"delay\": {\"distribution\": \"fixed\", \"delay\": \"250ms\"}}]}");
+
+        FaultPhase phase = scenario.getPhases().get(0);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), phase.getStartNanos());
+        assertEquals(TimeUnit.HOURS.toNanos(1), phase.getDurationNanos());
+        assertEquals(1.0, phase.getDelayRate());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), phase.getDelayDistribution().sampleNanos(null));
+    }
+
+    @Test
+    public void testRandomnessDerivesFromTheSeed(){
+        FaultPhase phase = FaultPhase.builder("errors").withWindow(0, 1, TimeUnit.MINUTES).withErrorRate(0.5).build();
+        FaultScenario first = new FaultScenario("first", 7, Collections.singletonList(phase));
+        FaultScenario replay = new FaultScenario("replay", 7, Collections.singletonList(phase));
+        FaultScenario other = new FaultScenario("other", 8, Collections.singletonList(phase));
+
+        double sum = 0;
+        for (int attempt = 0; attempt < 10_000; attempt++) {
+            double draw = first.uniform(attempt, 0, 0);
+            assertTrue(draw >= 0 && draw < 1);
+            assertEquals(draw, replay.uniform(attempt, 0, 0));
+            sum += draw;
+        }
+        assertEquals(0.5, sum / 10_000, 0.01);
+
+        assertNotEquals(first.uniform(0, 0, 0), other.uniform(0, 0, 0));
+        assertNotEquals(first.uniform(0, 0, 0), first.uniform(0, 0, 1));
+        assertEquals(first.random(3, 0, 1).nextLong(), replay.random(3, 0, 1).nextLong());
+    }
+}
@@ -0,0 +1,99 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.throttling.AimdRateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveRateLimitRequestHandlerTest {
+
+    private final DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+
+    private HandlerBeforeAttemptContext beforeAttempt(){
+        return HandlerBeforeAttemptContext.builder().withRequest(request).build();
+    }
+
+    private HandlerAfterAttemptContext afterAttempt(Exception outcome){
+        return HandlerAfterAttemptContext.builder().withRequest(request).withException(outcome).build();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertDoesNotThrow(() -> new AdaptiveRateLimitRequestHandler(new AimdRateLimiter(10, 1, 100)));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveRateLimitRequestHandler(null));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveRateLimitRequestHandler(new AimdRateLimiter(10, 1, 100), -1));
+    }
+
+    @Test
+    public void testFailsWhenRateIsExceeded(){
+        AdaptiveRateLimitRequestHandler testHandler = new AdaptiveRateLimitRequestHandler(new AimdRateLimiter(1, 1, 10), 0);
+
+        testHandler.beforeAttempt(beforeAttempt());
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class, () -> testHandler.beforeAttempt(beforeAttempt()));
+
+        assertFalse(e.isRetryable());
+        assertEquals(1, testHandler.getRejectedCount());
+    }
+
+    @Test
+    public void testBlocksUntilPermitIsAvailable(){
+        AdaptiveRateLimitRequestHandler testHandler = new AdaptiveRateLimitRequestHandler(new AimdRateLimiter(50, 1, 100), 1000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            testHandler.beforeAttempt(beforeAttempt());
+        }
+
+        // three waits of 20ms each
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(55));
+        assertEquals(0, testHandler.getRejectedCount());
+    }
+
+    @Test
+    public void testInterruptAbortsTheWait(){
+        AdaptiveRateLimitRequestHandler testHandler = new AdaptiveRateLimitRequestHandler(new AimdRateLimiter(1, 1, 10), 5000);
+        testHandler.beforeAttempt(beforeAttempt());
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(AbortedException.class, () -> testHandler.beforeAttempt(beforeAttempt()));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testThrottlingCutsTheRate(){
+        AimdRateLimiter limiter = new AimdRateLimiter(100, 1, 100);
+        AdaptiveRateLimitRequestHandler testHandler = new AdaptiveRateLimitRequestHandler(limiter);
+
+        AmazonServiceException slowDown = new AmazonServiceException("Please reduce your request rate.");
+        slowDown.setStatusCode(503);
+        slowDown.setErrorCode("SlowDown");
+
+        AmazonServiceException notFound = new AmazonServiceException("Not Found");
+        notFound.setStatusCode(404);
+        notFound.setErrorCode("NoSuchKey");
+
+        testHandler.afterAttempt(afterAttempt(notFound));
+        testHandler.afterAttempt(afterAttempt(new RateLimitExceededException("test")));
+        assertEquals(100.0, limiter.getRate());
+
+        testHandler.afterAttempt(afterAttempt(slowDown));
+        assertEquals(50.0, limiter.getRate());
+        assertEquals(1, limiter.getThrottleCount());
+    }
+}
@@ -0,0 +1,157 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.builders.AdaptiveTimeoutPolicy;
+import com.hanegraaff.resiliency.builders.ConfigurationBuilder;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.local.LocalS3Server;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveTimeoutRequestHandlerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AdaptiveTimeoutPolicy policy = AdaptiveTimeoutPolicy.builder()
+            .withTimeoutRange(10, 30000, TimeUnit.MILLISECONDS)
+            .withBackoffRange(5, 1000, TimeUnit.MILLISECONDS)
+            .build();
+
+    private void attempts(AdaptiveTimeoutRequestHandler handler, AmazonWebServiceRequest originalRequest,
+                          int count, long latencyMs) {
+        for (int i = 0; i < count; i++) {
+            DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "Amazon S3");
+            handler.beforeRequest(request);
+            handler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+            handler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+        }
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveTimeoutRequestHandler(null));
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveTimeoutPolicy.builder().withTimeoutPercentile(100).build());
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveTimeoutPolicy.builder().withTimeoutRange(10, 5, TimeUnit.SECONDS).build());
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveTimeoutPolicy.builder().withChangeThreshold(1).build());
+        assertThrows(IllegalArgumentException.class, () -> ConfigurationBuilder.adaptive(null));
+    }
+
+    @Test
+    public void testTimeoutsFollowLatencyOfEachOperation(){
+        AdaptiveTimeoutRequestHandler testHandler = new AdaptiveTimeoutRequestHandler(policy, clock::get);
+
+        // until enough attempts are seen, the longest timeout applies
+        attempts(testHandler, new GetObjectMetadataRequest("bucket", "key"), 10, 20);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(30000, testHandler.getRequestTimeoutMs(GetObjectMetadataRequest.class));
+        assertEquals(5, testHandler.getBackoffBaseMs(GetObjectMetadataRequest.class));
+
+        attempts(testHandler, new GetObjectMetadataRequest("bucket", "key"), 100, 20);
+        attempts(testHandler, new GetObjectRequest("bucket", "key"), 100, 2000);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // 3 x p99, within the 3% precision of the histogram
+        assertEquals(60, testHandler.getRequestTimeoutMs(GetObjectMetadataRequest.class), 2);
+        assertEquals(20, testHandler.getBackoffBaseMs(GetObjectMetadataRequest.class), 1);
+        assertEquals(6000, testHandler.getRequestTimeoutMs(GetObjectRequest.class), 180);
+        assertEquals(1000, testHandler.getBackoffBaseMs(GetObjectRequest.class));
+    }
+
+    @Test
+    public void testTimeoutIsAppliedToACopyOfTheRequest(){
+        AdaptiveTimeoutRequestHandler testHandler = new AdaptiveTimeoutRequestHandler(policy, clock::get);
+
+        GetObjectRequest request = new GetObjectRequest("bucket", "key");
+        AmazonWebServiceRequest applied = testHandler.beforeExecution(request);
+        assertNull(request.getSdkRequestTimeout());
+        assertEquals(30000, applied.getSdkRequestTimeout());
+
+        // timeouts set by the caller are kept
+        GetObjectRequest explicit = new GetObjectRequest("bucket", "key").withSdkRequestTimeout(5);
+        assertSame(explicit, testHandler.beforeExecution(explicit));
+        assertEquals(5, explicit.getSdkRequestTimeout());
+    }
+
+    @Test
+    public void testHistoryRecordsSignificantChanges(){
+        AdaptiveTimeoutRequestHandler testHandler = new AdaptiveTimeoutRequestHandler(policy, clock::get);
+
+        attempts(testHandler, new GetObjectRequest("bucket", "key"), 100, 100);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        testHandler.getRequestTimeoutMs(GetObjectRequest.class);
+
+        // a 5% slowdown is ignored
+        attempts(testHandler, new GetObjectRequest("bucket", "key"), 1000, 105);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        testHandler.getRequestTimeoutMs(GetObjectRequest.class);
+
+        List<AdaptiveTimeoutRequestHandler.TuningChange> history = testHandler.getHistory();
+        assertEquals(1, history.size());
+        assertEquals(GetObjectRequest.class, history.get(0).getOperation());
+        assertEquals(30000, history.get(0).getPreviousTimeoutMs());
+        assertEquals(300, history.get(0).getTimeoutMs(), 9);
+        assertTrue(history.get(0).getSampleCount() >= policy.getMinSamples());
+    }
+
+    @Test
+    public void testBackoffIsBounded(){
+        AdaptiveTimeoutRequestHandler testHandler = new AdaptiveTimeoutRequestHandler(policy, clock::get);
+        attempts(testHandler, new GetObjectRequest("bucket", "key"), 100, 400);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // the base is the p50, rounded up to the bucket it falls in
+        long base = testHandler.getBackoffBaseMs(GetObjectRequest.class);
+        assertEquals(400, base, 400 * 0.04);
+
+        for (int retries = 0; retries < 10; retries++) {
+            long delay = testHandler.getBackoffStrategy().delayBeforeNextRetry(
+                    new GetObjectRequest("bucket", "key"), null, retries);
+            assertTrue(delay >= 0 && delay <= Math.min(policy.getMaxBackoffMs(), base << retries));
+        }
+    }
+
+    @Test
+    public void testSlowResponsesTimeOut() throws Exception {
+        try (LocalS3Server server = new LocalS3Server()) {
+            AdaptiveTimeoutRequestHandler testHandler = new AdaptiveTimeoutRequestHandler(AdaptiveTimeoutPolicy.builder()
+                    .withTimeoutPercentile(50).withTimeoutRange(100, 5000, TimeUnit.MILLISECONDS).withMinSamples(5)
+                    .withRefreshInterval(0, TimeUnit.MILLISECONDS).build());
+
+            AmazonS3 s3Client = server.newClientBuilder()
+                    .withClientConfiguration(ConfigurationBuilder.adaptive(testHandler))
+                    .withRequestHandlers(testHandler)
+                    .build();
+
+            server.putObject("bucket", "key", new byte[]{1});
+            for (int i = 0; i < 20; i++) {
+                s3Client.getObjectAsString("bucket", "key");
+            }
+            assertEquals(100, testHandler.getRequestTimeoutMs(GetObjectRequest.class));
+
+            // every attempt now times out long before the server answers
+            server.withLatency(DelayDistribution.fixed(2, TimeUnit.SECONDS));
+            long start = System.nanoTime();
+            assertThrows(AmazonClientException.class, () -> s3Client.getObjectAsString("bucket", "key"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+            s3Client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AttemptMetricsRequestHandlerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    static void request(AttemptMetricsRequestHandler handler, AtomicLong clock, AmazonWebServiceRequest originalRequest,
+                        long latencyMs, Exception... attemptErrors) {
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "Amazon S3");
+        handler.beforeRequest(request);
+
+        // one failed attempt per error, then a successful one
+        for (int i = 0; i <= attemptErrors.length; i++) {
+            Exception error = i < attemptErrors.length ? attemptErrors[i] : null;
+            handler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+            handler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(error).build());
+        }
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new AttemptMetricsRequestHandler(null));
+    }
+
+    @Test
+    public void testAttemptsAndErrorsAreCounted(){
+        AttemptMetricsRequestHandler testHandler = new AttemptMetricsRequestHandler(clock::get);
+
+        request(testHandler, clock, new GetObjectRequest("bucket", "key"), 20);
+        request(testHandler, clock, new GetObjectRequest("bucket", "key"), 20,
+                new AmazonS3Exception("slow down"), new AmazonClientException("timeout"), new AmazonS3Exception("slow down"));
+        request(testHandler, clock, new GetObjectRequest("bucket", "key"), 20, new BulkheadFullException("full"));
+
+        AttemptMetricsRequestHandler.OperationMetrics metrics = testHandler.getOperationMetrics(GetObjectRequest.class);
+        assertEquals("Amazon S3", metrics.getServiceName());
+        assertEquals(3, metrics.getRequestCount());
+        assertEquals(7, metrics.getAttemptCount());
+
+        Map<Class<?>, Long> errors = metrics.getErrorCounts();
+        assertEquals(2, errors.get(AmazonS3Exception.class));
+        assertEquals(1, errors.get(AmazonClientException.class));
+        assertEquals(1, errors.get(BulkheadFullException.class));
+
+        // the rejected attempt never reached the service
+        assertEquals(6, metrics.getLatency().getTotalCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), metrics.getLatency().getValueAtPercentile(50),
+                TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertNull(testHandler.getOperationMetrics(ListObjectsV2Request.class));
+    }
+}
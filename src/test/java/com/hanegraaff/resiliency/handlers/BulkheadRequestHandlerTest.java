@@ -0,0 +1,151 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkheadRequestHandlerTest {
+
+    private DefaultRequest<?> newRequest(AmazonWebServiceRequest originalRequest, String host){
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "Amazon S3");
+        request.setEndpoint(URI.create("https://" + host));
+        return request;
+    }
+
+    private DefaultRequest<?> getRequest(){
+        return newRequest(new GetObjectRequest("bucket", "key"), "s3.us-east-1.amazonaws.com");
+    }
+
+    private HandlerBeforeAttemptContext beforeAttempt(DefaultRequest<?> request){
+        return HandlerBeforeAttemptContext.builder().withRequest(request).build();
+    }
+
+    private HandlerAfterAttemptContext afterAttempt(DefaultRequest<?> request){
+        return HandlerAfterAttemptContext.builder().withRequest(request).build();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertDoesNotThrow(() -> new BulkheadRequestHandler(BulkheadScope.SERVICE, 10));
+        assertThrows(IllegalArgumentException.class, () -> new BulkheadRequestHandler(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> new BulkheadRequestHandler(BulkheadScope.SERVICE, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BulkheadRequestHandler(BulkheadScope.SERVICE, 10, -1, 0));
+    }
+
+    @Test
+    public void testRejectsWhenFull(){
+        BulkheadRequestHandler testHandler = new BulkheadRequestHandler(BulkheadScope.SERVICE, 2);
+        DefaultRequest<?> first = getRequest();
+        DefaultRequest<?> second = getRequest();
+        DefaultRequest<?> third = getRequest();
+
+        testHandler.beforeAttempt(beforeAttempt(first));
+        testHandler.beforeAttempt(beforeAttempt(second));
+        BulkheadFullException e = assertThrows(BulkheadFullException.class, () -> testHandler.beforeAttempt(beforeAttempt(third)));
+
+        assertFalse(e.isRetryable());
+        assertEquals(2, testHandler.getInFlight());
+        assertEquals(1, testHandler.getRejectedCount());
+
+        // the rejected attempt holds no permit, so its afterAttempt releases nothing
+        testHandler.afterAttempt(afterAttempt(third));
+        assertEquals(2, testHandler.getInFlight());
+
+        testHandler.afterAttempt(afterAttempt(first));
+        testHandler.beforeAttempt(beforeAttempt(third));
+        assertEquals(2, testHandler.getInFlight());
+    }
+
+    @Test
+    public void testPermitIsReleasedOnce(){
+        BulkheadRequestHandler testHandler = new BulkheadRequestHandler(BulkheadScope.SERVICE, 1);
+        DefaultRequest<?> request = getRequest();
+
+        testHandler.beforeAttempt(beforeAttempt(request));
+        testHandler.afterAttempt(afterAttempt(request));
+        testHandler.afterAttempt(afterAttempt(request));
+
+        assertEquals(0, testHandler.getInFlight());
+        testHandler.beforeAttempt(beforeAttempt(getRequest()));
+        assertThrows(BulkheadFullException.class, () -> testHandler.beforeAttempt(beforeAttempt(getRequest())));
+    }
+
+    @Test
+    public void testCompartmentsAreIndependent(){
+        BulkheadRequestHandler testHandler = new BulkheadRequestHandler(BulkheadScope.OPERATION, 1);
+
+        testHandler.beforeAttempt(beforeAttempt(getRequest()));
+        testHandler.beforeAttempt(beforeAttempt(newRequest(new PutObjectRequest("bucket", "key", new File("file")),
+                "s3.us-east-1.amazonaws.com")));
+        assertThrows(BulkheadFullException.class, () -> testHandler.beforeAttempt(beforeAttempt(getRequest())));
+
+        assertEquals(2, testHandler.getInFlight());
+        testHandler.forEachCompartment(compartment -> {
+            assertEquals(1, compartment.getInFlight());
+            assertEquals("*", compartment.getKey().getEndpointHost());
+        });
+
+        BulkheadRequestHandler endpointHandler = new BulkheadRequestHandler(BulkheadScope.ENDPOINT, 1);
+        endpointHandler.beforeAttempt(beforeAttempt(getRequest()));
+        assertDoesNotThrow(() -> endpointHandler.beforeAttempt(beforeAttempt(
+                newRequest(new GetObjectRequest("bucket", "key"), "s3.us-west-2.amazonaws.com"))));
+    }
+
+    @Test
+    public void testQueuedAttemptWaitsForPermit() throws Exception {
+        BulkheadRequestHandler testHandler = new BulkheadRequestHandler(BulkheadScope.SERVICE, 1, 1, 5000);
+        DefaultRequest<?> first = getRequest();
+        testHandler.beforeAttempt(beforeAttempt(first));
+
+        CompletableFuture<Void> queued = CompletableFuture.runAsync(() -> testHandler.beforeAttempt(beforeAttempt(getRequest())));
+        while (testHandler.getQueued() == 0) {
+            Thread.sleep(1);
+        }
+
+        // the queue holds a single attempt
+        assertThrows(BulkheadFullException.class, () -> testHandler.beforeAttempt(beforeAttempt(getRequest())));
+
+        testHandler.afterAttempt(afterAttempt(first));
+        queued.get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, testHandler.getQueued());
+        assertEquals(1, testHandler.getInFlight());
+    }
+
+    @Test
+    public void testQueuedAttemptTimesOut(){
+        BulkheadRequestHandler testHandler = new BulkheadRequestHandler(BulkheadScope.SERVICE, 1, 10, 20);
+        testHandler.beforeAttempt(beforeAttempt(getRequest()));
+
+        long start = System.nanoTime();
+        assertThrows(BulkheadFullException.class, () -> testHandler.beforeAttempt(beforeAttempt(getRequest())));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+        assertEquals(0, testHandler.getQueued());
+    }
+
+    @Test
+    public void testInterruptedWhileQueued(){
+        BulkheadRequestHandler testHandler = new BulkheadRequestHandler(BulkheadScope.SERVICE, 1, 1, 5000);
+        testHandler.beforeAttempt(beforeAttempt(getRequest()));
+
+        Thread.currentThread().interrupt();
+        assertThrows(AbortedException.class, () -> testHandler.beforeAttempt(beforeAttempt(getRequest())));
+        assertTrue(Thread.interrupted());
+    }
+}
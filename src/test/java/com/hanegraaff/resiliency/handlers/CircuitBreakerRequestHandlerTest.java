@@ -0,0 +1,118 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.ListBucketsRequest;
+import com.hanegraaff.resiliency.health.CircuitState;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerRequestHandlerTest {
+
+    ServiceHealthTracker testTracker;
+    AtomicLong testClock;
+    CircuitBreakerRequestHandler testHandler;
+
+    @BeforeEach
+    void setUp() {
+        testTracker = new ServiceHealthTracker();
+        testClock = new AtomicLong();
+        testHandler = new CircuitBreakerRequestHandler(testTracker, 1000, 2, testClock::get);
+    }
+
+    private Request<?> newRequest(){
+        return new DefaultRequest<>(new ListBucketsRequest(), "Amazon S3");
+    }
+
+    private void runAttempt(Request<?> request, Exception outcome){
+        testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(outcome).build());
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertDoesNotThrow(() -> new CircuitBreakerRequestHandler(new ServiceHealthTracker()));
+
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreakerRequestHandler(null));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreakerRequestHandler(new ServiceHealthTracker(), 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreakerRequestHandler(new ServiceHealthTracker(), 1000, 0));
+    }
+
+    @Test
+    public void testClosedWhileHealthy(){
+        Request<?> request = newRequest();
+        assertDoesNotThrow(() -> testHandler.beforeRequest(request));
+        runAttempt(request, new AmazonClientException("test"));
+
+        assertEquals(CircuitState.CLOSED, testHandler.getState());
+    }
+
+    @Test
+    public void testOpensAndFailsFastWhenUnhealthy(){
+        Request<?> inFlight = newRequest();
+        testHandler.beforeRequest(inFlight);
+
+        testTracker.setUnhealthy();
+
+        assertThrows(CircuitOpenException.class, () -> testHandler.beforeRequest(newRequest()));
+        assertEquals(CircuitState.OPEN, testHandler.getState());
+
+        // retries of requests that were already in flight are rejected too
+        assertThrows(CircuitOpenException.class,
+                () -> testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(inFlight).build()));
+        assertEquals(2, testHandler.getRejectedCount());
+        assertFalse(new CircuitOpenException("test").isRetryable());
+    }
+
+    @Test
+    public void testHalfOpenTrialsCloseTheCircuit(){
+        testTracker.setUnhealthy();
+        assertThrows(CircuitOpenException.class, () -> testHandler.beforeRequest(newRequest()));
+
+        testClock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        // two trial requests are allowed, the third one is rejected
+        Request<?> firstTrial = newRequest();
+        Request<?> secondTrial = newRequest();
+        testHandler.beforeRequest(firstTrial);
+        testHandler.beforeRequest(secondTrial);
+        assertEquals(CircuitState.HALF_OPEN, testHandler.getState());
+        assertThrows(CircuitOpenException.class, () -> testHandler.beforeRequest(newRequest()));
+
+        runAttempt(firstTrial, null);
+        assertEquals(CircuitState.HALF_OPEN, testHandler.getState());
+        runAttempt(secondTrial, null);
+        assertEquals(CircuitState.CLOSED, testHandler.getState());
+
+        // the tracker still reports the old outage, which no longer trips the circuit
+        assertDoesNotThrow(() -> testHandler.beforeRequest(newRequest()));
+
+        // a new failure while the service is still unhealthy does
+        runAttempt(newRequest(), new AmazonClientException("test"));
+        assertEquals(CircuitState.OPEN, testHandler.getState());
+    }
+
+    @Test
+    public void testFailedTrialReopensTheCircuit(){
+        testTracker.setUnhealthy();
+        assertThrows(CircuitOpenException.class, () -> testHandler.beforeRequest(newRequest()));
+
+        testClock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        Request<?> trial = newRequest();
+        testHandler.beforeRequest(trial);
+        runAttempt(trial, new AmazonClientException("test"));
+
+        assertEquals(CircuitState.OPEN, testHandler.getState());
+        assertThrows(CircuitOpenException.class, () -> testHandler.beforeRequest(newRequest()));
+    }
+}
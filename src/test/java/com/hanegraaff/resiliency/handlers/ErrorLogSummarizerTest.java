@@ -0,0 +1,109 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.http.exception.HttpRequestTimeoutException;
+import com.amazonaws.services.s3.model.ListBucketsRequest;
+import org.apache.commons.logging.Log;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ErrorLogSummarizerTest {
+
+    Log mockLog;
+    AtomicLong testClock;
+    Request<?> request;
+
+    @BeforeEach
+    void setUp() {
+        mockLog = Mockito.mock(Log.class);
+        when(mockLog.isWarnEnabled()).thenReturn(true);
+        testClock = new AtomicLong();
+
+        DefaultRequest<?> defaultRequest = new DefaultRequest<>(new ListBucketsRequest(), "Amazon S3");
+        defaultRequest.setEndpoint(URI.create("https://s3.amazonaws.com"));
+        request = defaultRequest;
+    }
+
+    @Test
+    public void testRepeatedFailuresAreSummarized(){
+        ErrorLogSummarizer summarizer = new ErrorLogSummarizer(mockLog, 10, TimeUnit.SECONDS, testClock::get);
+
+        for (int i = 0; i < 100; i++) {
+            summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        }
+        summarizer.recordFailure(request, new AmazonClientException("test"));
+
+        // only the first failure is logged in full
+        verify(mockLog, times(1)).warn(anyString());
+        verify(mockLog).warn("Error attempting Amazon S3 ListBucketsRequest operation using URL: s3.amazonaws.com. Caused by: HttpRequestTimeoutException");
+
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        summarizer.summarizeIfDue();
+        verify(mockLog).warn("101 ListBucketsRequest failures from s3.amazonaws.com in last 10s, top cause HttpRequestTimeoutException");
+
+        // nothing left to report
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        summarizer.summarizeIfDue();
+        verify(mockLog, times(2)).warn(anyString());
+    }
+
+    @Test
+    public void testSingleFailureIsNotSummarized(){
+        ErrorLogSummarizer summarizer = new ErrorLogSummarizer(mockLog, 10, TimeUnit.SECONDS, testClock::get);
+
+        summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        summarizer.summarizeIfDue();
+        verify(mockLog, times(1)).warn(anyString());
+
+        // a new interval logs the first failure in full again
+        summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        verify(mockLog, times(2)).warn(anyString());
+    }
+
+    @Test
+    public void testIdleEndpointsAreDropped(){
+        ErrorLogSummarizer summarizer = new ErrorLogSummarizer(mockLog, 10, TimeUnit.SECONDS, testClock::get);
+
+        // one endpoint per bucket, as with virtual hosted style requests
+        for (int i = 0; i < 100; i++) {
+            DefaultRequest<?> bucketRequest = new DefaultRequest<>(new ListBucketsRequest(), "Amazon S3");
+            bucketRequest.setEndpoint(URI.create("https://bucket-" + i + ".s3.amazonaws.com"));
+            summarizer.recordFailure(bucketRequest, new HttpRequestTimeoutException("timeout"));
+        }
+        assertEquals(100, summarizer.getTallyCount());
+
+        // the failures are reported by the first summary, and the endpoints are idle by the second
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        assertEquals(101, summarizer.getTallyCount());
+
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        assertEquals(1, summarizer.getTallyCount());
+    }
+
+    @Test
+    public void testNothingIsRecordedWhenWarnIsDisabled(){
+        when(mockLog.isWarnEnabled()).thenReturn(false);
+        ErrorLogSummarizer summarizer = new ErrorLogSummarizer(mockLog, 10, TimeUnit.SECONDS, testClock::get);
+
+        summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        summarizer.recordFailure(request, new HttpRequestTimeoutException("timeout"));
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        summarizer.summarizeIfDue();
+
+        verify(mockLog, never()).warn(anyString());
+    }
+}
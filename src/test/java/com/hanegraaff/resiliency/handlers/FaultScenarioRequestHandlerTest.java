@@ -0,0 +1,128 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.faults.FaultPhase;
+import com.hanegraaff.resiliency.faults.FaultScenario;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FaultScenarioRequestHandlerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private HandlerBeforeAttemptContext beforeAttempt(AmazonWebServiceRequest originalRequest){
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "Amazon S3");
+        request.setEndpoint(URI.create("https://s3.us-east-1.amazonaws.com"));
+        return HandlerBeforeAttemptContext.builder().withRequest(request).build();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new FaultScenarioRequestHandler(null));
+    }
+
+    @Test
+    public void testErrorRateRamps(){
+        FaultScenarioRequestHandler testHandler = new FaultScenarioRequestHandler(new FaultScenario("ramp", 1,
+                Collections.singletonList(FaultPhase.builder("ramp").withWindow(0, 2, TimeUnit.MINUTES).
+                        withErrorRateRamp(0, 0.5).build())), clock::get);
+
+        // 1000 attempts at the start, the middle and the end of the ramp
+        assertEquals(0, failures(testHandler, 1000, new GetObjectRequest("bucket", "key")));
+        clock.set(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(250, failures(testHandler, 1000, new GetObjectRequest("bucket", "key")), 50);
+        clock.set(TimeUnit.MINUTES.toNanos(2) - 1);
+        assertEquals(500, failures(testHandler, 1000, new GetObjectRequest("bucket", "key")), 50);
+
+        // the scenario is over
+        clock.set(TimeUnit.MINUTES.toNanos(2));
+        assertEquals(0, failures(testHandler, 1000, new GetObjectRequest("bucket", "key")));
+    }
+
+    @Test
+    public void testPhasesAreFilteredByOperation(){
+        FaultScenarioRequestHandler testHandler = new FaultScenarioRequestHandler(new FaultScenario("throttle", 1,
+                Collections.singletonList(FaultPhase.builder("throttle").withWindow(0, 30, TimeUnit.SECONDS).
+                        withErrorRate(1).withError(503, "SlowDown", "Please reduce your request rate.").
+                        withOperation("PutObjectRequest").build())), clock::get);
+
+        testHandler.beforeAttempt(beforeAttempt(new GetObjectRequest("bucket", "key")));
+        AmazonServiceException e = assertThrows(AmazonServiceException.class,
+                () -> testHandler.beforeAttempt(beforeAttempt(new PutObjectRequest("bucket", "key", new File("file")))));
+
+        assertEquals(503, e.getStatusCode());
+        assertEquals("SlowDown", e.getErrorCode());
+        assertEquals("Amazon S3", e.getServiceName());
+        assertEquals(1, testHandler.getInjectedErrors());
+    }
+
+    @Test
+    public void testSameSeedReplaysTheSameFaults(){
+        FaultScenario scenario = new FaultScenario("replay", 1234, Arrays.asList(
+                FaultPhase.builder("errors").withWindow(0, 1, TimeUnit.MINUTES).withErrorRate(0.3).build(),
+                FaultPhase.builder("more errors").withWindow(0, 1, TimeUnit.MINUTES).withErrorRate(0.1).build()));
+
+        assertEquals(outcomes(new FaultScenarioRequestHandler(scenario, clock::get)),
+                outcomes(new FaultScenarioRequestHandler(scenario, clock::get)));
+
+        FaultScenario otherSeed = new FaultScenario("other", 4321, scenario.getPhases());
+        assertNotEquals(outcomes(new FaultScenarioRequestHandler(scenario, clock::get)),
+                outcomes(new FaultScenarioRequestHandler(otherSeed, clock::get)));
+    }
+
+    @Test
+    public void testDelaysAreInjected(){
+        FaultScenarioRequestHandler testHandler = new FaultScenarioRequestHandler(new FaultScenario("slow", 1,
+                Collections.singletonList(FaultPhase.builder("slow").withWindow(0, 1, TimeUnit.MINUTES).
+                        withDelay(1, DelayDistribution.fixed(20, TimeUnit.MILLISECONDS)).build())));
+
+        long start = System.nanoTime();
+        testHandler.beforeAttempt(beforeAttempt(new GetObjectRequest("bucket", "key")));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, testHandler.getInjectedDelays());
+        assertEquals(0, testHandler.getInjectedErrors());
+    }
+
+    private int failures(FaultScenarioRequestHandler handler, int attempts, AmazonWebServiceRequest request) {
+        int failures = 0;
+        for (int i = 0; i < attempts; i++) {
+            try {
+                handler.beforeAttempt(beforeAttempt(request));
+            } catch (AmazonServiceException e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private String outcomes(FaultScenarioRequestHandler handler) {
+        StringBuilder outcomes = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            try {
+                handler.beforeAttempt(beforeAttempt(new GetObjectRequest("bucket", "key")));
+                outcomes.append('.');
+            } catch (AmazonServiceException e) {
+                outcomes.append('x');
+            }
+        }
+        return outcomes.toString();
+    }
+}
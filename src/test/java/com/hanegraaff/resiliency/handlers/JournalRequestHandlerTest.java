@@ -0,0 +1,80 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.journal.AttemptJournal;
+import com.hanegraaff.resiliency.journal.JournalReader;
+import com.hanegraaff.resiliency.journal.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JournalRequestHandlerTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    public void testValidInvalidParameters() throws IOException {
+        try (AttemptJournal journal = new AttemptJournal(directory.resolve("attempts.journal"), 10)) {
+            assertThrows(IllegalArgumentException.class, () -> new JournalRequestHandler(null));
+            assertThrows(IllegalArgumentException.class, () -> new JournalRequestHandler(journal, null));
+        }
+    }
+
+    @Test
+    public void testEveryAttemptIsJournaled() throws IOException {
+        Path path = directory.resolve("attempts.journal");
+
+        try (AttemptJournal journal = new AttemptJournal(path, 10)) {
+            JournalRequestHandler testHandler = new JournalRequestHandler(journal, clock::get);
+
+            DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+            request.setEndpoint(URI.create("https://bucket.s3.amazonaws.com"));
+            testHandler.beforeRequest(request);
+
+            AmazonS3Exception slowDown = new AmazonS3Exception("slow down");
+            slowDown.setStatusCode(503);
+
+            // a throttled attempt, then a successful retry
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(slowDown).build());
+
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+        }
+
+        List<JournalRecord> records = new JournalReader(path).getRecords();
+        assertEquals(2, records.size());
+
+        JournalRecord throttled = records.get(0);
+        assertEquals("GetObjectRequest", throttled.getOperation());
+        assertEquals("bucket.s3.amazonaws.com", throttled.getEndpoint());
+        assertEquals(503, throttled.getStatusCode());
+        assertEquals("AmazonS3Exception", throttled.getException());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(30), throttled.getLatencyNanos());
+        assertEquals(1, throttled.getAttempt());
+
+        JournalRecord retry = records.get(1);
+        assertNull(retry.getException());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), retry.getLatencyNanos());
+        assertEquals(2, retry.getAttempt());
+    }
+}
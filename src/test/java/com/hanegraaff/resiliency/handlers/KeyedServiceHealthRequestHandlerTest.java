@@ -0,0 +1,47 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.hanegraaff.resiliency.health.ServiceHealthRegistry;
+import com.hanegraaff.resiliency.health.ServiceHealthState;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyedServiceHealthRequestHandlerTest {
+
+    private HandlerAfterAttemptContext attempt(AmazonWebServiceRequest originalRequest, Exception outcome){
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "Amazon S3");
+        request.setEndpoint(URI.create("https://s3.us-east-1.amazonaws.com"));
+        return HandlerAfterAttemptContext.builder().withRequest(request).withException(outcome).build();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new KeyedServiceHealthRequestHandler(null));
+    }
+
+    @Test
+    public void testOperationsAreTrackedSeparately(){
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 2);
+        KeyedServiceHealthRequestHandler testHandler = new KeyedServiceHealthRequestHandler(registry);
+
+        for (int i = 0; i < 5; i++) {
+            testHandler.afterAttempt(attempt(new PutObjectRequest("bucket", "key", "redirect"), new AmazonClientException("test")));
+            testHandler.afterAttempt(attempt(new GetObjectRequest("bucket", "key"), null));
+            testHandler.afterAttempt(attempt(new GetObjectRequest("bucket", "key"), new CircuitOpenException("test")));
+        }
+
+        assertEquals(ServiceHealthState.UNHEALTHY,
+                registry.getHealthState("Amazon S3", "s3.us-east-1.amazonaws.com", PutObjectRequest.class));
+        assertEquals(ServiceHealthState.HEALTHY,
+                registry.getHealthState("Amazon S3", "s3.us-east-1.amazonaws.com", GetObjectRequest.class));
+    }
+}
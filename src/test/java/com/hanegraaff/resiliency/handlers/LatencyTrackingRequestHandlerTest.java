@@ -0,0 +1,102 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyTrackingRequestHandlerTest {
+
+    AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new LatencyTrackingRequestHandler(null));
+    }
+
+    @Test
+    public void testAttemptAndRequestLatencies(){
+        LatencyTrackingRequestHandler testHandler = new LatencyTrackingRequestHandler(clock::get);
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+
+        testHandler.beforeRequest(request);
+
+        // a failed attempt of 100ms, 200ms of backoff, then a successful attempt of 50ms
+        attempt(testHandler, request, 100, new AmazonClientException("timeout"));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        attempt(testHandler, request, 50, null);
+        testHandler.afterResponse(request, null);
+
+        LatencyHistogram.Snapshot attempts = testHandler.getAttemptLatency(GetObjectRequest.class).snapshot();
+        LatencyHistogram.Snapshot requests = testHandler.getRequestLatency(GetObjectRequest.class).snapshot();
+
+        assertEquals(2, attempts.getTotalCount());
+        assertEquals(TimeUnit.MILLISECONDS.toMillis(100), TimeUnit.NANOSECONDS.toMillis(attempts.getMax()), 4);
+        assertEquals(1, requests.getTotalCount());
+        assertEquals(350, TimeUnit.NANOSECONDS.toMillis(requests.getMax()), 12);
+
+        assertNull(testHandler.getAttemptLatency(PutObjectRequest.class));
+    }
+
+    @Test
+    public void testRejectedAttemptsAreNotRecorded(){
+        LatencyTrackingRequestHandler testHandler = new LatencyTrackingRequestHandler(clock::get);
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+
+        testHandler.beforeRequest(request);
+        attempt(testHandler, request, 1, new CircuitOpenException("test"));
+
+        // beforeAttempt was never called, for example because another handler rejected the attempt first
+        testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+        testHandler.afterError(request, null, new CircuitOpenException("test"));
+
+        assertEquals(0, testHandler.getAttemptLatency(GetObjectRequest.class).getTotalCount());
+        assertEquals(1, testHandler.getRequestLatency(GetObjectRequest.class).getTotalCount());
+    }
+
+    @Test
+    public void testHandlersOnTheSameClientAreIndependent(){
+        LatencyTrackingRequestHandler first = new LatencyTrackingRequestHandler(clock::get);
+        LatencyTrackingRequestHandler second = new LatencyTrackingRequestHandler(clock::get);
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+
+        // the SDK calls every handler in turn, in the order they were registered
+        first.beforeRequest(request);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        second.beforeRequest(request);
+
+        HandlerBeforeAttemptContext beforeAttempt = HandlerBeforeAttemptContext.builder().withRequest(request).build();
+        HandlerAfterAttemptContext afterAttempt = HandlerAfterAttemptContext.builder().withRequest(request).build();
+        first.beforeAttempt(beforeAttempt);
+        second.beforeAttempt(beforeAttempt);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        first.afterAttempt(afterAttempt);
+        second.afterAttempt(afterAttempt);
+        first.afterResponse(request, null);
+        second.afterResponse(request, null);
+
+        for (LatencyTrackingRequestHandler handler : new LatencyTrackingRequestHandler[]{first, second}) {
+            assertEquals(1, handler.getAttemptLatency(GetObjectRequest.class).getTotalCount());
+            assertEquals(100, TimeUnit.NANOSECONDS.toMillis(handler.getAttemptLatency(GetObjectRequest.class).snapshot().getMax()), 4);
+        }
+        assertEquals(110, TimeUnit.NANOSECONDS.toMillis(first.getRequestLatency(GetObjectRequest.class).snapshot().getMax()), 4);
+        assertEquals(100, TimeUnit.NANOSECONDS.toMillis(second.getRequestLatency(GetObjectRequest.class).snapshot().getMax()), 4);
+    }
+
+    private void attempt(LatencyTrackingRequestHandler testHandler, DefaultRequest<?> request, long durationMs, Exception outcome){
+        testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(durationMs));
+        testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(outcome).build());
+    }
+}
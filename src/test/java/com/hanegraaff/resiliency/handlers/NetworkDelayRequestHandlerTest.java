@@ -1,10 +1,21 @@
 package com.hanegraaff.resiliency.handlers;
 
+import com.amazonaws.AbortedException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class NetworkDelayRequestHandlerTest {
+
+    private final HandlerBeforeAttemptContext beforeAttempt = HandlerBeforeAttemptContext.builder().
+            withRequest(new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3")).build();
+
     @Test
     public void testValidInvalidParameters(){
         assertDoesNotThrow(() -> {
@@ -15,5 +26,28 @@ class NetworkDelayRequestHandlerTest {
         assertThrows(IllegalArgumentException.class, () -> new NetworkDelayRequestHandler(1.1, 100, 100));
         assertThrows(IllegalArgumentException.class, () -> new NetworkDelayRequestHandler(0.6, -1, 100));
         assertThrows(IllegalArgumentException.class, () -> new NetworkDelayRequestHandler(0.6, 100, -1));
+        assertThrows(IllegalArgumentException.class, () -> new NetworkDelayRequestHandler(0.6, null));
+    }
+
+    @Test
+    public void testDelayIsDrawnFromDistribution(){
+        NetworkDelayRequestHandler testHandler = new NetworkDelayRequestHandler(1,
+                DelayDistribution.fixed(30, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        testHandler.beforeAttempt(beforeAttempt);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    public void testInterruptAbortsTheAttempt(){
+        NetworkDelayRequestHandler testHandler = new NetworkDelayRequestHandler(1,
+                DelayDistribution.fixed(10, TimeUnit.SECONDS));
+
+        Thread.currentThread().interrupt();
+        assertThrows(AbortedException.class, () -> testHandler.beforeAttempt(beforeAttempt));
+
+        // the interrupt status is preserved for the caller
+        assertTrue(Thread.interrupted());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RetryBudgetRequestHandlerTest {
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudgetRequestHandler(null));
+    }
+
+    @Test
+    public void testSuccessesRefillTheBudget(){
+        RetryBudget testBudget = new RetryBudget(0.5, 2);
+        RetryBudgetRequestHandler testHandler = new RetryBudgetRequestHandler(testBudget);
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+
+        testBudget.tryAcquire();
+        testBudget.tryAcquire();
+        assertEquals(0.0, testBudget.getAvailableTokens());
+
+        testHandler.afterResponse(request, null);
+        testHandler.afterResponse(request, null);
+        assertEquals(1.0, testBudget.getAvailableTokens());
+    }
+}
@@ -0,0 +1,174 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.faults.FaultPhase;
+import com.hanegraaff.resiliency.faults.FaultScenario;
+import com.hanegraaff.resiliency.faults.LoopbackFaultServer;
+import com.hanegraaff.resiliency.faults.ServiceError;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServiceErrorInjectionRequestHandlerTest {
+
+    private static final int MAX_ERROR_RETRY = 2;
+
+    private AmazonS3 s3Client(RequestHandler2... handlers) {
+        RetryPolicy retryPolicy = new RetryPolicy(PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+                (request, exception, retries) -> 1, MAX_ERROR_RETRY, true);
+
+        return AmazonS3ClientBuilder.standard()
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                .withRegion("us-east-1")
+                .withPathStyleAccessEnabled(true)
+                .withClientConfiguration(new ClientConfiguration().withRetryPolicy(retryPolicy))
+                .withRequestHandlers(handlers)
+                .build();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new ServiceErrorInjectionRequestHandler(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceErrorInjectionRequestHandler(ServiceError.SLOW_DOWN, 1.1));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceErrorInjectionRequestHandler(ServiceError.SLOW_DOWN, 1, null));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceError(200, "OK", "Not an error"));
+    }
+
+    @Test
+    public void testInjectedErrorsAreRetried(){
+        try (ServiceErrorInjectionRequestHandler testHandler = new ServiceErrorInjectionRequestHandler(ServiceError.SLOW_DOWN, 1)) {
+            AmazonS3Exception e = assertThrows(AmazonS3Exception.class,
+                    () -> s3Client(testHandler).getObject("bucket", "key"));
+
+            assertEquals(503, e.getStatusCode());
+            assertEquals("SlowDown", e.getErrorCode());
+            assertEquals(MAX_ERROR_RETRY + 1, testHandler.getInjectedErrors());
+            assertEquals(MAX_ERROR_RETRY + 1, testHandler.getServer().getResponseCount());
+        }
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried(){
+        try (ServiceErrorInjectionRequestHandler testHandler = new ServiceErrorInjectionRequestHandler(
+                new ServiceError(404, "NoSuchKey", "The specified key does not exist."), 1)) {
+            AmazonS3Exception e = assertThrows(AmazonS3Exception.class,
+                    () -> s3Client(testHandler).getObject(new GetObjectRequest("bucket", "key")));
+
+            assertEquals(404, e.getStatusCode());
+            assertEquals("NoSuchKey", e.getErrorCode());
+            assertEquals(1, testHandler.getInjectedErrors());
+        }
+    }
+
+    @Test
+    public void testRequestTimeoutIsRetried(){
+        try (ServiceErrorInjectionRequestHandler testHandler = new ServiceErrorInjectionRequestHandler(ServiceError.REQUEST_TIMEOUT, 1)) {
+            AmazonS3Exception e = assertThrows(AmazonS3Exception.class,
+                    () -> s3Client(testHandler).getObject("bucket", "key"));
+
+            assertEquals(400, e.getStatusCode());
+            assertEquals("RequestTimeout", e.getErrorCode());
+            assertEquals(MAX_ERROR_RETRY + 1, testHandler.getInjectedErrors());
+        }
+    }
+
+    @Test
+    public void testEndpointIsRestored(){
+        try (ServiceErrorInjectionRequestHandler testHandler = new ServiceErrorInjectionRequestHandler(ServiceError.INTERNAL_ERROR, 1)) {
+            URI endpoint = URI.create("https://s3.us-east-1.amazonaws.com");
+            DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+            request.setEndpoint(endpoint);
+
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            assertEquals(testHandler.getServer().getEndpoint(), request.getEndpoint());
+            assertEquals("500", request.getHeaders().get(LoopbackFaultServer.STATUS_HEADER));
+
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+            assertEquals(endpoint, request.getEndpoint());
+            assertFalse(request.getHeaders().containsKey(LoopbackFaultServer.STATUS_HEADER));
+        }
+    }
+
+    @Test
+    public void testHandlersSeeTheEndpointAccordingToTheirPosition(){
+        EndpointRecorder before = new EndpointRecorder();
+        EndpointRecorder after = new EndpointRecorder();
+        BulkheadRequestHandler bulkheadBefore = new BulkheadRequestHandler(BulkheadScope.ENDPOINT, 10);
+        BulkheadRequestHandler bulkheadAfter = new BulkheadRequestHandler(BulkheadScope.ENDPOINT, 10);
+
+        try (ServiceErrorInjectionRequestHandler testHandler = new ServiceErrorInjectionRequestHandler(ServiceError.SLOW_DOWN, 1)) {
+            String loopback = testHandler.getServer().getEndpoint().getHost();
+            assertThrows(AmazonS3Exception.class,
+                    () -> s3Client(bulkheadBefore, before, testHandler, after, bulkheadAfter).getObject("bucket", "key"));
+
+            // the SDK calls beforeAttempt and afterAttempt in the order the handlers were registered
+            assertEquals("s3.amazonaws.com", before.beforeAttempt);
+            assertEquals(loopback, before.afterAttempt);
+            assertEquals(loopback, after.beforeAttempt);
+            assertEquals("s3.amazonaws.com", after.afterAttempt);
+
+            // a bulkhead registered after the redirect files the attempts under the loopback server
+            assertEquals(Collections.singletonList("s3.amazonaws.com"), compartmentHosts(bulkheadBefore));
+            assertEquals(Collections.singletonList(loopback), compartmentHosts(bulkheadAfter));
+        }
+    }
+
+    private static List<String> compartmentHosts(BulkheadRequestHandler bulkhead) {
+        List<String> hosts = new ArrayList<>();
+        bulkhead.forEachCompartment(compartment -> hosts.add(compartment.getKey().getEndpointHost()));
+        return hosts;
+    }
+
+    private static class EndpointRecorder extends RequestHandler2 {
+        volatile String beforeAttempt;
+        volatile String afterAttempt;
+
+        @Override
+        public void beforeAttempt(HandlerBeforeAttemptContext context) {
+            beforeAttempt = context.getRequest().getEndpoint().getHost();
+        }
+
+        @Override
+        public void afterAttempt(HandlerAfterAttemptContext context) {
+            afterAttempt = context.getRequest().getEndpoint().getHost();
+        }
+    }
+
+    @Test
+    public void testScenarioErrorsAreRetried() throws Exception {
+        try (LoopbackFaultServer server = new LoopbackFaultServer()) {
+            FaultScenarioRequestHandler testHandler = new FaultScenarioRequestHandler(new FaultScenario("outage", 1,
+                    Collections.singletonList(FaultPhase.builder("outage").withWindow(0, 1, TimeUnit.MINUTES).
+                            withErrorRate(1).withError(ServiceError.SERVICE_UNAVAILABLE).build())), server);
+
+            AmazonS3Exception e = assertThrows(AmazonS3Exception.class,
+                    () -> s3Client(testHandler).getObject("bucket", "key"));
+
+            assertEquals(503, e.getStatusCode());
+            assertEquals("ServiceUnavailable", e.getErrorCode());
+            assertNotEquals(0, server.getResponseCount());
+            assertEquals(MAX_ERROR_RETRY + 1, testHandler.getInjectedErrors());
+        }
+    }
+}
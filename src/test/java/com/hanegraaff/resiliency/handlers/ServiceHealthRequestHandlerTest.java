@@ -3,15 +3,25 @@ package com.hanegraaff.resiliency.handlers;
 import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.Request;
 import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.health.HealthPolicy;
+import com.hanegraaff.resiliency.health.LatencyRule;
 import com.hanegraaff.resiliency.health.ServiceHealthState;
 import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.StripedSlidingWindowCounter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ServiceHealthRequestHandlerTest {
 
@@ -61,4 +71,63 @@ class ServiceHealthRequestHandlerTest {
 
         assertEquals(testTracker.getHealthState(), ServiceHealthState.UNHEALTHY);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMetricIntervalIsConfigurable(){
+        AtomicLong clock = new AtomicLong();
+        ServiceHealthTracker testTracker = new ServiceHealthTracker(clock::get);
+        ServiceHealthRequestHandler testHandler = new ServiceHealthRequestHandler(HealthPolicy.of(0.5, 1), testTracker, 1,
+                intervalMin -> new SlidingWindowCounter(intervalMin * 12, 5, TimeUnit.SECONDS, clock::get), clock::get);
+
+        Mockito.when(mockContext.getException()).thenReturn(new Exception("test exception"));
+        testHandler.afterAttempt(this.mockContext);
+        testHandler.afterAttempt(this.mockContext);
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+
+        // the failures fall out of the 1 minute window
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(65));
+        Mockito.when(mockContext.getException()).thenReturn(null);
+        testHandler.afterAttempt(this.mockContext);
+        assertEquals(ServiceHealthState.HEALTHY, testTracker.getHealthState());
+
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthRequestHandler(HealthPolicy.of(0.5, 1),
+                testTracker, 0, SlidingWindowCounter::new, clock::get));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthRequestHandler(HealthPolicy.of(0.5, 1),
+                testTracker, 1, SlidingWindowCounter::new, null));
+    }
+
+    @Test
+    public void testServiceAppearsUnHealthyWithStripedCounters(){
+        ServiceHealthTracker testTracker = new ServiceHealthTracker();
+        ServiceHealthRequestHandler testHandler = new ServiceHealthRequestHandler(0, 1, testTracker, StripedSlidingWindowCounter::new);
+
+        Exception e = new Exception("test exception");
+        Mockito.when(mockContext.getException()).thenReturn(e);
+
+        testHandler.afterAttempt(this.mockContext);
+        testHandler.afterAttempt(this.mockContext);
+        testHandler.afterAttempt(this.mockContext);
+
+        assertEquals(testTracker.getHealthState(), ServiceHealthState.UNHEALTHY);
+    }
+
+    @Test
+    public void testSlowServiceAppearsUnHealthy() throws InterruptedException {
+        ServiceHealthTracker testTracker = new ServiceHealthTracker();
+        ServiceHealthRequestHandler testHandler = new ServiceHealthRequestHandler(HealthPolicy.builder().
+                withTripThreshold(0.5).withMinRequests(2).
+                withLatencyRule(LatencyRule.fractionAbove(0.5, 1, TimeUnit.MILLISECONDS)).build(), testTracker);
+
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+        request.setEndpoint(URI.create("https://s3.us-east-1.amazonaws.com"));
+        testHandler.beforeRequest(request);
+
+        for (int i = 0; i < 4; i++) {
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            Thread.sleep(5);
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+        }
+
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+    }
+}
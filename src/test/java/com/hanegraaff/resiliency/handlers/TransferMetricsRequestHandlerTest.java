@@ -0,0 +1,219 @@
+package com.hanegraaff.resiliency.handlers;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.hanegraaff.resiliency.faults.ServiceError;
+import com.hanegraaff.resiliency.local.LocalS3Server;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransferMetricsRequestHandlerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private DefaultRequest<?> beginRequest(TransferMetricsRequestHandler handler, AmazonWebServiceRequest originalRequest) {
+        DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "Amazon S3");
+        handler.beforeRequest(request);
+        return request;
+    }
+
+    private void attempt(TransferMetricsRequestHandler handler, DefaultRequest<?> request, long latencyMs, Exception error) {
+        handler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        handler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(error).build());
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new TransferMetricsRequestHandler(null, 10, clock::get));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TransferMetricsRequestHandler(TransferMetricsRequestHandler::s3TransferKey, 0, clock::get));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TransferMetricsRequestHandler(TransferMetricsRequestHandler::s3TransferKey, 10, null));
+    }
+
+    @Test
+    public void testPartsAreAggregatedPerObject(){
+        TransferMetricsRequestHandler testHandler =
+                new TransferMetricsRequestHandler(TransferMetricsRequestHandler::s3TransferKey, 10, clock::get);
+
+        attempt(testHandler, beginRequest(testHandler, new InitiateMultipartUploadRequest("bucket", "big")), 10, null);
+
+        DefaultRequest<?> first = beginRequest(testHandler, new UploadPartRequest().withBucketName("bucket").withKey("big"));
+        attempt(testHandler, first, 50, new AmazonS3Exception("slow down"));
+        attempt(testHandler, first, 50, null);
+        attempt(testHandler, beginRequest(testHandler, new UploadPartRequest().withBucketName("bucket").withKey("big")), 50, null);
+
+        attempt(testHandler, beginRequest(testHandler,
+                new CompleteMultipartUploadRequest().withBucketName("bucket").withKey("big")), 10, null);
+        attempt(testHandler, beginRequest(testHandler, new GetObjectRequest("bucket", "other").withRange(0, 1023)), 10, null);
+        attempt(testHandler, beginRequest(testHandler, new GetObjectRequest("bucket", "single")), 10, null);
+        attempt(testHandler, beginRequest(testHandler, new PutObjectRequest("bucket", "single", "content")), 10, null);
+        attempt(testHandler, beginRequest(testHandler, new ListObjectsV2Request()), 10, null);
+
+        assertEquals(2, testHandler.getTransferCount());
+
+        TransferMetricsRequestHandler.TransferMetrics transfer = testHandler.getTransfer("bucket/big");
+        assertEquals(4, transfer.getRequestCount());
+        assertEquals(5, transfer.getAttemptCount());
+        assertEquals(1, transfer.getRetryCount());
+        assertEquals(1, transfer.getFailureCount());
+        assertEquals(1, transfer.getErrorCounts().get(AmazonS3Exception.class));
+        assertEquals(5, transfer.getLatency().getTotalCount());
+        assertEquals(0, transfer.getInFlight());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(170), transfer.getElapsedNanos());
+        assertNull(testHandler.getTransfer("bucket/single"));
+
+        assertEquals(transfer, testHandler.removeTransfer("bucket/big"));
+        assertNull(testHandler.getTransfer("bucket/big"));
+    }
+
+    @Test
+    public void testIdleTransfersAreEvicted(){
+        TransferMetricsRequestHandler testHandler =
+                new TransferMetricsRequestHandler(TransferMetricsRequestHandler::s3TransferKey, 10, clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            attempt(testHandler, beginRequest(testHandler, rangedGet("object-" + i)), 10, null);
+        }
+        attempt(testHandler, beginRequest(testHandler, rangedGet("object-0")), 10, null);
+        DefaultRequest<?> inFlight = beginRequest(testHandler, rangedGet("object-1"));
+        testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(inFlight).build());
+
+        // the limit is exceeded, and a tenth of it is evicted along with the excess
+        attempt(testHandler, beginRequest(testHandler, rangedGet("object-10")), 10, null);
+
+        assertEquals(9, testHandler.getTransferCount());
+        assertEquals(2, testHandler.getTransfer("bucket/object-0").getRequestCount());
+        assertEquals(1, testHandler.getTransfer("bucket/object-1").getInFlight());
+        assertNull(testHandler.getTransfer("bucket/object-2"));
+        assertNull(testHandler.getTransfer("bucket/object-3"));
+        assertEquals(1, testHandler.getTransfer("bucket/object-10").getRequestCount());
+    }
+
+    @Test
+    public void testTransferCountStaysBoundedWhenFull(){
+        TransferMetricsRequestHandler testHandler =
+                new TransferMetricsRequestHandler(TransferMetricsRequestHandler::s3TransferKey, 1000, clock::get);
+
+        for (int i = 0; i < 50_000; i++) {
+            attempt(testHandler, beginRequest(testHandler, rangedGet("object-" + i)), 1, null);
+            assertTrue(testHandler.getTransferCount() <= 1000);
+        }
+
+        // the most recent transfers are kept
+        assertEquals(1, testHandler.getTransfer("bucket/object-49999").getRequestCount());
+        assertTrue(testHandler.getTransferCount() >= 900);
+    }
+
+    private static GetObjectRequest rangedGet(String key) {
+        return new GetObjectRequest("bucket", key).withRange(0, 1023);
+    }
+
+    @Test
+    public void testConcurrentPartsAreCounted() throws InterruptedException {
+        TransferMetricsRequestHandler testHandler = new TransferMetricsRequestHandler();
+        int parts = 64;
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        CountDownLatch started = new CountDownLatch(parts);
+
+        for (int i = 0; i < parts; i++) {
+            int partNumber = i + 1;
+            executor.execute(() -> {
+                DefaultRequest<?> request = new DefaultRequest<>(new UploadPartRequest().withBucketName("bucket")
+                        .withKey("big").withPartNumber(partNumber), "Amazon S3");
+                testHandler.beforeRequest(request);
+                testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+
+                // every part is in flight before any of them completes
+                started.countDown();
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                Exception error = partNumber % 8 == 0 ? new AmazonClientException("reset") : null;
+                testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(error).build());
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        TransferMetricsRequestHandler.TransferMetrics transfer = testHandler.getTransfer("bucket/big");
+        assertEquals(parts, transfer.getRequestCount());
+        assertEquals(parts, transfer.getAttemptCount());
+        assertEquals(parts / 8, transfer.getFailureCount());
+        assertEquals(parts, transfer.getPeakInFlight());
+        assertEquals(0, transfer.getInFlight());
+    }
+
+    @Test
+    public void testMultipartUploadThroughTransferManager() throws Exception {
+        TransferMetricsRequestHandler testHandler = new TransferMetricsRequestHandler();
+
+        try (LocalS3Server server = new LocalS3Server()) {
+            RetryPolicy retryPolicy = new RetryPolicy(PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+                    (request, exception, retries) -> 1, 10, true);
+            AmazonS3 s3Client = server.newClientBuilder()
+                    .withClientConfiguration(new ClientConfiguration().withRetryPolicy(retryPolicy))
+                    .withRequestHandlers(testHandler)
+                    .build();
+            s3Client.createBucket("bucket");
+
+            TransferManager transferManager = TransferManagerBuilder.standard()
+                    .withS3Client(s3Client)
+                    .withMinimumUploadPartSize(5L * 1024 * 1024)
+                    .withMultipartUploadThreshold(5L * 1024 * 1024)
+                    .withExecutorFactory(() -> Executors.newFixedThreadPool(4))
+                    .build();
+
+            byte[] content = new byte[20 * 1024 * 1024];
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+
+            server.withErrors(ServiceError.SLOW_DOWN, 0.2);
+            try {
+                transferManager.upload("bucket", "big", new ByteArrayInputStream(content), metadata).waitForCompletion();
+            } finally {
+                server.withErrors(null, 0);
+                transferManager.shutdownNow(true);
+            }
+        }
+
+        TransferMetricsRequestHandler.TransferMetrics transfer = testHandler.removeTransfer("bucket/big");
+        // initiate, 4 parts and complete
+        assertEquals(6, transfer.getRequestCount());
+        assertEquals(6 + transfer.getRetryCount(), transfer.getAttemptCount());
+        assertEquals(transfer.getRetryCount(), transfer.getFailureCount());
+        assertTrue(transfer.getPeakInFlight() >= 1 && transfer.getPeakInFlight() <= 4);
+    }
+}
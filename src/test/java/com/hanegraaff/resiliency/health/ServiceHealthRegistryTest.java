@@ -0,0 +1,130 @@
+package com.hanegraaff.resiliency.health;
+
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListBucketsRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServiceHealthRegistryTest {
+
+    static final String S3 = "Amazon S3";
+    static final String US_EAST = "s3.us-east-1.amazonaws.com";
+    static final String US_WEST = "s3.us-west-2.amazonaws.com";
+
+    @Test
+    public void testCombinationsAreTrackedSeparately(){
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 5);
+
+        for (int i = 0; i < 10; i++) {
+            registry.record(S3, US_EAST, PutObjectRequest.class, true);
+            registry.record(S3, US_EAST, GetObjectRequest.class, false);
+            registry.record(S3, US_WEST, GetObjectRequest.class, false);
+        }
+
+        assertEquals(ServiceHealthState.UNHEALTHY, registry.getHealthState(S3, US_EAST, PutObjectRequest.class));
+        assertEquals(ServiceHealthState.HEALTHY, registry.getHealthState(S3, US_EAST, GetObjectRequest.class));
+        assertEquals(ServiceHealthState.HEALTHY, registry.getHealthState(S3, US_WEST, GetObjectRequest.class));
+        assertEquals(ServiceHealthState.HEALTHY, registry.getHealthState(S3, US_WEST, ListBucketsRequest.class));
+
+        assertEquals(1, registry.getUnhealthyKeys().size());
+        assertEquals(new HealthKey(S3, US_EAST, "PutObjectRequest"), registry.getUnhealthyKeys().get(0));
+        assertEquals(3, registry.getHealthStates().size());
+
+        // a third of all attempts failed, which is below the threshold
+        assertEquals(ServiceHealthState.HEALTHY, registry.getRollupState(S3));
+        assertEquals(ServiceHealthState.HEALTHY, registry.getRollupState());
+    }
+
+    @Test
+    public void testRecordReportsTransitionOnce(){
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0, 1);
+
+        assertFalse(registry.record(S3, US_EAST, PutObjectRequest.class, true));
+        assertTrue(registry.record(S3, US_EAST, PutObjectRequest.class, true));
+        assertFalse(registry.record(S3, US_EAST, PutObjectRequest.class, true));
+    }
+
+    @Test
+    public void testCardinalityIsBounded(){
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 5, 2, 60 * 1000);
+
+        registry.record(S3, US_EAST, PutObjectRequest.class, false);
+        registry.record(S3, US_EAST, GetObjectRequest.class, false);
+        registry.record(S3, US_WEST, PutObjectRequest.class, false);
+        registry.record(S3, US_WEST, GetObjectRequest.class, false);
+
+        assertEquals(2, registry.size());
+        assertNotNull(registry.getWindow(HealthKey.OVERFLOW));
+        assertEquals(2, registry.getWindow(HealthKey.OVERFLOW).getEventCount());
+    }
+
+    @Test
+    public void testOverflowDoesNotAddMaps(){
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 5, 2, 60 * 1000);
+
+        registry.record(S3, US_EAST, PutObjectRequest.class, false);
+        registry.record(S3, US_EAST, GetObjectRequest.class, false);
+        for (int i = 0; i < 1000; i++) {
+            registry.record("service-" + i, "host-" + i + ".example.com", GetObjectRequest.class, false);
+        }
+
+        assertEquals(2, registry.size());
+        assertEquals(1000, registry.getWindow(HealthKey.OVERFLOW).getEventCount());
+        // one service and one endpoint map
+        assertEquals(2, registry.getNestedMapCount());
+    }
+
+    @Test
+    public void testIdleEntriesAreEvicted(){
+        AtomicLong testClock = new AtomicLong();
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 5, 10, 60 * 1000, testClock::get);
+
+        registry.record(S3, US_EAST, PutObjectRequest.class, false);
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(45));
+        registry.record(S3, US_EAST, GetObjectRequest.class, false);
+        assertEquals(2, registry.size());
+
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        registry.evictIdle();
+
+        assertEquals(1, registry.size());
+        assertNull(registry.getWindow(new HealthKey(S3, US_EAST, "PutObjectRequest")));
+        assertNotNull(registry.getWindow(new HealthKey(S3, US_EAST, "GetObjectRequest")));
+    }
+
+    @Test
+    public void testEmptyMapsAreEvicted(){
+        AtomicLong testClock = new AtomicLong();
+        ServiceHealthRegistry registry = new ServiceHealthRegistry(0.5, 5, 10, 60 * 1000, testClock::get);
+
+        registry.record(S3, US_EAST, PutObjectRequest.class, false);
+        registry.record(S3, US_WEST, PutObjectRequest.class, false);
+        registry.record("Amazon DynamoDB", "dynamodb.us-east-1.amazonaws.com", GetObjectRequest.class, false);
+        assertEquals(5, registry.getNestedMapCount());
+
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(45));
+        registry.record(S3, US_WEST, PutObjectRequest.class, false);
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        registry.evictIdle();
+
+        assertEquals(1, registry.size());
+        assertEquals(2, registry.getNestedMapCount());
+
+        // an evicted combination is tracked again when it comes back
+        registry.record(S3, US_EAST, PutObjectRequest.class, false);
+        assertEquals(2, registry.size());
+        assertEquals(3, registry.getNestedMapCount());
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthRegistry(1.1, 5));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthRegistry(0.5, 5, 0, 1000));
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthRegistry(0.5, 5, 10, 0));
+    }
+}
@@ -3,9 +3,21 @@ package com.hanegraaff.resiliency.health;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ServiceHealthTrackerTest {
 
@@ -37,4 +49,104 @@ class ServiceHealthTrackerTest {
         assertEquals(testTracker.getHealthState(), ServiceHealthState.UNHEALTHY);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSnapshot(){
+        AtomicLong clock = new AtomicLong(100);
+        ServiceHealthTracker testTracker = new ServiceHealthTracker(clock::get);
+
+        ServiceHealthTracker.Snapshot initial = testTracker.getSnapshot();
+        assertEquals(ServiceHealthState.HEALTHY, initial.getState());
+        assertEquals(100, initial.getTransitionNanos());
+        assertEquals(0, initial.getTransitionCount());
+
+        clock.set(250);
+        assertTrue(testTracker.transitionTo(ServiceHealthState.UNHEALTHY));
+        assertFalse(testTracker.transitionTo(ServiceHealthState.UNHEALTHY));
+
+        ServiceHealthTracker.Snapshot current = testTracker.getSnapshot();
+        assertEquals(ServiceHealthState.UNHEALTHY, current.getState());
+        assertEquals(250, current.getTransitionNanos());
+        assertEquals(1, current.getTransitionCount());
+        assertEquals(current.getLastStateChange(), testTracker.getLastStateChange());
+
+        // setting the current state again must not replace the snapshot
+        testTracker.setUnhealthy();
+        assertTrue(current == testTracker.getSnapshot());
+    }
+
+    @Test
+    public void testConcurrentTransitionsAreCountedOnce() throws Exception {
+        ServiceHealthTracker testTracker = new ServiceHealthTracker();
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (testTracker.transitionTo(ServiceHealthState.UNHEALTHY)) winners.incrementAndGet();
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, winners.get());
+        assertEquals(1, testTracker.getSnapshot().getTransitionCount());
+    }
+
+    @Test
+    public void testListeners(){
+        ServiceHealthTracker testTracker = new ServiceHealthTracker();
+        List<ServiceHealthTracker.Snapshot> transitions = new ArrayList<>();
+        List<Runnable> queued = new ArrayList<>();
+
+        // queue the notifications to show they are not run on the calling thread
+        ServiceHealthListener listener = (tracker, previous, current) -> transitions.add(current);
+        testTracker.addListener(listener, queued::add);
+
+        testTracker.setUnhealthy();
+        testTracker.setUnhealthy();
+        testTracker.setHealthy();
+        assertTrue(transitions.isEmpty());
+        assertEquals(2, queued.size());
+
+        queued.forEach(Runnable::run);
+        assertEquals(ServiceHealthState.UNHEALTHY, transitions.get(0).getState());
+        assertEquals(ServiceHealthState.HEALTHY, transitions.get(1).getState());
+        assertEquals(2, transitions.get(1).getTransitionCount());
+
+        assertTrue(testTracker.removeListener(listener));
+        testTracker.setUnhealthy();
+        assertEquals(2, queued.size());
+    }
+
+    @Test
+    public void testFailingListenerDoesNotAffectTransition(){
+        ServiceHealthTracker testTracker = new ServiceHealthTracker();
+        testTracker.addListener((tracker, previous, current) -> { throw new IllegalStateException("boom"); }, Runnable::run);
+        testTracker.addListener((tracker, previous, current) -> {}, command -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        assertTrue(testTracker.transitionTo(ServiceHealthState.UNHEALTHY));
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+    }
+
+    @Test
+    public void testParameterValidation(){
+        ServiceHealthTracker testTracker = new ServiceHealthTracker();
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthTracker(null));
+        assertThrows(IllegalArgumentException.class, () -> testTracker.addListener(null, Runnable::run));
+        assertThrows(IllegalArgumentException.class, () -> testTracker.addListener((t, p, c) -> {}, null));
+    }
+}
@@ -0,0 +1,207 @@
+package com.hanegraaff.resiliency.health;
+
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServiceHealthWindowTest {
+
+    AtomicLong clock;
+    ServiceHealthTracker testTracker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        testTracker = new ServiceHealthTracker(clock::get);
+    }
+
+    @Test
+    public void testSingleThresholdFlaps(){
+        ServiceHealthWindow window = newWindow(HealthPolicy.of(0.5, 1));
+
+        // an error rate hovering around the threshold flips the state every other attempt
+        feedAlternating(window, 100, 100);
+
+        assertTrue(testTracker.getSnapshot().getTransitionCount() > 40);
+    }
+
+    @Test
+    public void testHysteresisStopsFlapping(){
+        ServiceHealthWindow window = newWindow(HealthPolicy.builder().
+                withTripThreshold(0.5).withRecoverThreshold(0.3).withMinRequests(1).build());
+
+        feedAlternating(window, 100, 100);
+
+        assertEquals(1, testTracker.getSnapshot().getTransitionCount());
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+
+        // recovers once the error rate drops to the recover threshold
+        feed(window, false, 100, 100);
+        assertEquals(ServiceHealthState.HEALTHY, testTracker.getHealthState());
+        assertEquals(2, testTracker.getSnapshot().getTransitionCount());
+    }
+
+    @Test
+    public void testDwellTime(){
+        ServiceHealthWindow window = newWindow(HealthPolicy.builder().
+                withTripThreshold(0.5).withMinRequests(1).withMinDwell(30, TimeUnit.SECONDS).build());
+
+        // the healthy dwell time also applies right after the tracker is created
+        feed(window, true, 10, 100);
+        assertEquals(ServiceHealthState.HEALTHY, testTracker.getHealthState());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertTrue(window.record(true));
+
+        // plenty of successes, but the service must stay unhealthy for 30 seconds
+        feed(window, false, 200, 100);
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertFalse(window.record(false));
+        assertEquals(ServiceHealthState.HEALTHY, testTracker.getHealthState());
+        assertEquals(2, testTracker.getSnapshot().getTransitionCount());
+    }
+
+    @Test
+    public void testEwmaDampensBursts(){
+        ServiceHealthTracker unsmoothedTracker = new ServiceHealthTracker(clock::get);
+        ServiceHealthWindow unsmoothed = new ServiceHealthWindow(HealthPolicy.of(0.5, 1), unsmoothedTracker,
+                newCounter(), newCounter(), clock::get);
+        ServiceHealthWindow smoothed = newWindow(HealthPolicy.builder().
+                withTripThreshold(0.5).withMinRequests(1).withEwmaHalfLife(10, TimeUnit.SECONDS).build());
+
+        // a one second burst of errors followed by recovery
+        for (ServiceHealthWindow window : new ServiceHealthWindow[]{unsmoothed, smoothed}) {
+            clock.set(0);
+            feed(window, true, 10, 100);
+            feed(window, false, 100, 100);
+        }
+
+        // without smoothing the burst trips the service, which recovers once successes dominate
+        assertEquals(2, unsmoothedTracker.getSnapshot().getTransitionCount());
+        assertEquals(0, testTracker.getSnapshot().getTransitionCount());
+        assertTrue(smoothed.getEvaluatedErrorRate() < 0.5);
+    }
+
+    @Test
+    public void testEwmaTripsOnSustainedErrors(){
+        ServiceHealthWindow window = newWindow(HealthPolicy.builder().
+                withTripThreshold(0.5).withMinRequests(1).withEwmaHalfLife(10, TimeUnit.SECONDS).build());
+
+        feed(window, true, 600, 100);
+
+        // the smoothed rate crosses 0.5 after about one half life
+        ServiceHealthTracker.Snapshot snapshot = testTracker.getSnapshot();
+        assertEquals(ServiceHealthState.UNHEALTHY, snapshot.getState());
+        assertTrue(snapshot.getTransitionNanos() >= TimeUnit.SECONDS.toNanos(9));
+        assertTrue(snapshot.getTransitionNanos() <= TimeUnit.SECONDS.toNanos(12));
+    }
+
+    @Test
+    public void testPolicyValidation(){
+        assertThrows(IllegalArgumentException.class, () -> HealthPolicy.of(1.5, 1));
+        assertThrows(IllegalArgumentException.class, () -> HealthPolicy.builder().
+                withTripThreshold(0.2).withRecoverThreshold(0.5).build());
+        assertThrows(IllegalArgumentException.class, () -> HealthPolicy.builder().
+                withMinDwell(-1, TimeUnit.SECONDS).build());
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthWindow(null, testTracker,
+                newCounter(), newCounter(), clock::get));
+
+        HealthPolicy policy = HealthPolicy.of(0.5, 5);
+        assertEquals(0.5, policy.getRecoverThreshold());
+        assertEquals(0, policy.getMinHealthyDwellNanos());
+        assertEquals(0, policy.getEwmaHalfLifeNanos());
+    }
+
+    @Test
+    public void testSlowServiceIsUnhealthy(){
+        ServiceHealthWindow window = new ServiceHealthWindow(HealthPolicy.builder().
+                withTripThreshold(0.5).withMinRequests(10).
+                withLatencyRule(LatencyRule.percentileAbove(99, 2, TimeUnit.SECONDS)).build(),
+                testTracker, this::newCounter, clock::get);
+
+        // every attempt succeeds, but takes 9 seconds
+        for (int i = 0; i < 20; i++) {
+            window.record(false, TimeUnit.SECONDS.toNanos(9));
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+        assertEquals(0.0, window.getErrorRate());
+        assertEquals(2000, TimeUnit.NANOSECONDS.toMillis(window.getViolatedLatencyRule().getThresholdNanos()));
+        assertEquals(9, TimeUnit.NANOSECONDS.toSeconds(window.getLatencySnapshot().getP99()), 1);
+
+        // recovers once the slow attempts age out of the window
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        for (int i = 0; i < 20; i++) {
+            window.record(false, TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertEquals(ServiceHealthState.HEALTHY, testTracker.getHealthState());
+        assertEquals(null, window.getViolatedLatencyRule());
+    }
+
+    @Test
+    public void testFractionOfSlowAttempts(){
+        ServiceHealthWindow window = new ServiceHealthWindow(HealthPolicy.builder().
+                withTripThreshold(0.5).withMinRequests(10).
+                withLatencyRule(LatencyRule.fractionAbove(0.2, 500, TimeUnit.MILLISECONDS)).build(),
+                testTracker, this::newCounter, clock::get);
+
+        // 1 slow attempt out of 10 is tolerated
+        for (int i = 0; i < 100; i++) {
+            window.record(false, TimeUnit.MILLISECONDS.toNanos(i % 10 == 0 ? 800 : 100));
+        }
+        assertEquals(ServiceHealthState.HEALTHY, testTracker.getHealthState());
+
+        // 1 out of 3 is not
+        for (int i = 0; i < 200; i++) {
+            window.record(false, TimeUnit.MILLISECONDS.toNanos(i % 3 == 0 ? 800 : 100));
+        }
+        assertEquals(ServiceHealthState.UNHEALTHY, testTracker.getHealthState());
+    }
+
+    @Test
+    public void testLatencyRuleValidation(){
+        assertEquals(0.01, LatencyRule.percentileAbove(99, 1, TimeUnit.SECONDS).getMaxFractionAbove(), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> LatencyRule.percentileAbove(100, 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> LatencyRule.fractionAbove(0.1, 0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> HealthPolicy.builder().withLatencyRule(null));
+
+        // latency rules need a counter per rule
+        HealthPolicy policy = HealthPolicy.builder().withTripThreshold(0.5).
+                withLatencyRule(LatencyRule.fractionAbove(0.1, 1, TimeUnit.SECONDS)).build();
+        assertThrows(IllegalArgumentException.class, () -> new ServiceHealthWindow(policy, testTracker,
+                newCounter(), newCounter(), clock::get));
+    }
+
+    private ServiceHealthWindow newWindow(HealthPolicy policy) {
+        return new ServiceHealthWindow(policy, testTracker, newCounter(), newCounter(), clock::get);
+    }
+
+    private SlidingWindowCounter newCounter() {
+        return new SlidingWindowCounter(60, 5, TimeUnit.SECONDS, clock::get);
+    }
+
+    private void feedAlternating(ServiceHealthWindow window, int attempts, long stepMs) {
+        for (int i = 0; i < attempts; i++) {
+            window.record(i % 2 == 0);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(stepMs));
+        }
+    }
+
+    private void feed(ServiceHealthWindow window, boolean failed, int attempts, long stepMs) {
+        for (int i = 0; i < attempts; i++) {
+            window.record(failed);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(stepMs));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.hanegraaff.resiliency.hedging;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hanegraaff.resiliency.retry.RetryBudget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HedgedS3ReaderTest {
+
+    AmazonS3 client;
+    ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        client = mock(AmazonS3.class);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new HedgedS3Reader(null, executor, new RetryBudget()));
+        assertThrows(IllegalArgumentException.class, () -> new HedgedS3Reader(client, executor, null));
+        assertThrows(IllegalArgumentException.class, () -> new HedgedS3Reader(client, executor, new RetryBudget(),
+                100, 500, 10, System::nanoTime));
+        assertThrows(IllegalArgumentException.class, () -> new HedgedS3Reader(client, executor, new RetryBudget(),
+                95, 0, 10, System::nanoTime));
+    }
+
+    @Test
+    public void testFastCallsAreNotHedged(){
+        ObjectMetadata metadata = new ObjectMetadata();
+        when(client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenReturn(metadata);
+
+        HedgedS3Reader testReader = newReader(new RetryBudget());
+        for (int i = 0; i < 10; i++) {
+            assertSame(metadata, testReader.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key")));
+        }
+
+        assertEquals(0, testReader.getHedgesSent());
+    }
+
+    @Test
+    public void testSlowCallIsHedged(){
+        S3Object object = new S3Object();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+
+        when(client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    primaryInterrupted.countDown();
+                    throw e;
+                }
+            }
+            return object;
+        });
+
+        HedgedS3Reader testReader = newReader(new RetryBudget());
+        assertSame(object, testReader.getObject("bucket", "key"));
+
+        assertEquals(1, testReader.getHedgesSent());
+        assertEquals(1, testReader.getHedgesWon());
+        assertTrue(Uninterruptibles.awaitUninterruptibly(primaryInterrupted, 5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLosingObjectIsAborted(){
+        S3Object winner = new S3Object();
+        S3Object loser = mock(S3Object.class);
+        S3ObjectInputStream loserContent = mock(S3ObjectInputStream.class);
+        when(loser.getObjectContent()).thenReturn(loserContent);
+
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        // the primary ignores the interrupt and completes after the hedge has won
+        when(client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                Uninterruptibles.awaitUninterruptibly(release);
+                return loser;
+            }
+            return winner;
+        });
+
+        HedgedS3Reader testReader = newReader(new RetryBudget());
+        assertSame(winner, testReader.getObject("bucket", "key"));
+        release.countDown();
+
+        verify(loserContent, timeout(5000)).abort();
+    }
+
+    @Test
+    public void testEmptyBudgetDeniesHedges(){
+        ObjectMetadata metadata = new ObjectMetadata();
+        when(client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            return metadata;
+        });
+
+        RetryBudget testBudget = new RetryBudget(0.1, 1);
+        HedgedS3Reader testReader = newReader(testBudget);
+
+        // the first call spends the only token, the hedge of the second is denied
+        testReader.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key"));
+        assertSame(metadata, testReader.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key")));
+
+        assertEquals(1, testReader.getHedgesSent());
+        assertEquals(1, testReader.getHedgesDenied());
+    }
+
+    @Test
+    public void testFastErrorIsNotHedged(){
+        AmazonServiceException notFound = new AmazonServiceException("Not Found");
+        notFound.setStatusCode(404);
+        when(client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenThrow(notFound);
+
+        HedgedS3Reader testReader = newReader(new RetryBudget());
+        AmazonServiceException thrown = assertThrows(AmazonServiceException.class,
+                () -> testReader.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key")));
+
+        assertSame(notFound, thrown);
+        assertEquals(0, testReader.getHedgesSent());
+    }
+
+    @Test
+    public void testErrorWaitsForTheHedge(){
+        ObjectMetadata metadata = new ObjectMetadata();
+        AtomicInteger calls = new AtomicInteger();
+
+        // the primary is slow and then fails, the hedge succeeds later
+        when(client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                Thread.sleep(40);
+                throw new AmazonServiceException("Internal Error");
+            }
+            Thread.sleep(100);
+            return metadata;
+        });
+
+        HedgedS3Reader testReader = newReader(new RetryBudget());
+        assertSame(metadata, testReader.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key")));
+        assertEquals(1, testReader.getHedgesWon());
+    }
+
+    @Test
+    public void testCancelledPrimariesKeepTheDelay(){
+        ObjectMetadata metadata = new ObjectMetadata();
+        AtomicLong clockOffset = new AtomicLong();
+        Set<GetObjectMetadataRequest> primaries = ConcurrentHashMap.newKeySet();
+        CountDownLatch release = new CountDownLatch(1);
+
+        // every primary is slow, every hedge, sent with a clone of the request, is fast
+        when(client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenAnswer(invocation -> {
+            if (primaries.contains(invocation.<GetObjectMetadataRequest>getArgument(0))) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return metadata;
+        });
+
+        HedgedS3Reader testReader = new HedgedS3Reader(client, executor, new RetryBudget(1, 100), 95, 50, 1,
+                () -> System.nanoTime() + clockOffset.get());
+        try {
+            for (int i = 0; i < HedgedS3Reader.MIN_SAMPLES + 5; i++) {
+                GetObjectMetadataRequest request = new GetObjectMetadataRequest("bucket", "key");
+                primaries.add(request);
+                assertSame(metadata, testReader.getObjectMetadata(request));
+            }
+            assertEquals(HedgedS3Reader.MIN_SAMPLES + 5, testReader.getHedgesWon());
+
+            // the delay is refreshed from the primaries cut short at about 50ms, not from the fast hedges alone
+            clockOffset.addAndGet(HedgedS3Reader.DELAY_REFRESH_NANOS);
+            assertTrue(testReader.getHeadObjectDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testDeniedHedgeLeavesTheBudgetAndTheErrorAlone(){
+        AmazonServiceException internalError = new AmazonServiceException("Internal Error");
+        when(client.getObjectMetadata(any(GetObjectMetadataRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            throw internalError;
+        });
+
+        RetryBudget testBudget = new RetryBudget(0.1, 1);
+        assertTrue(testBudget.tryAcquire());
+        HedgedS3Reader testReader = newReader(testBudget);
+
+        // the hedge is denied, and the primary error is still reported once it fails
+        AmazonServiceException thrown = assertThrows(AmazonServiceException.class,
+                () -> testReader.getObjectMetadata(new GetObjectMetadataRequest("bucket", "key")));
+
+        assertSame(internalError, thrown);
+        assertEquals(1, testReader.getHedgesDenied());
+        assertEquals(0, testReader.getHedgesSent());
+        assertEquals(1, testBudget.getRetriesAllowed());
+    }
+
+    private HedgedS3Reader newReader(RetryBudget budget) {
+        return new HedgedS3Reader(client, executor, budget, 95, 20, 10, System::nanoTime);
+    }
+}
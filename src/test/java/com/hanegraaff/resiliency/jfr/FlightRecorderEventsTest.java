@@ -0,0 +1,169 @@
+package com.hanegraaff.resiliency.jfr;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.handlers.CircuitBreakerRequestHandler;
+import com.hanegraaff.resiliency.handlers.CircuitOpenException;
+import com.hanegraaff.resiliency.handlers.FlightRecorderRequestHandler;
+import com.hanegraaff.resiliency.handlers.NetworkDelayRequestHandler;
+import com.hanegraaff.resiliency.handlers.ProgrammableExceptionRequestHandler;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlightRecorderEventsTest {
+
+    @TempDir
+    Path directory;
+
+    private DefaultRequest<?> newRequest() {
+        DefaultRequest<?> request = new DefaultRequest<>(new GetObjectRequest("bucket", "key"), "Amazon S3");
+        request.setEndpoint(URI.create("https://bucket.s3.amazonaws.com"));
+        return request;
+    }
+
+    private List<RecordedEvent> record(String eventName, Runnable action) throws IOException {
+        Path file = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(eventName);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(eventName))
+                .collect(Collectors.toList());
+    }
+
+    private static String className(RecordedEvent event, String field) {
+        RecordedClass recordedClass = event.getValue(field);
+        return recordedClass == null ? null : recordedClass.getName();
+    }
+
+    @Test
+    public void testAttemptsAreRecorded() throws IOException {
+        FlightRecorderRequestHandler testHandler = new FlightRecorderRequestHandler();
+
+        List<RecordedEvent> events = record(AttemptEvent.NAME, () -> {
+            DefaultRequest<?> request = newRequest();
+            testHandler.beforeRequest(request);
+
+            AmazonS3Exception slowDown = new AmazonS3Exception("slow down");
+            slowDown.setStatusCode(503);
+
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).withException(slowDown).build());
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+        });
+
+        assertEquals(2, events.size());
+
+        RecordedEvent throttled = events.get(0);
+        assertEquals("Amazon S3", throttled.getString("serviceName"));
+        assertEquals(GetObjectRequest.class.getName(), className(throttled, "operation"));
+        assertEquals("bucket.s3.amazonaws.com", throttled.getString("endpoint"));
+        assertEquals(503, throttled.getInt("statusCode"));
+        assertEquals(AmazonS3Exception.class.getName(), className(throttled, "exception"));
+        assertEquals(1, throttled.getInt("attempt"));
+
+        RecordedEvent retry = events.get(1);
+        assertNull(className(retry, "exception"));
+        assertEquals(2, retry.getInt("attempt"));
+    }
+
+    @Test
+    public void testRequestsStartedBeforeTheRecordingAreNotRecorded() throws IOException {
+        FlightRecorderRequestHandler testHandler = new FlightRecorderRequestHandler();
+        DefaultRequest<?> request = newRequest();
+        testHandler.beforeRequest(request);
+
+        List<RecordedEvent> events = record(AttemptEvent.NAME, () -> {
+            testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+            testHandler.afterAttempt(HandlerAfterAttemptContext.builder().withRequest(request).build());
+        });
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testHealthTransitionsAreRecorded() throws IOException {
+        ServiceHealthTracker tracker = new ServiceHealthTracker();
+
+        List<RecordedEvent> events = record(HealthTransitionEvent.NAME, () -> {
+            tracker.setUnhealthy();
+            tracker.setUnhealthy();
+            tracker.setHealthy();
+        });
+
+        assertEquals(2, events.size());
+        assertEquals("HEALTHY", events.get(0).getString("previousState"));
+        assertEquals("UNHEALTHY", events.get(0).getString("state"));
+        assertEquals(1, events.get(0).getLong("transitionCount"));
+        assertEquals("HEALTHY", events.get(1).getString("state"));
+        assertEquals(System.identityHashCode(tracker), events.get(1).getInt("tracker"));
+    }
+
+    @Test
+    public void testCircuitRejectionsAreRecorded() throws IOException {
+        ServiceHealthTracker tracker = new ServiceHealthTracker();
+        CircuitBreakerRequestHandler testHandler = new CircuitBreakerRequestHandler(tracker);
+        tracker.setUnhealthy();
+
+        List<RecordedEvent> events = record(CircuitRejectionEvent.NAME,
+                () -> assertThrows(CircuitOpenException.class, () -> testHandler.beforeRequest(newRequest())));
+
+        assertEquals(1, events.size());
+        assertEquals("Amazon S3", events.get(0).getString("serviceName"));
+        assertEquals("OPEN", events.get(0).getString("circuitState"));
+    }
+
+    @Test
+    public void testInjectedFaultsAreRecorded() throws IOException {
+        ProgrammableExceptionRequestHandler testHandler =
+                new ProgrammableExceptionRequestHandler(new AmazonClientException("injected"), 1);
+
+        List<RecordedEvent> events = record(InjectedFaultEvent.NAME, () -> assertThrows(AmazonClientException.class,
+                () -> testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(newRequest()).build())));
+
+        assertEquals(1, events.size());
+        assertEquals(ProgrammableExceptionRequestHandler.class.getName(), className(events.get(0), "handler"));
+        assertEquals(0, events.get(0).getInt("statusCode"));
+        assertEquals("AmazonClientException", events.get(0).getString("error"));
+    }
+
+    @Test
+    public void testInjectedDelaysAreRecorded() throws IOException {
+        NetworkDelayRequestHandler testHandler = new NetworkDelayRequestHandler(1, 20, 0);
+
+        List<RecordedEvent> events = record(InjectedDelayEvent.NAME,
+                () -> testHandler.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(newRequest()).build()));
+
+        assertEquals(1, events.size());
+        assertEquals(NetworkDelayRequestHandler.class.getName(), className(events.get(0), "handler"));
+        assertEquals(Duration.ofMillis(20), events.get(0).getDuration("requestedDelay"));
+        assertTrue(events.get(0).getDuration().compareTo(Duration.ofMillis(20)) >= 0);
+    }
+}
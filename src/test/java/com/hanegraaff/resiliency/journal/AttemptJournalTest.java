@@ -0,0 +1,188 @@
+package com.hanegraaff.resiliency.journal;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttemptJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new AttemptJournal(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AttemptJournal(directory.resolve("a"), 0));
+        assertThrows(IllegalArgumentException.class, () -> new AttemptJournal(directory.resolve("a"), 10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new AttemptJournal(directory.resolve("a"), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecordsAreReadBack() throws IOException {
+        Path path = directory.resolve("attempts.journal");
+        long now = System.nanoTime();
+
+        try (AttemptJournal journal = new AttemptJournal(path, 100)) {
+            journal.record("Amazon S3", GetObjectRequest.class, "bucket.s3.amazonaws.com", 200, null,
+                    now, TimeUnit.MILLISECONDS.toNanos(20), 1);
+            journal.record("Amazon S3", PutObjectRequest.class, "bucket.s3.amazonaws.com", 503, AmazonS3Exception.class,
+                    now + 1, TimeUnit.MILLISECONDS.toNanos(30), 1);
+            journal.record("Amazon S3", PutObjectRequest.class, null, 0, AmazonClientException.class, now + 2, -1, 2);
+            assertEquals(3, journal.getRecordCount());
+        }
+
+        List<JournalRecord> records = new JournalReader(path).getRecords();
+        assertEquals(3, records.size());
+
+        JournalRecord first = records.get(0);
+        assertEquals(0, first.getSequence());
+        assertEquals("Amazon S3", first.getServiceName());
+        assertEquals("GetObjectRequest", first.getOperation());
+        assertEquals("bucket.s3.amazonaws.com", first.getEndpoint());
+        assertEquals(200, first.getStatusCode());
+        assertNull(first.getException());
+        assertFalse(first.isFailed());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(20), first.getLatencyNanos());
+        assertEquals(now, first.getEndNanos());
+        assertTrue(Math.abs(System.currentTimeMillis() - first.getTimestampMillis()) < 5000);
+
+        JournalRecord second = records.get(1);
+        assertEquals("PutObjectRequest", second.getOperation());
+        assertEquals(503, second.getStatusCode());
+        assertEquals("AmazonS3Exception", second.getException());
+
+        JournalRecord third = records.get(2);
+        assertNull(third.getEndpoint());
+        assertEquals("AmazonClientException", third.getException());
+        assertEquals(-1, third.getLatencyNanos());
+        assertEquals(2, third.getAttempt());
+    }
+
+    @Test
+    public void testOldestRecordsAreOverwritten() throws IOException {
+        Path path = directory.resolve("attempts.journal");
+
+        try (AttemptJournal journal = new AttemptJournal(path, 10)) {
+            for (int i = 0; i < 25; i++) {
+                journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", 200, null, i, 1000, 1);
+            }
+        }
+
+        List<JournalRecord> records = new JournalReader(path).getRecords();
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(15 + i, records.get(i).getSequence());
+            assertEquals(15 + i, records.get(i).getEndNanos());
+        }
+    }
+
+    @Test
+    public void testConcurrentWritersDoNotLoseRecords() throws Exception {
+        Path path = directory.resolve("attempts.journal");
+        int threads = 4;
+        int perThread = 5000;
+
+        try (AttemptJournal journal = new AttemptJournal(path, threads * perThread)) {
+            Thread[] writers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        // every thread uses its own endpoint, and the attempt carries the position
+                        journal.record("Amazon S3", GetObjectRequest.class, "host-" + thread, 200, null,
+                                System.nanoTime(), 1000, i + 1);
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+
+        List<JournalRecord> records = new JournalReader(path).getRecords();
+        assertEquals(threads * perThread, records.size());
+
+        Set<String> seen = new HashSet<>();
+        for (JournalRecord record : records) {
+            assertTrue(seen.add(record.getEndpoint() + "/" + record.getAttempt()));
+        }
+    }
+
+    @Test
+    public void testNamesThatDoNotFitAreUnknown() throws IOException {
+        Path path = directory.resolve("attempts.journal");
+
+        // room for the service name only
+        try (AttemptJournal journal = new AttemptJournal(path, 10, 24)) {
+            journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", 500, AmazonS3Exception.class, 0, 1000, 1);
+        }
+
+        JournalRecord record = new JournalReader(path).getRecords().get(0);
+        assertEquals("Amazon S3", record.getServiceName());
+        assertEquals("unknown", record.getOperation());
+        assertEquals("unknown", record.getException());
+        assertTrue(record.isFailed());
+    }
+
+    @Test
+    public void testUnknownNamesAreNotCached() throws IOException {
+        Path path = directory.resolve("attempts.journal");
+
+        try (AttemptJournal journal = new AttemptJournal(path, 10, 64)) {
+            for (int i = 0; i < 1000; i++) {
+                journal.record("Amazon S3", GetObjectRequest.class, "host-" + i + ".example.com", 200, null, 0, 1000, 1);
+            }
+            assertTrue(journal.getNameCount() <= 3);
+        }
+
+        JournalRecord record = new JournalReader(path).getRecords().get(9);
+        assertEquals("unknown", record.getEndpoint());
+    }
+
+    @Test
+    public void testSummaryAggregatesByOperationAndEndpoint() throws IOException {
+        Path path = directory.resolve("attempts.journal");
+
+        try (AttemptJournal journal = new AttemptJournal(path, 100)) {
+            for (int i = 0; i < 8; i++) {
+                journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", 200, null,
+                        i, TimeUnit.MILLISECONDS.toNanos(10), 1);
+            }
+            journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", 503, AmazonS3Exception.class,
+                    8, TimeUnit.MILLISECONDS.toNanos(10), 1);
+            journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", 200, null,
+                    9, TimeUnit.MILLISECONDS.toNanos(10), 2);
+        }
+
+        String summary = new JournalReader(path).summarize();
+        assertTrue(summary.contains("Amazon S3 GetObjectRequest s3.amazonaws.com: 10 attempts, 1 failed (10.0%), retries 1"), summary);
+        assertTrue(summary.contains("status codes: {200=9, 503=1}"), summary);
+        assertTrue(summary.contains("exceptions: {AmazonS3Exception=1}"), summary);
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws IOException {
+        Path path = directory.resolve("other.bin");
+        Files.write(path, new byte[128]);
+
+        assertThrows(IOException.class, () -> new JournalReader(path));
+    }
+}
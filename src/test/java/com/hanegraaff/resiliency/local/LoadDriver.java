@@ -0,0 +1,131 @@
+package com.hanegraaff.resiliency.local;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.hanegraaff.resiliency.metrics.LatencyHistogram;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs an operation against an S3 client from a fixed number of threads for a fixed
+ * duration, and measures its throughput and latency. Latency is measured around the
+ * whole operation, so it includes the retries and backoff of the client configuration
+ * and the work done by its handlers.
+ */
+public class LoadDriver {
+
+    private final int threads;
+    private final long durationNanos;
+
+    /**
+     * @param threads the number of threads sending requests
+     * @param duration how long each run lasts
+     * @param unit the time unit of duration
+     */
+    public LoadDriver(int threads, long duration, TimeUnit unit) {
+        if (threads <= 0 || duration <= 0) {
+            throw new IllegalArgumentException("'threads' and 'duration' parameters must be positive");
+        }
+
+        this.threads = threads;
+        this.durationNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Runs the operation until the duration elapses. Operations still running at that
+     * time are waited for, and counted.
+     *
+     * @param name the name of the run, used in reports
+     * @param client the client under test
+     * @param operation the operation sent by every thread, in a loop
+     * @return the result of the run
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public LoadResult run(String name, AmazonS3 client, Consumer<AmazonS3> operation) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long deadline = System.nanoTime() + durationNanos;
+                    while (System.nanoTime() < deadline) {
+                        long begin = System.nanoTime();
+                        try {
+                            operation.accept(client);
+                            latency.record(System.nanoTime() - begin);
+                        } catch (RuntimeException e) {
+                            errors.increment();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "load-driver-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+
+        return new LoadResult(name, latency.snapshot(), errors.sum(), System.nanoTime() - begin);
+    }
+
+    /**
+     * The outcome of a run: the latency of successful operations, and the number of
+     * operations that failed after exhausting their retries
+     */
+    public static final class LoadResult {
+        private final String name;
+        private final LatencyHistogram.Snapshot latency;
+        private final long errorCount;
+        private final long elapsedNanos;
+
+        LoadResult(String name, LatencyHistogram.Snapshot latency, long errorCount, long elapsedNanos) {
+            this.name = name;
+            this.latency = latency;
+            this.errorCount = errorCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the latency of the successful operations
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public long getSuccessCount() {
+            return latency.getTotalCount();
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * @return the number of successful operations per second
+         */
+        public double getThroughput() {
+            return latency.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %,10.1f ops/s  errors: %5d  %s", name, getThroughput(), errorCount, latency);
+        }
+    }
+}
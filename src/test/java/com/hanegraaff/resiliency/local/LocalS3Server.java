@@ -0,0 +1,472 @@
+package com.hanegraaff.resiliency.local;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.faults.ServiceError;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory stand-in for S3, bound to the loopback interface, used to load test the
+ * library without a network or AWS credentials.
+ *
+ * It speaks enough of the S3 REST API for ListBuckets, CreateBucket, Get, Put, Head
+ * and Delete object, and multipart uploads, with path style addressing, so that a
+ * TransferManager can upload and download through it. Signatures are not checked. Latency
+ * and errors can be injected on the server side, and changed while the server runs,
+ * so the SDK sees them exactly as it would see a slow or failing S3.
+ *
+ * Clients are built with newClientBuilder(), which points them to this server.
+ */
+public class LocalS3Server implements Closeable {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ISO_INSTANT;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final URI endpoint;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private volatile DelayDistribution latency;
+    private volatile ServiceError serviceError;
+    private volatile double errorRate;
+
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    /**
+     * Starts a server on an ephemeral loopback port
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public LocalS3Server() throws IOException {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        this.server = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-s3-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        this.endpoint = URI.create("http://" + loopback.getHostAddress() + ":" + server.getAddress().getPort());
+    }
+
+    /**
+     * @return a client builder pointing to this server, with path style access and dummy credentials
+     */
+    public AmazonS3ClientBuilder newClientBuilder() {
+        return AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint.toString(), "us-east-1"))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("local", "local")))
+                .withPathStyleAccessEnabled(true);
+    }
+
+    /**
+     * Delays every response by a value drawn from the supplied distribution
+     *
+     * @param latency the distribution of the delays, or null for no delay
+     * @return this server
+     */
+    public LocalS3Server withLatency(DelayDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Answers a fraction of the requests with the supplied error
+     *
+     * @param serviceError the error to return, for example ServiceError.SLOW_DOWN
+     * @param errorRate the fraction (between 0-1) of requests that fail
+     * @return this server
+     */
+    public LocalS3Server withErrors(ServiceError serviceError, double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("'errorRate' parameter is out of range. Must be between 0 and 1");
+        }
+
+        if (errorRate > 0 && serviceError == null) {
+            throw new IllegalArgumentException("'serviceError' parameter cannot be null");
+        }
+
+        this.serviceError = serviceError;
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Creates a bucket, if it does not exist, and stores an object in it
+     *
+     * @param bucket the name of the bucket
+     * @param key the key of the object
+     * @param content the content of the object
+     */
+    public void putObject(String bucket, String key, byte[] content) {
+        buckets.computeIfAbsent(bucket, Bucket::new).objects.put(key, new StoredObject(content, "binary/octet-stream"));
+    }
+
+    /**
+     * @return the endpoint of the server, for example http://127.0.0.1:52713
+     */
+    public URI getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the number of requests received since the server started
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of injected errors since the server started
+     */
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * Stops the server
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.increment();
+        try {
+            byte[] body = readBody(exchange);
+
+            DelayDistribution latency = this.latency;
+            if (latency != null) {
+                TimeUnit.NANOSECONDS.sleep(latency.sampleNanos(ThreadLocalRandom.current()));
+            }
+
+            ServiceError error = this.serviceError;
+            if (error != null && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errorCount.increment();
+                sendError(exchange, error.getStatusCode(), error.getErrorCode(), error.getMessage());
+                return;
+            }
+
+            route(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "InternalError", String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void route(HttpExchange exchange, byte[] body) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = URLDecoder.decode(exchange.getRequestURI().getRawPath(), StandardCharsets.UTF_8.name());
+        String[] parts = path.substring(1).split("/", 2);
+        String bucketName = parts[0];
+        String key = parts.length > 1 && !parts[1].isEmpty() ? parts[1] : null;
+
+        if (bucketName.isEmpty()) {
+            if ("GET".equals(method)) {
+                listBuckets(exchange);
+            } else {
+                sendError(exchange, 405, "MethodNotAllowed", "The specified method is not allowed against this resource.");
+            }
+            return;
+        }
+
+        if (key == null) {
+            if ("PUT".equals(method)) {
+                buckets.computeIfAbsent(bucketName, Bucket::new);
+                exchange.getResponseHeaders().set("Location", "/" + bucketName);
+                send(exchange, 200, null, null);
+            } else if ("HEAD".equals(method)) {
+                send(exchange, buckets.containsKey(bucketName) ? 200 : 404, null, null);
+            } else {
+                sendError(exchange, 501, "NotImplemented", "A header you provided implies functionality that is not implemented.");
+            }
+            return;
+        }
+
+        Bucket bucket = buckets.get(bucketName);
+        if (bucket == null) {
+            sendError(exchange, 404, "NoSuchBucket", "The specified bucket does not exist");
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (query.containsKey("uploads") || query.containsKey("uploadId")) {
+            multipartUpload(exchange, method, bucket, key, query, body);
+            return;
+        }
+
+        switch (method) {
+            case "PUT":
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                StoredObject stored = new StoredObject(decodeBody(exchange.getRequestHeaders(), body),
+                        contentType == null ? "binary/octet-stream" : contentType);
+                bucket.objects.put(key, stored);
+                exchange.getResponseHeaders().set("ETag", stored.quotedETag());
+                send(exchange, 200, null, null);
+                break;
+            case "GET":
+            case "HEAD":
+                StoredObject object = bucket.objects.get(key);
+                if (object == null) {
+                    sendError(exchange, 404, "NoSuchKey", "The specified key does not exist.");
+                    return;
+                }
+                Headers headers = exchange.getResponseHeaders();
+                headers.set("ETag", object.quotedETag());
+                headers.set("Last-Modified", HTTP_DATE.format(object.lastModified));
+                headers.set("Content-Type", object.contentType);
+                if ("HEAD".equals(method)) {
+                    headers.set("Content-Length", Integer.toString(object.content.length));
+                    send(exchange, 200, null, null);
+                } else {
+                    send(exchange, 200, null, object.content);
+                }
+                break;
+            case "DELETE":
+                bucket.objects.remove(key);
+                send(exchange, 204, null, null);
+                break;
+            default:
+                sendError(exchange, 405, "MethodNotAllowed", "The specified method is not allowed against this resource.");
+        }
+    }
+
+    private void multipartUpload(HttpExchange exchange, String method, Bucket bucket, String key, Map<String, String> query,
+                                 byte[] body) throws IOException {
+        if ("POST".equals(method) && query.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            uploads.put(uploadId, new ConcurrentSkipListMap<>());
+            String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<InitiateMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><Bucket>"
+                    + escapeXml(bucket.name) + "</Bucket><Key>" + escapeXml(key) + "</Key><UploadId>" + uploadId
+                    + "</UploadId></InitiateMultipartUploadResult>";
+            send(exchange, 200, "application/xml", xml.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+        if (parts == null) {
+            sendError(exchange, 404, "NoSuchUpload", "The specified upload does not exist.");
+            return;
+        }
+
+        switch (method) {
+            case "PUT":
+                byte[] part = decodeBody(exchange.getRequestHeaders(), body);
+                parts.put(Integer.parseInt(query.get("partNumber")), part);
+                exchange.getResponseHeaders().set("ETag", "\"" + md5Hex(part) + "\"");
+                send(exchange, 200, null, null);
+                break;
+            case "POST":
+                // the part list of the request is trusted, the parts are assembled in order
+                uploads.remove(query.get("uploadId"));
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (byte[] data : parts.values()) {
+                    content.write(data, 0, data.length);
+                }
+                StoredObject stored = new StoredObject(content.toByteArray(), "binary/octet-stream");
+                bucket.objects.put(key, stored);
+                String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<CompleteMultipartUploadResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><Location>"
+                        + endpoint + "/" + escapeXml(bucket.name) + "/" + escapeXml(key) + "</Location><Bucket>"
+                        + escapeXml(bucket.name) + "</Bucket><Key>" + escapeXml(key) + "</Key><ETag>"
+                        + stored.quotedETag() + "</ETag></CompleteMultipartUploadResult>";
+                send(exchange, 200, "application/xml", xml.getBytes(StandardCharsets.UTF_8));
+                break;
+            case "DELETE":
+                uploads.remove(query.get("uploadId"));
+                send(exchange, 204, null, null);
+                break;
+            default:
+                sendError(exchange, 405, "MethodNotAllowed", "The specified method is not allowed against this resource.");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8.name()), URLDecoder.decode(value, StandardCharsets.UTF_8.name()));
+        }
+        return query;
+    }
+
+    private void listBuckets(HttpExchange exchange) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<ListAllMyBucketsResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Owner><ID>local</ID><DisplayName>local</DisplayName></Owner><Buckets>");
+        for (Bucket bucket : new ConcurrentSkipListMap<>(buckets).values()) {
+            xml.append("<Bucket><Name>").append(escapeXml(bucket.name)).append("</Name><CreationDate>")
+                    .append(ISO_DATE.format(bucket.creationDate)).append("</CreationDate></Bucket>");
+        }
+        xml.append("</Buckets></ListAllMyBucketsResult>");
+
+        send(exchange, 200, "application/xml", xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        String requestId = UUID.randomUUID().toString();
+        exchange.getResponseHeaders().set("x-amz-request-id", requestId);
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            send(exchange, status, null, null);
+            return;
+        }
+
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Error><Code>" + escapeXml(code) + "</Code><Message>"
+                + escapeXml(message) + "</Message><RequestId>" + requestId + "</RequestId></Error>";
+        send(exchange, status, "application/xml", xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] payload) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+
+        if (payload == null || payload.length == 0) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(status, payload.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(payload);
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) >= 0) {
+                content.write(buffer, 0, read);
+            }
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * Strips the aws-chunked encoding the SDK uses for signed uploads, announced by a
+     * STREAMING-* payload hash. Each chunk is sent as
+     * "size-in-hex;chunk-signature=...\r\n", the data, and "\r\n", up to an empty chunk.
+     */
+    static byte[] decodeBody(Headers headers, byte[] body) {
+        String contentSha256 = headers.getFirst("x-amz-content-sha256");
+        if (contentSha256 == null || !contentSha256.startsWith("STREAMING-")) return body;
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (position < body.length) {
+            int lineEnd = indexOfCrLf(body, position);
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int separator = header.indexOf(';');
+            int size = Integer.parseInt(separator < 0 ? header : header.substring(0, separator), 16);
+            if (size == 0) break;
+
+            content.write(body, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+        return content.toByteArray();
+    }
+
+    private static int indexOfCrLf(byte[] body, int from) {
+        for (int i = from; i < body.length - 1; i++) {
+            if (body[i] == '\r' && body[i + 1] == '\n') return i;
+        }
+        throw new IllegalArgumentException("malformed aws-chunked body");
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static final class Bucket {
+        final String name;
+        final Instant creationDate = Instant.now();
+        final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+
+        Bucket(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class StoredObject {
+        final byte[] content;
+        final String contentType;
+        final Instant lastModified = Instant.now();
+        final String eTag;
+
+        StoredObject(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+            this.eTag = md5Hex(content);
+        }
+
+        String quotedETag() {
+            return "\"" + eTag + "\"";
+        }
+    }
+
+    // the SDK compares the ETag with the MD5 of the content it sent or received
+    private static String md5Hex(byte[] content) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
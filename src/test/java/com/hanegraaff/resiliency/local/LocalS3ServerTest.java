@@ -0,0 +1,97 @@
+package com.hanegraaff.resiliency.local;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.faults.ServiceError;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalS3ServerTest {
+
+    private LocalS3Server server;
+    private AmazonS3 s3Client;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new LocalS3Server();
+
+        RetryPolicy retryPolicy = new RetryPolicy(PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION,
+                (request, exception, retries) -> 1, 2, true);
+        s3Client = server.newClientBuilder()
+                .withClientConfiguration(new ClientConfiguration().withRetryPolicy(retryPolicy))
+                .build();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        s3Client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testPutGetHeadObject(){
+        s3Client.createBucket("bucket");
+        s3Client.putObject("bucket", "some/key", "hello world");
+
+        assertEquals("hello world", s3Client.getObjectAsString("bucket", "some/key"));
+
+        ObjectMetadata metadata = s3Client.getObjectMetadata("bucket", "some/key");
+        assertEquals(11, metadata.getContentLength());
+
+        s3Client.deleteObject("bucket", "some/key");
+        AmazonS3Exception e = assertThrows(AmazonS3Exception.class, () -> s3Client.getObjectAsString("bucket", "some/key"));
+        assertEquals("NoSuchKey", e.getErrorCode());
+    }
+
+    @Test
+    public void testListBuckets(){
+        server.putObject("b-bucket", "key", new byte[]{1});
+        server.putObject("a-bucket", "key", new byte[]{1});
+
+        List<Bucket> buckets = s3Client.listBuckets();
+        assertEquals(2, buckets.size());
+        assertEquals("a-bucket", buckets.get(0).getName());
+    }
+
+    @Test
+    public void testInjectedErrorsAreRetried(){
+        server.putObject("bucket", "key", new byte[]{1});
+        server.withErrors(ServiceError.SLOW_DOWN, 1);
+
+        AmazonS3Exception e = assertThrows(AmazonS3Exception.class, () -> s3Client.getObjectAsString("bucket", "key"));
+        assertEquals(503, e.getStatusCode());
+        assertEquals("SlowDown", e.getErrorCode());
+        assertEquals(3, server.getErrorCount());
+
+        server.withErrors(null, 0);
+        assertEquals("\u0001", s3Client.getObjectAsString("bucket", "key"));
+    }
+
+    @Test
+    public void testInjectedLatency() throws InterruptedException {
+        server.putObject("bucket", "key", new byte[]{1});
+        server.withLatency(DelayDistribution.fixed(20, TimeUnit.MILLISECONDS));
+
+        LoadDriver.LoadResult result = new LoadDriver(2, 200, TimeUnit.MILLISECONDS)
+                .run("latency", s3Client, client -> client.getObjectAsString("bucket", "key"));
+
+        assertTrue(result.getSuccessCount() > 0);
+        assertEquals(0, result.getErrorCount());
+        assertTrue(result.getLatency().getP50() >= TimeUnit.MILLISECONDS.toNanos(19));
+    }
+}
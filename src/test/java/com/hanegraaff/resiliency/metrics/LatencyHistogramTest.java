@@ -0,0 +1,116 @@
+package com.hanegraaff.resiliency.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue(){
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lowest = LatencyHistogram.lowestValueAt(i);
+            long highest = LatencyHistogram.highestValueAt(i);
+
+            assertEquals(i, LatencyHistogram.bucketIndex(lowest));
+            assertEquals(i, LatencyHistogram.bucketIndex(highest));
+            if (i > 0) assertEquals(LatencyHistogram.highestValueAt(i - 1) + 1, lowest);
+        }
+
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesAreWithinPrecision(){
+        LatencyHistogram testHistogram = new LatencyHistogram();
+
+        // 1ms to 1000ms, one value per millisecond
+        for (int ms = 1; ms <= 1000; ms++) {
+            testHistogram.record(ms, TimeUnit.MILLISECONDS);
+        }
+
+        LatencyHistogram.Snapshot snapshot = testHistogram.snapshot();
+        assertEquals(1000, snapshot.getTotalCount());
+        assertWithinPrecision(TimeUnit.MILLISECONDS.toNanos(500), snapshot.getP50());
+        assertWithinPrecision(TimeUnit.MILLISECONDS.toNanos(990), snapshot.getP99());
+        assertWithinPrecision(TimeUnit.MILLISECONDS.toNanos(999), snapshot.getP999());
+        assertWithinPrecision(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.getMax());
+        assertWithinPrecision(TimeUnit.MICROSECONDS.toNanos(500500), (long) snapshot.getMean());
+
+        assertEquals(0.5, snapshot.getFractionAbove(TimeUnit.MILLISECONDS.toNanos(500)), 0.02);
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAtPercentile(101));
+    }
+
+    @Test
+    public void testEmptyHistogram(){
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getTotalCount());
+        assertEquals(0, snapshot.getP99());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0.0, snapshot.getMean());
+        assertEquals(0.0, snapshot.getFractionAbove(0));
+    }
+
+    @Test
+    public void testSnapshotAndReset(){
+        LatencyHistogram testHistogram = new LatencyHistogram();
+        testHistogram.record(10, TimeUnit.MILLISECONDS);
+        testHistogram.record(20, TimeUnit.MILLISECONDS);
+
+        LatencyHistogram.Snapshot first = testHistogram.snapshotAndReset();
+        testHistogram.record(30, TimeUnit.MILLISECONDS);
+        LatencyHistogram.Snapshot second = testHistogram.snapshotAndReset();
+
+        assertEquals(2, first.getTotalCount());
+        assertEquals(1, second.getTotalCount());
+        assertEquals(0, testHistogram.getTotalCount());
+        assertEquals(3, first.merge(second).getTotalCount());
+    }
+
+    @Test
+    public void testResetDoesNotLoseConcurrentWrites() throws Exception {
+        LatencyHistogram testHistogram = new LatencyHistogram();
+        int threads = 4;
+        int valuesPerThread = 200_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < valuesPerThread; i++) {
+                        testHistogram.record(random.nextLong(1, TimeUnit.SECONDS.toNanos(1)));
+                    }
+                    done.countDown();
+                });
+            }
+
+            long drained = 0;
+            while (done.getCount() > 0) {
+                drained += testHistogram.snapshotAndReset().getTotalCount();
+            }
+            drained += testHistogram.snapshotAndReset().getTotalCount();
+
+            assertEquals((long) threads * valuesPerThread, drained);
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 32 + 1,
+                String.format("expected %d but was %d", expected, actual));
+    }
+}
@@ -0,0 +1,51 @@
+package com.hanegraaff.resiliency.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RollingLatencyHistogramTest {
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new RollingLatencyHistogram(0, 1, TimeUnit.MINUTES, System::nanoTime));
+        assertThrows(IllegalArgumentException.class, () -> new RollingLatencyHistogram(5, 0, TimeUnit.MINUTES, System::nanoTime));
+        assertThrows(IllegalArgumentException.class, () -> new RollingLatencyHistogram(5, 1, TimeUnit.MINUTES, null));
+    }
+
+    @Test
+    public void testValuesAgeOutOfTheWindow(){
+        AtomicLong clock = new AtomicLong();
+        RollingLatencyHistogram testHistogram = new RollingLatencyHistogram(5, 1, TimeUnit.MINUTES, clock::get);
+        assertEquals(TimeUnit.MINUTES.toNanos(5), testHistogram.getWindowNanos());
+        assertEquals(0, testHistogram.snapshot().getTotalCount());
+
+        // one slow minute followed by fast ones
+        for (int i = 0; i < 10; i++) testHistogram.record(TimeUnit.SECONDS.toNanos(9));
+        for (int minute = 1; minute < 5; minute++) {
+            clock.set(TimeUnit.MINUTES.toNanos(minute));
+            for (int i = 0; i < 10; i++) testHistogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+
+        LatencyHistogram.Snapshot full = testHistogram.snapshot();
+        assertEquals(50, full.getTotalCount());
+        assertEquals(9, TimeUnit.NANOSECONDS.toSeconds(full.getMax()), 1);
+
+        // the slow minute falls out of the window, and its slice is reused
+        clock.set(TimeUnit.MINUTES.toNanos(5));
+        assertEquals(40, testHistogram.snapshot().getTotalCount());
+        testHistogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        LatencyHistogram.Snapshot rolled = testHistogram.snapshot();
+        assertEquals(41, rolled.getTotalCount());
+        assertEquals(50, TimeUnit.NANOSECONDS.toMillis(rolled.getMax()), 2);
+
+        // everything ages out after a long idle period
+        clock.set(TimeUnit.MINUTES.toNanos(60));
+        assertEquals(0, testHistogram.snapshot().getTotalCount());
+    }
+}
@@ -1,17 +1,17 @@
 package com.hanegraaff.resiliency.metrics;
-import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.Mockito;
-import java.time.LocalDateTime;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class SlidingWindowCounterTest {
 
-    @AfterEach
-    void tearDown() {
-    }
-
     @Test
     void testIncrementInPeriod() {
         // Test that initial count is 1
@@ -25,17 +25,66 @@ class SlidingWindowCounterTest {
 
     @Test
     void testIncrementOutOfPeriod() {
-        final LocalDateTime TEST_TIME = LocalDateTime.parse("3000-01-01T00:00:00.000");
+        AtomicLong testClock = new AtomicLong();
+        SlidingWindowCounter c = new SlidingWindowCounter(60, 5, TimeUnit.SECONDS, testClock::get);
+
+        c.increment();
+        c.increment();
+        c.increment();
+
+        testClock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        assertEquals(c.getCountPerInterval(), 0);
+        assertEquals(c.increment(), 1);
+    }
 
+    @Test
+    void testWindowSlidesOneBucketAtATime() {
+        AtomicLong testClock = new AtomicLong();
+        SlidingWindowCounter c = new SlidingWindowCounter(4, 1, TimeUnit.SECONDS, testClock::get);
+
+        // one event in each of the 4 buckets
+        for (int i = 0; i < 4; i++) {
+            c.increment();
+            testClock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // the first bucket has fallen out of the window, the other 3 remain
+        assertEquals(c.getCountPerInterval(), 3);
+
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(c.getCountPerInterval(), 1);
+    }
+
+    @Test
+    void testCountsAreExactUnderConcurrency() throws InterruptedException {
+        final int threads = 8;
+        final int incrementsPerThread = 50_000;
 
         SlidingWindowCounter c = new SlidingWindowCounter(5);
-        SlidingWindowCounter spyCounter = Mockito.spy(c);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < incrementsPerThread; i++) {
+                    c.add();
+                }
+                return null;
+            });
+        }
 
-        spyCounter.increment();
-        spyCounter.increment();
-        spyCounter.increment();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
 
-        when(spyCounter.now()).thenReturn(TEST_TIME);
-        assertEquals(spyCounter.increment(), 1);
+        assertEquals(c.getCountPerInterval(), threads * incrementsPerThread);
+    }
+
+    @Test
+    void testValidInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowCounter(0));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowCounter(0, 5, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowCounter(10, 0, TimeUnit.SECONDS));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.hanegraaff.resiliency.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StripedSlidingWindowCounterTest {
+
+    @Test
+    void testIncrementInPeriod() {
+        StripedSlidingWindowCounter c = new StripedSlidingWindowCounter(5);
+        assertEquals(c.increment(), 1);
+
+        c.increment();
+        assertEquals(c.increment(), 3);
+    }
+
+    @Test
+    void testWindowSlidesOneBucketAtATime() {
+        AtomicLong testClock = new AtomicLong();
+        StripedSlidingWindowCounter c = new StripedSlidingWindowCounter(4, 1, TimeUnit.SECONDS, 4, testClock::get);
+
+        for (int i = 0; i < 4; i++) {
+            c.increment();
+            testClock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(c.getCountPerInterval(), 3);
+
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(c.getCountPerInterval(), 1);
+
+        testClock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(c.getCountPerInterval(), 0);
+    }
+
+    @Test
+    void testStripesAreRoundedToPowerOfTwo() {
+        assertEquals(new StripedSlidingWindowCounter(4, 1, TimeUnit.SECONDS, 1, System::nanoTime).getStripeCount(), 1);
+        assertEquals(new StripedSlidingWindowCounter(4, 1, TimeUnit.SECONDS, 6, System::nanoTime).getStripeCount(), 8);
+        assertEquals(new StripedSlidingWindowCounter(4, 1, TimeUnit.SECONDS, 1000, System::nanoTime).getStripeCount(), 64);
+    }
+
+    @Test
+    void testCountsAreExactUnderConcurrency() throws InterruptedException {
+        final int threads = 16;
+        final int incrementsPerThread = 50_000;
+
+        // freeze the clock so that no increment can race a bucket rotation
+        AtomicLong testClock = new AtomicLong();
+        StripedSlidingWindowCounter c = new StripedSlidingWindowCounter(60, 5, TimeUnit.SECONDS, 8, testClock::get);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < incrementsPerThread; i++) {
+                    c.increment();
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(c.getCountPerInterval(), threads * incrementsPerThread);
+
+        // once the buckets close, the total is served from the cached sum
+        testClock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(c.getCountPerInterval(), threads * incrementsPerThread);
+    }
+
+    @Test
+    void testValidInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new StripedSlidingWindowCounter(0));
+        assertThrows(IllegalArgumentException.class, () -> new StripedSlidingWindowCounter(10, 5, TimeUnit.SECONDS, 0, System::nanoTime));
+        assertThrows(IllegalArgumentException.class, () -> new StripedSlidingWindowCounter(10, 5, TimeUnit.SECONDS, 4, null));
+    }
+}
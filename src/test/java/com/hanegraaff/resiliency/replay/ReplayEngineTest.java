@@ -0,0 +1,142 @@
+package com.hanegraaff.resiliency.replay;
+
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.handlers.CircuitBreakerRequestHandler;
+import com.hanegraaff.resiliency.handlers.CircuitOpenException;
+import com.hanegraaff.resiliency.handlers.ServiceHealthRequestHandler;
+import com.hanegraaff.resiliency.health.HealthPolicy;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.journal.AttemptJournal;
+import com.hanegraaff.resiliency.journal.JournalReader;
+import com.hanegraaff.resiliency.journal.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayEngineTest {
+
+    private static final long OUTAGE_START = TimeUnit.HOURS.toNanos(2);
+    private static final long OUTAGE_END = OUTAGE_START + TimeUnit.MINUTES.toNanos(30);
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Records a day of traffic, one attempt per second, with a 30 minute outage during
+     * which 80% of the attempts fail
+     */
+    private List<JournalRecord> recordDay() throws IOException {
+        Path path = directory.resolve("day.journal");
+        int attempts = (int) TimeUnit.DAYS.toSeconds(1);
+
+        try (AttemptJournal journal = new AttemptJournal(path, attempts)) {
+            for (int i = 0; i < attempts; i++) {
+                long end = TimeUnit.SECONDS.toNanos(i + 1);
+                boolean failed = end >= OUTAGE_START && end < OUTAGE_END && i % 5 != 0;
+                journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", failed ? 503 : 200,
+                        failed ? AmazonS3Exception.class : null, end, TimeUnit.MILLISECONDS.toNanos(20), 1);
+            }
+        }
+        return new JournalReader(path).getRecords();
+    }
+
+    @Test
+    public void testValidInvalidParameters() {
+        assertThrows(IllegalArgumentException.class, () -> new ReplayEngine(null));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayCandidate(null, context -> Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> new ReplayCandidate("name", null));
+        assertThrows(IllegalArgumentException.class, () -> ReplayCandidate.serviceHealth(null, 5));
+
+        ReplayEngine engine = new ReplayEngine(Collections.emptyList());
+        assertThrows(IllegalArgumentException.class, () -> engine.replay(null));
+        assertThrows(IllegalArgumentException.class, () -> engine.replayAll(null));
+    }
+
+    @Test
+    public void testTripsAreReportedOnTheRecordedTimeline() throws IOException {
+        ReplayEngine engine = new ReplayEngine(recordDay());
+        assertEquals(TimeUnit.DAYS.toSeconds(1), engine.getAttemptCount());
+
+        ReplayResult result = engine.replay(ReplayCandidate.serviceHealth(HealthPolicy.of(0.5, 10), 5));
+        HealthTimeline timeline = result.getTimeline("service");
+        assertEquals(1, timeline.getTripCount());
+
+        HealthTimeline.Trip trip = timeline.getTrips().get(0);
+        assertTrue(trip.isRecovered());
+        assertTrue(trip.getStartNanos() >= OUTAGE_START && trip.getStartNanos() < OUTAGE_START + TimeUnit.MINUTES.toNanos(5),
+                trip.toString());
+        // the window still holds the failures of the outage for a while after it ends
+        assertTrue(trip.getEndNanos() >= OUTAGE_END && trip.getEndNanos() < OUTAGE_END + TimeUnit.MINUTES.toNanos(5),
+                trip.toString());
+        assertEquals(trip.getDurationNanos(), timeline.getUnhealthyNanos());
+    }
+
+    @Test
+    public void testCandidatesAreReplayedInParallel() throws IOException {
+        ReplayEngine engine = new ReplayEngine(recordDay());
+
+        List<ReplayCandidate> candidates = Arrays.asList(
+                ReplayCandidate.serviceHealth(HealthPolicy.of(0.5, 10), 5),
+                ReplayCandidate.serviceHealth(HealthPolicy.of(0.9, 10), 5),
+                ReplayCandidate.serviceHealth(HealthPolicy.of(0.5, 10), 1),
+                ReplayCandidate.serviceHealth(HealthPolicy.of(0.5, 1000), 5));
+
+        List<ReplayResult> results = engine.replayAll(candidates, new ForkJoinPool(2));
+        assertEquals(4, results.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            assertEquals(candidates.get(i), results.get(i).getCandidate());
+        }
+
+        HealthTimeline.Trip fiveMinutes = results.get(0).getTimeline("service").getTrips().get(0);
+        HealthTimeline.Trip oneMinute = results.get(2).getTimeline("service").getTrips().get(0);
+        // a shorter window detects the outage sooner, and forgets it sooner
+        assertTrue(oneMinute.getStartNanos() < fiveMinutes.getStartNanos());
+        assertTrue(oneMinute.getEndNanos() < fiveMinutes.getEndNanos());
+
+        // an 80% error rate never exceeds 90%
+        assertEquals(0, results.get(1).getTimeline("service").getTripCount());
+        // a 5 minute window never holds more than 300 attempts
+        assertEquals(0, results.get(3).getTimeline("service").getTripCount());
+    }
+
+    @Test
+    public void testRejectedAttemptsAreCounted() throws IOException {
+        ReplayEngine engine = new ReplayEngine(recordDay());
+
+        ReplayResult result = engine.replay(new ReplayCandidate("breaker", context -> {
+            ServiceHealthTracker tracker = context.newTracker("s3");
+            return Arrays.<RequestHandler2>asList(
+                    new ServiceHealthRequestHandler(HealthPolicy.of(0.5, 10), tracker, 5, context.counterFactory(),
+                            context.getNanoClock()),
+                    new CircuitBreakerRequestHandler(tracker, 30000, 5, context.getNanoClock()));
+        }));
+
+        assertTrue(result.getRejectedCount() > 0);
+        assertFalse(result.getTimeline("s3").getTrips().isEmpty());
+    }
+
+    @Test
+    public void testRecordedRejectionsAreNotReplayed() throws IOException {
+        Path path = directory.resolve("rejections.journal");
+        try (AttemptJournal journal = new AttemptJournal(path, 10)) {
+            journal.record("Amazon S3", GetObjectRequest.class, "s3.amazonaws.com", 200, null, 1, 1, 1);
+            journal.record("Amazon S3", GetObjectRequest.class, null, 0, CircuitOpenException.class, 2, -1, 1);
+        }
+
+        assertEquals(1, new ReplayEngine(new JournalReader(path).getRecords()).getAttemptCount());
+    }
+}
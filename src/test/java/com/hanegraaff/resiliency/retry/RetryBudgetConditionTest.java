@@ -0,0 +1,61 @@
+package com.hanegraaff.resiliency.retry;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.hanegraaff.resiliency.builders.ConfigurationBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBudgetConditionTest {
+
+    private final GetObjectRequest request = new GetObjectRequest("bucket", "key");
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudgetCondition(null));
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudgetCondition(null, new RetryBudget()));
+    }
+
+    @Test
+    public void testRetryableErrorsConsumeTheBudget(){
+        RetryBudget testBudget = new RetryBudget(0.1, 1);
+        RetryBudgetCondition testCondition = new RetryBudgetCondition(testBudget);
+        AmazonClientException ioError = new AmazonClientException("timeout", new IOException("timeout"));
+
+        assertTrue(testCondition.shouldRetry(request, ioError, 0));
+        assertFalse(testCondition.shouldRetry(request, ioError, 1));
+        assertEquals(1, testBudget.getRetriesDenied());
+    }
+
+    @Test
+    public void testNonRetryableErrorsDoNotConsumeTheBudget(){
+        RetryBudget testBudget = new RetryBudget(0.1, 1);
+        RetryBudgetCondition testCondition = new RetryBudgetCondition(testBudget);
+
+        AmazonServiceException accessDenied = new AmazonServiceException("denied");
+        accessDenied.setStatusCode(403);
+        accessDenied.setErrorCode("AccessDenied");
+
+        assertFalse(testCondition.shouldRetry(request, accessDenied, 0));
+        assertEquals(1.0, testBudget.getAvailableTokens());
+    }
+
+    @Test
+    public void testConfigurationsShareTheBudget(){
+        RetryBudget testBudget = new RetryBudget();
+        ClientConfiguration batch = ConfigurationBuilder.slowAndSteady(testBudget);
+        ClientConfiguration ui = ConfigurationBuilder.responsiveUI(testBudget);
+
+        assertEquals(testBudget, ((RetryBudgetCondition) batch.getRetryPolicy().getRetryCondition()).getRetryBudget());
+        assertEquals(testBudget, ((RetryBudgetCondition) ui.getRetryPolicy().getRetryCondition()).getRetryBudget());
+        assertEquals(10, batch.getRetryPolicy().getMaxErrorRetry());
+    }
+}
@@ -0,0 +1,86 @@
+package com.hanegraaff.resiliency.retry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBudgetTest {
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertDoesNotThrow(() -> new RetryBudget());
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(1.5, 10));
+        assertThrows(IllegalArgumentException.class, () -> new RetryBudget(0.1, 0));
+    }
+
+    @Test
+    public void testRetriesAreCappedByRatio(){
+        RetryBudget testBudget = new RetryBudget(0.1, 2);
+
+        // the budget starts full
+        assertTrue(testBudget.tryAcquire());
+        assertTrue(testBudget.tryAcquire());
+        assertFalse(testBudget.tryAcquire());
+
+        // ten successes earn one retry
+        for (int i = 0; i < 9; i++) testBudget.deposit();
+        assertFalse(testBudget.tryAcquire());
+        testBudget.deposit();
+        assertTrue(testBudget.tryAcquire());
+
+        assertEquals(3, testBudget.getRetriesAllowed());
+        assertEquals(2, testBudget.getRetriesDenied());
+    }
+
+    @Test
+    public void testDepositsAreCappedByCapacity(){
+        RetryBudget testBudget = new RetryBudget(0.5, 3);
+
+        for (int i = 0; i < 100; i++) testBudget.deposit();
+        assertEquals(3.0, testBudget.getAvailableTokens());
+    }
+
+    @Test
+    public void testConcurrentRetriesNeverExceedBudget() throws Exception {
+        RetryBudget testBudget = new RetryBudget(0.1, 50);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        if (testBudget.tryAcquire()) allowed.incrementAndGet();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(50, allowed.get());
+        assertEquals(50, testBudget.getRetriesAllowed());
+        assertEquals(0.0, testBudget.getAvailableTokens());
+    }
+}
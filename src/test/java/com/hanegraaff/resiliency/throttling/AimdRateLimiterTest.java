@@ -0,0 +1,110 @@
+package com.hanegraaff.resiliency.throttling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AimdRateLimiterTest {
+
+    AtomicLong clock;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+    }
+
+    @Test
+    public void testValidInvalidParameters(){
+        assertDoesNotThrow(() -> new AimdRateLimiter(10, 1, 100));
+        assertThrows(IllegalArgumentException.class, () -> new AimdRateLimiter(10, 0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new AimdRateLimiter(10, 20, 100));
+        assertThrows(IllegalArgumentException.class, () -> new AimdRateLimiter(200, 1, 100));
+        assertThrows(IllegalArgumentException.class, () -> new AimdRateLimiter(10, 1, 100, 1, 1, 1000, clock::get));
+        assertThrows(IllegalArgumentException.class, () -> new AimdRateLimiter(10, 1, 100, 0.5, 0, 1000, clock::get));
+        assertThrows(IllegalArgumentException.class, () -> new AimdRateLimiter(10, 1, 100, 0.5, 1, 1000, null));
+    }
+
+    @Test
+    public void testPermitsAreEvenlySpaced(){
+        AimdRateLimiter testLimiter = new AimdRateLimiter(10, 1, 100, 0.5, 1, 1000, clock::get);
+        long interval = TimeUnit.MILLISECONDS.toNanos(100);
+
+        assertEquals(0, testLimiter.reserve(0));
+        assertEquals(-1, testLimiter.reserve(0));
+        assertEquals(interval, testLimiter.reserve(interval));
+        assertEquals(2 * interval, testLimiter.reserve(Long.MAX_VALUE));
+
+        // unused capacity does not accumulate while idle
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, testLimiter.reserve(0));
+        assertEquals(-1, testLimiter.reserve(0));
+    }
+
+    @Test
+    public void testMultiplicativeDecreaseAdditiveIncrease(){
+        AimdRateLimiter testLimiter = new AimdRateLimiter(100, 10, 200, 0.5, 5, 1000, clock::get);
+
+        // a burst of throttles only cuts the rate once per interval
+        testLimiter.onThrottle();
+        testLimiter.onThrottle();
+        testLimiter.onThrottle();
+        assertEquals(50.0, testLimiter.getRate());
+        assertEquals(3, testLimiter.getThrottleCount());
+
+        // no increase until an interval has passed since the decrease
+        testLimiter.onSuccess();
+        assertEquals(50.0, testLimiter.getRate());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        testLimiter.onSuccess();
+        testLimiter.onSuccess();
+        assertEquals(55.0, testLimiter.getRate());
+
+        // the rate stays within its bounds
+        for (int i = 0; i < 10; i++) {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            testLimiter.onThrottle();
+        }
+        assertEquals(10.0, testLimiter.getRate());
+    }
+
+    @Test
+    public void testThroughputConvergesToServiceCapacity(){
+        int capacity = 100;
+        AimdRateLimiter testLimiter = new AimdRateLimiter(400, 1, 400, 0.5, 5, 1000, clock::get);
+
+        long accepted = 0;
+        long throttled = 0;
+        int acceptedThisSecond = 0;
+
+        // a client that always has work, against a service accepting 100 attempts per second
+        for (int ms = 0; ms < 300_000; ms++) {
+            if (ms % 1000 == 0) acceptedThisSecond = 0;
+
+            if (testLimiter.reserve(0) == 0) {
+                boolean measured = ms >= 200_000;
+                if (acceptedThisSecond < capacity) {
+                    acceptedThisSecond++;
+                    testLimiter.onSuccess();
+                    if (measured) accepted++;
+                } else {
+                    testLimiter.onThrottle();
+                    if (measured) throttled++;
+                }
+            }
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        // over the last 100 seconds, most of the capacity is used and few attempts are throttled
+        assertTrue(accepted > 100 * capacity * 0.6, "accepted " + accepted);
+        assertTrue(throttled < accepted * 0.05, "throttled " + throttled);
+        assertTrue(testLimiter.getRate() <= capacity * 1.2, "rate " + testLimiter.getRate());
+    }
+}
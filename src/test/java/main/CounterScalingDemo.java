@@ -0,0 +1,72 @@
+package main;
+
+import com.hanegraaff.resiliency.metrics.SlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.StripedSlidingWindowCounter;
+import com.hanegraaff.resiliency.metrics.WindowCounter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Compares the throughput of the SlidingWindowCounter and the StripedSlidingWindowCounter
+ * as the number of threads grows, using the same increment-then-read pattern as the
+ * ServiceHealthRequestHandler.
+ */
+public class CounterScalingDemo {
+
+    private static final Log logger = LogFactory.getLog(CounterScalingDemo.class);
+
+    private static final long RUN_MILLIS = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        logger.info(String.format("Measuring counter throughput with up to %d threads", maxThreads));
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double atomicOps = measure(SlidingWindowCounter::new, threads);
+            double stripedOps = measure(StripedSlidingWindowCounter::new, threads);
+
+            logger.info(String.format("threads: %3d  SlidingWindowCounter: %,15.0f ops/s  StripedSlidingWindowCounter: %,15.0f ops/s",
+                    threads, atomicOps, stripedOps));
+        }
+    }
+
+    private static double measure(IntFunction<WindowCounter> factory, int threads) throws InterruptedException {
+        WindowCounter counter = factory.apply(5);
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                long ops = 0;
+                while (System.nanoTime() < deadline) {
+                    counter.increment();
+                    ops++;
+                }
+                operations.add(ops);
+                done.countDown();
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        start.countDown();
+        done.await();
+
+        return operations.sum() / (RUN_MILLIS / 1000.0);
+    }
+}
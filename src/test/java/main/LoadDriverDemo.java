@@ -0,0 +1,90 @@
+package main;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.s3.AmazonS3;
+import com.hanegraaff.resiliency.builders.ConfigurationBuilder;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.faults.ServiceError;
+import com.hanegraaff.resiliency.handlers.BulkheadRequestHandler;
+import com.hanegraaff.resiliency.handlers.BulkheadScope;
+import com.hanegraaff.resiliency.handlers.CircuitBreakerRequestHandler;
+import com.hanegraaff.resiliency.handlers.LatencyTrackingRequestHandler;
+import com.hanegraaff.resiliency.handlers.ServiceHealthRequestHandler;
+import com.hanegraaff.resiliency.health.ServiceHealthTracker;
+import com.hanegraaff.resiliency.local.LoadDriver;
+import com.hanegraaff.resiliency.local.LocalS3Server;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the throughput and latency of each ConfigurationBuilder profile combined with
+ * several handler stacks, against a LocalS3Server that adds log-normal latency and
+ * answers 2% of the requests with 503 SlowDown. Runs offline, without AWS credentials.
+ */
+public class LoadDriverDemo {
+
+    private static final Log logger = LogFactory.getLog(LoadDriverDemo.class);
+
+    private static final String BUCKET = "load-test";
+    private static final int OBJECT_COUNT = 100;
+    private static final int OBJECT_SIZE = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Supplier<ClientConfiguration>> profiles = new LinkedHashMap<>();
+        profiles.put("slowAndSteady", ConfigurationBuilder::slowAndSteady);
+        profiles.put("retryAndFailFast", ConfigurationBuilder::retryAndFailFast);
+        profiles.put("responsiveUI", ConfigurationBuilder::responsiveUI);
+
+        Map<String, Supplier<RequestHandler2[]>> handlerStacks = new LinkedHashMap<>();
+        handlerStacks.put("no handlers", () -> new RequestHandler2[0]);
+        handlerStacks.put("health + latency", () -> new RequestHandler2[]{
+                new ServiceHealthRequestHandler(0.5, 10, new ServiceHealthTracker()),
+                new LatencyTrackingRequestHandler()});
+        handlerStacks.put("circuit breaker + bulkhead", () -> {
+            ServiceHealthTracker tracker = new ServiceHealthTracker();
+            return new RequestHandler2[]{
+                    new BulkheadRequestHandler(BulkheadScope.SERVICE, 8, 8, 100),
+                    new ServiceHealthRequestHandler(0.5, 10, tracker),
+                    new CircuitBreakerRequestHandler(tracker)};
+        });
+
+        LoadDriver driver = new LoadDriver(16, 5, TimeUnit.SECONDS);
+
+        try (LocalS3Server server = new LocalS3Server()) {
+            server.withLatency(DelayDistribution.logNormal(5, 0.5, TimeUnit.MILLISECONDS).capped(1, TimeUnit.SECONDS))
+                    .withErrors(ServiceError.SLOW_DOWN, 0.02);
+
+            byte[] content = new byte[OBJECT_SIZE];
+            ThreadLocalRandom.current().nextBytes(content);
+            for (int i = 0; i < OBJECT_COUNT; i++) {
+                server.putObject(BUCKET, "object-" + i, content);
+            }
+
+            logger.info("Running load against " + server.getEndpoint());
+
+            for (Map.Entry<String, Supplier<ClientConfiguration>> profile : profiles.entrySet()) {
+                for (Map.Entry<String, Supplier<RequestHandler2[]>> stack : handlerStacks.entrySet()) {
+                    AmazonS3 s3Client = server.newClientBuilder()
+                            .withClientConfiguration(profile.getValue().get())
+                            .withRequestHandlers(stack.getValue().get())
+                            .build();
+
+                    LoadDriver.LoadResult result = driver.run(profile.getKey() + " / " + stack.getKey(), s3Client,
+                            client -> client.getObjectAsString(BUCKET, "object-" + ThreadLocalRandom.current().nextInt(OBJECT_COUNT)));
+                    logger.info(result);
+
+                    s3Client.shutdown();
+                }
+            }
+
+            logger.info(String.format("Server received %d requests, %d of them failed", server.getRequestCount(), server.getErrorCount()));
+        }
+    }
+}
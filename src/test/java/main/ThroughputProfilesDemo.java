@@ -0,0 +1,66 @@
+package main;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.hanegraaff.resiliency.builders.ConfigurationBuilder;
+import com.hanegraaff.resiliency.faults.DelayDistribution;
+import com.hanegraaff.resiliency.local.LoadDriver;
+import com.hanegraaff.resiliency.local.LocalS3Server;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Compares the throughput of the original ConfigurationBuilder profiles with the
+ * throughput oriented ones, with 128 threads reading small objects from a LocalS3Server
+ * that answers in 500ms. The original profiles keep the SDK default of 50 connections,
+ * so most threads wait for a connection rather than for the server.
+ */
+public class ThroughputProfilesDemo {
+
+    private static final Log logger = LogFactory.getLog(ThroughputProfilesDemo.class);
+
+    private static final String BUCKET = "throughput-test";
+    private static final int OBJECT_COUNT = 100;
+    private static final int OBJECT_SIZE = 16 * 1024;
+    private static final int THREADS = 128;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Supplier<ClientConfiguration>> profiles = new LinkedHashMap<>();
+        profiles.put("slowAndSteady", ConfigurationBuilder::slowAndSteady);
+        profiles.put("retryAndFailFast", ConfigurationBuilder::retryAndFailFast);
+        profiles.put("responsiveUI", ConfigurationBuilder::responsiveUI);
+        profiles.put("highThroughputBulk", ConfigurationBuilder::highThroughputBulk);
+        profiles.put("manySmallObjects", ConfigurationBuilder::manySmallObjects);
+
+        LoadDriver driver = new LoadDriver(THREADS, 10, TimeUnit.SECONDS);
+
+        try (LocalS3Server server = new LocalS3Server()) {
+            server.withLatency(DelayDistribution.fixed(500, TimeUnit.MILLISECONDS));
+
+            byte[] content = new byte[OBJECT_SIZE];
+            ThreadLocalRandom.current().nextBytes(content);
+            for (int i = 0; i < OBJECT_COUNT; i++) {
+                server.putObject(BUCKET, "object-" + i, content);
+            }
+
+            logger.info(String.format("Reading %d byte objects from %s with %d threads", OBJECT_SIZE, server.getEndpoint(), THREADS));
+
+            for (Map.Entry<String, Supplier<ClientConfiguration>> profile : profiles.entrySet()) {
+                ClientConfiguration config = profile.getValue().get();
+                AmazonS3 s3Client = server.newClientBuilder().withClientConfiguration(config).build();
+
+                LoadDriver.LoadResult result = driver.run(profile.getKey() + " (" + config.getMaxConnections() + " connections)",
+                        s3Client, client -> client.getObjectAsString(BUCKET, "object-" + ThreadLocalRandom.current().nextInt(OBJECT_COUNT)));
+                logger.info(result);
+
+                s3Client.shutdown();
+            }
+        }
+    }
+}